@@ -52,6 +52,9 @@ import aml.ui.AlignmentFileChooser;
 import aml.ui.GUI;
 import aml.ui.OntologyFileChooser;
 import aml.util.ExtensionFilter;
+import aml.util.Progress;
+import aml.util.RunMetrics;
+import aml.util.SimilarityCache;
 
 public class AML
 {
@@ -62,6 +65,8 @@ public class AML
 	private static AML aml = new AML();
 	//The ontology and alignment data structures
 	private URIMap uris;
+	//The cache of name similarities shared by the matchers (null for no cache)
+	private SimilarityCache sims;
 	private RelationshipMap rels;
 	private Ontology source;
 	private Ontology target;
@@ -102,6 +107,14 @@ public class AML
 	private int maxDistance = 2;
 	private boolean showAncestors = true;
 	private boolean showDescendants = true;
+	//Run instrumentation (stage timers, counters and gauges)
+	private RunMetrics metrics;
+	//Progress and cancellation of the current run
+	private Progress progress;
+	//Run metrics, progress and cancellation of the job run by each thread (and the
+	//threads it starts), for jobs that are run concurrently and followed apart
+	private InheritableThreadLocal<RunMetrics> jobMetrics;
+	private InheritableThreadLocal<Progress> jobProgress;
 
 	//Constructors
 
@@ -111,6 +124,12 @@ public class AML
 		uris = new URIMap();
 		rels = new RelationshipMap();
 		bkSources = new Vector<String>();		
+		metrics = new RunMetrics();
+		metrics.register();
+		progress = new Progress();
+		progress.register();
+		jobMetrics = new InheritableThreadLocal<RunMetrics>();
+		jobProgress = new InheritableThreadLocal<Progress>();
 	}
 
 	//Public Methods
@@ -300,6 +319,30 @@ public class AML
 		return lang;
 	}
 
+	/**
+	 * @return the RunMetrics of the current run (or those of the job
+	 * run by the current thread, if it has its own)
+	 */
+	public RunMetrics getMetrics()
+	{
+		RunMetrics m = jobMetrics.get();
+		if(m == null)
+			return metrics;
+		return m;
+	}
+
+	/**
+	 * @return the Progress of the current run, through which it can be followed and cancelled
+	 * (or that of the job run by the current thread, if it has its own)
+	 */
+	public Progress getProgress()
+	{
+		Progress p = jobProgress.get();
+		if(p == null)
+			return progress;
+		return p;
+	}
+
 	public int getMaxDistance()
 	{
 		return maxDistance;
@@ -350,6 +393,14 @@ public class AML
 		return sType;
 	}
 
+	/**
+	 * @return the cache of name similarities, or null if there is none
+	 */
+	public SimilarityCache getSimilarityCache()
+	{
+		return sims;
+	}
+
 	public SizeCategory getSizeCategory()
 	{
 		return size;
@@ -513,48 +564,53 @@ public class AML
 		rels = new RelationshipMap();
 		if(useReasoner)
 			PropertyConfigurator.configure("log4j.properties");
-		long time = System.currentTimeMillis()/1000;
+		long time = metrics.start();
 		System.out.println("Loading source ontology");
 		if(stemmer)
 			source = new Ontology(src,true,true);
 		else
 			source = new Ontology(src,true,false);
-		time = System.currentTimeMillis()/1000 - time;
-		System.out.println(source.getURI() + " loaded in " + time + " seconds");
+		time = metrics.stop("load.source", time);
+		System.out.println(source.getURI() + " loaded in " + RunMetrics.toSeconds(time) + " seconds");
 		System.out.println("Classes: " + source.classCount());	
 		System.out.println("Names: " + source.getLexicon().size());
 		System.out.println("Properties: " + source.propertyCount());
-		time = System.currentTimeMillis()/1000;
+		recordSizes("source", source);
+		time = metrics.start();
 		System.out.println("Loading target ontology");	
 		if(stemmer)
 			target = new Ontology(tgt,true,true);
 		else
 			target = new Ontology(tgt,true,false);
 		
-		time = System.currentTimeMillis()/1000 - time;
-		System.out.println(target.getURI() + " loaded in " + time + " seconds");
+		time = metrics.stop("load.target", time);
+		System.out.println(target.getURI() + " loaded in " + RunMetrics.toSeconds(time) + " seconds");
 		System.out.println("Classes: " + target.classCount());
 		System.out.println("Names: " + target.getLexicon().size());
 		System.out.println("Properties: " + target.propertyCount());
 		System.out.println("Direct Relationships: " + rels.relationshipCount());
-		time = System.currentTimeMillis()/1000;
+		recordSizes("target", target);
+		time = metrics.start();
 		if(stemmer)
 			target2 = new Ontology(tgt2,true,true);
 		else
 			target2 = new Ontology(tgt2,true,false);
 		
-		time = System.currentTimeMillis()/1000 - time;
-		System.out.println(target2.getURI() + " loaded in " + time + " seconds");
+		time = metrics.stop("load.target2", time);
+		System.out.println(target2.getURI() + " loaded in " + RunMetrics.toSeconds(time) + " seconds");
 		System.out.println("Classes: " + target2.classCount());
 		System.out.println("Names: " + target2.getLexicon().size());
 		System.out.println("Properties: " + target2.propertyCount());
 		System.out.println("Direct Relationships: " + rels.relationshipCount());
-		time = System.currentTimeMillis()/1000;
+		recordSizes("target2", target2);
+		metrics.setGauge("relationships", rels.relationshipCount());
 		 
 		if(closure)
 		{
 			System.out.println("Running transitive closure on RelationshipMap");	
+			time = metrics.start();
 			rels.transitiveClosure();
+			metrics.stop("load.closure", time);
 		}
 		//time = System.currentTimeMillis()/1000 - time;
 		//System.out.println("Transitive closure finished in " + time + " seconds");		
@@ -693,6 +749,15 @@ public class AML
 			sType = s;
 	}
 
+	/**
+	 * Sets the cache of name similarities used by the matchers created from now on
+	 * @param cache: the SimilarityCache, or null to not cache the similarities
+	 */
+	public void setSimilarityCache(SimilarityCache cache)
+	{
+		sims = cache;
+	}
+
 	public void setStringSimMeasure(StringSimMeasure ssm)
 	{
 		this.ssm = ssm;
@@ -703,6 +768,34 @@ public class AML
 		this.structuralSelection = structuralSelection;
 	}
 
+	/**
+	 * Sets the RunMetrics of the job run by the current thread (and by the threads
+	 * it starts from now on), so that they aren't mixed with those of the jobs run
+	 * concurrently by other threads
+	 * @param m: the RunMetrics of the job, or null to use the RunMetrics of the run
+	 */
+	public void setThreadMetrics(RunMetrics m)
+	{
+		if(m == null)
+			jobMetrics.remove();
+		else
+			jobMetrics.set(m);
+	}
+
+	/**
+	 * Sets the Progress of the job run by the current thread (and by the threads it
+	 * starts from now on), so that it can be followed and cancelled apart from the
+	 * jobs run concurrently by other threads
+	 * @param p: the Progress of the job, or null to use the Progress of the run
+	 */
+	public void setThreadProgress(Progress p)
+	{
+		if(p == null)
+			jobProgress.remove();
+		else
+			jobProgress.set(p);
+	}
+
 	public void setThreshold(double thresh)
 	{
 		threshold = thresh;
@@ -791,6 +884,9 @@ public class AML
 				}
 			}
 		}
+		//The Lexicons were extended, so the WordLexicons must be rebuilt
+		source.getWordLexiconCache().clear();
+		target.getWordLexiconCache().clear();
 		languages = new HashSet<String>();
 		for(String s : source.getLexicon().getLanguages())
 			if(target.getLexicon().getLanguages().contains(s))
@@ -801,4 +897,14 @@ public class AML
 	{
 		return useReasoner;
 	}
-}
\ No newline at end of file
+
+	//Private Methods
+
+	//Records the size of the Lexicon of an ontology in the run metrics
+	private void recordSizes(String name, Ontology o)
+	{
+		metrics.setGauge(name + ".classes", o.classCount());
+		metrics.setGauge(name + ".lexicon.names", o.getLexicon().nameCount());
+		metrics.setGauge(name + ".lexicon.entries", o.getLexicon().size());
+	}
+}
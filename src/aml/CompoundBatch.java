@@ -0,0 +1,329 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Headless batch runner for compound matching jobs listed in a manifest file, *
+* which loads each ontology once and runs the jobs concurrently (run it       *
+* without arguments for the manifest format and the options).                 *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.log4j.PropertyConfigurator;
+
+import aml.match.ThresholdSweep;
+import aml.ontology.OntologyCache;
+import aml.settings.CompoundSelectionType;
+import aml.util.Progress;
+import aml.util.RunMetrics;
+import aml.util.SimilarityCache;
+
+public class CompoundBatch
+{
+	static AML aml = AML.getInstance();
+	//The usage message, with the manifest format and the options (and their defaults)
+	static final String USAGE =
+		"Usage: CompoundBatch manifest [option=value ...]\n" +
+		"\n" +
+		"Manifest format (tab-separated, lines starting with # are ignored):\n" +
+		"  name  source  target1  target2  output  [reference]\n" +
+		"\n" +
+		"Each distinct ontology is loaded once and kept while there are jobs that use it.\n" +
+		"The jobs then run concurrently, most expensive first (as estimated from their\n" +
+		"SizeCategory), as long as their estimated memory fits in the heap left after\n" +
+		"loading the ontologies.\n" +
+		"\n" +
+		"Options:\n" +
+		"  threshold=0.4       threshold of the first step\n" +
+		"  threshold2=0.9      threshold of the compound mappings\n" +
+		"  selection=Strict    compound selection type\n" +
+		"  stemmer=true        whether to stem the Lexicons\n" +
+		"  threads=N           jobs run at the same time (available processors)\n" +
+		"  memory=32           estimated MB of heap per unit of cost of a job\n" +
+		"  summary=FILE        job summary (manifest.summary.tsv)\n" +
+		"  metrics=FILE        run metrics of the loading and of each job (none)\n" +
+		"  sweep=false         also evaluate the jobs with a reference at every threshold\n" +
+		"                      above threshold2, in a single pass, saving the precision-\n" +
+		"                      recall curve to output.sweep.tsv and the best threshold\n" +
+		"                      to the summary\n" +
+		"  mapped=DIR          save the WordLexicons there as MappedWordLexicon files and\n" +
+		"                      match from the memory-mapped files, to keep them out of the\n" +
+		"                      heap for very large ontologies (none)\n" +
+		"  scores=DIR          keep the scores of all compound candidates above floor and\n" +
+		"                      floor2 there, so that the jobs only filter them with their\n" +
+		"                      thresholds and selection instead of matching again; the\n" +
+		"                      store is rebuilt when the ontologies change or a threshold\n" +
+		"                      is below its floor (none)\n" +
+		"  floor=0.3           floor of threshold for the scores\n" +
+		"  floor2=0.6          floor of threshold2 for the scores\n" +
+		"  restriction=R       match each residual word only with the subtrees of target2\n" +
+		"                      allowed for it and for the target1 class: learn allows the\n" +
+		"                      branches where the word occurs (which keeps the result when\n" +
+		"                      threshold2 > 0.5), otherwise the rules are read from the\n" +
+		"                      file R (see SubtreeRestriction) (none)\n" +
+		"  dense=true          score the second step with a DenseScorer when it is\n" +
+		"                      estimated to be cheaper\n" +
+		"  prefixJoin=true     join the blocks of the first step with a PrefixJoin, which\n" +
+		"                      only scores the pairs of classes that can reach threshold\n" +
+		"  lsh=false           find the candidates of the first step with a MinHashLSH,\n" +
+		"                      which is faster but can miss some mappings (pairs at\n" +
+		"                      threshold/2 are found with 95% odds)\n" +
+		"  lshVerify=true      filter the LSH candidates with the exact word similarity\n" +
+		"                      instead of that estimated from their signatures\n" +
+		"  simcache=FILE       cache the similarities between pairs of names there, across\n" +
+		"                      jobs and runs (none)\n" +
+		"  simcacheSize=1000000 maximum number of similarities cached\n" +
+		"  checkpoints=DIR     save the output of each stage of each job there (none)\n" +
+		"  resume=true         resume the jobs from the last stage saved with the same\n" +
+		"                      inputs and settings\n" +
+		"  snapshots=DIR       save the snapshots of the ontologies there, and on the next\n" +
+		"                      run only re-match the source classes affected by their\n" +
+		"                      changes, patching the previous output (none)\n" +
+		"  tolerance=0         change in the EC of a word below which the classes with it\n" +
+		"                      aren't re-matched (0 for the same result as a full run,\n" +
+		"                      but then adding or removing any name changes the EC of\n" +
+		"                      most words, and so re-matches nearly all classes)";
+
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length == 0)
+		{
+			System.out.println(USAGE);
+			return;
+		}
+		String manifest = args[0];
+		HashMap<String,String> options = new HashMap<String,String>();
+		for(int i = 1; i < args.length; i++)
+		{
+			String[] opt = args[i].split("=", 2);
+			if(opt.length == 2)
+				options.put(opt[0], opt[1]);
+		}
+		double threshold = Double.parseDouble(option(options, "threshold", "0.4"));
+		double threshold2 = Double.parseDouble(option(options, "threshold2", "0.9"));
+		CompoundSelectionType type = CompoundSelectionType.parseSelector(option(options, "selection", "Strict"));
+		if(type == null)
+			throw new Exception("Unrecognized selection type: " + options.get("selection"));
+		boolean stemmer = Boolean.parseBoolean(option(options, "stemmer", "true"));
+		int threads = Integer.parseInt(option(options, "threads", "" + Runtime.getRuntime().availableProcessors()));
+		int memory = Integer.parseInt(option(options, "memory", "32"));
+		String summary = option(options, "summary", manifest + ".summary.tsv");
+		String metrics = option(options, "metrics", "");
+		String snapshots = option(options, "snapshots", "");
+		double tolerance = Double.parseDouble(option(options, "tolerance", "0"));
+		String checkpoints = option(options, "checkpoints", "");
+		boolean resume = Boolean.parseBoolean(option(options, "resume", "true"));
+		String mapped = option(options, "mapped", "");
+		boolean sweep = Boolean.parseBoolean(option(options, "sweep", "false"));
+		String scores = option(options, "scores", "");
+		double floor = Double.parseDouble(option(options, "floor", "0.3"));
+		double floor2 = Double.parseDouble(option(options, "floor2", "0.6"));
+		String simcache = option(options, "simcache", "");
+		int simcacheSize = Integer.parseInt(option(options, "simcacheSize", "1000000"));
+		String restriction = option(options, "restriction", "");
+		boolean dense = Boolean.parseBoolean(option(options, "dense", "true"));
+		boolean prefixJoin = Boolean.parseBoolean(option(options, "prefixJoin", "true"));
+		boolean lsh = Boolean.parseBoolean(option(options, "lsh", "false"));
+		boolean lshVerify = Boolean.parseBoolean(option(options, "lshVerify", "true"));
+
+		List<CompoundJob> jobs = readManifest(manifest);
+		for(CompoundJob j : jobs)
+		{
+			j.setSettings(threshold, threshold2, type, stemmer);
+			if(!snapshots.equals(""))
+				j.setIncremental(snapshots, tolerance);
+			if(!checkpoints.equals(""))
+				j.setCheckpoints(checkpoints, resume);
+			if(!mapped.equals(""))
+				j.setMapped(mapped);
+			if(!scores.equals(""))
+				j.setScores(scores, floor, floor2);
+			j.setSweep(sweep);
+			j.setRestriction(restriction);
+			j.setDense(dense);
+			j.setPrefixJoin(prefixJoin);
+			j.setApproximate(lsh, lshVerify);
+		}
+		System.out.println("Read " + jobs.size() + " jobs from " + manifest);
+		if(!simcache.equals(""))
+			aml.setSimilarityCache(new SimilarityCache(simcache, simcacheSize));
+		runJobs(jobs, new OntologyCache(), threads, memory);
+		if(!simcache.equals(""))
+			aml.getSimilarityCache().save();
+
+		PrintWriter outStream = new PrintWriter(summary);
+		if(sweep)
+			outStream.println("Job\tCost\tSeconds\tFound\tPrecision\tRecall\tF-measure\tBest threshold\tBest F-measure");
+		else
+			outStream.println("Job\tCost\tSeconds\tFound\tPrecision\tRecall\tF-measure");
+		for(CompoundJob j : jobs)
+		{
+			String line = j.getName() + "\t" + j.getCost() + "\t" + (j.getTime() / 1000000) / 1000.0;
+			if(j.getResult() == null)
+				line += "\tfailed";
+			else
+				line += "\t" + j.getResult().size();
+			Double[] eval = j.getEvaluation();
+			if(eval != null)
+				line += "\t" + eval[0] + "\t" + eval[1] + "\t" + eval[2];
+			ThresholdSweep s = j.getThresholdSweep();
+			if(s != null && s.getBest() != null)
+				line += "\t" + s.getBestThreshold() + "\t" + s.getBest()[2];
+			outStream.println(line);
+		}
+		outStream.close();
+		//The metrics of the loading are followed by those of each job
+		if(!metrics.equals(""))
+		{
+			outStream = new PrintWriter(metrics);
+			aml.getMetrics().writeSummary(outStream);
+			for(CompoundJob j : jobs)
+			{
+				if(j.getMetrics() == null)
+					continue;
+				outStream.println("#Job\t" + j.getName());
+				j.getMetrics().writeSummary(outStream);
+			}
+			outStream.close();
+		}
+		System.out.println("Finished.");
+	}
+
+	/**
+	 * Reads the jobs from a manifest file
+	 * @param file: the path to the manifest file
+	 * @return the list of jobs in the manifest
+	 */
+	public static List<CompoundJob> readManifest(String file) throws Exception
+	{
+		List<CompoundJob> jobs = new ArrayList<CompoundJob>();
+		BufferedReader inStream = new BufferedReader(new FileReader(file));
+		String line;
+		while((line = inStream.readLine()) != null)
+		{
+			if(line.trim().equals("") || line.startsWith("#"))
+				continue;
+			String[] col = line.split("\t");
+			if(col.length < 5)
+			{
+				inStream.close();
+				throw new Exception("Invalid job in manifest: " + line);
+			}
+			String reference = "";
+			if(col.length > 5)
+				reference = col[5];
+			jobs.add(new CompoundJob(col[0], col[1], col[2], col[3], col[4], reference));
+		}
+		inStream.close();
+		return jobs;
+	}
+
+	/**
+	 * Loads the ontologies of the given jobs (once each) and then runs the jobs
+	 * concurrently, in decreasing order of cost, within the available memory,
+	 * each with its own run metrics and progress (which is cancelled with the
+	 * progress of the run)
+	 * @param jobs: the jobs to run
+	 * @param cache: the cache from which to get the ontologies
+	 * @param threads: the maximum number of jobs to run at the same time
+	 * @param memory: the estimated memory in MB per unit of cost of a job
+	 */
+	public static void runJobs(List<CompoundJob> jobs, final OntologyCache cache, int threads, final int memory) throws Exception
+	{
+		if(aml.useReasoner())
+			PropertyConfigurator.configure("log4j.properties");
+		//Load all ontologies before running any job, since
+		//loading updates the URIMap shared by all jobs
+		for(CompoundJob j : jobs)
+			j.load(cache);
+		System.out.println("Loaded " + cache.size() + " distinct ontologies");
+
+		//The memory left after loading is shared by the running jobs
+		System.gc();
+		Runtime rt = Runtime.getRuntime();
+		long free = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+		final int budget = (int)Math.max(1, free * 0.8 / (1024*1024));
+		final Semaphore available = new Semaphore(budget, true);
+
+		List<CompoundJob> sorted = new ArrayList<CompoundJob>(jobs);
+		Collections.sort(sorted, new Comparator<CompoundJob>()
+		{
+			public int compare(CompoundJob j1, CompoundJob j2)
+			{
+				return j2.getCost() - j1.getCost();
+			}
+		});
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		final Progress progress = aml.getProgress();
+		for(final CompoundJob j : sorted)
+		{
+			tasks.add(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws Exception
+				{
+					int needed = (int)Math.min(budget, (long)j.getCost() * memory);
+					available.acquire(needed);
+					j.setMetrics(new RunMetrics());
+					aml.setThreadMetrics(j.getMetrics());
+					aml.setThreadProgress(new Progress(progress));
+					try
+					{
+						j.run();
+					}
+					catch(Exception e)
+					{
+						System.out.println("Job " + j.getName() + " failed: " + e.getMessage());
+						e.printStackTrace();
+					}
+					finally
+					{
+						aml.setThreadMetrics(null);
+						aml.setThreadProgress(null);
+						available.release(needed);
+						j.release(cache);
+					}
+					return null;
+				}
+			});
+		}
+		ExecutorService exec = Executors.newFixedThreadPool(Math.max(1, threads));
+		List<Future<Void>> results = exec.invokeAll(tasks);
+		exec.shutdown();
+		for(Future<Void> f : results)
+			f.get();
+	}
+
+	private static String option(HashMap<String,String> options, String name, String def)
+	{
+		if(options.containsKey(name))
+			return options.get(name);
+		return def;
+	}
+}
@@ -0,0 +1,251 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Checks that the alternative paths of the compound matching give the same    *
+* alignments: the block join and the prefix join of the first step, the       *
+* residual table filled while matching and built from the alignment, the      *
+* second step with the Mappings grouped by their residual words and one by    *
+* one, with and without the DenseScorer, the stream and the ranked            *
+* selections, and the mapped WordLexicons and the WordLexicons. Exits with an *
+* error if any differ. The paths can also be given as arguments: source       *
+* target1 target2 [threshold threshold2]                                      *
+*                                                                             *
+* @date 19-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import aml.filter.CompoundRankedSelector;
+import aml.filter.CompoundStreamSelector;
+import aml.match.Alignment;
+import aml.match.CompoundAlignment;
+import aml.match.CompoundMapping;
+import aml.match.Mapping;
+import aml.match.ResidualTable;
+import aml.match.WordMatcher;
+import aml.ontology.MappedWordLexicon;
+import aml.ontology.Ontology;
+import aml.ontology.OntologyCache;
+import aml.settings.CompoundSelectionType;
+
+public class CompoundEquivalenceTest
+{
+	//Number of checks in which the alignments differ
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception
+	{
+		//Threshold for the first matching step
+		double threshold = 0.4;
+		//Threshold for the second matching step
+		double threshold2 = 0.9;
+		//true to apply the Snowball stemmer to the Lexicon
+		boolean stemmer = true;
+		//Paths for the .owl files to align
+		String sourcePath = "store/ontologies/pato.owl";
+		String targetPath1 = "store/ontologies/pato.owl";
+		String targetPath2 = "store/ontologies/pato.owl";
+		//Directory where to save the mapped WordLexicons of the ontologies
+		//("" to not compare them with the WordLexicons)
+		String mappedDir = System.getProperty("java.io.tmpdir");
+		if(args.length > 0)
+		{
+			if(args.length != 3 && args.length != 5)
+			{
+				System.out.println("Usage: CompoundEquivalenceTest source target1 target2 [threshold threshold2]");
+				return;
+			}
+			sourcePath = args[0];
+			targetPath1 = args[1];
+			targetPath2 = args[2];
+			if(args.length > 3)
+			{
+				threshold = Double.parseDouble(args[3]);
+				threshold2 = Double.parseDouble(args[4]);
+			}
+		}
+
+		System.out.println("Opening Ontologies...");
+		OntologyCache cache = new OntologyCache();
+		Ontology source = cache.get(sourcePath, stemmer);
+		Ontology target1 = cache.get(targetPath1, stemmer);
+		Ontology target2 = cache.get(targetPath2, stemmer);
+
+		System.out.println("Running first WordMatcher...");
+		//The block join against the prefix join
+		WordMatcher first = new WordMatcher(source, target1);
+		first.setPrefixJoin(false);
+		ResidualTable residuals = new ResidualTable();
+		Alignment w1 = first.match(threshold, null, null, residuals);
+		first = new WordMatcher(source, target1);
+		first.setPrefixJoin(true);
+		check("prefix join", lines(w1), lines(first.match(threshold)));
+		//The residual table filled while matching against the one built
+		//from the alignment
+		HashMap<Mapping,List<String>> combMap = residuals.toMap();
+		check("residual table", lines(combMap), lines(new ResidualTable(w1).toMap()));
+
+		System.out.println("Running second WordMatcher...");
+		//The Mappings matched by groups of residual words against one by one
+		WordMatcher second = new WordMatcher(source, target2);
+		second.setDense(false);
+		CompoundAlignment compAlign = second.sequentialTargetMatch(threshold2, combMap);
+		check("residual groups", lines(compAlign), lines(ungrouped(second, target2, threshold2, combMap)));
+		//The dense scorer against the scoring of each target class
+		WordMatcher dense = new WordMatcher(source, target2);
+		dense.setDense(true);
+		check("dense scorer", lines(compAlign), lines(dense.sequentialTargetMatch(threshold2, combMap)));
+		//The stream selection against the ranked selection
+		CompoundAlignment selected = null;
+		CompoundSelectionType[] types = {CompoundSelectionType.STRICT, CompoundSelectionType.PERMISSIVE};
+		for(CompoundSelectionType type : types)
+		{
+			CompoundAlignment ranked = new CompoundRankedSelector(type, target2).select(
+					second.sequentialTargetMatch(threshold2, combMap));
+			CompoundStreamSelector selector = new CompoundStreamSelector(type, target2);
+			second.sequentialTargetMatch(threshold2, combMap, selector);
+			check(type + " stream selection", lines(ranked), lines(selector.getAlignment()));
+			if(selected == null)
+				selected = ranked;
+		}
+
+		//The mapped WordLexicons against the WordLexicons, through both steps
+		if(!mappedDir.equals(""))
+		{
+			System.out.println("Running with the mapped WordLexicons...");
+			Set<Ontology> ontologies = new LinkedHashSet<Ontology>();
+			ontologies.add(source);
+			ontologies.add(target1);
+			ontologies.add(target2);
+			List<File> files = new ArrayList<File>();
+			for(Ontology o : ontologies)
+			{
+				File f = new File(mappedDir, "equivalence" + files.size() + ".wlex");
+				files.add(f);
+				MappedWordLexicon.save(o.getWordLexicon(), f.getPath(), "");
+				o.setMappedWordLexicon(new MappedWordLexicon(f.getPath()));
+				o.getWordLexiconCache().clear();
+			}
+			Alignment mappedW1 = new WordMatcher(source, target1).match(threshold);
+			check("mapped first step", lines(w1), lines(mappedW1));
+			CompoundStreamSelector selector = new CompoundStreamSelector(types[0], target2);
+			new WordMatcher(source, target2).sequentialTargetMatch(threshold2,
+					new ResidualTable(mappedW1).toMap(), selector);
+			check("mapped second step", lines(selected), lines(selector.getAlignment()));
+			for(Ontology o : ontologies)
+				o.setMappedWordLexicon(null);
+			for(File f : files)
+				f.delete();
+		}
+		cache.clear();
+
+		if(failures > 0)
+		{
+			System.out.println(failures + " checks failed");
+			System.exit(1);
+		}
+		System.out.println("All checks passed");
+	}
+
+	//Matches the second step with each Mapping on its own, rather than with
+	//the Mappings grouped by their residual words as the WordMatcher does
+	private static CompoundAlignment ungrouped(WordMatcher wm, Ontology target2, double thresh,
+			HashMap<Mapping,List<String>> map)
+	{
+		Set<Integer> target2ids = target2.getClasses();
+		int[] ids = new int[target2ids.size()];
+		int k = 0;
+		for(Integer id : target2ids)
+			ids[k++] = id;
+		double[] sims = new double[ids.length];
+		CompoundAlignment a = new CompoundAlignment();
+		for(Mapping m : map.keySet())
+		{
+			wm.sequentialSimilarities(ids, map.get(m), sims);
+			for(k = 0; k < ids.length; k++)
+			{
+				double nameSim = sims[k];
+				nameSim *= m.getWeight();
+				double finalSim = (nameSim + m.getSimilarity())/2;
+				if(finalSim >= thresh)
+					a.add(m.getSourceId(), m.getTargetId(), ids[k], finalSim);
+			}
+		}
+		return a;
+	}
+
+	//Compares two alignments, as sorted lists of their mappings
+	private static void check(String name, List<String> expected, List<String> actual)
+	{
+		if(expected.equals(actual))
+			System.out.println(name + ": same " + expected.size() + " mappings");
+		else
+		{
+			Set<String> e = new HashSet<String>(expected);
+			Set<String> a = new HashSet<String>(actual);
+			int missing = 0;
+			for(String s : expected)
+				if(!a.contains(s))
+					missing++;
+			int extra = 0;
+			for(String s : actual)
+				if(!e.contains(s))
+					extra++;
+			failures++;
+			System.out.println(name + ": DIFFERENT (" + missing + " missing, " + extra + " extra of " +
+					expected.size() + " mappings)");
+		}
+	}
+
+	//The mappings of an alignment, with their similarities, sorted
+	private static List<String> lines(Alignment a)
+	{
+		List<String> lines = new ArrayList<String>();
+		for(Mapping m : a)
+			lines.add(m.getSourceId() + "\t" + m.getTargetId() + "\t" + m.getSimilarity());
+		Collections.sort(lines);
+		return lines;
+	}
+
+	//The compound mappings of an alignment, with their similarities, sorted
+	private static List<String> lines(CompoundAlignment a)
+	{
+		List<String> lines = new ArrayList<String>();
+		for(CompoundMapping m : a)
+			lines.add(m.getSourceId() + "\t" + m.getTargetId1() + "\t" + m.getTargetId2() + "\t" +
+					m.getSimilarity());
+		Collections.sort(lines);
+		return lines;
+	}
+
+	//The entries of a residual table, with their scores and words, sorted
+	private static List<String> lines(HashMap<Mapping,List<String>> map)
+	{
+		List<String> lines = new ArrayList<String>();
+		for(Mapping m : map.keySet())
+			lines.add(m.getSourceId() + "\t" + m.getTargetId() + "\t" + m.getSimilarity() + "\t" +
+					m.getWeight() + "\t" + map.get(m));
+		Collections.sort(lines);
+		return lines;
+	}
+}
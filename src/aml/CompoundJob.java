@@ -0,0 +1,821 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* A compound matching job (source x target 1 x target 2) that runs the same  *
+* pipeline as CompoundTest, but on ontologies given explicitly (e.g., taken   *
+* from an OntologyCache) instead of the ones open in AML, so that several     *
+* jobs can share their ontologies and run at the same time.                   *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+import aml.filter.CompoundRankedSelector;
+import aml.filter.CompoundStreamSelector;
+import aml.match.Alignment;
+import aml.match.CompoundAlignment;
+import aml.match.CompoundCheckpoint;
+import aml.match.CompoundMapping;
+import aml.match.CompoundScoreStore;
+import aml.match.Mapping;
+import aml.match.ResidualTable;
+import aml.match.SubtreeRestriction;
+import aml.match.ThresholdSweep;
+import aml.match.WordMatcher;
+import aml.ontology.MappedWordLexicon;
+import aml.ontology.Ontology;
+import aml.ontology.OntologyCache;
+import aml.ontology.OntologyDiff;
+import aml.ontology.OntologySnapshot;
+import aml.ontology.URIMap;
+import aml.ontology.WordLexicon;
+import aml.settings.CompoundSelectionType;
+import aml.settings.SizeCategory;
+import aml.util.RunMetrics;
+
+public class CompoundJob
+{
+
+//Attributes
+
+	//The job definition
+	private String name;
+	private String sourcePath;
+	private String target1Path;
+	private String target2Path;
+	private String output;
+	private String reference;
+	//The matching settings
+	private double threshold;
+	private double threshold2;
+	private CompoundSelectionType type;
+	private boolean stemmer;
+	//The ontologies and reference alignment of the job
+	private Ontology source;
+	private Ontology target1;
+	private Ontology target2;
+	private CompoundAlignment ref;
+	//The directory where the snapshots of the ontologies are kept for
+	//incremental re-matching ("" to always run the job fully)
+	private String snapshots;
+	//The maximum change in the EC of a word for it to be considered unchanged
+	private double tolerance;
+	//The snapshots of the current versions of the ontologies
+	private OntologySnapshot[] current;
+	//The previous alignment and the source classes that must be re-matched
+	//(null if the job is run fully)
+	private CompoundAlignment previous;
+	private Set<Integer> affected;
+	//The checkpoints of the stages of the job (null for no checkpoints)
+	//and whether to resume the job from them
+	private CompoundCheckpoint checkpoint;
+	private boolean resume;
+	//The directory of the memory-mapped WordLexicons, or "" to keep them in the heap
+	private String mapped;
+	//The directory of the score stores, or "" to always run the matching steps,
+	//and the floor thresholds of the stores of the two steps
+	private String scores;
+	private double floor;
+	private double floor2;
+	//The restriction of the second step to subtrees of the second target:
+	//"" for none, "learn" to learn it from the second target, or the path
+	//to a file of rules (see SubtreeRestriction.read), and the restriction
+	private String restrict;
+	private SubtreeRestriction restriction;
+	//Whether to score the second step with a DenseScorer when it is cheaper
+	private boolean dense;
+	//Whether to join the blocks of the first step with a PrefixJoin
+	private boolean prefixJoin;
+	//Whether to find the candidates of the first step with a MinHashLSH,
+	//and whether to verify them with the exact word similarity
+	private boolean approximate;
+	private boolean verify;
+	//Whether to evaluate the result at every threshold above threshold2
+	private boolean sweep;
+	//The shard of the source classes matched by the job, and the number of
+	//shards (1 to match all the source classes)
+	private int shard;
+	private int shards;
+	//The evaluation at every threshold, if requested
+	private ThresholdSweep thresholdSweep;
+	//The estimated cost of the job
+	private int cost;
+	//The results of the job
+	private CompoundAlignment result;
+	private Double[] evaluation;
+	private long time;
+	//The run metrics of the job, if it is run with its own (null otherwise)
+	private RunMetrics runMetrics;
+
+//Constructors
+
+	/**
+	 * Constructs a new CompoundJob with the settings used in CompoundTest
+	 * @param name: the name of the job
+	 * @param sourcePath: the path to the source ontology
+	 * @param target1Path: the path to the first target ontology
+	 * @param target2Path: the path to the second target ontology
+	 * @param output: the path to the output alignment file (.tsv or .rdf),
+	 * or "" to not save the alignment
+	 * @param reference: the path to the compound reference alignment, or "" if none
+	 */
+	public CompoundJob(String name, String sourcePath, String target1Path, String target2Path,
+			String output, String reference)
+	{
+		this.name = name;
+		this.sourcePath = sourcePath;
+		this.target1Path = target1Path;
+		this.target2Path = target2Path;
+		this.output = output;
+		this.reference = reference;
+		threshold = 0.4;
+		threshold2 = 0.9;
+		type = CompoundSelectionType.STRICT;
+		stemmer = true;
+		snapshots = "";
+		tolerance = 0;
+		mapped = "";
+		scores = "";
+		restrict = "";
+		dense = true;
+		prefixJoin = true;
+		approximate = false;
+		verify = true;
+		sweep = false;
+		shard = 0;
+		shards = 1;
+	}
+
+//Public Methods
+
+	/**
+	 * @return the estimated cost of the job, based on the size category
+	 * of its two matching steps (or 0 if the job was never loaded)
+	 */
+	public int getCost()
+	{
+		return cost;
+	}
+
+	/**
+	 * @return the evaluation of the result of the job (precision, recall,
+	 * F-measure, found, correct, reference), or null if there is no reference
+	 */
+	public Double[] getEvaluation()
+	{
+		return evaluation;
+	}
+
+	/**
+	 * @return the run metrics of the job, or null if it was run with those of AML
+	 */
+	public RunMetrics getMetrics()
+	{
+		return runMetrics;
+	}
+
+	/**
+	 * @return the name of the job
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return the selected compound alignment, or null if the job wasn't run
+	 */
+	public CompoundAlignment getResult()
+	{
+		return result;
+	}
+
+	/**
+	 * @return the evaluation of the result of the job at every threshold above
+	 * threshold2, or null if there is no reference or it wasn't requested
+	 */
+	public ThresholdSweep getThresholdSweep()
+	{
+		return thresholdSweep;
+	}
+
+	/**
+	 * @return the time the job took to run, in nanoseconds
+	 */
+	public long getTime()
+	{
+		return time;
+	}
+
+	/**
+	 * Gets the ontologies of the job from the cache (loading them if needed)
+	 * and reads its reference alignment. Since both update the URIMap of AML,
+	 * jobs must be loaded one at a time, before any job is run.
+	 * @param cache: the cache of ontologies
+	 */
+	public void load(OntologyCache cache) throws OWLOntologyCreationException, Exception
+	{
+		source = cache.get(sourcePath, stemmer);
+		target1 = cache.get(target1Path, stemmer);
+		target2 = cache.get(target2Path, stemmer);
+		cache.retain(sourcePath, stemmer);
+		cache.retain(target1Path, stemmer);
+		cache.retain(target2Path, stemmer);
+		cost = weight(SizeCategory.getSizeCategory(source, target1)) +
+				weight(SizeCategory.getSizeCategory(source, target2));
+		if(!mapped.equals(""))
+		{
+			map(source, sourcePath);
+			map(target1, target1Path);
+			map(target2, target2Path);
+		}
+		if(!reference.equals(""))
+			ref = new CompoundAlignment(reference);
+		if(restrict.equals("learn"))
+		{
+			restriction = new SubtreeRestriction(target2);
+			restriction.learnWords();
+		}
+		else if(!restrict.equals(""))
+			restriction = SubtreeRestriction.read(restrict, target1, target2);
+		if(!snapshots.equals(""))
+			loadPrevious();
+		//A shard only matches the source classes whose URI falls in it, which
+		//(unlike their indexes) is the same in every process
+		if(shards > 1)
+		{
+			affected = new HashSet<Integer>();
+			URIMap uris = AML.getInstance().getURIMap();
+			for(Integer i : source.getClasses())
+				if(shardOf(uris.getURI(i), shards) == shard)
+					affected.add(i);
+			System.out.println("Job " + name + ": matching " + affected.size() + " of " +
+					source.classCount() + " source classes (shard " + (shard+1) + " of " + shards + ")");
+		}
+	}
+
+	/**
+	 * Merges the unselected alignments of the shards of the job and selects
+	 * them together, saving the result and evaluating it as in run()
+	 * @param files: the alignment files of the shards, as saved by ShardWorker
+	 * @return the selected compound alignment
+	 */
+	public CompoundAlignment merge(List<String> files) throws Exception
+	{
+		RunMetrics metrics = AML.getInstance().getMetrics();
+		long start = metrics.start();
+		System.out.println("Merging " + files.size() + " shards of job " + name);
+		CompoundAlignment merged = new CompoundAlignment();
+		for(String f : files)
+			merged.addAll(new CompoundAlignment(f));
+		metrics.count("shard.merge" + RunMetrics.CANDIDATES, merged.size());
+		result = new CompoundRankedSelector(type, target2).select(merged);
+		time = metrics.stop("job", start);
+		finish();
+		return result;
+	}
+
+	/**
+	 * Releases the ontologies of the job from the cache
+	 * @param cache: the cache of ontologies
+	 */
+	public void release(OntologyCache cache)
+	{
+		source = null;
+		target1 = null;
+		target2 = null;
+		ref = null;
+		restriction = null;
+		previous = null;
+		affected = null;
+		current = null;
+		cache.release(sourcePath, stemmer);
+		cache.release(target1Path, stemmer);
+		cache.release(target2Path, stemmer);
+	}
+
+	/**
+	 * Runs the compound matching pipeline of the job, saving the resulting
+	 * alignment and evaluating it if an output and a reference were given
+	 * @return the selected compound alignment
+	 */
+	public CompoundAlignment run() throws Exception
+	{
+		RunMetrics metrics = AML.getInstance().getMetrics();
+		long start = metrics.start();
+		System.out.println("Running job " + name);
+
+		//The first step and residual table depend only on the source, the first
+		//target and the first threshold, so they can be reused when only the
+		//second threshold or the selection change
+		String firstSignature = CompoundCheckpoint.signature(CompoundCheckpoint.fileSignature(sourcePath),
+				CompoundCheckpoint.fileSignature(target1Path), threshold, stemmer, approximateSignature());
+		String compoundSignature = CompoundCheckpoint.signature(firstSignature,
+				CompoundCheckpoint.fileSignature(target2Path), threshold2, type, restrictionSignature());
+		//Incremental runs only match part of the sources, so they aren't checkpointed
+		boolean checkpoints = checkpoint != null && affected == null;
+		boolean load = checkpoints && resume;
+
+		result = null;
+		//Like checkpoints, score stores are only used when all sources are matched
+		//(and they keep the scores of all target classes, so they aren't restricted
+		//or approximate)
+		if(!scores.equals("") && affected == null && restriction == null && !approximate)
+			result = scoreStore().select(threshold, threshold2, type, target2);
+		else if(load)
+			result = checkpoint.loadCompound(compoundSignature);
+		if(result == null)
+		{
+			HashMap<Mapping,List<String>> combMap = null;
+			if(load)
+				combMap = checkpoint.loadResidual(firstSignature);
+			if(combMap == null)
+			{
+				Alignment w1 = null;
+				ResidualTable residuals = null;
+				if(load)
+					w1 = checkpoint.loadFirst(firstSignature);
+				if(w1 == null)
+				{
+					//When re-matching incrementally, only the affected source classes are matched
+					//(and the residual table is filled as they are)
+					residuals = new ResidualTable();
+					WordMatcher first = new WordMatcher(source, target1);
+					first.setPrefixJoin(prefixJoin);
+					first.setApproximate(approximate, verify);
+					w1 = first.match(threshold, affected, null, residuals);
+					if(checkpoints)
+						checkpoint.saveFirst(firstSignature, w1);
+				}
+				if(residuals == null)
+					residuals = new ResidualTable(w1);
+				combMap = residuals.toMap();
+				if(checkpoints)
+					checkpoint.saveResidual(firstSignature, combMap);
+			}
+
+			WordMatcher wm = new WordMatcher(source, target2);
+			wm.setRestriction(restriction);
+			wm.setDense(dense);
+			if(type.equals(CompoundSelectionType.NONE) || shards > 1)
+			{
+				CompoundAlignment compAlign = wm.sequentialTargetMatch(threshold2, combMap);
+				//The shards are selected together, once they are merged
+				if(shards > 1)
+					result = compAlign;
+				else
+					result = new CompoundRankedSelector(type, target2).select(compAlign);
+			}
+			else
+			{
+				CompoundStreamSelector selector = new CompoundStreamSelector(type, target2);
+				wm.sequentialTargetMatch(threshold2, combMap, selector);
+				result = selector.getAlignment();
+			}
+			if(checkpoints)
+				checkpoint.saveCompound(compoundSignature, result);
+		}
+		if(previous != null)
+			result = patch(result);
+		time = metrics.stop("job", start);
+		finish();
+		return result;
+	}
+
+	/**
+	 * Writes the result of the job to the given stream, which is flushed but not
+	 * closed (the ontologies of the job must not have been released yet)
+	 * @param outStream: the output stream
+	 * @param rdf: whether to write the alignment in .rdf format instead of .tsv
+	 */
+	public void write(PrintWriter outStream, boolean rdf)
+	{
+		if(rdf)
+			result.saveRDF(outStream, source, target1, target2);
+		else
+			result.saveTSV3(outStream, source, target1, target2);
+	}
+
+	/**
+	 * Makes the job save the output of each stage (the first-step alignment, the
+	 * residual table and the selected compound alignment) as a checkpoint
+	 * @param dir: the directory where to keep the checkpoints
+	 * @param res: whether to resume the job from the last stage checkpointed
+	 * with the same inputs and settings, instead of running it from the start
+	 */
+	public void setCheckpoints(String dir, boolean res)
+	{
+		checkpoint = new CompoundCheckpoint(dir, name);
+		resume = res;
+	}
+
+	/**
+	 * Makes the job match with memory-mapped WordLexicons, which are saved in the
+	 * given directory the first time (or when the ontology file changes) and then
+	 * read from the OS page cache, so that the WordLexicons of large ontologies
+	 * needn't be kept in the Java heap (ontologies shared with jobs that don't use
+	 * them will rebuild their WordLexicons when needed)
+	 * @param dir: the directory of the MappedWordLexicon files
+	 */
+	public void setMapped(String dir)
+	{
+		mapped = dir;
+	}
+
+	/**
+	 * Makes the job keep the scores of all compound candidates above the given
+	 * floor thresholds in a CompoundScoreStore, which is built the first time
+	 * (or when the ontologies change, or the thresholds are below the floors)
+	 * and then filtered with the thresholds and selection of each run, instead
+	 * of running the matching steps again
+	 * @param dir: the directory of the score store files
+	 * @param fl: the floor threshold of the first matching step
+	 * @param fl2: the floor threshold of the second matching step
+	 */
+	public void setScores(String dir, double fl, double fl2)
+	{
+		scores = dir;
+		floor = fl;
+		floor2 = fl2;
+	}
+
+	/**
+	 * Sets whether the second matching step of the job is scored with a
+	 * DenseScorer when it is estimated to be cheaper (which gives the same
+	 * result, and is only used with WordLexicons kept in the heap)
+	 * @param d: whether to use the DenseScorer
+	 */
+	public void setDense(boolean d)
+	{
+		dense = d;
+	}
+
+	/**
+	 * Sets whether the blocks of the first matching step of the job are joined
+	 * with a PrefixJoin (which gives the same result, and is only used with
+	 * WordLexicons kept in the heap)
+	 * @param p: whether to use the PrefixJoin
+	 */
+	public void setPrefixJoin(boolean p)
+	{
+		prefixJoin = p;
+	}
+
+	/**
+	 * Sets whether the candidates of the first matching step of the job are
+	 * found with a MinHashLSH (which is faster for very large ontologies, but
+	 * can miss some mappings, and is only used with WordLexicons kept in the heap)
+	 * @param approx: whether to find the candidates approximately
+	 * @param v: whether to verify the candidates with the exact word similarity
+	 */
+	public void setApproximate(boolean approx, boolean v)
+	{
+		approximate = approx;
+		verify = v;
+	}
+
+	/**
+	 * Restricts the second matching step of the job to subtrees of the second
+	 * target, either learned from it (which doesn't change the result when
+	 * threshold2 is above 0.5, but skips the classes that can't reach it) or
+	 * given in a file of rules, as read by SubtreeRestriction
+	 * @param r: "learn" to learn the restriction, the path to the file
+	 * of rules, or "" to match all the classes of the second target
+	 */
+	public void setRestriction(String r)
+	{
+		restrict = r;
+	}
+
+	/**
+	 * Makes the job evaluate its result at every threshold above threshold2 in a
+	 * single pass (if it has a reference), saving the precision-recall curve
+	 * next to the output alignment, as output.sweep.tsv
+	 * @param sw: whether to sweep the thresholds
+	 */
+	public void setSweep(boolean sw)
+	{
+		sweep = sw;
+	}
+
+	/**
+	 * Makes the job re-match incrementally: the snapshots of the ontologies are
+	 * saved after each run, and when the job is loaded again, the ontologies are
+	 * compared with their snapshots, so that only the source classes that may
+	 * be affected by the changes are re-matched, and the previous alignment
+	 * (read from the output file) is patched with their new mappings
+	 * @param dir: the directory where to keep the snapshots
+	 * @param tol: the maximum change in the evidence content of a word for the
+	 * classes that have it not to be re-matched (0 to re-match them all, so that
+	 * the patched alignment is the same as a full run; any other value makes it
+	 * approximate, as the similarities of the classes that aren't re-matched may
+	 * have changed by up to that much). With 0, re-matching incrementally only
+	 * saves work when the total word count of each ontology is unchanged, as the
+	 * evidence content of every word that occurs more than once depends on it:
+	 * adding or removing any name re-matches nearly all the source classes
+	 */
+	public void setIncremental(String dir, double tol)
+	{
+		snapshots = dir;
+		tolerance = tol;
+	}
+
+	/**
+	 * Makes the job match only a shard of the source classes (split by their
+	 * URIs), without selecting its result, so that the alignments of all the
+	 * shards can be merged and selected together (see ShardCoordinator)
+	 * @param s: the shard of the job (from 0 to n-1)
+	 * @param n: the number of shards
+	 */
+	public void setShard(int s, int n)
+	{
+		shard = s;
+		shards = n;
+	}
+
+	/**
+	 * Sets the matching settings of the job
+	 * @param thresh: the threshold for the first matching step
+	 * @param thresh2: the threshold for the second matching step
+	 * @param s: the selection type
+	 * @param stem: whether to apply the Snowball stemmer to the Lexicons
+	 */
+	public void setSettings(double thresh, double thresh2, CompoundSelectionType s, boolean stem)
+	{
+		threshold = thresh;
+		threshold2 = thresh2;
+		type = s;
+		stemmer = stem;
+	}
+
+	/**
+	 * Sets the run metrics of the job, when it is run with its own instead of
+	 * those of AML (see AML.setThreadMetrics)
+	 * @param m: the run metrics of the job
+	 */
+	public void setMetrics(RunMetrics m)
+	{
+		runMetrics = m;
+	}
+
+//Private Methods
+
+	//Compares the ontologies with their snapshots from the previous run,
+	//reads the previous alignment and finds the source classes to re-match
+	private void loadPrevious() throws Exception
+	{
+		current = new OntologySnapshot[]{new OntologySnapshot(source),
+				new OntologySnapshot(target1), new OntologySnapshot(target2)};
+		String prefix = snapshots + File.separator + name;
+		if(output.equals("") || !new File(output).exists() || !new File(prefix + ".settings").exists())
+			return;
+		BufferedReader inStream = new BufferedReader(new FileReader(prefix + ".settings"));
+		String previousSettings = inStream.readLine();
+		inStream.close();
+		if(!settings().equals(previousSettings))
+		{
+			System.out.println("Settings of job " + name + " changed: running it fully");
+			return;
+		}
+		OntologyDiff sourceDiff = new OntologySnapshot(prefix + ".source.snapshot").diff(current[0], tolerance);
+		OntologyDiff target1Diff = new OntologySnapshot(prefix + ".target1.snapshot").diff(current[1], tolerance);
+		OntologyDiff target2Diff = new OntologySnapshot(prefix + ".target2.snapshot").diff(current[2], tolerance);
+		//The removed target classes must be in the URIMap before reading the previous
+		//alignment, so that the source classes mapped to them are re-matched (the
+		//mappings of removed source classes are dropped whether they are or not)
+		Set<Integer> changed1 = target1Diff.getRemovedClasses();
+		Set<Integer> changed2 = target2Diff.getRemovedClasses();
+		previous = new CompoundAlignment(output);
+
+		affected = sourceDiff.getAffectedClasses(source);
+		Set<Integer> affected1 = target1Diff.getAffectedClasses(target1);
+		Set<Integer> affected2 = target2Diff.getAffectedClasses(target2);
+		changed1.addAll(affected1);
+		changed2.addAll(affected2);
+		//The source classes that share a word with an affected target class (in
+		//its current or previous names) may have new or different candidates
+		WordLexicon t1Lex = target1.getWordLexicon();
+		WordLexicon t2Lex = target2.getWordLexicon();
+		Set<String> words2 = new HashSet<String>(target2Diff.getOldWords());
+		for(Integer i : affected2)
+			words2.addAll(t2Lex.getWords(i));
+		Set<String> words = new HashSet<String>(target1Diff.getOldWords());
+		for(Integer i : affected1)
+			words.addAll(t1Lex.getWords(i));
+		words.addAll(words2);
+		//Repeated words in the names of the first target are also matched with
+		//the second target, so the sources that share a word with first target
+		//classes with such names may also be affected by the second target
+		for(Integer i : target1.getClasses())
+			if(repeatsWord(target1, i, words2))
+				words.addAll(t1Lex.getWords(i));
+		WordLexicon sLex = source.getWordLexicon();
+		for(String w : words)
+			affected.addAll(sLex.getClasses(w));
+		//As are the sources whose selected mappings were to changed classes
+		for(CompoundMapping m : previous)
+			if(changed1.contains(m.getTargetId1()) || changed2.contains(m.getTargetId2()))
+				affected.add(m.getSourceId());
+		System.out.println("Job " + name + ": source " + sourceDiff + "; target 1 " + target1Diff +
+				"; target 2 " + target2Diff + "; re-matching " + affected.size() + " of " +
+				source.classCount() + " source classes");
+		AML.getInstance().getMetrics().count("incremental.sources", affected.size());
+	}
+
+	//Sets the MappedWordLexicon of an ontology, saving it first if it is not
+	//up to date, and frees its WordLexicons from the heap
+	private void map(Ontology o, String path) throws Exception
+	{
+		if(o.getMappedWordLexicon() != null)
+			return;
+		String file = mapped + File.separator + new File(path).getName() +
+				(stemmer ? ".stem" : "") + ".wlex";
+		String signature = CompoundCheckpoint.signature(CompoundCheckpoint.fileSignature(path), stemmer);
+		MappedWordLexicon m = null;
+		if(new File(file).exists())
+		{
+			//Files of another version of the format are saved again
+			try
+			{
+				m = new MappedWordLexicon(file);
+				if(!m.getSignature().equals(signature))
+					m = null;
+			}
+			catch(IOException e)
+			{
+				System.out.println("WARNING: Ignoring invalid mapped WordLexicon " + file + ": " + e.getMessage());
+			}
+		}
+		if(m == null)
+		{
+			System.out.println("Saving the mapped WordLexicon of " + path);
+			MappedWordLexicon.save(o.getWordLexicon(), file, signature);
+			m = new MappedWordLexicon(file);
+		}
+		o.setMappedWordLexicon(m);
+		o.getWordLexiconCache().clear();
+	}
+
+	//Opens the score store of the job, or builds it if there is none for
+	//the same ontologies with floors below the thresholds of the job
+	private CompoundScoreStore scoreStore() throws Exception
+	{
+		String file = scores + File.separator + name + ".scores";
+		String signature = CompoundCheckpoint.signature(CompoundCheckpoint.fileSignature(sourcePath),
+				CompoundCheckpoint.fileSignature(target1Path), CompoundCheckpoint.fileSignature(target2Path),
+				stemmer);
+		CompoundScoreStore store = CompoundScoreStore.open(file, signature);
+		if(store != null && store.covers(threshold, threshold2))
+			return store;
+		System.out.println("Building the score store of job " + name);
+		store = CompoundScoreStore.build(source, target1, target2, Math.min(floor, threshold),
+				Math.min(floor2, threshold2), signature);
+		store.save(file);
+		return store;
+	}
+
+	//Replaces the mappings of the affected source classes in the previous alignment
+	private CompoundAlignment patch(CompoundAlignment a)
+	{
+		CompoundAlignment patched = new CompoundAlignment();
+		Set<Integer> sources = source.getClasses();
+		Set<Integer> targets1 = target1.getClasses();
+		Set<Integer> targets2 = target2.getClasses();
+		for(CompoundMapping m : previous)
+			if(!affected.contains(m.getSourceId()) && sources.contains(m.getSourceId()) &&
+					targets1.contains(m.getTargetId1()) && targets2.contains(m.getTargetId2()))
+				patched.add(m);
+		patched.addAll(a);
+		patched.sort();
+		return patched;
+	}
+
+	//Checks whether a name of the class has a repeated word in the given set
+	private boolean repeatsWord(Ontology o, int classId, Set<String> words)
+	{
+		Set<String> names = o.getLexicon().getNames(classId);
+		if(names == null)
+			return false;
+		for(String n : names)
+		{
+			HashSet<String> seen = new HashSet<String>();
+			for(String w : n.split(" "))
+				if(!seen.add(w) && words.contains(w))
+					return true;
+		}
+		return false;
+	}
+
+	//Saves the snapshots of the ontologies and the settings of this run
+	private void saveSnapshots() throws Exception
+	{
+		if(current == null)
+			current = new OntologySnapshot[]{new OntologySnapshot(source),
+					new OntologySnapshot(target1), new OntologySnapshot(target2)};
+		new File(snapshots).mkdirs();
+		String prefix = snapshots + File.separator + name;
+		current[0].save(prefix + ".source.snapshot");
+		current[1].save(prefix + ".target1.snapshot");
+		current[2].save(prefix + ".target2.snapshot");
+		PrintWriter outStream = new PrintWriter(prefix + ".settings");
+		outStream.println(settings());
+		outStream.close();
+	}
+
+	//Saves and evaluates the result of the job
+	private void finish() throws Exception
+	{
+		if(output.endsWith(".rdf"))
+			result.saveRDF(output, source, target1, target2);
+		else if(!output.equals(""))
+			result.saveTSV3(output, source, target1, target2);
+		if(ref != null)
+		{
+			evaluation = result.evaluateNoPrint(ref);
+			if(sweep)
+			{
+				thresholdSweep = new ThresholdSweep(result, ref);
+				if(!output.equals(""))
+					thresholdSweep.save(output + ".sweep.tsv");
+				System.out.println("Job " + name + ": " + thresholdSweep);
+			}
+		}
+		if(!snapshots.equals(""))
+			saveSnapshots();
+		System.out.println("Finished job " + name + " in " + RunMetrics.toSeconds(time) + " seconds");
+	}
+
+	//The shard of a class, by its URI
+	private static int shardOf(String uri, int shards)
+	{
+		return (uri.hashCode() & Integer.MAX_VALUE) % shards;
+	}
+
+	//The restriction of the second step, as it enters the signatures of the checkpoints
+	private String restrictionSignature()
+	{
+		if(restrict.equals("") || restrict.equals("learn"))
+			return restrict;
+		return CompoundCheckpoint.fileSignature(restrict);
+	}
+
+	//The signature of the candidate generation of the first step,
+	//which is "" when all pairs of blocks are joined
+	private String approximateSignature()
+	{
+		if(!approximate)
+			return "";
+		if(verify)
+			return "lsh";
+		return "lsh-estimate";
+	}
+
+	//The settings that must be the same for a job to be re-matched incrementally
+	private String settings()
+	{
+		String settings = source.getURI() + "\t" + target1.getURI() + "\t" + target2.getURI() + "\t" +
+				threshold + "\t" + threshold2 + "\t" + type + "\t" + stemmer;
+		//A restriction can change the result, so it is also compared
+		if(!restrict.equals(""))
+			settings += "\t" + restrictionSignature();
+		if(approximate)
+			settings += "\t" + approximateSignature();
+		return settings;
+	}
+
+	//The relative cost of a matching step of the given size category
+	private int weight(SizeCategory s)
+	{
+		if(s.equals(SizeCategory.HUGE))
+			return 64;
+		if(s.equals(SizeCategory.LARGE))
+			return 16;
+		if(s.equals(SizeCategory.MEDIUM))
+			return 4;
+		return 1;
+	}
+}
@@ -0,0 +1,675 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Long-running compound matching daemon. The ontologies (with their Lexicons, *
+* WordLexicons and the shared RelationshipMap) stay resident between jobs,    *
+* and match jobs are submitted through a local HTTP interface, so that each   *
+* job only pays for matching and selection instead of a cold start.           *
+*                                                                             *
+* Requests (parameters in the query string):                                  *
+*   POST /load?path=P[&stemmer=true]  loads an ontology and keeps it resident *
+*   POST /unload?path=P[&stemmer=true] releases a resident ontology           *
+*   /match?source=P&target1=P&target2=P[&threshold=0.4][&threshold2=0.9]      *
+*         [&selection=Strict][&stemmer=true][&format=tsv]                     *
+*                                     runs a job and streams the alignment    *
+*   /status                           lists the resident ontologies           *
+*   /metrics[?job=J]                  writes the run metrics summary of the   *
+*                                     server (or of a running or recent job)  *
+*   /progress[?job=J]                 shows the progress of the running jobs  *
+*   POST /cancel[?job=J]              cancels a running job (or all of them)  *
+*   POST /shutdown                    stops the server                        *
+* Jobs only use resident ontologies, and are refused (404) if any of their    *
+* ontologies hasn't been loaded.                                              *
+* POST requests must send the token printed at startup in the X-AML-Token     *
+* header, so that other local users and web pages can't change the state of   *
+* the server.                                                                 *
+*                                                                             *
+* Usage: CompoundServer [option=value ...], where the options are             *
+*   port (8088), threads (jobs run at the same time, available processors),   *
+*   stemmer (true), preload (comma-separated list of ontology files to load   *
+*   at startup) and token (a random one by default)                           *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.PropertyConfigurator;
+
+import aml.ontology.Ontology;
+import aml.ontology.OntologyCache;
+import aml.settings.CompoundSelectionType;
+import aml.util.Progress;
+import aml.util.RunMetrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class CompoundServer
+{
+
+//Attributes
+
+	static AML aml = AML.getInstance();
+	//The resident ontologies
+	private OntologyCache cache;
+	//The resident ontologies retained by the server, by file and stemming option
+	private TreeMap<String,Ontology> resident;
+	//Loading ontologies updates the URIMap of AML, which is not thread-safe,
+	//so loads (write lock) are never concurrent with running jobs (read lock)
+	private ReentrantReadWriteLock lock;
+	//The token that requests which change the state of the server must send
+	private String token;
+	//The HTTP server and its thread pool
+	private HttpServer server;
+	private ExecutorService exec;
+	//The jobs that can run at the same time (other requests, such as those that
+	//follow or cancel the jobs, aren't limited, so they needn't wait for the jobs)
+	private Semaphore slots;
+	//The number of jobs submitted so far, and the Progress of those still
+	//running by name, through which each of them is followed and cancelled
+	private int jobs;
+	private TreeMap<String,Progress> running;
+	//The run metrics of each job by name, in the order in which the jobs were
+	//submitted (those of finished jobs are kept until there are FINISHED more)
+	private LinkedHashMap<String,RunMetrics> metrics;
+	private static final int FINISHED = 100;
+
+//Constructors
+
+	/**
+	 * Constructs a new CompoundServer listening on the loopback interface
+	 * @param port: the port on which to listen
+	 * @param threads: the maximum number of jobs to run at the same time
+	 * @param token: the token of the requests that change the state of the server
+	 * (or null to generate a random one)
+	 */
+	public CompoundServer(int port, int threads, String token) throws IOException
+	{
+		cache = new OntologyCache();
+		resident = new TreeMap<String,Ontology>();
+		lock = new ReentrantReadWriteLock(true);
+		if(token == null || token.equals(""))
+		{
+			byte[] b = new byte[16];
+			new SecureRandom().nextBytes(b);
+			StringBuffer s = new StringBuffer();
+			for(byte x : b)
+				s.append(String.format("%02x", x));
+			token = s.toString();
+		}
+		this.token = token;
+		jobs = 0;
+		running = new TreeMap<String,Progress>();
+		metrics = new LinkedHashMap<String,RunMetrics>();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/load", new Handler(true)
+		{
+			@Override
+			protected void handle(Map<String,String> params, HttpExchange ex) throws Exception
+			{
+				boolean stemmer = Boolean.parseBoolean(option(params, "stemmer", "true"));
+				Ontology o = load(required(params, "path"), stemmer);
+				reply(ex, 200, o.getURI() + "\t" + o.classCount() + " classes\n");
+			}
+		});
+		server.createContext("/unload", new Handler(true)
+		{
+			@Override
+			protected void handle(Map<String,String> params, HttpExchange ex) throws Exception
+			{
+				boolean stemmer = Boolean.parseBoolean(option(params, "stemmer", "true"));
+				if(unload(required(params, "path"), stemmer))
+					reply(ex, 200, "Unloaded\n");
+				else
+					reply(ex, 404, "Ontology is not loaded\n");
+			}
+		});
+		server.createContext("/match", new Handler()
+		{
+			@Override
+			protected void handle(Map<String,String> params, HttpExchange ex) throws Exception
+			{
+				match(params, ex);
+			}
+		});
+		server.createContext("/status", new Handler()
+		{
+			@Override
+			protected void handle(Map<String,String> params, HttpExchange ex) throws Exception
+			{
+				StringBuffer s = new StringBuffer();
+				synchronized(resident)
+				{
+					for(String key : resident.keySet())
+					{
+						Ontology o = resident.get(key);
+						s.append(key + "\t" + o.getURI() + "\t" + o.classCount() + "\n");
+					}
+				}
+				reply(ex, 200, "#Jobs: " + jobs + "\n" + s);
+			}
+		});
+		server.createContext("/metrics", new Handler()
+		{
+			@Override
+			protected void handle(Map<String,String> params, HttpExchange ex) throws Exception
+			{
+				//The metrics of the server (i.e., of the loads) or those of a job
+				String job = params.get("job");
+				RunMetrics m = aml.getMetrics();
+				if(job != null)
+				{
+					synchronized(CompoundServer.this)
+					{
+						m = metrics.get(job);
+					}
+					if(m == null)
+					{
+						reply(ex, 404, "Job is not running or recent\n");
+						return;
+					}
+				}
+				ex.getResponseHeaders().set("Content-Type", "text/tab-separated-values; charset=UTF-8");
+				ex.sendResponseHeaders(200, 0);
+				PrintWriter outStream = new PrintWriter(new OutputStreamWriter(ex.getResponseBody(), "UTF-8"));
+				m.writeSummary(outStream);
+				outStream.close();
+			}
+		});
+		server.createContext("/progress", new Handler()
+		{
+			@Override
+			protected void handle(Map<String,String> params, HttpExchange ex) throws Exception
+			{
+				String job = params.get("job");
+				StringBuffer s = new StringBuffer();
+				synchronized(CompoundServer.this)
+				{
+					if(job != null && !running.containsKey(job))
+					{
+						reply(ex, 404, "Job is not running\n");
+						return;
+					}
+					for(String name : running.keySet())
+						if(job == null || job.equals(name))
+							s.append(name + "\t" + running.get(name) + "\n");
+				}
+				reply(ex, 200, s.toString());
+			}
+		});
+		server.createContext("/cancel", new Handler(true)
+		{
+			@Override
+			protected void handle(Map<String,String> params, HttpExchange ex) throws Exception
+			{
+				String job = params.get("job");
+				int r = 0;
+				synchronized(CompoundServer.this)
+				{
+					for(String name : running.keySet())
+					{
+						if(job == null || job.equals(name))
+						{
+							running.get(name).cancel();
+							r++;
+						}
+					}
+				}
+				if(job != null && r == 0)
+					reply(ex, 404, "Job is not running\n");
+				else
+					reply(ex, 200, "Cancelling " + r + " jobs\n");
+			}
+		});
+		server.createContext("/shutdown", new Handler(true)
+		{
+			@Override
+			protected void handle(Map<String,String> params, HttpExchange ex) throws Exception
+			{
+				reply(ex, 200, "Shutting down\n");
+				new Thread()
+				{
+					public void run()
+					{
+						CompoundServer.this.stop();
+					}
+				}.start();
+			}
+		});
+		slots = new Semaphore(Math.max(1, threads), true);
+		exec = Executors.newCachedThreadPool();
+		server.setExecutor(exec);
+	}
+
+//Public Methods
+
+	public static void main(String[] args) throws Exception
+	{
+		HashMap<String,String> options = new HashMap<String,String>();
+		for(String a : args)
+		{
+			String[] opt = a.split("=", 2);
+			if(opt.length == 2)
+				options.put(opt[0], opt[1]);
+		}
+		int port = Integer.parseInt(option(options, "port", "8088"));
+		int threads = Integer.parseInt(option(options, "threads", "" + Runtime.getRuntime().availableProcessors()));
+		boolean stemmer = Boolean.parseBoolean(option(options, "stemmer", "true"));
+		String preload = option(options, "preload", "");
+		String token = option(options, "token", "");
+
+		if(aml.useReasoner())
+			PropertyConfigurator.configure("log4j.properties");
+		CompoundServer s = new CompoundServer(port, threads, token);
+		if(!preload.equals(""))
+			for(String path : preload.split(","))
+				s.load(path.trim(), stemmer);
+		s.start();
+		System.out.println("Listening on port " + port + " (X-AML-Token: " + s.getToken() + ")");
+	}
+
+	/**
+	 * @return the token of the requests that change the state of the server
+	 */
+	public String getToken()
+	{
+		return token;
+	}
+
+	/**
+	 * Loads an ontology (if it is not already loaded) and keeps
+	 * it resident until it is unloaded
+	 * @param path: the path to the ontology file
+	 * @param stemmer: whether to stem the Lexicon of the ontology
+	 * @return the resident ontology
+	 */
+	public Ontology load(String path, boolean stemmer) throws Exception
+	{
+		String key = key(path, stemmer);
+		lock.writeLock().lock();
+		try
+		{
+			Ontology o;
+			synchronized(resident)
+			{
+				o = resident.get(key);
+			}
+			if(o == null)
+			{
+				o = cache.get(path, stemmer);
+				cache.retain(path, stemmer);
+				//Build the WordLexicon now, so that jobs don't pay for it
+				o.getWordLexicon();
+				synchronized(resident)
+				{
+					resident.put(key, o);
+				}
+			}
+			return o;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Starts handling requests
+	 */
+	public void start()
+	{
+		server.start();
+	}
+
+	/**
+	 * Stops handling requests and closes the resident ontologies
+	 */
+	public void stop()
+	{
+		server.stop(1);
+		exec.shutdown();
+		lock.writeLock().lock();
+		try
+		{
+			synchronized(resident)
+			{
+				resident.clear();
+			}
+			cache.clear();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Releases a resident ontology, which is closed once
+	 * no running job is using it
+	 * @param path: the path to the ontology file
+	 * @param stemmer: whether the Lexicon of the ontology is stemmed
+	 * @return whether the ontology was resident
+	 */
+	public boolean unload(String path, boolean stemmer)
+	{
+		String key = key(path, stemmer);
+		lock.writeLock().lock();
+		try
+		{
+			synchronized(resident)
+			{
+				if(resident.remove(key) == null)
+					return false;
+			}
+			cache.release(path, stemmer);
+			return true;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+//Private Methods
+
+	//Runs a match job and streams the resulting alignment
+	private void match(Map<String,String> params, HttpExchange ex) throws Exception
+	{
+		String source = required(params, "source");
+		String target1 = required(params, "target1");
+		String target2 = required(params, "target2");
+		double threshold = Double.parseDouble(option(params, "threshold", "0.4"));
+		double threshold2 = Double.parseDouble(option(params, "threshold2", "0.9"));
+		CompoundSelectionType type = CompoundSelectionType.parseSelector(option(params, "selection", "Strict"));
+		if(type == null)
+			throw new IllegalArgumentException("Unrecognized selection type: " + params.get("selection"));
+		boolean stemmer = Boolean.parseBoolean(option(params, "stemmer", "true"));
+		boolean rdf = option(params, "format", "tsv").equalsIgnoreCase("rdf");
+
+		//Each job has a Progress and run metrics of its own, so that cancelling
+		//a job (or starting one) doesn't affect the other jobs, and the metrics
+		//of concurrent jobs aren't added together
+		String name;
+		Progress progress = new Progress();
+		RunMetrics m = new RunMetrics();
+		synchronized(this)
+		{
+			name = "job" + (++jobs);
+			running.put(name, progress);
+			metrics.put(name, m);
+		}
+		aml.setThreadProgress(progress);
+		aml.setThreadMetrics(m);
+		try
+		{
+			//A job cancelled while it waits for a slot doesn't start
+			slots.acquire();
+			try
+			{
+				progress.check();
+				match(name, source, target1, target2, threshold, threshold2, type, stemmer, rdf, ex);
+			}
+			finally
+			{
+				slots.release();
+			}
+		}
+		finally
+		{
+			aml.setThreadProgress(null);
+			aml.setThreadMetrics(null);
+			synchronized(this)
+			{
+				running.remove(name);
+				//Forget the metrics of the oldest finished jobs
+				int finished = metrics.size() - running.size();
+				Iterator<String> i = metrics.keySet().iterator();
+				while(finished > FINISHED && i.hasNext())
+				{
+					if(!running.containsKey(i.next()))
+					{
+						i.remove();
+						finished--;
+					}
+				}
+			}
+		}
+	}
+
+	//Runs a match job with resident ontologies, and streams the resulting alignment
+	private void match(String name, String source, String target1, String target2, double threshold,
+			double threshold2, CompoundSelectionType type, boolean stemmer, boolean rdf, HttpExchange ex) throws Exception
+	{
+		CompoundJob job = new CompoundJob(name, source, target1, target2, "", "");
+		job.setSettings(threshold, threshold2, type, stemmer);
+		job.setMetrics(aml.getMetrics());
+		//The job retains its ontologies, so they can't be closed while it runs;
+		//as they are all resident, retaining them doesn't update the URIMap, so
+		//the read lock is enough (a job never loads an ontology, as that changes
+		//the state of the server, which only a POST to /load with the token can)
+		lock.readLock().lock();
+		String missing = null;
+		boolean loaded = false;
+		try
+		{
+			for(String path : new String[]{source, target1, target2})
+				if(missing == null && !isResident(path, stemmer))
+					missing = path;
+			if(missing == null)
+			{
+				job.load(cache);
+				loaded = true;
+			}
+		}
+		finally
+		{
+			if(!loaded)
+				lock.readLock().unlock();
+		}
+		if(!loaded)
+		{
+			reply(ex, 404, "Ontology is not loaded (POST /load first): " + missing + "\n");
+			return;
+		}
+		//The alignment is written while holding the read lock (as writing it reads
+		//the URIMap) but only sent after releasing it, so that a slow client doesn't
+		//keep the loads of other requests waiting
+		String alignment;
+		int size;
+		long time;
+		try
+		{
+			try
+			{
+				job.run();
+				StringWriter s = new StringWriter();
+				PrintWriter outStream = new PrintWriter(s);
+				job.write(outStream, rdf);
+				outStream.close();
+				alignment = s.toString();
+				size = job.getResult().size();
+				time = job.getTime();
+			}
+			finally
+			{
+				job.release(cache);
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+		if(rdf)
+			ex.getResponseHeaders().set("Content-Type", "application/rdf+xml; charset=UTF-8");
+		else
+			ex.getResponseHeaders().set("Content-Type", "text/tab-separated-values; charset=UTF-8");
+		ex.getResponseHeaders().set("X-AML-Job", name);
+		ex.getResponseHeaders().set("X-AML-Mappings", "" + size);
+		ex.getResponseHeaders().set("X-AML-Seconds", "" + (time / 1000000) / 1000.0);
+		ex.sendResponseHeaders(200, 0);
+		OutputStreamWriter outStream = new OutputStreamWriter(ex.getResponseBody(), "UTF-8");
+		outStream.write(alignment);
+		outStream.close();
+	}
+
+	//Checks whether an ontology is resident
+	private boolean isResident(String path, boolean stemmer)
+	{
+		synchronized(resident)
+		{
+			return resident.containsKey(key(path, stemmer));
+		}
+	}
+
+	//The key of an ontology in the resident ontologies
+	private static String key(String path, boolean stemmer)
+	{
+		return new File(path).getAbsolutePath() + "|" + stemmer;
+	}
+
+	//Checks the token of a request (in constant time)
+	private boolean isToken(String t) throws UnsupportedEncodingException
+	{
+		if(t == null)
+			return false;
+		return MessageDigest.isEqual(t.getBytes("UTF-8"), token.getBytes("UTF-8"));
+	}
+
+	private static String option(Map<String,String> options, String name, String def)
+	{
+		if(options.containsKey(name))
+			return options.get(name);
+		return def;
+	}
+
+	private static Map<String,String> parseQuery(String query) throws UnsupportedEncodingException
+	{
+		HashMap<String,String> params = new HashMap<String,String>();
+		if(query == null)
+			return params;
+		for(String p : query.split("&"))
+		{
+			String[] kv = p.split("=", 2);
+			if(kv.length == 2)
+				params.put(URLDecoder.decode(kv[0], "UTF-8"), URLDecoder.decode(kv[1], "UTF-8"));
+		}
+		return params;
+	}
+
+	private static void reply(HttpExchange ex, int code, String message) throws IOException
+	{
+		byte[] b = message.getBytes("UTF-8");
+		ex.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		ex.sendResponseHeaders(code, b.length);
+		ex.getResponseBody().write(b);
+		ex.close();
+	}
+
+	private static String required(Map<String,String> params, String name)
+	{
+		String value = params.get(name);
+		if(value == null || value.equals(""))
+			throw new IllegalArgumentException("Missing parameter: " + name);
+		return value;
+	}
+
+	//Handles a request given its query parameters, reporting
+	//invalid requests and failed jobs to the client
+	private abstract class Handler implements HttpHandler
+	{
+		//Whether the request changes the state of the server, and so
+		//must be a POST with the token of the server
+		private boolean restricted;
+
+		public Handler()
+		{
+			this(false);
+		}
+
+		public Handler(boolean restricted)
+		{
+			this.restricted = restricted;
+		}
+
+		@Override
+		public void handle(HttpExchange ex) throws IOException
+		{
+			try
+			{
+				if(restricted && !ex.getRequestMethod().equalsIgnoreCase("POST"))
+				{
+					ex.getResponseHeaders().set("Allow", "POST");
+					reply(ex, 405, "Method not allowed\n");
+					return;
+				}
+				if(restricted && !isToken(ex.getRequestHeaders().getFirst("X-AML-Token")))
+				{
+					reply(ex, 403, "Invalid token\n");
+					return;
+				}
+				handle(parseQuery(ex.getRequestURI().getRawQuery()), ex);
+			}
+			catch(IllegalArgumentException e)
+			{
+				reply(ex, 400, e.getMessage() + "\n");
+			}
+			catch(CancellationException e)
+			{
+				reply(ex, 409, "Cancelled\n");
+			}
+			catch(Exception e)
+			{
+				e.printStackTrace();
+				try
+				{
+					reply(ex, 500, "Failed: " + e.getMessage() + "\n");
+				}
+				catch(IOException f)
+				{
+					//The response was already started
+				}
+			}
+			finally
+			{
+				ex.close();
+			}
+		}
+
+		protected abstract void handle(Map<String,String> params, HttpExchange ex) throws Exception;
+	}
+}
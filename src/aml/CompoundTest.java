@@ -22,18 +22,22 @@
 package aml;
 
 import aml.filter.CompoundRankedSelector;
+import aml.filter.CompoundStreamSelector;
 import aml.match.CompoundAlignment;
+import aml.match.CompoundCheckpoint;
+import aml.match.CompoundScoreStore;
 import aml.match.Alignment;
 import aml.match.Mapping;
-import aml.match.SubMapping;
+import aml.match.ResidualTable;
+import aml.match.SubtreeRestriction;
+import aml.match.ThresholdSweep;
 import aml.match.WordMatcher;
 import aml.settings.CompoundSelectionType;
-import aml.util.StopList;
+import aml.util.RunMetrics;
+import aml.util.SimilarityCache;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
 
 public class CompoundTest 
 {
@@ -51,6 +55,9 @@ public class CompoundTest
 		//PERMISSIVE for the permissive ranked selector
 		//NONE to ignore the selection step
 		CompoundSelectionType type = CompoundSelectionType.STRICT;
+		//true to select the mappings while the second WordMatcher runs,
+		//so that only the selected compound mappings are kept in memory
+		boolean streamSelection = true;
 		
 		//true to apply the Snowball stemmer to the Lexicon
 		boolean stemmer = true;
@@ -69,40 +76,144 @@ public class CompoundTest
 		//Output files
 		String outputTSV = "store/compoundAlignment.tsv";
 		String outputRDF = "store/compoundAlignment.rdf";
+		//Run summary with the stage timings, counters and sizes
+		String outputMetrics = "store/compoundRunMetrics.tsv";
+		//Precision-recall curve of the compound alignment at every second
+		//threshold above threshold2, to tune it without rerunning ("" for none)
+		String outputSweep = "";
+		//Directory where to save a checkpoint of the output of each stage
+		//("" for no checkpoints), and whether to resume from the last stage
+		//checkpointed with the same ontologies and settings
+		String checkpointDir = "";
+		boolean resume = true;
+		//Score store where to keep all compound candidates above the floor
+		//thresholds, so that runs with higher thresholds or another selection
+		//filter it instead of matching again ("" to always match)
+		String scoreStore = "";
+		double floor = 0.3;
+		double floor2 = 0.6;
+		//File where to cache the similarities between pairs of names across
+		//runs ("" for no cache), and the maximum number of similarities to keep
+		String similarityCache = "";
+		int similarityCacheSize = 1000000;
+		//Restriction of the second step to subtrees of the second target: "" to
+		//match all its classes, "learn" to allow each residual word only the
+		//branches where it occurs, or a file of rules (see SubtreeRestriction)
+		String restriction = "";
 		
+		if(!similarityCache.equals(""))
+			aml.setSimilarityCache(new SimilarityCache(similarityCache, similarityCacheSize));
 		System.out.println("Opening Ontologies...");
 		aml.openOntologies(sourcePath, targetPath1, targetPath2,false,stemmer);
 		
-		long time = System.currentTimeMillis()/1000;
-		System.out.println("Running first WordMatcher");
-		WordMatcher wm1 = new WordMatcher();
-		Alignment w1 = wm1.match(threshold);
+		long time = aml.getMetrics().start();
+		//The first step and residual table don't depend on the second target,
+		//threshold or selection, so their checkpoints are reused when these change
+		String firstSignature = CompoundCheckpoint.signature(CompoundCheckpoint.fileSignature(sourcePath),
+				CompoundCheckpoint.fileSignature(targetPath1), threshold, stemmer);
+		String compoundSignature = CompoundCheckpoint.signature(firstSignature,
+				CompoundCheckpoint.fileSignature(targetPath2), threshold2, type, restriction.equals("") ||
+				restriction.equals("learn") ? restriction : CompoundCheckpoint.fileSignature(restriction));
+		CompoundCheckpoint checkpoint = null;
+		if(!checkpointDir.equals(""))
+			checkpoint = new CompoundCheckpoint(checkpointDir, "compoundTest");
+		boolean load = checkpoint != null && resume;
 
-		//Evaluation after the first WordMatcher
-		if(!referencePath1.equals(""))
+		CompoundAlignment compAlignFinal = null;
+		//The score store keeps the scores of all the classes of the second
+		//target, so it isn't used when the second step is restricted
+		if(!scoreStore.equals("") && restriction.equals(""))
 		{
-			aml.openReferenceAlignment(referencePath1);
-			aml.evaluate(w1);
-			System.out.println(aml.getEvaluation());
+			String scoreSignature = CompoundCheckpoint.signature(CompoundCheckpoint.fileSignature(sourcePath),
+					CompoundCheckpoint.fileSignature(targetPath1), CompoundCheckpoint.fileSignature(targetPath2),
+					stemmer);
+			CompoundScoreStore store = CompoundScoreStore.open(scoreStore, scoreSignature);
+			if(store == null || !store.covers(threshold, threshold2))
+			{
+				System.out.println("Building the score store");
+				store = CompoundScoreStore.build(aml.getSource(), aml.getTarget(), aml.getTarget2(),
+						Math.min(floor, threshold), Math.min(floor2, threshold2), scoreSignature);
+				store.save(scoreStore);
+			}
+			compAlignFinal = store.select(threshold, threshold2, type, aml.getTarget2());
 		}
+		else if(load)
+			compAlignFinal = checkpoint.loadCompound(compoundSignature);
+		if(compAlignFinal == null)
+		{
+			HashMap<Mapping,List<String>> combMap = null;
+			if(load)
+				combMap = checkpoint.loadResidual(firstSignature);
+			if(combMap == null)
+			{
+				Alignment w1 = null;
+				ResidualTable residuals = null;
+				if(load)
+					w1 = checkpoint.loadFirst(firstSignature);
+				if(w1 == null)
+				{
+					System.out.println("Running first WordMatcher");
+					WordMatcher wm1 = new WordMatcher();
+					//The residual table is filled as the first step is matched
+					residuals = new ResidualTable();
+					w1 = wm1.match(threshold, null, null, residuals);
+					if(checkpoint != null)
+						checkpoint.saveFirst(firstSignature, w1);
+				}
 
-		//Creates an HashMap with each mapping and the correspondent words
-		//left to align.
-		HashMap<Mapping,List<String>> combMap = addSubMap(w1);
+				//Evaluation after the first WordMatcher
+				if(!referencePath1.equals(""))
+				{
+					aml.openReferenceAlignment(referencePath1);
+					aml.evaluate(w1);
+					System.out.println(aml.getEvaluation());
+				}
 
-		System.out.println("Running second WordMatcher..");
-		WordMatcher wm2 = new WordMatcher(aml.getTarget2());
-		CompoundAlignment compAlign = wm2.sequentialTargetMatch(threshold2, combMap);
-		aml.setCompoundAlignment(compAlign);
+				//Creates an HashMap with each mapping and the correspondent words
+				//left to align.
+				long residualTime = aml.getMetrics().start();
+				if(residuals == null)
+					residuals = new ResidualTable(w1);
+				combMap = residuals.toMap();
+				aml.getMetrics().count("residual" + RunMetrics.EMITTED, combMap.size());
+				aml.getMetrics().stop("residual", residualTime);
+				if(checkpoint != null)
+					checkpoint.saveResidual(firstSignature, combMap);
+			}
 
-		CompoundAlignment compAlignFinal = new CompoundAlignment();
+			System.out.println("Running second WordMatcher..");
+			WordMatcher wm2 = new WordMatcher(aml.getTarget2());
+			if(restriction.equals("learn"))
+			{
+				SubtreeRestriction r = new SubtreeRestriction(aml.getTarget2());
+				r.learnWords();
+				wm2.setRestriction(r);
+			}
+			else if(!restriction.equals(""))
+				wm2.setRestriction(SubtreeRestriction.read(restriction, aml.getTarget(), aml.getTarget2()));
+			if(streamSelection && !type.equals(CompoundSelectionType.NONE))
+			{
+				CompoundStreamSelector selector = new CompoundStreamSelector(type);
+				wm2.sequentialTargetMatch(threshold2, combMap, selector);
+				compAlignFinal = selector.getAlignment();
+			}
+			else
+			{
+				CompoundAlignment compAlign = wm2.sequentialTargetMatch(threshold2, combMap);
+				aml.setCompoundAlignment(compAlign);
 
-		CompoundRankedSelector selected = new CompoundRankedSelector(type);
-		compAlignFinal = selected.select(compAlign);
+				CompoundRankedSelector selected = new CompoundRankedSelector(type);
+				compAlignFinal = selected.select(compAlign);
+			}
+			if(checkpoint != null)
+				checkpoint.saveCompound(compoundSignature, compAlignFinal);
+		}
 		aml.setCompoundAlignment(compAlignFinal);
 
-		time = System.currentTimeMillis()/1000 - time;
-		System.out.println("Ran for " + time + " seconds");
+		time = aml.getMetrics().stop("compound", time);
+		if(!similarityCache.equals(""))
+			aml.getSimilarityCache().save();
+		System.out.println("Ran for " + RunMetrics.toSeconds(time) + " seconds");
 
 		if(!outputTSV.equals(""))
 			aml.saveCompoundAlignmentTSV(outputTSV);
@@ -115,7 +226,15 @@ public class CompoundTest
 			aml.openCompoundReferenceAlignment(referencePath2);
 			aml.evaluateC(compAlignFinal);
 			System.out.println(aml.getCompoundEvaluation());
+			if(!outputSweep.equals(""))
+			{
+				ThresholdSweep sweep = new ThresholdSweep(compAlignFinal, aml.getCompoundReferenceAlignment());
+				sweep.save(outputSweep);
+				System.out.println(sweep);
+			}
 		}
+		if(!outputMetrics.equals(""))
+			aml.getMetrics().saveSummary(outputMetrics);
 		System.out.println("Finished.");
 	}
 
@@ -129,73 +248,7 @@ public class CompoundTest
 	 */
 	public static HashMap<Mapping,List<String>> addSubMap (Alignment w1)
 	{
-		Set<String> stopSet = StopList.read();
-		
-		//HashMap keeps the mapping as key and a list of unmatched words of the mapping's source.
-		HashMap<Mapping,List<String>> combMap = new HashMap<Mapping, List<String>>();
-
-		for(Mapping m : w1)
-		{
-			List<SubMapping> subMap = m.getSubMappings();
-			for(SubMapping s : subMap)
-			{
-				int srcId = -1;
-				int tgtId = -1;
-				double sim = s.getSimilarity(); 
-				double weight = s.getWeight();
-
-				srcId = s.getSourceId();
-				tgtId = s.getTargetId();
-
-				List<String> sWords = new ArrayList<String>();				
-				List<String> tWords = new ArrayList<String>();	
-				
-				String wordsSource = s.getLabelSource();
-				String wordsTarget = s.getLabelTarget();
-
-				for(String w:wordsSource.split(" "))
-					sWords.add(w);
-				for(String w:wordsTarget.split(" "))
-					tWords.add(w);
-				
-				List<String> newSet = new ArrayList<String>();
-				HashMap<String, Integer> aligned = new HashMap<String, Integer>();
-				for(String word:sWords)
-				{
-					if(!aligned.containsKey(word))
-						aligned.put(word,1);
-					else
-						aligned.put(word,aligned.get(word)+1);
-					if (!tWords.contains(word) && !stopSet.contains(word) && word.matches("^[a-zA-Z0-9]*$"))
-					{
-						word = word.replaceAll("[()]", "");
-						newSet.add(word);
-					}
-				}
-
-				HashMap<String,Integer> mapped = new HashMap<String,Integer>();
-				for(String word:tWords)
-				{
-					if(!stopSet.contains(word))
-					{
-						if(!mapped.containsKey(word))
-							mapped.put(word,1);
-						else
-							mapped.put(word,mapped.get(word)+1);
-					}
-				}
-
-				//If the a mapping has repeated unmatched words, the unaligned duplicated
-				//word is added to the set.
-				for(String w:mapped.keySet())
-				{
-					if(mapped.get(w)>1)
-						newSet.add(w);
-				}
-				combMap.put(new Mapping(srcId, tgtId, sim, weight),newSet);
-			}
-		}
-		return combMap;
+		return new ResidualTable(w1).toMap();
 	}
 
 	public static String printName(int id, String origin)
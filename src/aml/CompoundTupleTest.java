@@ -0,0 +1,85 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Test-runs the compound matching with any number of target ontologies (e.g., *
+* source = anatomy + quality + process), with the TupleMatcher. The paths    *
+* can also be given as arguments: output source target1 target2 [target3 ...] *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml;
+
+import aml.match.TupleAlignment;
+import aml.match.TupleMatcher;
+import aml.ontology.Ontology;
+import aml.ontology.OntologyCache;
+import aml.util.RunMetrics;
+
+public class CompoundTupleTest
+{
+	static AML aml = AML.getInstance();
+
+	public static void main(String[] args) throws Exception
+	{
+		//Threshold for the first target
+		double threshold = 0.4;
+		//Threshold for the tuples (from the second target on)
+		double threshold2 = 0.9;
+		//Number of partial tuples of each source class kept at each step
+		int beam = 5;
+		//true to apply the Snowball stemmer to the Lexicon
+		boolean stemmer = true;
+
+		//Path to the ontologies, in the order in which the targets are matched
+		String sourcePath = "store/ontologies/mp.owl";
+		String[] targetPaths = {"store/ontologies/cl.owl", "store/ontologies/pato.owl",
+				"store/ontologies/go.owl"};
+		//Path to save the tuple alignment ("" to not save it)
+		String outputTSV = "store/tupleAlignment.tsv";
+		//Path to save the run metrics ("" to not save them)
+		String outputMetrics = "store/tupleRunMetrics.tsv";
+		if(args.length > 0)
+		{
+			if(args.length < 4)
+			{
+				System.out.println("Usage: CompoundTupleTest output source target1 target2 [target3 ...]");
+				return;
+			}
+			outputTSV = args[0];
+			sourcePath = args[1];
+			targetPaths = new String[args.length - 2];
+			System.arraycopy(args, 2, targetPaths, 0, targetPaths.length);
+		}
+
+		System.out.println("Opening Ontologies...");
+		OntologyCache cache = new OntologyCache();
+		Ontology source = cache.get(sourcePath, stemmer);
+		Ontology[] targets = new Ontology[targetPaths.length];
+		for(int i = 0; i < targets.length; i++)
+			targets[i] = cache.get(targetPaths[i], stemmer);
+
+		long time = aml.getMetrics().start();
+		System.out.println("Running TupleMatcher with " + targets.length + " targets..");
+		TupleAlignment a = new TupleMatcher(source, targets, beam).match(threshold, threshold2);
+		time = aml.getMetrics().stop("compound", time);
+		System.out.println("Found " + a.size() + " tuples in " + RunMetrics.toSeconds(time) + " seconds");
+
+		if(!outputTSV.equals(""))
+			a.saveTSV(outputTSV, source, targets);
+		if(!outputMetrics.equals(""))
+			aml.getMetrics().saveSummary(outputMetrics);
+		System.out.println("Finished.");
+	}
+}
@@ -0,0 +1,137 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Times the scoring of a list of words in the second matching step, comparing *
+* it with the names of each of 1, 4, 16... target classes versus scoring it   *
+* against all target classes with a DenseScorer, to find the number of        *
+* classes from which the DenseScorer is cheaper (see DenseScorer.isCheaper).  *
+* The word lists are those of the names of the source. The paths can also be  *
+* given as arguments: source target [lists] [rounds]                          *
+*                                                                             *
+* @date 19-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import aml.match.DenseScorer;
+import aml.match.WordMatcher;
+import aml.ontology.Ontology;
+import aml.ontology.OntologyCache;
+import aml.ontology.WordLexiconView;
+
+public class DenseScorerBenchmark
+{
+	public static void main(String[] args) throws Exception
+	{
+		//true to apply the Snowball stemmer to the Lexicon
+		boolean stemmer = true;
+		//Path to the ontologies (the target being the second target of a
+		//compound match, whose classes are scored in the second step)
+		String sourcePath = "store/ontologies/mp.owl";
+		String targetPath = "store/ontologies/pato.owl";
+		//Number of word lists to score, and number of rounds (the last of
+		//which is reported, the others warming up the JIT)
+		int lists = 1000;
+		int rounds = 5;
+		//Numbers of target classes compared in the per-class scoring
+		int[] compared = {1, 4, 16, 64, 256, 1024};
+		if(args.length > 0)
+		{
+			if(args.length < 2)
+			{
+				System.out.println("Usage: DenseScorerBenchmark source target [lists] [rounds]");
+				return;
+			}
+			sourcePath = args[0];
+			targetPath = args[1];
+			if(args.length > 2)
+				lists = Integer.parseInt(args[2]);
+			if(args.length > 3)
+				rounds = Integer.parseInt(args[3]);
+		}
+
+		System.out.println("Opening Ontologies...");
+		OntologyCache cache = new OntologyCache();
+		Ontology source = cache.get(sourcePath, stemmer);
+		Ontology target = cache.get(targetPath, stemmer);
+		WordLexiconView sourceLex = source.getWordLexiconView();
+		WordLexiconView targetLex = target.getWordLexiconView();
+
+		//The word lists, taken from the names of the source
+		List<List<String>> words = new ArrayList<List<String>>();
+		for(String n : sourceLex.getNames())
+		{
+			if(words.size() == lists)
+				break;
+			words.add(sourceLex.getWordsList(n));
+		}
+		//The target classes, in the order of the similarity arrays
+		Set<Integer> classes = targetLex.getClasses();
+		int[] ids = new int[classes.size()];
+		int k = 0;
+		for(Integer i : classes)
+			ids[k++] = i;
+		Arrays.sort(ids);
+		System.out.println("Scoring " + words.size() + " word lists against " + ids.length + " target classes");
+
+		WordMatcher matcher = new WordMatcher(source, target);
+		matcher.setDense(false);
+		DenseScorer scorer = new DenseScorer(sourceLex, targetLex, ids);
+		double[] denseSims = new double[ids.length];
+		double[] sims = new double[ids.length];
+		long[] perClass = new long[compared.length];
+		int[] cheaper = new int[compared.length];
+		long dense = 0;
+		long differences = 0;
+		for(int r = 0; r < rounds; r++)
+		{
+			for(int c = 0; c < compared.length; c++)
+			{
+				int[] subset = Arrays.copyOf(ids, Math.min(compared[c], ids.length));
+				long time = System.nanoTime();
+				for(List<String> w : words)
+					matcher.sequentialSimilarities(subset, w, sims);
+				perClass[c] = System.nanoTime() - time;
+				cheaper[c] = 0;
+				for(List<String> w : words)
+					if(scorer.isCheaper(w, subset.length))
+						cheaper[c]++;
+			}
+			long time = System.nanoTime();
+			for(List<String> w : words)
+				scorer.score(w, denseSims);
+			dense = System.nanoTime() - time;
+		}
+		//Checks that both give the same similarities (outside the timing)
+		for(List<String> w : words)
+		{
+			scorer.score(w, denseSims);
+			matcher.sequentialSimilarities(ids, w, sims);
+			for(k = 0; k < ids.length; k++)
+				if(sims[k] != denseSims[k])
+					differences++;
+		}
+
+		System.out.println("classes compared\tper-class (ns)\tdense, all (ns)\tdense chosen");
+		for(int c = 0; c < compared.length; c++)
+			System.out.println(Math.min(compared[c], ids.length) + "\t" + perClass[c] / words.size() +
+					"\t" + dense / words.size() + "\t" + cheaper[c] + "/" + words.size());
+		System.out.println("Similarities that differ: " + differences);
+	}
+}
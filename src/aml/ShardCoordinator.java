@@ -0,0 +1,211 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Runs a compound matching job across several processes, so that it isn't    *
+* limited by the heap (and garbage collection) of a single JVM. The source    *
+* classes are split into shards by URI, and a ShardWorker JVM is launched for *
+* each shard, which runs both matching steps on it. The WordLexicons of the   *
+* ontologies are saved once by the coordinator, as MappedWordLexicon files,   *
+* which the workers memory-map, so they are shared through the OS page cache *
+* instead of being rebuilt in every heap. The unselected alignments of the    *
+* shards are then merged and selected together, as a single job would.       *
+*                                                                             *
+* Usage: ShardCoordinator source target1 target2 output shards                *
+*   [option=value ...], where the options are threshold (0.4), threshold2     *
+*   (0.9), selection (Strict), stemmer (true), reference (none), dir          *
+*   (output.shards: the directory of the shard alignments and logs), mapped   *
+*   (dir/wlex), heap (MB per worker, the JVM default), launch (true) and the  *
+*   options of the workers: restriction, dense, prefixJoin, lsh and lshVerify *
+*   (see CompoundBatch).                                                      *
+*                                                                             *
+* With launch=false, the workers aren't launched: their commands are printed *
+* so that they can be run elsewhere (e.g., on other machines with a shared    *
+* file system), and the coordinator waits for all the shards to be saved.     *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.log4j.PropertyConfigurator;
+
+import aml.match.CompoundAlignment;
+import aml.ontology.OntologyCache;
+import aml.settings.CompoundSelectionType;
+import aml.util.RunMetrics;
+
+public class ShardCoordinator
+{
+	static AML aml = AML.getInstance();
+	//The options that are passed on to the workers
+	static final String[] WORKER_OPTIONS = {"threshold", "threshold2", "stemmer", "restriction",
+			"dense", "prefixJoin", "lsh", "lshVerify"};
+
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length < 5)
+		{
+			System.out.println("Usage: ShardCoordinator source target1 target2 output shards [option=value ...]");
+			return;
+		}
+		String output = args[3];
+		int shards = Integer.parseInt(args[4]);
+		HashMap<String,String> options = new HashMap<String,String>();
+		for(int i = 5; i < args.length; i++)
+		{
+			String[] opt = args[i].split("=", 2);
+			if(opt.length == 2)
+				options.put(opt[0], opt[1]);
+		}
+		double threshold = Double.parseDouble(option(options, "threshold", "0.4"));
+		double threshold2 = Double.parseDouble(option(options, "threshold2", "0.9"));
+		CompoundSelectionType type = CompoundSelectionType.parseSelector(option(options, "selection", "Strict"));
+		if(type == null)
+			throw new Exception("Unrecognized selection type: " + options.get("selection"));
+		boolean stemmer = Boolean.parseBoolean(option(options, "stemmer", "true"));
+		String reference = option(options, "reference", "");
+		String dir = option(options, "dir", output + ".shards");
+		String mapped = option(options, "mapped", dir + File.separator + "wlex");
+		String heap = option(options, "heap", "");
+		boolean launch = Boolean.parseBoolean(option(options, "launch", "true"));
+		new File(mapped).mkdirs();
+
+		//Loading the job saves the MappedWordLexicons of the ontologies, before
+		//any worker needs them, and leaves the ontologies ready for the merge
+		CompoundJob job = new CompoundJob("sharded", args[0], args[1], args[2], output, reference);
+		job.setSettings(threshold, threshold2, type, stemmer);
+		job.setMapped(mapped);
+		if(aml.useReasoner())
+			PropertyConfigurator.configure("log4j.properties");
+		job.load(new OntologyCache());
+
+		long time = aml.getMetrics().start();
+		List<String> files = new ArrayList<String>();
+		List<List<String>> commands = new ArrayList<List<String>>();
+		for(int i = 0; i < shards; i++)
+		{
+			String file = dir + File.separator + "shard" + i + ".tsv";
+			//Shards from previous runs are removed before any worker is run (or its
+			//command printed), so they can't be taken for those of this run
+			File f = new File(file);
+			if(f.exists() && !f.delete())
+				throw new Exception("Could not remove the shard of a previous run: " + file);
+			files.add(file);
+			List<String> command = new ArrayList<String>();
+			command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			if(!heap.equals(""))
+				command.add("-Xmx" + heap + "m");
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(ShardWorker.class.getName());
+			command.add(args[0]);
+			command.add(args[1]);
+			command.add(args[2]);
+			command.add(file);
+			command.add("" + i);
+			command.add("" + shards);
+			for(String o : WORKER_OPTIONS)
+				if(options.containsKey(o))
+					command.add(o + "=" + options.get(o));
+			command.add("mapped=" + mapped);
+			commands.add(command);
+		}
+		if(launch)
+			launch(commands, files, dir);
+		else
+		{
+			System.out.println("Run the workers with:");
+			for(List<String> command : commands)
+			{
+				String line = "";
+				for(String c : command)
+					line += (line.equals("") ? "" : " ") + c;
+				System.out.println(line);
+			}
+			waitFor(files);
+		}
+		time = aml.getMetrics().stop("shard.workers", time);
+		System.out.println("Finished " + shards + " shards in " + RunMetrics.toSeconds(time) + " seconds");
+
+		CompoundAlignment result = job.merge(files);
+		Double[] eval = job.getEvaluation();
+		if(eval != null)
+			System.out.println("Precision\tRecall\tF-measure\n" + eval[0] + "\t" + eval[1] + "\t" + eval[2]);
+		System.out.println("Found " + result.size() + " mappings.");
+	}
+
+	//Launches the workers as child processes (logging to the directory of the
+	//shards) and waits for all of them, failing if any of them fails
+	private static void launch(List<List<String>> commands, List<String> files, String dir) throws Exception
+	{
+		final List<Process> processes = new ArrayList<Process>();
+		//The workers are stopped if the coordinator is
+		Thread stop = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				for(Process p : processes)
+					p.destroy();
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(stop);
+		for(int i = 0; i < commands.size(); i++)
+		{
+			ProcessBuilder builder = new ProcessBuilder(commands.get(i));
+			builder.redirectErrorStream(true);
+			builder.redirectOutput(new File(dir, "shard" + i + ".log"));
+			processes.add(builder.start());
+			System.out.println("Launched shard " + (i+1) + " of " + commands.size());
+		}
+		String failed = "";
+		for(int i = 0; i < processes.size(); i++)
+			if(processes.get(i).waitFor() != 0 || !new File(files.get(i)).exists())
+				failed += " " + i;
+		Runtime.getRuntime().removeShutdownHook(stop);
+		if(!failed.equals(""))
+			throw new Exception("Shards failed:" + failed + " (see the logs in " + dir + ")");
+	}
+
+	//Waits for the workers run elsewhere to save all the shards
+	private static void waitFor(List<String> files) throws InterruptedException
+	{
+		int done = 0;
+		while(true)
+		{
+			int saved = 0;
+			for(String f : files)
+				if(new File(f).exists())
+					saved++;
+			if(saved == files.size())
+				return;
+			if(saved > done)
+				System.out.println("Saved " + saved + " of " + files.size() + " shards");
+			done = saved;
+			Thread.sleep(5000);
+		}
+	}
+
+	private static String option(HashMap<String,String> options, String name, String def)
+	{
+		if(options.containsKey(name))
+			return options.get(name);
+		return def;
+	}
+}
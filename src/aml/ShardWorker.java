@@ -0,0 +1,104 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Runs both steps of the compound matching on one shard of the source classes *
+* (those whose URI hashes to it), saving the unselected alignment for the    *
+* ShardCoordinator to merge. Workers are usually launched by the coordinator, *
+* but can also be run by hand (e.g., on other machines with a shared file     *
+* system), with the same options.                                             *
+*                                                                             *
+* Usage: ShardWorker source target1 target2 output shard shards               *
+*   [option=value ...], where the shard is numbered from 0 and the options    *
+*   are threshold (0.4), threshold2 (0.9), stemmer (true), mapped (no         *
+*   directory: the WordLexicons are built by the worker), restriction (none), *
+*   dense (true), prefixJoin (true), lsh (false) and lshVerify (true), as in  *
+*   CompoundBatch.                                                            *
+*                                                                             *
+* The alignment is written to output.part and renamed to output when it is    *
+* complete, so the coordinator never reads a partial shard.                  *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml;
+
+import java.io.File;
+import java.util.HashMap;
+
+import org.apache.log4j.PropertyConfigurator;
+
+import aml.ontology.OntologyCache;
+import aml.settings.CompoundSelectionType;
+
+public class ShardWorker
+{
+	static AML aml = AML.getInstance();
+
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length < 6)
+		{
+			System.out.println("Usage: ShardWorker source target1 target2 output shard shards [option=value ...]");
+			System.exit(1);
+		}
+		String output = args[3];
+		int shard = Integer.parseInt(args[4]);
+		int shards = Integer.parseInt(args[5]);
+		HashMap<String,String> options = new HashMap<String,String>();
+		for(int i = 6; i < args.length; i++)
+		{
+			String[] opt = args[i].split("=", 2);
+			if(opt.length == 2)
+				options.put(opt[0], opt[1]);
+		}
+		double threshold = Double.parseDouble(option(options, "threshold", "0.4"));
+		double threshold2 = Double.parseDouble(option(options, "threshold2", "0.9"));
+		boolean stemmer = Boolean.parseBoolean(option(options, "stemmer", "true"));
+		String mapped = option(options, "mapped", "");
+
+		String part = output + ".part";
+		CompoundJob job = new CompoundJob("shard" + shard, args[0], args[1], args[2], part, "");
+		//The selection is done by the coordinator, after merging the shards
+		job.setSettings(threshold, threshold2, CompoundSelectionType.NONE, stemmer);
+		job.setShard(shard, shards);
+		if(!mapped.equals(""))
+			job.setMapped(mapped);
+		job.setRestriction(option(options, "restriction", ""));
+		job.setDense(Boolean.parseBoolean(option(options, "dense", "true")));
+		job.setPrefixJoin(Boolean.parseBoolean(option(options, "prefixJoin", "true")));
+		job.setApproximate(Boolean.parseBoolean(option(options, "lsh", "false")),
+				Boolean.parseBoolean(option(options, "lshVerify", "true")));
+
+		if(aml.useReasoner())
+			PropertyConfigurator.configure("log4j.properties");
+		OntologyCache cache = new OntologyCache();
+		job.load(cache);
+		job.run();
+		File done = new File(output);
+		done.delete();
+		if(!new File(part).renameTo(done))
+		{
+			System.out.println("Could not rename " + part + " to " + output);
+			System.exit(1);
+		}
+		System.out.println("Finished shard " + (shard+1) + " of " + shards + ".");
+	}
+
+	private static String option(HashMap<String,String> options, String name, String def)
+	{
+		if(options.containsKey(name))
+			return options.get(name);
+		return def;
+	}
+}
@@ -26,9 +26,11 @@ import java.util.HashMap;
 import aml.AML;
 import aml.match.CompoundAlignment;
 import aml.match.CompoundMapping;
+import aml.ontology.Ontology;
 import aml.ontology.URIMap;
 import aml.settings.CompoundSelectionType;
-import aml.settings.SelectionType;
+import aml.util.PipelineEvents;
+import aml.util.RunMetrics;
 
 public class CompoundRankedSelector implements CompoundSelector
 {
@@ -36,17 +38,29 @@ public class CompoundRankedSelector implements CompoundSelector
 	//Attributes
 
 	private CompoundSelectionType type;
+	//The second target ontology (null for the one open in AML)
+	private Ontology target2;
+	//The number of threads across which the source classes are partitioned
+	private int threads;
 
 	//Constructors
 
 	public CompoundRankedSelector()
 	{
 		type = null;
+		threads = Runtime.getRuntime().availableProcessors();
 	}
 
 	public CompoundRankedSelector(CompoundSelectionType s)
 	{
 		type = s;
+		threads = Runtime.getRuntime().availableProcessors();
+	}
+
+	public CompoundRankedSelector(CompoundSelectionType s, Ontology t2)
+	{
+		this(s);
+		target2 = t2;
 	}
 
 	//Public Methods
@@ -55,41 +69,47 @@ public class CompoundRankedSelector implements CompoundSelector
 	public CompoundAlignment select(CompoundAlignment a)
 	{
 		System.out.println("Performing Ranked Selection");
-		long time = System.currentTimeMillis()/1000;
 		if(type == null)
 			return a;
-		//Initialize Alignment to return
-		AML aml = AML.getInstance();
-		HashMap<Integer, String> rec = aml.getTarget2().getReciprocalClasses();
-		URIMap uris = aml.getURIMap();
-		CompoundAlignment selected = new CompoundAlignment();
-		//Then sort the alignment
-		a.sort();
-		//Then select Mappings in ranking order (by similarity)
-		for(CompoundMapping m : a)
+		if(type.equals(CompoundSelectionType.NONE))
 		{
-			if(rec.containsKey(m.getTargetId2()))
+			//No selection, only the ranking of the alignment
+			AML aml = AML.getInstance();
+			HashMap<Integer, String> rec = getTarget2().getReciprocalClasses();
+			URIMap uris = aml.getURIMap();
+			a.sort();
+			CompoundMapping m = a.get(0);
+			if(m != null && rec.containsKey(m.getTargetId2()))
 				m.setTargetId2(uris.getIndex(rec.get(m.getTargetId2())));
-			if(type.equals(CompoundSelectionType.PERMISSIVE))
-			{
-				if(!selected.containsSource(m.getSourceId()))
-					selected.add(new CompoundMapping(m));
-				else
-				{
-					if(a.countMappings(m.getSourceId()) > 1 && selected.countMappings(m.getSourceId()) < 3)
-						selected.add(new CompoundMapping(m));
-				}
-			}
-			else if(type.equals(CompoundSelectionType.STRICT))
-			{
-				if(!selected.containsSource(m.getSourceId()))
-					selected.add(m.getSourceId(), m.getTargetId1(), m.getTargetId2(), m.getSimilarity());
-			}
-			else
-				return a;
+			return a;
 		}
-		
-		System.out.println("Finished in " +	(System.currentTimeMillis()/1000-time) + " seconds");
+		Object e = PipelineEvents.SELECTION.begin();
+		long time = System.nanoTime();
+		//Select the best Mappings of each source class in a single pass
+		//(by similarity, then by position in the alignment)
+		CompoundAlignment selected = new CompoundStreamSelector(type, getTarget2()).select(a, threads);
+		time = System.nanoTime() - time;
+		if(e != null)
+			PipelineEvents.SELECTION.commit(e, type.toString(), (long)a.size(), (long)selected.size());
+		System.out.println("Finished in " + RunMetrics.toSeconds(time) + " seconds");
 		return selected;
 	}
+
+	/**
+	 * Sets the number of threads across which the source classes are partitioned
+	 * @param t: the number of threads (1 to select sequentially)
+	 */
+	public void setThreads(int t)
+	{
+		threads = Math.max(1, t);
+	}
+
+	//Private Methods
+
+	private Ontology getTarget2()
+	{
+		if(target2 == null)
+			return AML.getInstance().getTarget2();
+		return target2;
+	}
 }
\ No newline at end of file
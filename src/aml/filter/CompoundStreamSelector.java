@@ -0,0 +1,355 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Single-pass ranked selector for compound mappings. Keeps a bounded ranking  *
+* of the best k mappings for each source class (k = 1 for STRICT and k = 3    *
+* for PERMISSIVE), ordered by similarity and then by arrival, which is the    *
+* same outcome as sorting the whole alignment and selecting in ranking order. *
+* It can be used as a CompoundCollector, so that the matcher streams its      *
+* candidates into it and unselected mappings are never stored, or to select   *
+* an existing CompoundAlignment with its sources partitioned across threads.  *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import aml.AML;
+import aml.match.CompoundAlignment;
+import aml.match.CompoundCollector;
+import aml.match.CompoundMapping;
+import aml.ontology.Ontology;
+import aml.ontology.URIMap;
+import aml.settings.CompoundSelectionType;
+import aml.util.RunMetrics;
+
+public class CompoundStreamSelector implements CompoundCollector
+{
+
+//Attributes
+
+	private CompoundSelectionType type;
+	//The maximum number of mappings to keep per source class
+	private int k;
+	//The reciprocal classes of the second target ontology and the URIMap
+	private HashMap<Integer,String> rec;
+	private URIMap uris;
+	//The ranking of the best mappings of each source class
+	private HashMap<Integer,Ranking> rankings;
+	//The arrival counter (used to break ties in similarity)
+	private long arrivals;
+
+//Constructors
+
+	/**
+	 * Constructs a new CompoundStreamSelector for the given selection type
+	 * @param s: the selection type (STRICT or PERMISSIVE)
+	 */
+	public CompoundStreamSelector(CompoundSelectionType s)
+	{
+		this(s, AML.getInstance().getTarget2());
+	}
+
+	/**
+	 * Constructs a new CompoundStreamSelector for the given selection type
+	 * @param s: the selection type (STRICT or PERMISSIVE)
+	 * @param target2: the second target ontology of the mappings
+	 */
+	public CompoundStreamSelector(CompoundSelectionType s, Ontology target2)
+	{
+		type = s;
+		if(type.equals(CompoundSelectionType.PERMISSIVE))
+			k = 3;
+		else
+			k = 1;
+		rec = target2.getReciprocalClasses();
+		uris = AML.getInstance().getURIMap();
+		rankings = new HashMap<Integer,Ranking>();
+		arrivals = 0;
+	}
+
+	//Constructs a selector for one partition, sharing the reciprocal classes
+	private CompoundStreamSelector(CompoundSelectionType s, HashMap<Integer,String> rec, URIMap uris)
+	{
+		type = s;
+		k = s.equals(CompoundSelectionType.PERMISSIVE) ? 3 : 1;
+		this.rec = rec;
+		this.uris = uris;
+		rankings = new HashMap<Integer,Ranking>();
+		arrivals = 0;
+	}
+
+//Public Methods
+
+	/**
+	 * Receives a candidate mapping from a matcher, keeping it only if it
+	 * ranks among the best k mappings of its source class so far
+	 */
+	@Override
+	public void add(int sourceId, int targetId1, int targetId2, double sim)
+	{
+		offer(sourceId, targetId1, targetId2, sim, arrivals++);
+	}
+
+	/**
+	 * @return the number of candidate mappings received so far
+	 */
+	public long candidateCount()
+	{
+		return arrivals;
+	}
+
+	/**
+	 * @return the alignment with the selected mappings, sorted by
+	 * descending similarity as in the CompoundRankedSelector
+	 */
+	public CompoundAlignment getAlignment()
+	{
+		List<Ranking> r = new ArrayList<Ranking>(rankings.values());
+		CompoundAlignment selected = toAlignment(r);
+		RunMetrics metrics = AML.getInstance().getMetrics();
+		metrics.count("select.stream" + RunMetrics.CANDIDATES, arrivals);
+		metrics.count("select.stream" + RunMetrics.EMITTED, selected.size());
+		return selected;
+	}
+
+	/**
+	 * Selects the given alignment, partitioning its source classes
+	 * across the given number of threads
+	 * @param a: the alignment to select (which is not modified)
+	 * @param threads: the number of threads to use
+	 * @return the selected alignment
+	 */
+	public CompoundAlignment select(CompoundAlignment a, int threads)
+	{
+		AML aml = AML.getInstance();
+		RunMetrics metrics = aml.getMetrics();
+		long time = metrics.start();
+		List<Ranking> r = new ArrayList<Ranking>();
+		if(threads <= 1)
+		{
+			rankings.clear();
+			selectPartition(a, 0, 1);
+			r.addAll(rankings.values());
+		}
+		else
+		{
+			ArrayList<PartitionTask> tasks = new ArrayList<PartitionTask>();
+			for(int i = 0; i < threads; i++)
+				tasks.add(new PartitionTask(a, i, threads));
+			List<Future<List<Ranking>>> results;
+			ExecutorService exec = Executors.newFixedThreadPool(threads);
+			try
+			{
+				results = exec.invokeAll(tasks);
+			}
+			catch(InterruptedException e)
+			{
+				e.printStackTrace();
+				results = new ArrayList<Future<List<Ranking>>>();
+			}
+			exec.shutdown();
+			for(Future<List<Ranking>> f : results)
+			{
+				try
+				{
+					r.addAll(f.get());
+				}
+				catch(Exception e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+		CompoundAlignment selected = toAlignment(r);
+		metrics.count("select.compound" + RunMetrics.CANDIDATES, a.size());
+		metrics.count("select.compound" + RunMetrics.EMITTED, selected.size());
+		metrics.stop("select.compound", time);
+		return selected;
+	}
+
+//Private Methods
+
+	//Offers a mapping to the ranking of its source class
+	private void offer(int sourceId, int targetId1, int targetId2, double sim, long order)
+	{
+		//The candidate is discarded if it would not be accepted by a CompoundAlignment
+		if(sourceId == targetId1 || sourceId == targetId2 || targetId1 == targetId2)
+			return;
+		//Reciprocal classes of the second target are replaced by their counterparts
+		int rawTargetId2 = targetId2;
+		if(rec.containsKey(targetId2))
+		{
+			targetId2 = uris.getIndex(rec.get(targetId2));
+			if(sourceId == targetId2 || targetId1 == targetId2)
+				return;
+		}
+		Ranking r = rankings.get(sourceId);
+		if(r == null)
+		{
+			r = new Ranking(k);
+			rankings.put(sourceId, r);
+		}
+		r.offer(sourceId, targetId1, targetId2, rawTargetId2, sim, order);
+	}
+
+	//Offers the mappings of the source classes in the given partition,
+	//using their position in the alignment as the arrival order
+	private void selectPartition(CompoundAlignment a, int partition, int partitions)
+	{
+		for(int i = 0; i < a.size(); i++)
+		{
+			CompoundMapping m = a.get(i);
+			if((m.getSourceId() & Integer.MAX_VALUE) % partitions != partition)
+				continue;
+			offer(m.getSourceId(), m.getTargetId1(), m.getTargetId2(), m.getSimilarity(), i);
+		}
+	}
+
+	//Builds the alignment from the rankings of the source classes
+	private CompoundAlignment toAlignment(List<Ranking> r)
+	{
+		ArrayList<Entry> entries = new ArrayList<Entry>();
+		for(Ranking rank : r)
+			for(int i = 0; i < rank.size; i++)
+				entries.add(rank.entries[i]);
+		Collections.sort(entries, new Comparator<Entry>()
+		{
+			public int compare(Entry e1, Entry e2)
+			{
+				if(e1.ranksBefore(e2))
+					return -1;
+				if(e2.ranksBefore(e1))
+					return 1;
+				return 0;
+			}
+		});
+		CompoundAlignment selected = new CompoundAlignment();
+		for(Entry e : entries)
+			selected.add(e.m);
+		return selected;
+	}
+
+	//A candidate mapping, the second target it had before being
+	//replaced by its reciprocal class, and its arrival order
+	private class Entry
+	{
+		CompoundMapping m;
+		int rawTargetId2;
+		long order;
+
+		Entry(CompoundMapping m, int rawTargetId2, long order)
+		{
+			this.m = m;
+			this.rawTargetId2 = rawTargetId2;
+			this.order = order;
+		}
+
+		boolean ranksBefore(Entry e)
+		{
+			return m.getSimilarity() > e.m.getSimilarity() ||
+					(m.getSimilarity() == e.m.getSimilarity() && order < e.order);
+		}
+	}
+
+	//The best k mappings of a source class, kept in ranking order
+	private class Ranking
+	{
+		Entry[] entries;
+		int size;
+
+		Ranking(int k)
+		{
+			entries = new Entry[k];
+			size = 0;
+		}
+
+		void offer(int sourceId, int targetId1, int targetId2, int rawTargetId2, double sim, long order)
+		{
+			//If the mapping is already ranked, keep its maximum similarity
+			for(int i = 0; i < size; i++)
+			{
+				Entry e = entries[i];
+				if(e.m.getTargetId1() == targetId1 && e.m.getTargetId2() == targetId2)
+				{
+					if(e.m.getSimilarity() < sim)
+					{
+						e.m.setSimilarity(sim);
+						//A different mapping that became the same after replacing
+						//the reciprocal class ranks by its own arrival order
+						if(e.rawTargetId2 != rawTargetId2)
+						{
+							e.rawTargetId2 = rawTargetId2;
+							e.order = order;
+						}
+						moveUp(i);
+					}
+					return;
+				}
+			}
+			Entry e = new Entry(new CompoundMapping(sourceId, targetId1, targetId2, sim), rawTargetId2, order);
+			if(size < entries.length)
+				entries[size++] = e;
+			else if(e.ranksBefore(entries[size-1]))
+				entries[size-1] = e;
+			else
+				return;
+			moveUp(size-1);
+		}
+
+		private void moveUp(int i)
+		{
+			while(i > 0 && entries[i].ranksBefore(entries[i-1]))
+			{
+				Entry aux = entries[i-1];
+				entries[i-1] = entries[i];
+				entries[i] = aux;
+				i--;
+			}
+		}
+	}
+
+	//Selects one partition of the source classes of an alignment
+	private class PartitionTask implements Callable<List<Ranking>>
+	{
+		private CompoundAlignment a;
+		private int partition;
+		private int partitions;
+
+		PartitionTask(CompoundAlignment a, int partition, int partitions)
+		{
+			this.a = a;
+			this.partition = partition;
+			this.partitions = partitions;
+		}
+
+		@Override
+		public List<Ranking> call()
+		{
+			CompoundStreamSelector s = new CompoundStreamSelector(type, rec, uris);
+			s.selectPartition(a, partition, partitions);
+			return new ArrayList<Ranking>(s.rankings.values());
+		}
+	}
+}
@@ -1094,6 +1094,20 @@ public class Alignment implements Iterable<Mapping>
 		return coverage;
 	}
 
+	//Package Methods (used by AlignmentBuilder)
+
+	//Adds Mappings that are known to be non-redundant, without copying them
+	void addUnique(List<Mapping> list)
+	{
+		maps.ensureCapacity(maps.size() + list.size());
+		for(Mapping m : list)
+		{
+			maps.add(m);
+			sourceMaps.add(m.getSourceId(), m.getTargetId(), m);
+			targetMaps.add(m.getTargetId(), m.getSourceId(), m);
+		}
+	}
+
 	//Private Methods
 
 	private void loadMappingsRDF(String file) throws DocumentException
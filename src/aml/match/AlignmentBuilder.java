@@ -0,0 +1,201 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Builds an Alignment from Mappings added concurrently by several threads.    *
+* The Mappings are kept in striped hash tables, each with its own lock, and   *
+* have the same semantics as Alignment.add (a redundant Mapping updates the   *
+* similarity of the present one to the maximum of the two). When matching is  *
+* done, the builder is frozen into a regular Alignment, with its Mappings     *
+* ordered by source and target class.                                         *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import aml.settings.MappingRelation;
+
+public class AlignmentBuilder
+{
+
+//Attributes
+
+	//The number of stripes (a power of two)
+	private static final int STRIPES = 64;
+	//The Mappings, by source and target class, in each stripe
+	private List<HashMap<Long,Mapping>> stripes;
+	//Whether the alignment is internal (i.e., may map a class to itself)
+	private boolean internal;
+	//Whether the builder was frozen into an Alignment
+	private volatile boolean frozen;
+
+//Constructors
+
+	/**
+	 * Constructs a new empty AlignmentBuilder
+	 */
+	public AlignmentBuilder()
+	{
+		this(false);
+	}
+
+	/**
+	 * Constructs a new empty AlignmentBuilder
+	 * @param internal: whether the alignment is internal
+	 */
+	public AlignmentBuilder(boolean internal)
+	{
+		this.internal = internal;
+		stripes = new ArrayList<HashMap<Long,Mapping>>(STRIPES);
+		for(int i = 0; i < STRIPES; i++)
+			stripes.add(new HashMap<Long,Mapping>());
+		frozen = false;
+	}
+
+//Public Methods
+
+	/**
+	 * Adds a new Mapping to the builder if it is non-redundant
+	 * Otherwise, updates the similarity of the already present Mapping
+	 * to the maximum similarity of the two redundant Mappings
+	 * (as in Alignment.add, this can be called by several threads at once)
+	 * @param sourceId: the index of the source class
+	 * @param targetId: the index of the target class
+	 * @param sim: the similarity between the classes
+	 */
+	public void add(int sourceId, int targetId, double sim)
+	{
+		if(!internal && sourceId == targetId)
+			return;
+		put(sourceId, targetId, sim, MappingRelation.EQUIVALENCE, null);
+	}
+
+	/**
+	 * Adds a new Mapping to the builder if it is non-redundant
+	 * Otherwise, updates the similarity and relationship of the already present
+	 * Mapping, as in Alignment.add
+	 * @param sourceId: the index of the source class
+	 * @param targetId: the index of the target class
+	 * @param sim: the similarity between the classes
+	 * @param r: the mapping relationship between the classes
+	 * @param s: the SubMappings of the Mapping (or null if none)
+	 */
+	public void add(int sourceId, int targetId, double sim, MappingRelation r, List<SubMapping> s)
+	{
+		if(sourceId == targetId)
+			return;
+		put(sourceId, targetId, sim, r, s);
+	}
+
+	/**
+	 * Adds a clone of the given Mapping to the builder, as in Alignment.add
+	 * @param m: the Mapping to add
+	 */
+	public void add(Mapping m)
+	{
+		add(m.getSourceId(), m.getTargetId(), m.getSimilarity(), m.getRelationship(), m.getSubMappings());
+	}
+
+	/**
+	 * Freezes the builder into an Alignment, once all threads are done adding
+	 * Mappings to it (after which no more Mappings can be added)
+	 * @return the Alignment with the Mappings added to the builder,
+	 * ordered by source and target class
+	 */
+	public Alignment freeze()
+	{
+		frozen = true;
+		List<Mapping> list = new ArrayList<Mapping>(size());
+		for(HashMap<Long,Mapping> stripe : stripes)
+		{
+			synchronized(stripe)
+			{
+				list.addAll(stripe.values());
+			}
+		}
+		Collections.sort(list, new Comparator<Mapping>()
+		{
+			@Override
+			public int compare(Mapping m1, Mapping m2)
+			{
+				if(m1.getSourceId() != m2.getSourceId())
+					return m1.getSourceId() < m2.getSourceId() ? -1 : 1;
+				if(m1.getTargetId() != m2.getTargetId())
+					return m1.getTargetId() < m2.getTargetId() ? -1 : 1;
+				return 0;
+			}
+		});
+		Alignment a = new Alignment(internal);
+		a.addUnique(list);
+		return a;
+	}
+
+	/**
+	 * @return the number of Mappings in the builder
+	 */
+	public int size()
+	{
+		int size = 0;
+		for(HashMap<Long,Mapping> stripe : stripes)
+		{
+			synchronized(stripe)
+			{
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+//Private Methods
+
+	private void put(int sourceId, int targetId, double sim, MappingRelation r, List<SubMapping> s)
+	{
+		if(frozen)
+			throw new IllegalStateException("Adding a mapping to a frozen AlignmentBuilder");
+		long key = ((long)sourceId << 32) | (targetId & 0xffffffffL);
+		HashMap<Long,Mapping> stripe = stripes.get(stripe(key));
+		synchronized(stripe)
+		{
+			Mapping m = stripe.get(key);
+			if(m == null)
+			{
+				m = new Mapping(sourceId, targetId, sim, r);
+				if(s != null)
+					m.setSubMap(s);
+				stripe.put(key, m);
+			}
+			else
+			{
+				if(m.getSimilarity() < sim)
+					m.setSimilarity(sim);
+				if(!m.getRelationship().equals(r))
+					m.setRelationship(r);
+			}
+		}
+	}
+
+	//The stripe of a key (from the high bits of a mixed hash, so that
+	//consecutive classes fall in different stripes)
+	private int stripe(long key)
+	{
+		int h = (int)(key ^ (key >>> 32)) * 0x9E3779B9;
+		return h >>> (Integer.numberOfLeadingZeros(STRIPES) + 1);
+	}
+}
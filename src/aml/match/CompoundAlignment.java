@@ -54,7 +54,7 @@ import aml.settings.MappingRelation;
 import aml.util.Table2Map;
 import aml.util.Table3Map;
 
-public class CompoundAlignment implements Iterable<CompoundMapping>
+public class CompoundAlignment implements Iterable<CompoundMapping>, CompoundCollector
 {
 
 	//Attributes
@@ -970,12 +970,39 @@ public class CompoundAlignment implements Iterable<CompoundMapping>
 	public void saveRDF(String file) throws FileNotFoundException
 	{
 		AML aml = AML.getInstance();
-		String sourceURI = aml.getSource().getURI();
-		String target1URI = aml.getTarget().getURI();
-		String target2URI = aml.getTarget2().getURI();
-		URIMap uris = aml.getURIMap();
+		saveRDF(file, aml.getSource(), aml.getTarget(), aml.getTarget2());
+	}
 
+	/**
+	 * Saves the alignment into an .rdf file in OAEI format
+	 * @param file: the output file
+	 * @param source: the source ontology of the alignment
+	 * @param target1: the first target ontology of the alignment
+	 * @param target2: the second target ontology of the alignment
+	 */
+	public void saveRDF(String file, Ontology source, Ontology target1, Ontology target2) throws FileNotFoundException
+	{
 		PrintWriter outStream = new PrintWriter(new FileOutputStream(file));
+		saveRDF(outStream, source, target1, target2);
+		outStream.close();
+	}
+
+	/**
+	 * Writes the alignment to the given stream in OAEI .rdf format
+	 * (the stream is flushed but not closed)
+	 * @param outStream: the output stream
+	 * @param source: the source ontology of the alignment
+	 * @param target1: the first target ontology of the alignment
+	 * @param target2: the second target ontology of the alignment
+	 */
+	public void saveRDF(PrintWriter outStream, Ontology source, Ontology target1, Ontology target2)
+	{
+		AML aml = AML.getInstance();
+		String sourceURI = source.getURI();
+		String target1URI = target1.getURI();
+		String target2URI = target2.getURI();
+		URIMap uris = aml.getURIMap();
+
 		outStream.println("<?xml version='1.0' encoding='utf-8'?>");
 		outStream.println("<rdf:RDF xmlns='http://knowledgeweb.semanticweb.org/heterogeneity/alignment'"); 
 		outStream.println("\t xmlns:rdf='http://www.w3.org/1999/02/22-rdf-syntax-ns#' "); 
@@ -1011,7 +1038,7 @@ public class CompoundAlignment implements Iterable<CompoundMapping>
 		}
 		outStream.println("</Alignment>");
 		outStream.println("</rdf:RDF>");		
-		outStream.close();
+		outStream.flush();
 	}
 
 	/**
@@ -1109,12 +1136,37 @@ public class CompoundAlignment implements Iterable<CompoundMapping>
 	public void saveTSV3(String file) throws FileNotFoundException
 	{
 		AML aml = AML.getInstance();
-		Ontology source = aml.getSource();
-		Ontology target1 = aml.getTarget();
-		Ontology target2 = aml.getTarget2();
-		URIMap uris = aml.getURIMap();
+		saveTSV3(file, aml.getSource(), aml.getTarget(), aml.getTarget2());
+	}
 
+	/**
+	 * Saves the alignment into a .tsv file in AML format, with
+	 * the corrected names of the classes
+	 * @param file: the output file
+	 * @param source: the source ontology of the alignment
+	 * @param target1: the first target ontology of the alignment
+	 * @param target2: the second target ontology of the alignment
+	 */
+	public void saveTSV3(String file, Ontology source, Ontology target1, Ontology target2) throws FileNotFoundException
+	{
 		PrintWriter outStream = new PrintWriter(new FileOutputStream(file));
+		saveTSV3(outStream, source, target1, target2);
+		outStream.close();
+	}
+
+	/**
+	 * Writes the alignment to the given stream in AML .tsv format, with
+	 * the corrected names of the classes (the stream is flushed but not closed)
+	 * @param outStream: the output stream
+	 * @param source: the source ontology of the alignment
+	 * @param target1: the first target ontology of the alignment
+	 * @param target2: the second target ontology of the alignment
+	 */
+	public void saveTSV3(PrintWriter outStream, Ontology source, Ontology target1, Ontology target2)
+	{
+		AML aml = AML.getInstance();
+		URIMap uris = aml.getURIMap();
+
 		outStream.println("#AgreementMakerLight Alignment File");
 		outStream.println("#Source ontology:\t" + source.getURI());
 		outStream.println("#First Target ontology:\t" + target1.getURI());
@@ -1130,7 +1182,7 @@ public class CompoundAlignment implements Iterable<CompoundMapping>
 					"\t" + m.getSimilarity() + "\t" + m.getRelationship().toString());
 
 		}
-		outStream.close();
+		outStream.flush();
 	}
 	/**
 	 * @return the number of Mappings in this Alignment
@@ -1210,6 +1262,21 @@ public class CompoundAlignment implements Iterable<CompoundMapping>
 		return new double[] {coverage1, coverage2};
 	}
 
+	//Package Methods (used by CompoundAlignmentBuilder)
+
+	//Adds CompoundMappings that are known to be non-redundant, without copying them
+	void addUnique(List<CompoundMapping> list)
+	{
+		maps.ensureCapacity(maps.size() + list.size());
+		for(CompoundMapping m : list)
+		{
+			maps.add(m);
+			sourceMaps.add(m.getSourceId(), m.getTargetId1(), m.getTargetId2(), m);
+			targetMaps1.add(m.getTargetId1(), m.getSourceId(), m.getTargetId2(), m);
+			targetMaps2.add(m.getTargetId2(), m.getSourceId(), m.getTargetId1(), m);
+		}
+	}
+
 	//Private Methods
 
 	private void loadMappingsRDF(String file) throws DocumentException
@@ -1412,10 +1479,10 @@ public class CompoundAlignment implements Iterable<CompoundMapping>
 				}
 				catch(Exception ex){/*Do nothing - use the default value*/};
 			}
-			//Finally, sixth column contains the type of relation
+			//Finally, eighth column contains the type of relation
 			MappingRelation rel;
-			if(col.length > 5)
-				rel = MappingRelation.parseRelation(col[5]);
+			if(col.length > 7)
+				rel = MappingRelation.parseRelation(col[7]);
 			//For compatibility with previous tsv format without listed relation
 			else
 				rel = MappingRelation.EQUIVALENCE;
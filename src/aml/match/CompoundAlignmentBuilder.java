@@ -0,0 +1,213 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Builds a CompoundAlignment from CompoundMappings added concurrently by      *
+* several threads, like the AlignmentBuilder: the CompoundMappings are kept   *
+* in striped hash tables with the semantics of CompoundAlignment.add, and the *
+* builder is frozen into a regular CompoundAlignment when matching is done.   *
+* Being a CompoundCollector, a matcher can stream its candidates into it.     *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import aml.settings.MappingRelation;
+
+public class CompoundAlignmentBuilder implements CompoundCollector
+{
+
+//Attributes
+
+	//The number of stripes (a power of two)
+	private static final int STRIPES = 64;
+	//The CompoundMappings, by source and target classes, in each stripe
+	private List<HashMap<Key,CompoundMapping>> stripes;
+	//Whether the alignment is internal (i.e., may map a class to itself)
+	private boolean internal;
+	//Whether the builder was frozen into a CompoundAlignment
+	private volatile boolean frozen;
+
+//Constructors
+
+	/**
+	 * Constructs a new empty CompoundAlignmentBuilder
+	 */
+	public CompoundAlignmentBuilder()
+	{
+		this(false);
+	}
+
+	/**
+	 * Constructs a new empty CompoundAlignmentBuilder
+	 * @param internal: whether the alignment is internal
+	 */
+	public CompoundAlignmentBuilder(boolean internal)
+	{
+		this.internal = internal;
+		stripes = new ArrayList<HashMap<Key,CompoundMapping>>(STRIPES);
+		for(int i = 0; i < STRIPES; i++)
+			stripes.add(new HashMap<Key,CompoundMapping>());
+		frozen = false;
+	}
+
+//Public Methods
+
+	@Override
+	public void add(int sourceId, int targetId1, int targetId2, double sim)
+	{
+		//As in CompoundAlignment.add
+		if((!internal && sourceId == targetId1) || sourceId == targetId2 || targetId1 == targetId2)
+			return;
+		put(sourceId, targetId1, targetId2, sim, MappingRelation.EQUIVALENCE);
+	}
+
+	/**
+	 * Adds a new CompoundMapping to the builder if it is non-redundant
+	 * Otherwise, updates the similarity and relationship of the already
+	 * present CompoundMapping, as in CompoundAlignment.add
+	 * @param sourceId: the index of the source class
+	 * @param targetId1: the index of the first target class
+	 * @param targetId2: the index of the second target class
+	 * @param sim: the similarity of the mapping
+	 * @param r: the mapping relationship
+	 */
+	public void add(int sourceId, int targetId1, int targetId2, double sim, MappingRelation r)
+	{
+		if(sourceId == targetId1 || sourceId == targetId2 || targetId1 == targetId2)
+			return;
+		put(sourceId, targetId1, targetId2, sim, r);
+	}
+
+	/**
+	 * Adds a clone of the given CompoundMapping to the builder
+	 * @param m: the CompoundMapping to add
+	 */
+	public void add(CompoundMapping m)
+	{
+		add(m.getSourceId(), m.getTargetId1(), m.getTargetId2(), m.getSimilarity(), m.getRelationship());
+	}
+
+	/**
+	 * Freezes the builder into a CompoundAlignment, once all threads are done
+	 * adding CompoundMappings to it (after which no more can be added)
+	 * @return the CompoundAlignment with the CompoundMappings added to the
+	 * builder, ordered by source, first target and second target class
+	 */
+	public CompoundAlignment freeze()
+	{
+		frozen = true;
+		List<CompoundMapping> list = new ArrayList<CompoundMapping>(size());
+		for(HashMap<Key,CompoundMapping> stripe : stripes)
+		{
+			synchronized(stripe)
+			{
+				list.addAll(stripe.values());
+			}
+		}
+		Collections.sort(list, new Comparator<CompoundMapping>()
+		{
+			@Override
+			public int compare(CompoundMapping m1, CompoundMapping m2)
+			{
+				if(m1.getSourceId() != m2.getSourceId())
+					return m1.getSourceId() < m2.getSourceId() ? -1 : 1;
+				if(m1.getTargetId1() != m2.getTargetId1())
+					return m1.getTargetId1() < m2.getTargetId1() ? -1 : 1;
+				if(m1.getTargetId2() != m2.getTargetId2())
+					return m1.getTargetId2() < m2.getTargetId2() ? -1 : 1;
+				return 0;
+			}
+		});
+		CompoundAlignment a = new CompoundAlignment(internal);
+		a.addUnique(list);
+		return a;
+	}
+
+	/**
+	 * @return the number of CompoundMappings in the builder
+	 */
+	public int size()
+	{
+		int size = 0;
+		for(HashMap<Key,CompoundMapping> stripe : stripes)
+		{
+			synchronized(stripe)
+			{
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+//Private Methods
+
+	private void put(int sourceId, int targetId1, int targetId2, double sim, MappingRelation r)
+	{
+		if(frozen)
+			throw new IllegalStateException("Adding a mapping to a frozen CompoundAlignmentBuilder");
+		Key key = new Key(sourceId, targetId1, targetId2);
+		HashMap<Key,CompoundMapping> stripe = stripes.get(key.hashCode() >>> (Integer.numberOfLeadingZeros(STRIPES) + 1));
+		synchronized(stripe)
+		{
+			CompoundMapping m = stripe.get(key);
+			if(m == null)
+				stripe.put(key, new CompoundMapping(sourceId, targetId1, targetId2, sim, r));
+			else
+			{
+				if(m.getSimilarity() < sim)
+					m.setSimilarity(sim);
+				if(!m.getRelationship().equals(r))
+					m.setRelationship(r);
+			}
+		}
+	}
+
+	//The source and target classes of a CompoundMapping
+	private static class Key
+	{
+		private int source;
+		private int target1;
+		private int target2;
+
+		private Key(int s, int t1, int t2)
+		{
+			source = s;
+			target1 = t1;
+			target2 = t2;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(!(o instanceof Key))
+				return false;
+			Key k = (Key)o;
+			return source == k.source && target1 == k.target1 && target2 == k.target2;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			//Mixed, so that the high bits (which choose the stripe) vary
+			return ((source * 31 + target1) * 31 + target2) * 0x9E3779B9;
+		}
+	}
+}
@@ -0,0 +1,450 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Checkpoints of the stages of the compound matching pipeline: the first-step *
+* Alignment (with its SubMappings), the residual words of each first-step     *
+* mapping, and the selected CompoundAlignment. Each stage is saved to its own *
+* binary file, with a table of the URIs of the classes (since class indexes   *
+* are only valid within a session), a table of the distinct labels and words, *
+* and the signature of the inputs and settings the stage depends on, so that  *
+* a checkpoint is only reused for the same inputs and settings.               *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import aml.AML;
+import aml.ontology.URIMap;
+import aml.settings.CompoundStage;
+import aml.settings.MappingRelation;
+import aml.util.RunMetrics;
+
+public class CompoundCheckpoint
+{
+
+//Attributes
+
+	//The identifier and format version of checkpoint files
+	private static final int MAGIC = 0x414D4C43;
+	private static final int VERSION = 1;
+	//The directory and name of the checkpoint files
+	private String dir;
+	private String name;
+
+//Constructors
+
+	/**
+	 * Constructs a new CompoundCheckpoint
+	 * @param dir: the directory where the checkpoint files are kept
+	 * @param name: the name of the run (the prefix of the checkpoint files)
+	 */
+	public CompoundCheckpoint(String dir, String name)
+	{
+		this.dir = dir;
+		this.name = name;
+	}
+
+//Public Methods
+
+	/**
+	 * Deletes the checkpoints of all stages
+	 */
+	public void clear()
+	{
+		for(CompoundStage s : CompoundStage.values())
+			new File(file(s)).delete();
+	}
+
+	/**
+	 * @param path: the path to a file
+	 * @return a signature of the file that changes when the file is modified
+	 */
+	public static String fileSignature(String path)
+	{
+		File f = new File(path);
+		return f.getAbsolutePath() + ":" + f.length() + ":" + f.lastModified();
+	}
+
+	/**
+	 * Reads the first-step alignment checkpoint
+	 * @param signature: the signature of the inputs of the stage
+	 * @return the first-step alignment, or null if there is no valid
+	 * checkpoint with the given signature
+	 */
+	public Alignment loadFirst(String signature)
+	{
+		DataInputStream in = open(CompoundStage.FIRST, signature);
+		if(in == null)
+			return null;
+		long time = AML.getInstance().getMetrics().start();
+		try
+		{
+			int[] ids = readURIs(in);
+			String[] strings = readStrings(in);
+			MappingRelation[] rels = MappingRelation.values();
+			Alignment a = new Alignment();
+			int count = in.readInt();
+			for(int i = 0; i < count; i++)
+			{
+				int sourceId = ids[in.readInt()];
+				int targetId = ids[in.readInt()];
+				double sim = in.readDouble();
+				MappingRelation r = rels[in.readByte()];
+				int subCount = in.readInt();
+				List<SubMapping> subs = new ArrayList<SubMapping>(subCount);
+				for(int j = 0; j < subCount; j++)
+				{
+					String labelSource = strings[in.readInt()];
+					String labelTarget = strings[in.readInt()];
+					subs.add(new SubMapping(sourceId, targetId, labelSource, labelTarget,
+							in.readDouble(), in.readDouble()));
+				}
+				a.add(sourceId, targetId, sim, r, subs);
+			}
+			in.close();
+			AML.getInstance().getMetrics().stop("checkpoint.load", time);
+			return a;
+		}
+		catch(IOException e)
+		{
+			return invalid(in, CompoundStage.FIRST, e);
+		}
+	}
+
+	/**
+	 * Reads the selected compound alignment checkpoint
+	 * @param signature: the signature of the inputs of the stage
+	 * @return the compound alignment, or null if there is no valid
+	 * checkpoint with the given signature
+	 */
+	public CompoundAlignment loadCompound(String signature)
+	{
+		DataInputStream in = open(CompoundStage.COMPOUND, signature);
+		if(in == null)
+			return null;
+		long time = AML.getInstance().getMetrics().start();
+		try
+		{
+			int[] ids = readURIs(in);
+			readStrings(in);
+			MappingRelation[] rels = MappingRelation.values();
+			CompoundAlignment a = new CompoundAlignment();
+			int count = in.readInt();
+			for(int i = 0; i < count; i++)
+			{
+				int sourceId = ids[in.readInt()];
+				int targetId1 = ids[in.readInt()];
+				int targetId2 = ids[in.readInt()];
+				double sim = in.readDouble();
+				a.add(sourceId, targetId1, targetId2, sim, rels[in.readByte()]);
+			}
+			in.close();
+			AML.getInstance().getMetrics().stop("checkpoint.load", time);
+			return a;
+		}
+		catch(IOException e)
+		{
+			return invalid(in, CompoundStage.COMPOUND, e);
+		}
+	}
+
+	/**
+	 * Reads the residual table checkpoint
+	 * @param signature: the signature of the inputs of the stage
+	 * @return the map of first-step mappings to their unmatched words, or null
+	 * if there is no valid checkpoint with the given signature
+	 */
+	public HashMap<Mapping,List<String>> loadResidual(String signature)
+	{
+		DataInputStream in = open(CompoundStage.RESIDUAL, signature);
+		if(in == null)
+			return null;
+		long time = AML.getInstance().getMetrics().start();
+		try
+		{
+			int[] ids = readURIs(in);
+			String[] strings = readStrings(in);
+			HashMap<Mapping,List<String>> map = new HashMap<Mapping,List<String>>();
+			int count = in.readInt();
+			for(int i = 0; i < count; i++)
+			{
+				int sourceId = ids[in.readInt()];
+				int targetId = ids[in.readInt()];
+				double sim = in.readDouble();
+				double weight = in.readDouble();
+				int wordCount = in.readInt();
+				List<String> words = new ArrayList<String>(wordCount);
+				for(int j = 0; j < wordCount; j++)
+					words.add(strings[in.readInt()]);
+				map.put(new Mapping(sourceId, targetId, sim, weight), words);
+			}
+			in.close();
+			AML.getInstance().getMetrics().stop("checkpoint.load", time);
+			return map;
+		}
+		catch(IOException e)
+		{
+			return invalid(in, CompoundStage.RESIDUAL, e);
+		}
+	}
+
+	/**
+	 * Saves the first-step alignment checkpoint
+	 * @param signature: the signature of the inputs of the stage
+	 * @param a: the first-step alignment
+	 */
+	public void saveFirst(String signature, Alignment a) throws IOException
+	{
+		long time = AML.getInstance().getMetrics().start();
+		LinkedHashMap<Integer,Integer> ids = new LinkedHashMap<Integer,Integer>();
+		LinkedHashMap<String,Integer> strings = new LinkedHashMap<String,Integer>();
+		for(Mapping m : a)
+		{
+			index(ids, m.getSourceId());
+			index(ids, m.getTargetId());
+			for(SubMapping s : m.getSubMappings())
+			{
+				index(strings, s.getLabelSource());
+				index(strings, s.getLabelTarget());
+			}
+		}
+		DataOutputStream out = create(CompoundStage.FIRST, signature, ids, strings);
+		out.writeInt(a.size());
+		for(Mapping m : a)
+		{
+			out.writeInt(ids.get(m.getSourceId()));
+			out.writeInt(ids.get(m.getTargetId()));
+			out.writeDouble(m.getSimilarity());
+			out.writeByte(m.getRelationship().ordinal());
+			out.writeInt(m.getSubMappings().size());
+			for(SubMapping s : m.getSubMappings())
+			{
+				out.writeInt(strings.get(s.getLabelSource()));
+				out.writeInt(strings.get(s.getLabelTarget()));
+				out.writeDouble(s.getSimilarity());
+				out.writeDouble(s.getWeight());
+			}
+		}
+		commit(CompoundStage.FIRST, out);
+		AML.getInstance().getMetrics().stop("checkpoint.save", time);
+	}
+
+	/**
+	 * Saves the selected compound alignment checkpoint
+	 * @param signature: the signature of the inputs of the stage
+	 * @param a: the compound alignment
+	 */
+	public void saveCompound(String signature, CompoundAlignment a) throws IOException
+	{
+		long time = AML.getInstance().getMetrics().start();
+		LinkedHashMap<Integer,Integer> ids = new LinkedHashMap<Integer,Integer>();
+		for(CompoundMapping m : a)
+		{
+			index(ids, m.getSourceId());
+			index(ids, m.getTargetId1());
+			index(ids, m.getTargetId2());
+		}
+		DataOutputStream out = create(CompoundStage.COMPOUND, signature, ids,
+				new LinkedHashMap<String,Integer>());
+		out.writeInt(a.size());
+		for(CompoundMapping m : a)
+		{
+			out.writeInt(ids.get(m.getSourceId()));
+			out.writeInt(ids.get(m.getTargetId1()));
+			out.writeInt(ids.get(m.getTargetId2()));
+			out.writeDouble(m.getSimilarity());
+			out.writeByte(m.getRelationship().ordinal());
+		}
+		commit(CompoundStage.COMPOUND, out);
+		AML.getInstance().getMetrics().stop("checkpoint.save", time);
+	}
+
+	/**
+	 * Saves the residual table checkpoint
+	 * @param signature: the signature of the inputs of the stage
+	 * @param map: the map of first-step mappings to their unmatched words
+	 */
+	public void saveResidual(String signature, HashMap<Mapping,List<String>> map) throws IOException
+	{
+		long time = AML.getInstance().getMetrics().start();
+		LinkedHashMap<Integer,Integer> ids = new LinkedHashMap<Integer,Integer>();
+		LinkedHashMap<String,Integer> strings = new LinkedHashMap<String,Integer>();
+		for(Mapping m : map.keySet())
+		{
+			index(ids, m.getSourceId());
+			index(ids, m.getTargetId());
+			for(String w : map.get(m))
+				index(strings, w);
+		}
+		DataOutputStream out = create(CompoundStage.RESIDUAL, signature, ids, strings);
+		out.writeInt(map.size());
+		for(Mapping m : map.keySet())
+		{
+			out.writeInt(ids.get(m.getSourceId()));
+			out.writeInt(ids.get(m.getTargetId()));
+			out.writeDouble(m.getSimilarity());
+			out.writeDouble(m.getWeight());
+			List<String> words = map.get(m);
+			out.writeInt(words.size());
+			for(String w : words)
+				out.writeInt(strings.get(w));
+		}
+		commit(CompoundStage.RESIDUAL, out);
+		AML.getInstance().getMetrics().stop("checkpoint.save", time);
+	}
+
+	/**
+	 * Builds a signature from the given inputs and settings
+	 * @param parts: the inputs and settings
+	 * @return the signature
+	 */
+	public static String signature(Object... parts)
+	{
+		StringBuffer s = new StringBuffer();
+		for(Object p : parts)
+		{
+			if(s.length() > 0)
+				s.append("|");
+			s.append(p);
+		}
+		return s.toString();
+	}
+
+//Private Methods
+
+	//Finishes writing a checkpoint file, replacing any previous checkpoint of the
+	//stage only once the new one is complete, so a crash never leaves a broken file
+	private void commit(CompoundStage s, DataOutputStream out) throws IOException
+	{
+		out.close();
+		File f = new File(file(s));
+		f.delete();
+		if(!new File(file(s) + ".tmp").renameTo(f))
+			throw new IOException("Could not save checkpoint " + f);
+		System.out.println("Saved " + s + " checkpoint " + f);
+	}
+
+	//Starts writing a checkpoint file, with its header and tables
+	private DataOutputStream create(CompoundStage s, String signature,
+			LinkedHashMap<Integer,Integer> ids, LinkedHashMap<String,Integer> strings) throws IOException
+	{
+		new File(dir).mkdirs();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file(s) + ".tmp"), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(s.toString());
+		out.writeUTF(signature);
+		URIMap uris = AML.getInstance().getURIMap();
+		out.writeInt(ids.size());
+		for(Integer i : ids.keySet())
+			out.writeUTF(uris.getURI(i));
+		out.writeInt(strings.size());
+		for(String w : strings.keySet())
+			out.writeUTF(w);
+		return out;
+	}
+
+	private String file(CompoundStage s)
+	{
+		return dir + File.separator + name + "." + s + ".ckpt";
+	}
+
+	private static <K> void index(LinkedHashMap<K,Integer> table, K key)
+	{
+		if(!table.containsKey(key))
+			table.put(key, table.size());
+	}
+
+	//Reports an unreadable checkpoint, which is then ignored
+	private <T> T invalid(DataInputStream in, CompoundStage s, Exception e)
+	{
+		System.out.println("WARNING: Ignoring invalid " + s + " checkpoint: " + e.getMessage());
+		try
+		{
+			in.close();
+		}
+		catch(IOException f)
+		{
+			//Do nothing
+		}
+		return null;
+	}
+
+	//Opens a checkpoint file and checks its header, returning null
+	//if there is no checkpoint of the stage with the given signature
+	private DataInputStream open(CompoundStage s, String signature)
+	{
+		File f = new File(file(s));
+		if(!f.exists())
+			return null;
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+			if(in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(s.toString()))
+				throw new IOException("not a " + s + " checkpoint");
+			if(!in.readUTF().equals(signature))
+			{
+				in.close();
+				System.out.println("The " + s + " checkpoint is for different inputs or settings");
+				return null;
+			}
+			return in;
+		}
+		catch(IOException e)
+		{
+			if(in != null)
+				return invalid(in, s, e);
+			return null;
+		}
+	}
+
+	//Reads the URI table, mapping each URI to its index in this session
+	private int[] readURIs(DataInputStream in) throws IOException
+	{
+		URIMap uris = AML.getInstance().getURIMap();
+		int[] ids = new int[in.readInt()];
+		for(int i = 0; i < ids.length; i++)
+		{
+			String uri = in.readUTF();
+			ids[i] = uris.getIndex(uri);
+			if(ids[i] < 0)
+				throw new IOException("unknown class " + uri);
+		}
+		return ids;
+	}
+
+	private String[] readStrings(DataInputStream in) throws IOException
+	{
+		String[] strings = new String[in.readInt()];
+		for(int i = 0; i < strings.length; i++)
+			strings[i] = in.readUTF();
+		return strings;
+	}
+}
@@ -0,0 +1,33 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* A sink of compound mappings, to which a matcher can stream its candidates   *
+* (e.g., a CompoundAlignment, or a selector that only keeps the best ones).   *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+public interface CompoundCollector
+{
+	/**
+	 * Receives a candidate compound mapping
+	 * @param sourceId: the index of the source class
+	 * @param targetId1: the index of the first target class
+	 * @param targetId2: the index of the second target class
+	 * @param sim: the similarity of the mapping
+	 */
+	public void add(int sourceId, int targetId1, int targetId2, double sim);
+}
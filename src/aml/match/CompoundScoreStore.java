@@ -0,0 +1,451 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* The raw scores of all compound candidates of a source x target 1 x target 2 *
+* triple above two low floor thresholds, so that the compound alignment for   *
+* any higher thresholds and any selection can be obtained by filtering the    *
+* store instead of running both matching steps again.                         *
+* Besides its compound similarity, each candidate keeps the two scores of the *
+* first step it came from (the word similarity of the classes, which must be  *
+* above half the first threshold, and the similarity of the names, which must *
+* be above the first threshold), so the filter gives the same candidates as a *
+* run with those thresholds. The candidates are kept in parallel arrays,      *
+* sorted by descending compound similarity, and saved to a binary file with   *
+* a table of the URIs of the classes, like the CompoundCheckpoints.           *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import aml.AML;
+import aml.filter.CompoundRankedSelector;
+import aml.filter.CompoundStreamSelector;
+import aml.ontology.Ontology;
+import aml.ontology.URIMap;
+import aml.settings.CompoundSelectionType;
+import aml.util.RunMetrics;
+import aml.util.Table2Map;
+
+public class CompoundScoreStore
+{
+
+//Attributes
+
+	//The identifier and format version of score store files
+	private static final int MAGIC = 0x414D4C53;
+	private static final int VERSION = 1;
+	//The floor thresholds of the first and second matching steps
+	private double floor;
+	private double floor2;
+	//The signature of the ontologies and settings of the store
+	private String signature;
+	//The candidates: their classes, their compound similarity, and the name
+	//and word similarities of the first-step mapping they came from
+	private int size;
+	private int[] sources;
+	private int[] targets1;
+	private int[] targets2;
+	private double[] sims;
+	private double[] nameSims;
+	private double[] wordSims;
+
+//Constructors
+
+	/**
+	 * Reads a CompoundScoreStore from a file
+	 * @param file: the path to the score store file
+	 */
+	public CompoundScoreStore(String file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try
+		{
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("not a score store");
+			signature = in.readUTF();
+			floor = in.readDouble();
+			floor2 = in.readDouble();
+			URIMap uris = AML.getInstance().getURIMap();
+			int[] ids = new int[in.readInt()];
+			for(int i = 0; i < ids.length; i++)
+			{
+				String uri = in.readUTF();
+				ids[i] = uris.getIndex(uri);
+				if(ids[i] < 0)
+					throw new IOException("unknown class " + uri);
+			}
+			allocate(in.readInt());
+			for(size = 0; size < sources.length; size++)
+			{
+				sources[size] = ids[in.readInt()];
+				targets1[size] = ids[in.readInt()];
+				targets2[size] = ids[in.readInt()];
+				sims[size] = in.readDouble();
+				nameSims[size] = in.readDouble();
+				wordSims[size] = in.readDouble();
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	//Constructs a new empty CompoundScoreStore
+	private CompoundScoreStore(double floor, double floor2, String signature)
+	{
+		this.floor = floor;
+		this.floor2 = floor2;
+		this.signature = signature;
+		allocate(1024);
+		size = 0;
+	}
+
+//Public Methods
+
+	/**
+	 * Runs both matching steps at the floor thresholds, storing all candidates
+	 * @param source: the source ontology
+	 * @param target1: the first target ontology
+	 * @param target2: the second target ontology
+	 * @param floor: the floor threshold of the first matching step
+	 * @param floor2: the floor threshold of the second matching step
+	 * @param signature: the signature of the ontologies and settings
+	 * @return the CompoundScoreStore with the candidates
+	 */
+	public static CompoundScoreStore build(Ontology source, Ontology target1, Ontology target2,
+			double floor, double floor2, String signature)
+	{
+		RunMetrics metrics = AML.getInstance().getMetrics();
+		long time = metrics.start();
+		CompoundScoreStore store = new CompoundScoreStore(floor, floor2, signature);
+		Table2Map<Integer,Integer,Double> wordSims = new Table2Map<Integer,Integer,Double>();
+		Alignment w1 = new WordMatcher(source, target1).match(floor, null, wordSims);
+
+		//Each SubMapping of a first-step mapping is an entry of the residual table,
+		//and the candidates of an entry must be traced back to it to keep its scores,
+		//so the entries are matched in rounds where each pair of classes is unique
+		//(the k-th SubMapping of each first-step mapping in the k-th round)
+		ResidualTable residuals = new ResidualTable();
+		Recorder recorder = store.new Recorder();
+		for(int k = 0; ; k++)
+		{
+			LinkedHashMap<Mapping,List<String>> round = new LinkedHashMap<Mapping,List<String>>();
+			recorder.clear();
+			for(Mapping m : w1)
+			{
+				if(m.getSubMappings().size() <= k)
+					continue;
+				SubMapping s = m.getSubMappings().get(k);
+				round.put(new Mapping(s.getSourceId(), s.getTargetId(), s.getSimilarity(), s.getWeight()),
+						residuals.unmatchedWords(s));
+				recorder.put(s.getSourceId(), s.getTargetId(), s.getSimilarity(),
+						wordSims.get(s.getSourceId(), s.getTargetId()));
+			}
+			if(round.isEmpty())
+				break;
+			new WordMatcher(source, target2).sequentialTargetMatch(floor2, round, recorder);
+		}
+		store.sort();
+		metrics.count("scores" + RunMetrics.EMITTED, store.size);
+		metrics.stop("scores.build", time);
+		return store;
+	}
+
+	/**
+	 * @param thresh: the threshold for the first matching step
+	 * @param thresh2: the threshold for the second matching step
+	 * @return whether the store has all candidates for the given thresholds
+	 */
+	public boolean covers(double thresh, double thresh2)
+	{
+		return floor <= thresh && floor2 <= thresh2;
+	}
+
+	/**
+	 * @return the floor threshold of the first matching step
+	 */
+	public double getFloor()
+	{
+		return floor;
+	}
+
+	/**
+	 * @return the floor threshold of the second matching step
+	 */
+	public double getFloor2()
+	{
+		return floor2;
+	}
+
+	/**
+	 * @return the signature of the ontologies and settings of the store
+	 */
+	public String getSignature()
+	{
+		return signature;
+	}
+
+	/**
+	 * Opens the CompoundScoreStore saved in a file, if it has the given signature
+	 * @param file: the path to the score store file
+	 * @param signature: the signature of the ontologies and settings
+	 * @return the CompoundScoreStore, or null if there is no valid store
+	 * with the given signature in the file
+	 */
+	public static CompoundScoreStore open(String file, String signature)
+	{
+		if(!new File(file).exists())
+			return null;
+		try
+		{
+			CompoundScoreStore store = new CompoundScoreStore(file);
+			if(store.getSignature().equals(signature))
+				return store;
+			System.out.println("The score store " + file + " is for different inputs or settings");
+		}
+		catch(IOException e)
+		{
+			System.out.println("WARNING: Ignoring invalid score store " + file + ": " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Saves the CompoundScoreStore to a file, replacing any previous
+	 * store only once the new one is complete
+	 * @param file: the path to the score store file
+	 */
+	public void save(String file) throws IOException
+	{
+		File f = new File(file);
+		if(f.getParentFile() != null)
+			f.getParentFile().mkdirs();
+		LinkedHashMap<Integer,Integer> ids = new LinkedHashMap<Integer,Integer>();
+		for(int i = 0; i < size; i++)
+		{
+			index(ids, sources[i]);
+			index(ids, targets1[i]);
+			index(ids, targets2[i]);
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file + ".tmp"), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(signature);
+		out.writeDouble(floor);
+		out.writeDouble(floor2);
+		URIMap uris = AML.getInstance().getURIMap();
+		out.writeInt(ids.size());
+		for(Integer i : ids.keySet())
+			out.writeUTF(uris.getURI(i));
+		out.writeInt(size);
+		for(int i = 0; i < size; i++)
+		{
+			out.writeInt(ids.get(sources[i]));
+			out.writeInt(ids.get(targets1[i]));
+			out.writeInt(ids.get(targets2[i]));
+			out.writeDouble(sims[i]);
+			out.writeDouble(nameSims[i]);
+			out.writeDouble(wordSims[i]);
+		}
+		out.close();
+		f.delete();
+		if(!new File(file + ".tmp").renameTo(f))
+			throw new IOException("Could not save score store " + f);
+		System.out.println("Saved score store " + f + " with " + size + " candidates");
+	}
+
+	/**
+	 * Streams the candidates for the given thresholds into a collector,
+	 * from the highest similarity to the lowest
+	 * @param thresh: the threshold for the first matching step
+	 * @param thresh2: the threshold for the second matching step
+	 * @param collector: the collector that receives the compound mappings
+	 */
+	public void select(double thresh, double thresh2, CompoundCollector collector)
+	{
+		if(!covers(thresh, thresh2))
+			throw new IllegalArgumentException("The score store has no candidates below the thresholds " +
+					floor + " and " + floor2);
+		RunMetrics metrics = AML.getInstance().getMetrics();
+		long time = metrics.start();
+		//As in the block filter of the WordMatcher
+		double t = thresh * 0.5;
+		long passed = 0;
+		for(int i = 0; i < size && sims[i] >= thresh2; i++)
+		{
+			if(nameSims[i] >= thresh && wordSims[i] >= t)
+			{
+				collector.add(sources[i], targets1[i], targets2[i], sims[i]);
+				passed++;
+			}
+		}
+		metrics.count("scores" + RunMetrics.PASSED, passed);
+		metrics.stop("scores.select", time);
+	}
+
+	/**
+	 * Gets the compound alignment for the given thresholds and selection
+	 * @param thresh: the threshold for the first matching step
+	 * @param thresh2: the threshold for the second matching step
+	 * @param type: the selection type
+	 * @param target2: the second target ontology
+	 * @return the selected compound alignment
+	 */
+	public CompoundAlignment select(double thresh, double thresh2, CompoundSelectionType type, Ontology target2)
+	{
+		if(type.equals(CompoundSelectionType.NONE))
+		{
+			CompoundAlignment a = new CompoundAlignment();
+			select(thresh, thresh2, a);
+			return new CompoundRankedSelector(type, target2).select(a);
+		}
+		CompoundStreamSelector selector = new CompoundStreamSelector(type, target2);
+		select(thresh, thresh2, selector);
+		return selector.getAlignment();
+	}
+
+	/**
+	 * @return the number of candidates in the store
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+//Private Methods
+
+	private void add(int sourceId, int targetId1, int targetId2, double sim, double nameSim, double wordSim)
+	{
+		if(size == sources.length)
+		{
+			int capacity = size * 2;
+			sources = Arrays.copyOf(sources, capacity);
+			targets1 = Arrays.copyOf(targets1, capacity);
+			targets2 = Arrays.copyOf(targets2, capacity);
+			sims = Arrays.copyOf(sims, capacity);
+			nameSims = Arrays.copyOf(nameSims, capacity);
+			wordSims = Arrays.copyOf(wordSims, capacity);
+		}
+		sources[size] = sourceId;
+		targets1[size] = targetId1;
+		targets2[size] = targetId2;
+		sims[size] = sim;
+		nameSims[size] = nameSim;
+		wordSims[size] = wordSim;
+		size++;
+	}
+
+	private void allocate(int capacity)
+	{
+		sources = new int[capacity];
+		targets1 = new int[capacity];
+		targets2 = new int[capacity];
+		sims = new double[capacity];
+		nameSims = new double[capacity];
+		wordSims = new double[capacity];
+	}
+
+	private static void index(LinkedHashMap<Integer,Integer> table, int key)
+	{
+		if(!table.containsKey(key))
+			table.put(key, table.size());
+	}
+
+	//Sorts the candidates by descending similarity (the sort is stable, so ties
+	//keep the order in which they were found, as they would reach a selector)
+	private void sort()
+	{
+		Integer[] order = new Integer[size];
+		for(int i = 0; i < size; i++)
+			order[i] = i;
+		final double[] s = sims;
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer i, Integer j)
+			{
+				return Double.compare(s[j], s[i]);
+			}
+		});
+		int[] so = new int[size];
+		int[] t1 = new int[size];
+		int[] t2 = new int[size];
+		double[] si = new double[size];
+		double[] ns = new double[size];
+		double[] ws = new double[size];
+		for(int k = 0; k < size; k++)
+		{
+			int i = order[k];
+			so[k] = sources[i];
+			t1[k] = targets1[i];
+			t2[k] = targets2[i];
+			si[k] = sims[i];
+			ns[k] = nameSims[i];
+			ws[k] = wordSims[i];
+		}
+		sources = so;
+		targets1 = t1;
+		targets2 = t2;
+		sims = si;
+		nameSims = ns;
+		wordSims = ws;
+	}
+
+	//Records the candidates of a round of residual table entries in the store,
+	//with the first-step scores of the entry each one came from
+	private class Recorder implements CompoundCollector
+	{
+		//The name and word similarities of the entries of the round, by classes
+		private HashMap<Long,double[]> entries = new HashMap<Long,double[]>();
+
+		@Override
+		public void add(int sourceId, int targetId1, int targetId2, double sim)
+		{
+			double[] e = entries.get(key(sourceId, targetId1));
+			CompoundScoreStore.this.add(sourceId, targetId1, targetId2, sim, e[0], e[1]);
+		}
+
+		private void clear()
+		{
+			entries.clear();
+		}
+
+		private long key(int sourceId, int targetId)
+		{
+			return ((long)sourceId << 32) | (targetId & 0xffffffffL);
+		}
+
+		private void put(int sourceId, int targetId, double nameSim, double wordSim)
+		{
+			entries.put(key(sourceId, targetId), new double[]{nameSim, wordSim});
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Scores a list of residual words against all the classes of the target of    *
+* the second matching step at once, with the same weighted Jaccard index as   *
+* the WordMatcher. The names of the target WordLexicon, by number, are laid   *
+* out once into flat arrays of ECs, postings (the names with each word) and   *
+* the classes of each name with their weights. The intersections of all names *
+* are then accumulated in dense arrays, by going through the postings of the  *
+* residual words, so only the names that share words with them are visited,   *
+* instead of comparing the words with every name of every target class. The   *
+* sums of the intersections are done in the same order as the WordMatcher     *
+* (falling back to its order for names sharing more than two words, where the *
+* order of the sum can change the last bits), so the similarities are the     *
+* same.                                                                       *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+import java.util.Arrays;
+import java.util.List;
+
+import aml.ontology.WordLexiconView;
+
+public class DenseScorer
+{
+
+//Attributes
+
+	//The WordLexicons of the source and target
+	private WordLexiconView sourceLex;
+	private WordLexiconView targetLex;
+	//The ECs of the target words, by number
+	private double[] wordEC;
+	//The ECs of the target names, by number, and their number of distinct words
+	private double[] nameEC;
+	private int[] nameSize;
+	//The names with each word (from postingStart[w] to postingStart[w+1])
+	private int[] postingStart;
+	private int[] postings;
+	//The classes of each name, by position in the array of target classes,
+	//with the weight of the name for the class
+	private int[] classStart;
+	private int[] classPos;
+	private double[] classWeight;
+	//The number of target classes and their average number of names
+	private int classes;
+	private double namesPerClass;
+	//The accumulators of the intersections of the names with a list of words
+	//(as a sum of target and of source ECs, and as a number of words)
+	private double[] targetInter;
+	private double[] sourceInter;
+	private int[] count;
+	private int[] touched;
+
+//Constructors
+
+	/**
+	 * Constructs a new DenseScorer for the given target classes
+	 * @param sourceLex: the WordLexicon of the source
+	 * @param targetLex: the WordLexicon of the target
+	 * @param ids: the target classes, in the order of the similarity arrays
+	 */
+	public DenseScorer(WordLexiconView sourceLex, WordLexiconView targetLex, int[] ids)
+	{
+		this.sourceLex = sourceLex;
+		this.targetLex = targetLex;
+		wordEC = new double[targetLex.wordCount()];
+		for(int w = 0; w < wordEC.length; w++)
+			wordEC[w] = targetLex.wordEC(w);
+		int names = targetLex.nameCount();
+		nameEC = new double[names];
+		nameSize = new int[names];
+		int[] postingCount = new int[wordEC.length];
+		for(int n = 0; n < names; n++)
+		{
+			nameEC[n] = targetLex.nameEC(n);
+			nameSize[n] = targetLex.nameWordsEnd(n) - targetLex.nameWordsStart(n);
+			for(int p = targetLex.nameWordsStart(n); p < targetLex.nameWordsEnd(n); p++)
+				postingCount[targetLex.nameWord(p)]++;
+		}
+		postingStart = new int[wordEC.length + 1];
+		for(int w = 0; w < wordEC.length; w++)
+			postingStart[w+1] = postingStart[w] + postingCount[w];
+		postings = new int[postingStart[wordEC.length]];
+		int[] next = Arrays.copyOf(postingStart, wordEC.length);
+		for(int n = 0; n < names; n++)
+			for(int p = targetLex.nameWordsStart(n); p < targetLex.nameWordsEnd(n); p++)
+				postings[next[targetLex.nameWord(p)]++] = n;
+
+		//The classes of each name
+		int[] classCount = new int[names];
+		int[] positions = new int[ids.length];
+		int total = 0;
+		for(int k = 0; k < ids.length; k++)
+		{
+			positions[k] = targetLex.classPosition(ids[k]);
+			if(positions[k] < 0)
+				continue;
+			for(int q = targetLex.classNamesStart(positions[k]); q < targetLex.classNamesEnd(positions[k]); q++)
+			{
+				classCount[targetLex.className(q)]++;
+				total++;
+			}
+		}
+		classes = ids.length;
+		namesPerClass = ids.length == 0 ? 0 : (double)total / ids.length;
+		classStart = new int[names + 1];
+		for(int n = 0; n < names; n++)
+			classStart[n+1] = classStart[n] + classCount[n];
+		classPos = new int[total];
+		classWeight = new double[total];
+		next = Arrays.copyOf(classStart, names);
+		for(int k = 0; k < ids.length; k++)
+		{
+			if(positions[k] < 0)
+				continue;
+			for(int q = targetLex.classNamesStart(positions[k]); q < targetLex.classNamesEnd(positions[k]); q++)
+			{
+				int p = next[targetLex.className(q)]++;
+				classPos[p] = k;
+				classWeight[p] = targetLex.classNameWeight(q);
+			}
+		}
+
+		targetInter = new double[names];
+		sourceInter = new double[names];
+		count = new int[names];
+		touched = new int[names];
+	}
+
+//Public Methods
+
+	/**
+	 * Estimates whether scoring a list of words against all the target classes
+	 * is cheaper than comparing it with the names of the given number of classes
+	 * (e.g., when most target classes are excluded by a SubtreeRestriction)
+	 * @param words: the list of words
+	 * @param compared: the number of target classes that would be compared
+	 * @return whether to score the words with this DenseScorer
+	 */
+	public boolean isCheaper(List<String> words, int compared)
+	{
+		//Comparing the words with a name (which goes through the sets of words
+		//of the WordLexicon) costs about as much as going through 50 postings,
+		//or clearing the similarities of 1000 classes (measured on PATO, where
+		//the DenseScorer is cheaper from about 5 classes compared)
+		long dense = classes / 20;
+		for(String w : words)
+		{
+			int id = targetLex.getWordId(w);
+			if(id > -1)
+				dense += postingStart[id+1] - postingStart[id];
+		}
+		return dense < compared * namesPerClass * 50;
+	}
+
+	/**
+	 * Computes the similarity of a list of words to each of the target classes
+	 * @param words: the words left to match
+	 * @param sims: the array where to put the similarity to each class
+	 * @return the highest similarity
+	 */
+	public double score(List<String> words, double[] sims)
+	{
+		Arrays.fill(sims, 0.0);
+		//The union of the words when they are more than the words of a name
+		double union = 0.0;
+		for(String w : words)
+			union += sourceLex.getWordEC(w);
+		int size = words.size();
+		//The words by number in the target (-1 for those it doesn't have)
+		int[] ids = new int[size];
+		int touchedCount = 0;
+		for(int i = 0; i < size; i++)
+		{
+			String w = words.get(i);
+			int id = targetLex.getWordId(w);
+			ids[i] = id;
+			if(id < 0)
+				continue;
+			double ec = sourceLex.getWordEC(w);
+			//The target ECs are only added once for each word, and the
+			//source ECs for each occurrence, as in the WordMatcher
+			boolean first = words.indexOf(w) == i;
+			for(int p = postingStart[id]; p < postingStart[id+1]; p++)
+			{
+				int n = postings[p];
+				if(count[n] == 0)
+					touched[touchedCount++] = n;
+				if(first)
+				{
+					count[n]++;
+					targetInter[n] += wordEC[id];
+				}
+				sourceInter[n] += ec;
+			}
+		}
+		double max = 0.0;
+		for(int t = 0; t < touchedCount; t++)
+		{
+			int n = touched[t];
+			double sim;
+			if(nameSize[n] < size)
+				sim = sourceInter[n] / union;
+			else if(count[n] <= 2)
+				sim = targetInter[n] / nameEC[n];
+			else
+				sim = targetSimilarity(ids, n);
+			for(int p = classStart[n]; p < classStart[n+1]; p++)
+			{
+				double s = classWeight[p] * sim;
+				if(s > sims[classPos[p]])
+				{
+					sims[classPos[p]] = s;
+					if(s > max)
+						max = s;
+				}
+			}
+			count[n] = 0;
+			targetInter[n] = 0.0;
+			sourceInter[n] = 0.0;
+		}
+		return max;
+	}
+
+//Private Methods
+
+	//The similarity of the words (by number) to a name with at least as many
+	//words, summing the intersection in the order of the set of words of the
+	//name, as in the WordMatcher
+	private double targetSimilarity(int[] ids, int n)
+	{
+		double intersection = 0.0;
+		for(int p = targetLex.nameWordsStart(n); p < targetLex.nameWordsEnd(n); p++)
+		{
+			int w = targetLex.nameSetWord(p);
+			for(int id : ids)
+			{
+				if(id == w)
+				{
+					intersection += wordEC[w];
+					break;
+				}
+			}
+		}
+		return intersection / nameEC[n];
+	}
+}
@@ -0,0 +1,286 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Approximate candidate generation for the WordMatcher, for exploratory runs  *
+* on very large ontologies, as an alternative to joining every pair of blocks *
+* of the WordLexicons. Each class gets a weighted MinHash signature of its    *
+* words (weighted by their EC and weight for the class, with P-MinHash, so    *
+* that two classes agree on each hash with a probability equal to the         *
+* probability Jaccard index of their words, which is close to the word        *
+* similarity), and the signatures are split into bands, which are hashed into *
+* buckets (LSH). Pairs of classes that share a bucket in any band are the     *
+* candidates. The number of bands and rows is chosen so that pairs at the     *
+* threshold become candidates with a probability of at least 95%. The         *
+* candidates can be verified with the exact word similarity of the            *
+* WordMatcher, or filtered with the similarity estimated from their           *
+* signatures.                                                                 *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+
+import aml.AML;
+import aml.ontology.WordLexiconView;
+import aml.util.RunMetrics;
+import aml.util.Table2Map;
+
+public class MinHashLSH
+{
+
+//Attributes
+
+	//The number of hash functions in the signatures
+	private static final int HASHES = 128;
+	//The minimum probability with which pairs at the threshold become candidates
+	private static final double RECALL = 0.95;
+	//The WordLexicons of the source and target
+	private WordLexiconView sourceLex;
+	private WordLexiconView targetLex;
+	//The number of each source word in the target WordLexicon (-1 if no
+	//target class has it)
+	private int[] toTarget;
+	//The threshold and the number of bands and rows (hashes per band)
+	private double thresh;
+	private int bands;
+	private int rows;
+	//Whether to verify the candidates with the exact word similarity
+	private boolean verify;
+
+//Constructors
+
+	/**
+	 * Constructs a new MinHashLSH between the given WordLexicons
+	 * @param sourceLex: the WordLexicon of the source
+	 * @param targetLex: the WordLexicon of the target
+	 * @param thresh: the threshold of the word similarity
+	 * @param verify: whether to verify the candidates with the exact word similarity
+	 * (otherwise they are filtered with the similarity estimated from the signatures)
+	 */
+	public MinHashLSH(WordLexiconView sourceLex, WordLexiconView targetLex, double thresh, boolean verify)
+	{
+		this.sourceLex = sourceLex;
+		this.targetLex = targetLex;
+		toTarget = WordMatcher.translate(sourceLex, targetLex);
+		this.thresh = thresh;
+		this.verify = verify;
+		int[] p = parameters(thresh);
+		bands = p[0];
+		rows = p[1];
+	}
+
+//Public Methods
+
+	/**
+	 * Finds the pairs of classes whose word similarity is above the threshold,
+	 * as WordMatcher.matchBlocks does for all pairs of blocks
+	 * @param sourceFilter: the source classes to match, or null to match all classes
+	 * @param pairSims: the table where to record the word similarities
+	 * (or null to not record them)
+	 * @return the Mappings with the word similarity of each pair found
+	 */
+	public Vector<Mapping> match(Set<Integer> sourceFilter, Table2Map<Integer,Integer,Double> pairSims)
+	{
+		//Index the bands of the target signatures
+		List<HashMap<Long,List<Integer>>> buckets = new ArrayList<HashMap<Long,List<Integer>>>(bands);
+		for(int b = 0; b < bands; b++)
+			buckets.add(new HashMap<Long,List<Integer>>());
+		HashMap<Integer,long[]> targetSignatures = new HashMap<Integer,long[]>();
+		for(Integer j : targetLex.getClasses())
+		{
+			long[] sig = signature(targetLex, j);
+			if(sig == null)
+				continue;
+			targetSignatures.put(j, sig);
+			for(int b = 0; b < bands; b++)
+			{
+				long key = band(sig, b);
+				List<Integer> l = buckets.get(b).get(key);
+				if(l == null)
+				{
+					l = new ArrayList<Integer>(2);
+					buckets.get(b).put(key, l);
+				}
+				l.add(j);
+			}
+		}
+		//Then look up the bands of each source signature
+		Vector<Mapping> a = new Vector<Mapping>();
+		long candidates = 0;
+		for(Integer i : sourceLex.getClasses())
+		{
+			if(sourceFilter != null && !sourceFilter.contains(i))
+				continue;
+			long[] sig = signature(sourceLex, i);
+			if(sig == null)
+				continue;
+			HashSet<Integer> targets = new HashSet<Integer>();
+			for(int b = 0; b < bands; b++)
+			{
+				List<Integer> l = buckets.get(b).get(band(sig, b));
+				if(l != null)
+					targets.addAll(l);
+			}
+			candidates += targets.size();
+			for(Integer j : targets)
+			{
+				double sim;
+				if(verify)
+					sim = similarity(i, j);
+				else
+					sim = estimate(sig, targetSignatures.get(j));
+				if(sim >= thresh)
+				{
+					a.add(new Mapping(i, j, sim));
+					if(pairSims != null)
+						pairSims.add(i, j, sim);
+				}
+			}
+		}
+		RunMetrics metrics = AML.getInstance().getMetrics();
+		metrics.count("word.lsh" + RunMetrics.CANDIDATES, candidates);
+		metrics.count("word.lsh" + RunMetrics.SCORED, candidates);
+		metrics.count("word.lsh" + RunMetrics.PASSED, a.size());
+		return a;
+	}
+
+	/**
+	 * Chooses the number of bands and rows for the given threshold: the most
+	 * rows per band (i.e., the fewest candidates) with which pairs with the
+	 * threshold similarity still become candidates with a probability of 95%
+	 * @param thresh: the threshold of the word similarity
+	 * @return the number of bands and the number of rows
+	 */
+	public static int[] parameters(double thresh)
+	{
+		int rows = 1;
+		for(int r = 2; r <= HASHES; r++)
+		{
+			int b = HASHES / r;
+			if(1 - Math.pow(1 - Math.pow(thresh, r), b) < RECALL)
+				break;
+			rows = r;
+		}
+		return new int[]{HASHES / rows, rows};
+	}
+
+//Private Methods
+
+	//The hash of a band of a signature
+	private long band(long[] sig, int b)
+	{
+		long h = b;
+		for(int r = b * rows; r < (b+1) * rows; r++)
+			h = mix(h * 31 + sig[r]);
+		return h;
+	}
+
+	//The similarity estimated from the signatures of two classes
+	private static double estimate(long[] s, long[] t)
+	{
+		int equal = 0;
+		for(int h = 0; h < HASHES; h++)
+			if(s[h] == t[h])
+				equal++;
+		return (double)equal / HASHES;
+	}
+
+	//The hash of a word (64-bit FNV-1a)
+	private static long hash(String w)
+	{
+		long h = 0xcbf29ce484222325L;
+		for(int i = 0; i < w.length(); i++)
+		{
+			h ^= w.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	//A 64-bit mix function (from SplitMix64)
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	//The weighted MinHash signature of a class: for each hash function, the word
+	//with the least exponential sample (given by a random value that depends only
+	//on the hash function and the word, divided by the weight of the word)
+	//(or null if the class has no words with weight, which can't match)
+	private long[] signature(WordLexiconView lex, int classId)
+	{
+		boolean empty = true;
+		long[] sig = new long[HASHES];
+		double[] min = new double[HASHES];
+		for(int h = 0; h < HASHES; h++)
+			min[h] = Double.MAX_VALUE;
+		int pos = lex.classPosition(classId);
+		for(int p = lex.classWordsStart(pos); p < lex.classWordsEnd(pos); p++)
+		{
+			double weight = lex.wordEC(lex.classWord(p)) * lex.classWordWeight(p);
+			if(weight <= 0)
+				continue;
+			empty = false;
+			long word = hash(lex.word(lex.classWord(p)));
+			for(int h = 0; h < HASHES; h++)
+			{
+				double a = -Math.log(uniform(mix(word + h * 0x9e3779b97f4a7c15L))) / weight;
+				if(a < min[h])
+				{
+					min[h] = a;
+					sig[h] = word;
+				}
+			}
+		}
+		if(empty)
+			return null;
+		return sig;
+	}
+
+	//The exact word similarity of two classes, as in WordMatcher.matchBlocks
+	//(in the order of the numbers of their words)
+	private double similarity(int i, int j)
+	{
+		double sim = 0.0;
+		int sourcePos = sourceLex.classPosition(i);
+		int targetPos = targetLex.classPosition(j);
+		for(int p = sourceLex.classWordsStart(sourcePos); p < sourceLex.classWordsEnd(sourcePos); p++)
+		{
+			int w = toTarget[sourceLex.classWord(p)];
+			if(w < 0)
+				continue;
+			double weight = targetLex.wordWeight(targetPos, w);
+			if(weight < 0)
+				continue;
+			double ec = sourceLex.wordEC(sourceLex.classWord(p)) * targetLex.wordEC(w);
+			sim += Math.sqrt(ec * sourceLex.classWordWeight(p) * weight);
+		}
+		return sim / (sourceLex.getClassEC(i) + targetLex.getClassEC(j) - sim);
+	}
+
+	//A sample of a uniform distribution in (0,1)
+	private static double uniform(long seed)
+	{
+		return ((seed >>> 11) + 0.5) / (double)(1L << 53);
+	}
+}
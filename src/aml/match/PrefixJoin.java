@@ -0,0 +1,374 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Exact similarity join of two WordLexicon blocks with prefix filtering (as   *
+* in PPJoin), which finds the same pairs of classes as the WordMatcher while  *
+* scoring far fewer of them. The words of each class are ordered from the     *
+* rarest (highest EC) to the most common, and only the prefix of each class   *
+* that is needed to reach the threshold is indexed: a pair of classes whose   *
+* first shared word is after the prefix of either can't reach it. The pairs  *
+* found by the prefixes are then pruned with a length filter (the norms of    *
+* their words) and a positional filter (the overlap found so far plus the     *
+* most that the rest of their words could add), before their similarity is    *
+* computed exactly as by the WordMatcher (in the same order of words), so     *
+* common words like "cell" or "abnormal" no longer make candidates of all the *
+* pairs of classes that share them.                                           *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+
+import aml.AML;
+import aml.ontology.WordLexiconView;
+import aml.util.RunMetrics;
+import aml.util.Table2Map;
+
+public class PrefixJoin
+{
+
+//Attributes
+
+	//The relative margin of the filters, so that rounding errors in the
+	//bounds never drop a pair that reaches the threshold
+	private static final double MARGIN = 1e-9;
+	//The WordLexicons of the source and target
+	private WordLexiconView sourceLex;
+	private WordLexiconView targetLex;
+
+//Constructors
+
+	/**
+	 * Constructs a new PrefixJoin between the given WordLexicons
+	 * @param sourceLex: the WordLexicon of the source
+	 * @param targetLex: the WordLexicon of the target
+	 */
+	public PrefixJoin(WordLexiconView sourceLex, WordLexiconView targetLex)
+	{
+		this.sourceLex = sourceLex;
+		this.targetLex = targetLex;
+	}
+
+//Public Methods
+
+	/**
+	 * Matches two WordLexicon blocks by class, as WordMatcher.matchBlocks
+	 * @param shared: the positions of the words shared by the blocks in the
+	 * words of the source block and of the target block (by WordMatcher.sharedWords)
+	 * @param thresh: the threshold of the word similarity
+	 * @param sourceFilter: the source classes to match, or null to match all classes
+	 * @param pairSims: the table where to record the word similarities
+	 * (or null to not record them)
+	 * @return the Mappings with the word similarity of each pair found
+	 */
+	public Vector<Mapping> match(int[][] shared, double thresh, Set<Integer> sourceFilter,
+			Table2Map<Integer,Integer,Double> pairSims)
+	{
+		//The similarities of the shared words are summed in the order in which
+		//the WordMatcher goes through them (that of their numbers)
+		int words = shared[0].length;
+		final double[] ecs = new double[words];
+		for(int k = 0; k < words; k++)
+			ecs[k] = sourceLex.wordEC(sourceLex.blockWord(shared[0][k])) *
+					targetLex.wordEC(targetLex.blockWord(shared[1][k]));
+		//The words are then ranked from the rarest to the most common
+		Integer[] byRarity = new Integer[words];
+		for(int k = 0; k < byRarity.length; k++)
+			byRarity[k] = k;
+		Arrays.sort(byRarity, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				int c = Double.compare(ecs[b], ecs[a]);
+				if(c == 0)
+					c = a.compareTo(b);
+				return c;
+			}
+		});
+
+		List<ClassWords> sources = classWords(sourceLex, shared[0], byRarity, sourceFilter);
+		List<ClassWords> targets = classWords(targetLex, shared[1], byRarity, null);
+		double[] sourceMax = maxValues(sources, words);
+		double[] targetMax = maxValues(targets, words);
+		double sourceMinEC = minEC(sources);
+		double targetMinEC = minEC(targets);
+		double factor = thresh / (1 + thresh);
+
+		//Index the prefixes of the target classes, by word
+		List<List<int[]>> index = new ArrayList<List<int[]>>(words);
+		for(int k = 0; k < words; k++)
+			index.add(null);
+		for(int c = 0; c < targets.size(); c++)
+		{
+			ClassWords t = targets.get(c);
+			int prefix = t.prefix(sourceMax, factor * (t.ec + sourceMinEC));
+			for(int p = 0; p < prefix; p++)
+			{
+				List<int[]> l = index.get(t.ranks[p]);
+				if(l == null)
+				{
+					l = new ArrayList<int[]>();
+					index.set(t.ranks[p], l);
+				}
+				l.add(new int[]{c, p});
+			}
+		}
+
+		//Then probe the index with the prefixes of the source classes
+		Vector<Mapping> a = new Vector<Mapping>();
+		double[] overlap = new double[targets.size()];
+		//The state of each target class for the current source class:
+		//0 if not found yet, 1 if it is a candidate, and 2 if it was pruned
+		byte[] state = new byte[targets.size()];
+		int[] touched = new int[targets.size()];
+		long candidates = 0;
+		long scored = 0;
+		for(ClassWords s : sources)
+		{
+			int prefix = s.prefix(targetMax, factor * (s.ec + targetMinEC));
+			int touchedCount = 0;
+			for(int p = 0; p < prefix; p++)
+			{
+				List<int[]> l = index.get(s.ranks[p]);
+				if(l == null)
+					continue;
+				for(int[] e : l)
+				{
+					int c = e[0];
+					if(state[c] == 2)
+						continue;
+					ClassWords t = targets.get(c);
+					double min = factor * (s.ec + t.ec) * (1 - MARGIN);
+					if(state[c] == 0)
+					{
+						touched[touchedCount++] = c;
+						state[c] = 1;
+						//Length filter
+						if(Math.sqrt(s.suffixSquares[0] * t.suffixSquares[0]) < min)
+						{
+							state[c] = 2;
+							continue;
+						}
+					}
+					overlap[c] += s.values[p] * t.values[e[1]];
+					//Positional filter
+					double rest = Math.min(s.suffix[p+1], t.suffix[e[1]+1]);
+					rest = Math.min(rest, Math.sqrt(s.suffixSquares[p+1] * t.suffixSquares[e[1]+1]));
+					if(overlap[c] + rest < min)
+						state[c] = 2;
+				}
+			}
+			candidates += touchedCount;
+			for(int k = 0; k < touchedCount; k++)
+			{
+				int c = touched[k];
+				if(state[c] == 1)
+				{
+					ClassWords t = targets.get(c);
+					scored++;
+					double sim = similarity(s, t, ecs, byRarity);
+					sim /= sourceLex.getClassEC(s.id) + targetLex.getClassEC(t.id) - sim;
+					if(sim >= thresh)
+					{
+						a.add(new Mapping(s.id, t.id, sim));
+						if(pairSims != null)
+							pairSims.add(s.id, t.id, sim);
+					}
+				}
+				state[c] = 0;
+				overlap[c] = 0.0;
+			}
+		}
+		RunMetrics metrics = AML.getInstance().getMetrics();
+		metrics.count("word.prefix" + RunMetrics.CANDIDATES, candidates);
+		metrics.count("word.prefix" + RunMetrics.SCORED, scored);
+		metrics.count("word.prefix" + RunMetrics.PASSED, a.size());
+		return a;
+	}
+
+//Private Methods
+
+	//The words of each class of a block (or of the given classes), by rank, with
+	//their values: the square root of their EC times their weight for the class,
+	//times the number of times they are listed for the class in the block
+	private List<ClassWords> classWords(WordLexiconView lex, int[] positions, Integer[] byRarity,
+			Set<Integer> filter)
+	{
+		//The ranks and weights of the words of each class, going through the
+		//postings of the words by rank (so the ranks of each class are sorted)
+		HashMap<Integer,List<Integer>> ranks = new HashMap<Integer,List<Integer>>();
+		HashMap<Integer,List<Double>> weights = new HashMap<Integer,List<Double>>();
+		for(int r = 0; r < byRarity.length; r++)
+		{
+			int b = positions[byRarity[r]];
+			for(int x = lex.postingsStart(b); x < lex.postingsEnd(b); x++)
+			{
+				int i = lex.classId(lex.posting(x));
+				if(i < 0 || (filter != null && !filter.contains(i)))
+					continue;
+				List<Integer> l = ranks.get(i);
+				if(l == null)
+				{
+					l = new ArrayList<Integer>();
+					ranks.put(i, l);
+					weights.put(i, new ArrayList<Double>());
+				}
+				l.add(r);
+				weights.get(i).add(lex.postingWeight(x));
+			}
+		}
+		List<ClassWords> classes = new ArrayList<ClassWords>(ranks.size());
+		for(Integer i : ranks.keySet())
+		{
+			List<Integer> l = ranks.get(i);
+			List<Double> w = weights.get(i);
+			ClassWords c = new ClassWords(i, lex.getClassEC(i));
+			int n = 0;
+			for(int k = 0; k < l.size(); k++)
+				if(k == 0 || !l.get(k).equals(l.get(k-1)))
+					n++;
+			c.ranks = new int[n];
+			c.counts = new int[n];
+			c.weights = new double[n];
+			c.values = new double[n];
+			n = -1;
+			for(int k = 0; k < l.size(); k++)
+			{
+				if(k == 0 || !l.get(k).equals(l.get(k-1)))
+				{
+					c.ranks[++n] = l.get(k);
+					c.weights[n] = w.get(k);
+				}
+				c.counts[n]++;
+			}
+			for(int k = 0; k < c.ranks.length; k++)
+			{
+				int word = lex.blockWord(positions[byRarity[c.ranks[k]]]);
+				c.values[k] = c.counts[k] * Math.sqrt(lex.wordEC(word) * c.weights[k]);
+			}
+			classes.add(c);
+		}
+		return classes;
+	}
+
+	//The highest value of each word over the given classes
+	private static double[] maxValues(List<ClassWords> classes, int words)
+	{
+		double[] max = new double[words];
+		for(ClassWords c : classes)
+			for(int k = 0; k < c.ranks.length; k++)
+				if(c.values[k] > max[c.ranks[k]])
+					max[c.ranks[k]] = c.values[k];
+		return max;
+	}
+
+	//The lowest EC of the given classes
+	private static double minEC(List<ClassWords> classes)
+	{
+		double min = Double.MAX_VALUE;
+		for(ClassWords c : classes)
+			if(c.ec < min)
+				min = c.ec;
+		return min == Double.MAX_VALUE ? 0.0 : min;
+	}
+
+	//The sum of the similarities of the words shared by two classes, exactly as in
+	//WordMatcher.matchBlocks: in the order of the numbers of the words, and once
+	//for each time the word is listed for each class
+	private double similarity(ClassWords s, ClassWords t, double[] ecs, Integer[] byRarity)
+	{
+		List<int[]> common = new ArrayList<int[]>();
+		int p = 0;
+		int q = 0;
+		while(p < s.ranks.length && q < t.ranks.length)
+		{
+			if(s.ranks[p] < t.ranks[q])
+				p++;
+			else if(s.ranks[p] > t.ranks[q])
+				q++;
+			else
+			{
+				common.add(new int[]{byRarity[s.ranks[p]], s.counts[p] * t.counts[q], p, q});
+				p++;
+				q++;
+			}
+		}
+		Collections.sort(common, new Comparator<int[]>()
+		{
+			@Override
+			public int compare(int[] a, int[] b)
+			{
+				return a[0] - b[0];
+			}
+		});
+		double sim = 0.0;
+		for(int[] c : common)
+		{
+			double sourceSim = ecs[c[0]] * s.weights[c[2]];
+			double wordSim = Math.sqrt(sourceSim * t.weights[c[3]]);
+			for(int k = 0; k < c[1]; k++)
+				sim = wordSim + sim;
+		}
+		return sim;
+	}
+
+	//The words of a class, by rank, with their weights and values, and the most that the words
+	//from each position on can add to its similarity with the classes of the other
+	//block (by their highest values, and by their norm)
+	private static class ClassWords
+	{
+		private int id;
+		private double ec;
+		private int[] ranks;
+		private int[] counts;
+		private double[] weights;
+		private double[] values;
+		private double[] suffix;
+		private double[] suffixSquares;
+
+		ClassWords(int id, double ec)
+		{
+			this.id = id;
+			this.ec = ec;
+		}
+
+		//The number of words of the prefix, after which the words can't add
+		//up to the given overlap, computing the suffix bounds on the way
+		int prefix(double[] otherMax, double min)
+		{
+			int n = ranks.length;
+			suffix = new double[n+1];
+			suffixSquares = new double[n+1];
+			for(int k = n - 1; k >= 0; k--)
+			{
+				suffix[k] = suffix[k+1] + values[k] * otherMax[ranks[k]];
+				suffixSquares[k] = suffixSquares[k+1] + values[k] * values[k];
+			}
+			int prefix = n;
+			while(prefix > 0 && suffix[prefix-1] < min * (1 - MARGIN))
+				prefix--;
+			return prefix;
+		}
+	}
+}
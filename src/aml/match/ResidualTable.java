@@ -0,0 +1,347 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* The residual table of the compound matching: for each SubMapping of the     *
+* first matching step, the words left to match in the second step (the words  *
+* of its source name that aren't in its target name, aren't stop words and    *
+* are alphanumeric, plus the words repeated in its target name). Each name is *
+* split into words only once, and its words are numbered and checked against  *
+* the stop list once, so the residual words of each SubMapping are computed   *
+* on word numbers. The table keeps the SubMappings and their residual words   *
+* in flat arrays, and is filled by the WordMatcher as it matches the first    *
+* step.                                                                       *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import aml.util.StopList;
+
+public class ResidualTable
+{
+
+//Attributes
+
+	//The words, by number, and their numbers
+	private List<String> wordList;
+	private HashMap<String,Integer> wordIds;
+	//Whether each word is a stop word, and whether it can be left to match
+	//(i.e., it is neither a stop word nor has non-alphanumeric characters)
+	private boolean[] stop;
+	private boolean[] residual;
+	//The words of each name, by number
+	private HashMap<String,int[]> nameWords;
+	//The SubMappings: their classes, similarity and weight,
+	//and the range of their residual words in the list of words
+	private int[] sources;
+	private int[] targets;
+	private double[] sims;
+	private double[] weights;
+	private int[] start;
+	private int[] words;
+	private int size;
+	private int wordCount;
+	private Set<String> stopSet;
+
+//Constructors
+
+	/**
+	 * Constructs a new empty ResidualTable
+	 */
+	public ResidualTable()
+	{
+		wordList = new ArrayList<String>();
+		wordIds = new HashMap<String,Integer>();
+		stop = new boolean[64];
+		residual = new boolean[64];
+		nameWords = new HashMap<String,int[]>();
+		sources = new int[64];
+		targets = new int[64];
+		sims = new double[64];
+		weights = new double[64];
+		start = new int[65];
+		words = new int[256];
+		size = 0;
+		wordCount = 0;
+		stopSet = StopList.read();
+	}
+
+	/**
+	 * Constructs a new ResidualTable with the SubMappings of an Alignment
+	 * @param a: the Alignment from the first matching step
+	 */
+	public ResidualTable(Alignment a)
+	{
+		this();
+		for(Mapping m : a)
+			for(SubMapping s : m.getSubMappings())
+				add(s);
+	}
+
+//Public Methods
+
+	/**
+	 * Adds a SubMapping from the first matching step, with its residual words
+	 * @param s: the SubMapping to add
+	 */
+	public void add(SubMapping s)
+	{
+		if(size == sources.length)
+		{
+			sources = grow(sources);
+			targets = grow(targets);
+			sims = grow(sims);
+			weights = grow(weights);
+			int[] st = new int[sources.length + 1];
+			System.arraycopy(start, 0, st, 0, size + 1);
+			start = st;
+		}
+		sources[size] = s.getSourceId();
+		targets[size] = s.getTargetId();
+		sims[size] = s.getSimilarity();
+		weights[size] = s.getWeight();
+		for(int w : residualWords(s))
+		{
+			if(wordCount == words.length)
+				words = grow(words);
+			words[wordCount++] = w;
+		}
+		size++;
+		start[size] = wordCount;
+	}
+
+	/**
+	 * Groups the entries of a residual table by their words, since many
+	 * Mappings of the first step leave the same words to match (e.g.,
+	 * "increased" or "abnormal"), so that the second step can compute the
+	 * similarity of the words to the target classes once for each group
+	 * @param map: the residual table, in the form used by the second matching step
+	 * @return the Mappings with each distinct list of words (in the same order,
+	 * since the order of the words changes the rounding of the similarities),
+	 * with the groups and their Mappings in the order of the classes of the
+	 * Mappings, so that the compound mappings are found in the same order in
+	 * every run (rather than in that of the hash codes of the Mappings)
+	 */
+	public static HashMap<List<String>,List<Mapping>> bags(HashMap<Mapping,List<String>> map)
+	{
+		List<Mapping> maps = new ArrayList<Mapping>(map.keySet());
+		WordMatcher.sortByClass(maps);
+		HashMap<List<String>,List<Mapping>> bags = new LinkedHashMap<List<String>,List<Mapping>>();
+		for(Mapping m : maps)
+		{
+			List<String> words = map.get(m);
+			List<Mapping> l = bags.get(words);
+			if(l == null)
+			{
+				l = new ArrayList<Mapping>();
+				bags.put(words, l);
+			}
+			l.add(m);
+		}
+		return bags;
+	}
+
+	/**
+	 * @param i: the number of a SubMapping in the table
+	 * @return the similarity of the SubMapping
+	 */
+	public double getSimilarity(int i)
+	{
+		return sims[i];
+	}
+
+	/**
+	 * @param i: the number of a SubMapping in the table
+	 * @return the source class of the SubMapping
+	 */
+	public int getSourceId(int i)
+	{
+		return sources[i];
+	}
+
+	/**
+	 * @param i: the number of a SubMapping in the table
+	 * @return the target class of the SubMapping
+	 */
+	public int getTargetId(int i)
+	{
+		return targets[i];
+	}
+
+	/**
+	 * @param i: the number of a SubMapping in the table
+	 * @return the weight of the source name of the SubMapping
+	 */
+	public double getWeight(int i)
+	{
+		return weights[i];
+	}
+
+	/**
+	 * @param i: the number of a SubMapping in the table
+	 * @return the residual words of the SubMapping
+	 */
+	public List<String> getWords(int i)
+	{
+		List<String> l = new ArrayList<String>(start[i+1] - start[i]);
+		for(int j = start[i]; j < start[i+1]; j++)
+			l.add(wordList.get(words[j]));
+		return l;
+	}
+
+	/**
+	 * @return the number of SubMappings in the table
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the residual table in the form used by the second matching step
+	 * (and by CompoundTest.addSubMap): a Mapping for each SubMapping, with
+	 * its similarity and weight, and the list of its residual words
+	 */
+	public HashMap<Mapping,List<String>> toMap()
+	{
+		HashMap<Mapping,List<String>> map = new HashMap<Mapping,List<String>>();
+		for(int i = 0; i < size; i++)
+			map.put(new Mapping(sources[i], targets[i], sims[i], weights[i]), getWords(i));
+		return map;
+	}
+
+	/**
+	 * Computes the residual words of a SubMapping without adding it to the table
+	 * @param s: the SubMapping from the first matching step
+	 * @return the list of unmatched words of the SubMapping
+	 */
+	public List<String> unmatchedWords(SubMapping s)
+	{
+		int[] r = residualWords(s);
+		List<String> l = new ArrayList<String>(r.length);
+		for(int w : r)
+			l.add(wordList.get(w));
+		return l;
+	}
+
+//Private Methods
+
+	private static int[] grow(int[] a)
+	{
+		int[] b = new int[a.length * 2];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	private static double[] grow(double[] a)
+	{
+		double[] b = new double[a.length * 2];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	//The words of a name, by number, splitting it the first time
+	private int[] nameWords(String name)
+	{
+		int[] w = nameWords.get(name);
+		if(w != null)
+			return w;
+		String[] split = name.split(" ");
+		w = new int[split.length];
+		for(int i = 0; i < split.length; i++)
+			w[i] = wordId(split[i]);
+		nameWords.put(name, w);
+		return w;
+	}
+
+	//The residual words of a SubMapping: the words of the source name that
+	//aren't in the target name, followed by the words repeated in the target
+	//name (in the order of a HashMap of the target words, as before)
+	private int[] residualWords(SubMapping s)
+	{
+		int[] sWords = nameWords(s.getLabelSource());
+		int[] tWords = nameWords(s.getLabelTarget());
+		int[] r = new int[sWords.length + tWords.length];
+		int count = 0;
+		for(int w : sWords)
+			if(residual[w] && !contains(tWords, tWords.length, w))
+				r[count++] = w;
+		//Repeated words in the target name are rare, so only then
+		//is the count of its words built, in a HashMap as before
+		boolean repeated = false;
+		for(int i = 1; i < tWords.length && !repeated; i++)
+			repeated = !stop[tWords[i]] && contains(tWords, i, tWords[i]);
+		if(repeated)
+		{
+			HashMap<String,Integer> mapped = new HashMap<String,Integer>();
+			for(int w : tWords)
+			{
+				if(stop[w])
+					continue;
+				String word = wordList.get(w);
+				if(!mapped.containsKey(word))
+					mapped.put(word,1);
+				else
+					mapped.put(word,mapped.get(word)+1);
+			}
+			for(String w : mapped.keySet())
+				if(mapped.get(w) > 1)
+					r[count++] = wordIds.get(w);
+		}
+		if(count == r.length)
+			return r;
+		int[] c = new int[count];
+		System.arraycopy(r, 0, c, 0, count);
+		return c;
+	}
+
+	//Whether the first n words of a name include the given word
+	private static boolean contains(int[] words, int n, int w)
+	{
+		for(int i = 0; i < n; i++)
+			if(words[i] == w)
+				return true;
+		return false;
+	}
+
+	//The number of a word, numbering it (and checking it against the stop list) if it is new
+	private int wordId(String word)
+	{
+		Integer id = wordIds.get(word);
+		if(id != null)
+			return id;
+		id = wordList.size();
+		if(id == stop.length)
+		{
+			boolean[] st = new boolean[stop.length * 2];
+			System.arraycopy(stop, 0, st, 0, stop.length);
+			stop = st;
+			boolean[] res = new boolean[residual.length * 2];
+			System.arraycopy(residual, 0, res, 0, residual.length);
+			residual = res;
+		}
+		wordList.add(word);
+		wordIds.put(word, id);
+		stop[id] = stopSet.contains(word);
+		residual[id] = !stop[id] && word.matches("^[a-zA-Z0-9]*$");
+		return id;
+	}
+}
@@ -41,6 +41,9 @@ import aml.ontology.RelationshipMap;
 import aml.settings.LanguageSetting;
 import aml.settings.StringSimMeasure;
 import aml.util.ISub;
+import aml.util.Progress;
+import aml.util.RunMetrics;
+import aml.util.SimilarityCache;
 import aml.util.StringParser;
 import aml.util.Table2Set;
 
@@ -62,6 +65,9 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 	private final double CORRECTION = 0.80;
 	//The available CPU threads
 	private int threads;
+	//The cache of name similarities (null for no cache) and the hash of the measure
+	private SimilarityCache cache;
+	private long cacheMeasure;
 
 //Constructors
 	
@@ -78,6 +84,7 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 		lSet = AML.getInstance().getLanguageSetting();
 		languages = aml.getLanguages();
 		measure = StringSimMeasure.ISUB;
+		openCache();
 	}
 
 	/**
@@ -88,6 +95,7 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 	{
 		this();
 		measure = m;
+		openCache();
 	}
 
 //Public Methods
@@ -96,7 +104,9 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 	public Alignment extendAlignment(Alignment a, double thresh)
 	{	
 		System.out.println("Extending Alignment with String Matcher");
-		long time = System.currentTimeMillis()/1000;
+		long time = aml.getMetrics().start();
+		//The extension rounds aren't known in advance, so only cancellation is checked
+		aml.getProgress().begin("string.extend", 0);
 		System.out.println("Matching Children & Parents");
 		Alignment ext = extendChildrenAndParents(a,thresh);
 		Alignment aux = extendChildrenAndParents(ext,thresh);
@@ -111,8 +121,8 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 		}
 		System.out.println("Matching Siblings");
 		ext.addAll(extendSiblings(a,thresh));
-		time = System.currentTimeMillis()/1000 - time;
-		System.out.println("Finished in " + time + " seconds");
+		time = aml.getMetrics().stop("string.extend", time);
+		System.out.println("Finished in " + RunMetrics.toSeconds(time) + " seconds");
 		return ext;
 	}
 	
@@ -120,9 +130,12 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 	public Alignment match(double thresh)
 	{
 		System.out.println("Running String Matcher");
-		long time = System.currentTimeMillis()/1000;
+		long time = aml.getMetrics().start();
 		Set<Integer> sources = sLex.getClasses();
 		Set<Integer> targets = tLex.getClasses();
+		//Each source class is a unit of work
+		Progress progress = aml.getProgress();
+		progress.begin("string.match", sources.size());
 		Alignment a = new Alignment();
 		for(Integer i : sources)
 		{
@@ -130,16 +143,17 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 			for(Integer j : targets)
 				toMap.add(i,j);
 			a.addAll(mapInParallel(toMap,thresh));
+			progress.worked(1);
 		}
-		time = System.currentTimeMillis()/1000 - time;
-		System.out.println("Finished in " + time + " seconds");
+		time = aml.getMetrics().stop("string.match", time);
+		System.out.println("Finished in " + RunMetrics.toSeconds(time) + " seconds");
 		return a;
 	}
 	
 	public Alignment rematchSource(Alignment align, double thresh)
 	{
 		System.out.println("Rematching Source with StringMatcher");
-		long time = System.currentTimeMillis()/1000;
+		long time = aml.getMetrics().start();
 		Set<Integer> sources = sLex.getClasses();
 		Set<Integer> targets = tLex.getClasses();
 		Alignment a = new Alignment();
@@ -150,16 +164,18 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 			if(!src.contains(m.getSourceId()))
 				src.add(m.getSourceId());
 		}
+		Progress progress = aml.getProgress();
+		progress.begin("string.rematchSource", src.size());
 		for(Integer i : src)
 		{
 			Table2Set<Integer,Integer> toMap = new Table2Set<Integer,Integer>();
 			for(Integer j : targets)
 				toMap.add(i,j);
 			a.addAll(mapInParallel(toMap,thresh));
-			
+			progress.worked(1);
 		}
-		time = System.currentTimeMillis()/1000 - time;
-		System.out.println("Finished in " + time + " seconds");
+		time = aml.getMetrics().stop("string.rematchSource", time);
+		System.out.println("Finished in " + RunMetrics.toSeconds(time) + " seconds");
 		return a;
 	}	
 		
@@ -167,15 +183,20 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 	public Alignment rematch(Alignment a)
 	{
 		System.out.println("Computing String Similarity");
-		long time = System.currentTimeMillis()/1000;
+		long time = aml.getMetrics().start();
+		Progress progress = aml.getProgress();
+		progress.begin("string.rematch", a.size());
 		Alignment maps = new Alignment();
 		for(Mapping m : a)
 		{
 			double sim = mapTwoClasses(m.getSourceId(),m.getTargetId());
 			maps.add(m.getSourceId(),m.getTargetId(),sim);
+			progress.worked(1);
 		}
-		time = System.currentTimeMillis()/1000 - time;
-		System.out.println("Finished in " + time + " seconds");
+		aml.getMetrics().count("string.rematch" + RunMetrics.SCORED, a.size());
+		aml.getMetrics().count("string.rematch" + RunMetrics.EMITTED, maps.size());
+		time = aml.getMetrics().stop("string.rematch", time);
+		System.out.println("Finished in " + RunMetrics.toSeconds(time) + " seconds");
 		return maps;
 	}
 	
@@ -242,13 +263,15 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 	}
 	
 	//Maps a table of classes in parallel, using all available threads
+	//(the tasks add their Mappings to a shared AlignmentBuilder, and
+	//are skipped once the run is cancelled)
 	private Alignment mapInParallel(Table2Set<Integer,Integer> toMap, double thresh)
 	{
-		Alignment maps = new Alignment();
+		AlignmentBuilder builder = new AlignmentBuilder();
 		ArrayList<MappingTask> tasks = new ArrayList<MappingTask>();
 		for(Integer i : toMap.keySet())
 			for(Integer j : toMap.get(i))
-				tasks.add(new MappingTask(i,j));
+				tasks.add(new MappingTask(i,j,thresh,builder));
         List<Future<Mapping>> results;
 		ExecutorService exec = Executors.newFixedThreadPool(threads);
 		try
@@ -261,19 +284,25 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 	        results = new ArrayList<Future<Mapping>>();
 		}
 		exec.shutdown();
+		long scored = 0;
 		for(Future<Mapping> fm : results)
 		{
 			try
 			{
-				Mapping m = fm.get();
-				if(m.getSimilarity() >= thresh)
-					maps.add(m);
+				if(fm.get() != null)
+					scored++;
 			}
 			catch(Exception e)
 			{
 				e.printStackTrace();
 			}
 		}
+		aml.getProgress().check();
+		Alignment maps = builder.freeze();
+		RunMetrics metrics = aml.getMetrics();
+		metrics.count("string.pairs" + RunMetrics.CANDIDATES, tasks.size());
+		metrics.count("string.pairs" + RunMetrics.SCORED, scored);
+		metrics.count("string.pairs" + RunMetrics.PASSED, maps.size());
 		return maps;
 	}
 	
@@ -337,9 +366,25 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 		return maxSim;
 	}
 	
+	//Gets the cache of name similarities of AML, if any, and the hash of the measure
+	private void openCache()
+	{
+		cache = aml.getSimilarityCache();
+		if(cache != null)
+			cacheMeasure = SimilarityCache.measure("string:" + measure);
+	}
+
 	//Gets the similarity between two Strings
 	private double stringSimilarity(String s, String t)
 	{
+		long key = 0;
+		if(cache != null)
+		{
+			key = SimilarityCache.key(cacheMeasure, s, t);
+			double cached = cache.get(key);
+			if(!Double.isNaN(cached))
+				return cached;
+		}
 		double sim = 0.0;
 		if(measure.equals(StringSimMeasure.ISUB))
 			sim = ISub.stringSimilarity(s,t);
@@ -359,6 +404,8 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 			sim = q.getSimilarity(s, t);
 		}
 		sim *= CORRECTION;
+		if(cache != null)
+			cache.put(key, sim);
 		return sim;
 	}
 	
@@ -367,17 +414,26 @@ public class StringMatcher implements SecondaryMatcher, PrimaryMatcher, Rematche
 	{
 		private int source;
 		private int target;
+		private double thresh;
+		private AlignmentBuilder builder;
 		
-		MappingTask(int s, int t)
+		MappingTask(int s, int t, double th, AlignmentBuilder b)
 	    {
 			source = s;
 	        target = t;
+	        thresh = th;
+	        builder = b;
 	    }
 	        
 	    @Override
 	    public Mapping call()
 	    {
-       		return new Mapping(source,target,mapTwoClasses(source,target));
+	    	if(aml.getProgress().isCancelled())
+	    		return null;
+       		Mapping m = new Mapping(source,target,mapTwoClasses(source,target));
+       		if(m.getSimilarity() >= thresh)
+       			builder.add(m);
+       		return m;
         }
 	}
 }
\ No newline at end of file
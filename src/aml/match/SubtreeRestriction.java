@@ -0,0 +1,419 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Restricts the search space of the second matching step to some subtrees of  *
+* the second target ontology (e.g., the high-level branches of PATO): the     *
+* residual words and the first-step target classes (with their descendants)   *
+* can be mapped to the subtrees where their compounds may be found, so that   *
+* the WordMatcher only scores the target classes in those subtrees. The       *
+* subtrees of each target class are indexed once, when first needed.         *
+* Word rules can also be learned from the target ontology, by mapping each    *
+* word to the high-level branches of the classes that have it, which doesn't  *
+* change the result when the second threshold is above 0.5 (as classes that   *
+* share no words with the residual words can't reach it).                     *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import aml.AML;
+import aml.ontology.Lexicon;
+import aml.ontology.Ontology;
+import aml.ontology.RelationshipMap;
+
+public class SubtreeRestriction
+{
+
+//Attributes
+
+	//The second target ontology and the relationships between classes
+	private Ontology target;
+	private RelationshipMap rels;
+	//The roots of the subtrees, by number, and their numbers
+	//(the classes outside the learned branches have the root -1)
+	private List<Integer> roots;
+	private HashMap<Integer,Integer> rootIds;
+	//The subtrees of each target class (null until first needed)
+	private HashMap<Integer,BitSet> membership;
+	//The subtrees allowed for each residual word
+	private HashMap<String,BitSet> wordRules;
+	//The subtrees allowed for each first-step target class and its descendants,
+	//and those allowed for each first-step target class, including its ancestors'
+	private HashMap<Integer,BitSet> branchRules;
+	private HashMap<Integer,BitSet> branches;
+	//Whether the word rules were learned, so that words without rules
+	//(which aren't in the target) don't match any class
+	private boolean learned;
+
+//Constructors
+
+	/**
+	 * Constructs a new SubtreeRestriction without rules
+	 * @param target: the second target ontology
+	 */
+	public SubtreeRestriction(Ontology target)
+	{
+		this.target = target;
+		rels = AML.getInstance().getRelationshipMap();
+		roots = new ArrayList<Integer>();
+		rootIds = new HashMap<Integer,Integer>();
+		wordRules = new HashMap<String,BitSet>();
+		branchRules = new HashMap<Integer,BitSet>();
+		branches = new HashMap<Integer,BitSet>();
+		learned = false;
+	}
+
+//Public Methods
+
+	/**
+	 * Allows the compounds of the first-step target class (and its descendants)
+	 * to be found in the subtree of the given class of the second target
+	 * @param branch: the first-step target class
+	 * @param root: the root of the subtree in the second target
+	 */
+	public void allowBranch(int branch, int root)
+	{
+		allow(branchRules, branch, root);
+		branches.clear();
+	}
+
+	/**
+	 * Allows the residual word to match the classes in the subtree
+	 * of the given class of the second target
+	 * @param word: the residual word
+	 * @param root: the root of the subtree in the second target
+	 */
+	public void allowWord(String word, int root)
+	{
+		allow(wordRules, word, root);
+	}
+
+	/**
+	 * @param branch: a first-step target class
+	 * @return the subtrees where the compounds of the class may be found (those
+	 * allowed for the class and its ancestors) or null if they aren't restricted
+	 */
+	public BitSet getBranchSubtrees(int branch)
+	{
+		if(branchRules.isEmpty())
+			return null;
+		if(branches.containsKey(branch))
+			return branches.get(branch);
+		BitSet b = new BitSet();
+		HashSet<Integer> visited = new HashSet<Integer>();
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		queue.add(branch);
+		visited.add(branch);
+		while(!queue.isEmpty())
+		{
+			int c = queue.poll();
+			if(branchRules.containsKey(c))
+				b.or(branchRules.get(c));
+			for(Integer p : rels.getParents(c))
+				if(visited.add(p))
+					queue.add(p);
+		}
+		if(b.isEmpty())
+			b = null;
+		branches.put(branch, b);
+		return b;
+	}
+
+	/**
+	 * @param ids: the target classes
+	 * @return the subtrees of each of the target classes
+	 */
+	public BitSet[] getSubtrees(int[] ids)
+	{
+		if(membership == null)
+			index();
+		BitSet[] subtrees = new BitSet[ids.length];
+		for(int k = 0; k < ids.length; k++)
+		{
+			subtrees[k] = membership.get(ids[k]);
+			if(subtrees[k] == null)
+				subtrees[k] = new BitSet();
+		}
+		return subtrees;
+	}
+
+	/**
+	 * @param words: the residual words of a Mapping
+	 * @return the subtrees the words may match (those allowed for any of
+	 * the words), or null if they aren't restricted
+	 */
+	public BitSet getWordSubtrees(List<String> words)
+	{
+		BitSet b = new BitSet();
+		for(String w : words)
+			if(wordRules.containsKey(w))
+				b.or(wordRules.get(w));
+		if(b.isEmpty() && !learned)
+			return null;
+		return b;
+	}
+
+	/**
+	 * Learns the word rules from the second target: each word (not already
+	 * given a rule) is allowed to match the high-level branches of the
+	 * classes that have it in their names
+	 */
+	public void learnWords()
+	{
+		//The high-level branches are the first level of the target below
+		//its top classes with at least three classes, like those in the
+		//RelationshipMap (which are only found for the source and target)
+		Set<Integer> top = new HashSet<Integer>();
+		for(Integer c : target.getClasses())
+			if(parents(c).isEmpty() && !children(c).isEmpty())
+				top.add(c);
+		while(top.size() < 3)
+		{
+			Set<Integer> newTop = new HashSet<Integer>();
+			for(Integer c : top)
+				newTop.addAll(children(c));
+			if(newTop.isEmpty() || newTop.equals(top))
+				break;
+			top = newTop;
+		}
+		for(Integer c : top)
+			rootId(c);
+		rootId(-1);
+		index();
+		Set<String> given = new HashSet<String>(wordRules.keySet());
+		Lexicon lex = target.getLexicon();
+		for(Integer c : target.getClasses())
+		{
+			BitSet subtrees = membership.get(c);
+			Set<String> names = lex.getNames(c);
+			if(names == null)
+				continue;
+			//The words are split as in the WordLexicon (all of its words that
+			//can be residual words are found, with all their classes)
+			for(String n : names)
+			{
+				for(String w : n.split(" "))
+				{
+					String word = w.replaceAll("[()]", "");
+					if(given.contains(word) || !word.matches("^[a-zA-Z0-9]*$"))
+						continue;
+					BitSet b = wordRules.get(word);
+					if(b == null)
+					{
+						b = new BitSet();
+						wordRules.put(word, b);
+					}
+					b.or(subtrees);
+				}
+			}
+		}
+		learned = true;
+	}
+
+	/**
+	 * Marks the target classes in the given subtrees
+	 * @param subtrees: the subtrees of the target classes, as given by getSubtrees
+	 * @param allowed: the subtrees allowed (or null if they aren't restricted)
+	 * @param mask: the array where to mark the target classes that are in the
+	 * allowed subtrees (which is left unchanged if they aren't restricted)
+	 * @return the number of target classes marked
+	 */
+	public static int mask(BitSet[] subtrees, BitSet allowed, boolean[] mask)
+	{
+		if(allowed == null)
+		{
+			for(int k = 0; k < mask.length; k++)
+				mask[k] = true;
+			return mask.length;
+		}
+		int count = 0;
+		for(int k = 0; k < mask.length; k++)
+		{
+			mask[k] = subtrees[k].intersects(allowed);
+			if(mask[k])
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Reads a SubtreeRestriction from a tab-separated file, with a rule per line:
+	 * "word", a residual word and the URI of the root of a subtree of the second
+	 * target; "branch", the URI of a class of the first target and the URI of the
+	 * root of a subtree of the second target; or just "learn", to learn the rules
+	 * of the other words from the second target (lines starting with # are ignored)
+	 * @param file: the path to the file
+	 * @param target1: the first target ontology
+	 * @param target2: the second target ontology
+	 * @return the SubtreeRestriction with the rules in the file
+	 */
+	public static SubtreeRestriction read(String file, Ontology target1, Ontology target2) throws IOException
+	{
+		SubtreeRestriction r = new SubtreeRestriction(target2);
+		AML aml = AML.getInstance();
+		boolean learn = false;
+		BufferedReader inStream = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file),"UTF8"));
+		String line;
+		while((line = inStream.readLine()) != null)
+		{
+			line = line.trim();
+			if(line.equals("") || line.startsWith("#"))
+				continue;
+			String[] cols = line.split("\t");
+			if(cols[0].equals("learn"))
+			{
+				learn = true;
+				continue;
+			}
+			if(cols.length != 3)
+			{
+				System.out.println("WARNING: Ignoring invalid restriction: " + line);
+				continue;
+			}
+			int root = aml.getURIMap().getIndex(cols[2]);
+			if(!target2.isClass(root))
+			{
+				System.out.println("WARNING: Ignoring restriction to unknown class: " + cols[2]);
+				continue;
+			}
+			if(cols[0].equals("word"))
+				r.allowWord(cols[1], root);
+			else if(cols[0].equals("branch"))
+			{
+				int branch = aml.getURIMap().getIndex(cols[1]);
+				if(target1.isClass(branch))
+					r.allowBranch(branch, root);
+				else
+					System.out.println("WARNING: Ignoring restriction of unknown class: " + cols[1]);
+			}
+			else
+				System.out.println("WARNING: Ignoring invalid restriction: " + line);
+		}
+		inStream.close();
+		if(learn)
+			r.learnWords();
+		return r;
+	}
+
+	/**
+	 * @return the number of subtrees
+	 */
+	public int subtreeCount()
+	{
+		return roots.size();
+	}
+
+//Private Methods
+
+	private <K> void allow(HashMap<K,BitSet> rules, K key, int root)
+	{
+		BitSet b = rules.get(key);
+		if(b == null)
+		{
+			b = new BitSet();
+			rules.put(key, b);
+		}
+		b.set(rootId(root));
+	}
+
+	//The subclasses of a class in the target
+	private Set<Integer> children(int c)
+	{
+		Set<Integer> children = new HashSet<Integer>();
+		for(Integer i : rels.getChildren(c))
+			if(target.isClass(i))
+				children.add(i);
+		return children;
+	}
+
+	//Builds the index of the subtrees of each target class, going down from
+	//the root of each subtree (the classes outside the learned branches are
+	//in a subtree of their own, with the root -1)
+	private void index()
+	{
+		membership = new HashMap<Integer,BitSet>();
+		for(int r = 0; r < roots.size(); r++)
+		{
+			int root = roots.get(r);
+			if(root < 0)
+				continue;
+			HashSet<Integer> visited = new HashSet<Integer>();
+			LinkedList<Integer> queue = new LinkedList<Integer>();
+			queue.add(root);
+			visited.add(root);
+			while(!queue.isEmpty())
+			{
+				int c = queue.poll();
+				BitSet b = membership.get(c);
+				if(b == null)
+				{
+					b = new BitSet();
+					membership.put(c, b);
+				}
+				b.set(r);
+				for(Integer i : children(c))
+					if(visited.add(i))
+						queue.add(i);
+			}
+		}
+		Integer unbranched = rootIds.get(-1);
+		if(unbranched == null)
+			return;
+		for(Integer c : target.getClasses())
+		{
+			if(membership.containsKey(c))
+				continue;
+			BitSet b = new BitSet();
+			b.set(unbranched);
+			membership.put(c, b);
+		}
+	}
+
+	//The superclasses of a class in the target
+	private Set<Integer> parents(int c)
+	{
+		Set<Integer> parents = new HashSet<Integer>();
+		for(Integer i : rels.getParents(c))
+			if(target.isClass(i))
+				parents.add(i);
+		return parents;
+	}
+
+	//The number of the subtree with the given root, numbering it if it is new
+	private int rootId(int root)
+	{
+		Integer id = rootIds.get(root);
+		if(id != null)
+			return id;
+		id = roots.size();
+		roots.add(root);
+		rootIds.put(root, id);
+		membership = null;
+		return id;
+	}
+}
@@ -0,0 +1,249 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Evaluates an Alignment or CompoundAlignment against a reference at every    *
+* threshold at once: the mappings are checked against the reference once,    *
+* sorted by similarity, and swept from the highest similarity down, giving    *
+* the precision-recall curve (one point per distinct similarity) and the      *
+* threshold with the best F-measure. The counts are as in evaluateNoPrint     *
+* (mappings that are UNKNOWN in the reference count as neither correct nor    *
+* wrong).                                                                     *
+* Since the compound selectors keep the best mappings of each source class,  *
+* the alignment selected at a given second threshold is the one selected at  *
+* a lower threshold minus the mappings below it, so sweeping the result of a  *
+* run with a low second threshold evaluates the runs with higher ones (the    *
+* first threshold changes the candidates, so it still needs a run each).      *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import aml.settings.MappingRelation;
+
+public class ThresholdSweep
+{
+
+//Attributes
+
+	//The label of each mapping in the reference
+	private static final byte WRONG = 0;
+	private static final byte CORRECT = 1;
+	private static final byte CONFLICT = 2;
+	//The points of the curve: threshold, precision, recall, F-measure, found, correct
+	private List<Double[]> curve;
+	//The number of (non-UNKNOWN) mappings in the reference
+	private int total;
+	//The index of the point with the best F-measure
+	private int best;
+
+//Constructors
+
+	/**
+	 * Sweeps the thresholds of an Alignment
+	 * @param a: the Alignment to evaluate
+	 * @param ref: the reference Alignment
+	 */
+	public ThresholdSweep(Alignment a, Alignment ref)
+	{
+		double[] sims = new double[a.size()];
+		byte[] labels = new byte[a.size()];
+		int i = 0;
+		for(Mapping m : a)
+		{
+			sims[i] = m.getSimilarity();
+			labels[i] = WRONG;
+			if(ref.containsMapping(m))
+			{
+				if(ref.getRelationship(m.getSourceId(),m.getTargetId()).equals(MappingRelation.UNKNOWN))
+					labels[i] = CONFLICT;
+				else
+					labels[i] = CORRECT;
+			}
+			i++;
+		}
+		total = 0;
+		for(Mapping m : ref)
+			if(!m.getRelationship().equals(MappingRelation.UNKNOWN))
+				total++;
+		sweep(sims, labels);
+	}
+
+	/**
+	 * Sweeps the thresholds of a CompoundAlignment
+	 * @param a: the CompoundAlignment to evaluate
+	 * @param ref: the reference CompoundAlignment
+	 */
+	public ThresholdSweep(CompoundAlignment a, CompoundAlignment ref)
+	{
+		double[] sims = new double[a.size()];
+		byte[] labels = new byte[a.size()];
+		int i = 0;
+		for(CompoundMapping m : a)
+		{
+			sims[i] = m.getSimilarity();
+			labels[i] = WRONG;
+			if(ref.containsMapping(m))
+			{
+				if(ref.getRelationship(m.getSourceId(),m.getTargetId1(),m.getTargetId2()).
+						equals(MappingRelation.UNKNOWN))
+					labels[i] = CONFLICT;
+				else
+					labels[i] = CORRECT;
+			}
+			i++;
+		}
+		total = 0;
+		for(CompoundMapping m : ref)
+			if(!m.getRelationship().equals(MappingRelation.UNKNOWN))
+				total++;
+		sweep(sims, labels);
+	}
+
+//Public Methods
+
+	/**
+	 * @return the point of the curve with the best F-measure, as in
+	 * evaluateNoPrint (precision, recall, F-measure, found, correct,
+	 * reference), or null if there are no mappings
+	 */
+	public Double[] getBest()
+	{
+		if(curve.isEmpty())
+			return null;
+		return evaluation(curve.get(best));
+	}
+
+	/**
+	 * @return the threshold with the best F-measure (the lowest one, in case
+	 * of a tie), or -1 if there are no mappings
+	 */
+	public double getBestThreshold()
+	{
+		if(curve.isEmpty())
+			return -1.0;
+		return curve.get(best)[0];
+	}
+
+	/**
+	 * @return the precision-recall curve, with one point per distinct similarity,
+	 * from the highest threshold to the lowest, each point being the threshold,
+	 * precision, recall, F-measure, found and correct mappings
+	 */
+	public List<Double[]> getCurve()
+	{
+		return curve;
+	}
+
+	/**
+	 * @param thresh: a threshold
+	 * @return the evaluation of the mappings with similarity above the threshold,
+	 * as in evaluateNoPrint (precision, recall, F-measure, found, correct, reference)
+	 */
+	public Double[] getEvaluation(double thresh)
+	{
+		Double[] point = null;
+		for(Double[] p : curve)
+		{
+			if(p[0] < thresh)
+				break;
+			point = p;
+		}
+		if(point == null)
+			return new Double[]{Double.NaN, 0.0, Double.NaN, 0.0, 0.0, (double)total};
+		return evaluation(point);
+	}
+
+	/**
+	 * Saves the curve to a tab-separated file
+	 * @param file: the path to the file
+	 */
+	public void save(String file) throws Exception
+	{
+		PrintWriter outStream = new PrintWriter(new FileOutputStream(file));
+		outStream.println("Threshold\tPrecision\tRecall\tF-measure\tFound\tCorrect\tReference");
+		for(Double[] p : curve)
+			outStream.println(p[0] + "\t" + p[1] + "\t" + p[2] + "\t" + p[3] + "\t" +
+					p[4].intValue() + "\t" + p[5].intValue() + "\t" + total);
+		outStream.close();
+	}
+
+	@Override
+	public String toString()
+	{
+		if(curve.isEmpty())
+			return "No mappings to evaluate";
+		Double[] p = curve.get(best);
+		return "Best threshold: " + p[0] + " (Precision: " + Math.round(p[1]*1000)/10.0 +
+				"%; Recall: " + Math.round(p[2]*1000)/10.0 + "%; F-measure: " +
+				Math.round(p[3]*1000)/10.0 + "%)";
+	}
+
+//Private Methods
+
+	//Builds the curve from the similarities and labels of the mappings
+	private void sweep(double[] sims, byte[] labels)
+	{
+		//Sort the indexes of the mappings by descending similarity
+		Integer[] order = new Integer[sims.length];
+		for(int i = 0; i < order.length; i++)
+			order[i] = i;
+		final double[] s = sims;
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer i, Integer j)
+			{
+				return Double.compare(s[j], s[i]);
+			}
+		});
+		curve = new ArrayList<Double[]>();
+		best = 0;
+		double found = 0;
+		double correct = 0;
+		double conflict = 0;
+		for(int k = 0; k < order.length; k++)
+		{
+			int i = order[k];
+			found++;
+			if(labels[i] == CORRECT)
+				correct++;
+			else if(labels[i] == CONFLICT)
+				conflict++;
+			//Only add a point after the last mapping with each similarity
+			if(k + 1 < order.length && sims[order[k+1]] == sims[i])
+				continue;
+			double precision = correct/(found-conflict);
+			double recall = correct/total;
+			double fmeasure = 2*precision*recall/(precision+recall);
+			curve.add(new Double[]{sims[i], precision, recall, fmeasure, found, correct});
+			//Ties go to the lowest threshold (higher recall)
+			if(!(curve.get(best)[3] > fmeasure) && !Double.isNaN(fmeasure))
+				best = curve.size()-1;
+		}
+	}
+
+	//Converts a point of the curve to the format of evaluateNoPrint
+	private Double[] evaluation(Double[] p)
+	{
+		return new Double[]{p[1], p[2], p[3], p[4], p[5], (double)total};
+	}
+}
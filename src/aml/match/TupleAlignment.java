@@ -0,0 +1,175 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* An alignment of compound mappings between a source class and a tuple of k   *
+* target classes, one from each target ontology (e.g., anatomy, quality and   *
+* process), as produced by the TupleMatcher. The tuples are kept in flat      *
+* arrays (the source class followed by the k target classes of each tuple),  *
+* rather than as objects, since there can be many of them.                    *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+
+import aml.AML;
+import aml.ontology.Ontology;
+import aml.ontology.URIMap;
+import aml.settings.MappingRelation;
+
+public class TupleAlignment
+{
+
+//Attributes
+
+	//The number of target classes of each tuple
+	private int k;
+	//The classes of the tuples (the source class followed by the target
+	//classes of each tuple) and their similarities
+	private int[] classes;
+	private double[] sims;
+	private int size;
+
+//Constructors
+
+	/**
+	 * Constructs a new empty TupleAlignment
+	 * @param k: the number of target classes of each tuple
+	 */
+	public TupleAlignment(int k)
+	{
+		this.k = k;
+		classes = new int[64 * (k+1)];
+		sims = new double[64];
+		size = 0;
+	}
+
+//Public Methods
+
+	/**
+	 * Adds a new tuple to the TupleAlignment
+	 * @param sourceId: the source class
+	 * @param targetIds: the k target classes
+	 * @param sim: the similarity of the tuple
+	 */
+	public void add(int sourceId, int[] targetIds, double sim)
+	{
+		if(size == sims.length)
+		{
+			int[] c = new int[classes.length * 2];
+			System.arraycopy(classes, 0, c, 0, classes.length);
+			classes = c;
+			double[] s = new double[sims.length * 2];
+			System.arraycopy(sims, 0, s, 0, sims.length);
+			sims = s;
+		}
+		int start = size * (k+1);
+		classes[start] = sourceId;
+		System.arraycopy(targetIds, 0, classes, start + 1, k);
+		sims[size] = Math.round(sim*10000)/10000.0;
+		size++;
+	}
+
+	/**
+	 * @param index: the index of a tuple
+	 * @return the similarity of the tuple
+	 */
+	public double getSimilarity(int index)
+	{
+		return sims[index];
+	}
+
+	/**
+	 * @param index: the index of a tuple
+	 * @return the source class of the tuple
+	 */
+	public int getSourceId(int index)
+	{
+		return classes[index * (k+1)];
+	}
+
+	/**
+	 * @return the number of target classes of each tuple
+	 */
+	public int getTargetCount()
+	{
+		return k;
+	}
+
+	/**
+	 * @param index: the index of a tuple
+	 * @param target: the number of the target ontology (from 0 to k-1)
+	 * @return the class of the target ontology in the tuple
+	 */
+	public int getTargetId(int index, int target)
+	{
+		return classes[index * (k+1) + target + 1];
+	}
+
+	/**
+	 * Saves the TupleAlignment into a .tsv file in AML format, as in
+	 * CompoundAlignment.saveTSV3 but with a URI and label for each target
+	 * @param file: the output file
+	 * @param source: the source ontology
+	 * @param targets: the k target ontologies
+	 */
+	public void saveTSV(String file, Ontology source, Ontology[] targets) throws FileNotFoundException
+	{
+		PrintWriter outStream = new PrintWriter(file);
+		saveTSV(outStream, source, targets);
+		outStream.close();
+	}
+
+	/**
+	 * Writes the TupleAlignment to the given stream in .tsv format, as above
+	 * @param outStream: the output stream
+	 * @param source: the source ontology
+	 * @param targets: the k target ontologies
+	 */
+	public void saveTSV(PrintWriter outStream, Ontology source, Ontology[] targets)
+	{
+		URIMap uris = AML.getInstance().getURIMap();
+		outStream.println("#AgreementMakerLight Alignment File");
+		outStream.println("#Source ontology:\t" + source.getURI());
+		for(int j = 0; j < k; j++)
+			outStream.println("#Target " + (j+1) + " ontology:\t" + targets[j].getURI());
+		String header = "Source URI\tSource Label";
+		for(int j = 0; j < k; j++)
+			header += "\tTarget " + (j+1) + " URI\tTarget " + (j+1) + " Label";
+		outStream.println(header + "\tSimilarity\tRelationship");
+		for(int i = 0; i < size; i++)
+		{
+			int s = getSourceId(i);
+			String line = uris.getURI(s) + "\t" + source.getLexicon().getCorrectedName(s);
+			for(int j = 0; j < k; j++)
+			{
+				int t = getTargetId(i, j);
+				line += "\t" + uris.getURI(t) + "\t" + targets[j].getLexicon().getCorrectedName(t);
+			}
+			outStream.println(line + "\t" + sims[i] + "\t" + MappingRelation.EQUIVALENCE.toString());
+		}
+		outStream.flush();
+	}
+
+	/**
+	 * @return the number of tuples in the TupleAlignment
+	 */
+	public int size()
+	{
+		return size;
+	}
+}
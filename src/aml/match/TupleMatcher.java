@@ -0,0 +1,282 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Matches a source ontology with a sequence of k target ontologies (e.g.,     *
+* source = anatomy + quality + process), generalizing the two steps of the    *
+* compound matching: the first target is matched with the WordMatcher, and   *
+* each following target only with the words left to match by the previous    *
+* ones. The similarity of a tuple is the average of the similarities of its   *
+* steps (as in sequentialTargetMatch, for two targets), and only the beam     *
+* (the best partial tuples of each source class) is extended at each step,   *
+* so the number of tuples grows linearly rather than exponentially with k.    *
+* Partial tuples are also dropped when they can't reach the threshold even   *
+* if the remaining targets were matched perfectly.                            *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.match;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import aml.AML;
+import aml.ontology.Ontology;
+import aml.util.RunMetrics;
+
+public class TupleMatcher
+{
+
+//Attributes
+
+	//The source and target ontologies
+	private Ontology source;
+	private Ontology[] targets;
+	//The number of partial tuples of each source class kept at each step
+	private int beam;
+
+//Constructors
+
+	/**
+	 * Constructs a new TupleMatcher between the source and the target ontologies
+	 * @param source: the source ontology
+	 * @param targets: the target ontologies, in the order in which they are matched
+	 * @param beam: the number of partial tuples of each source class kept at each step
+	 */
+	public TupleMatcher(Ontology source, Ontology[] targets, int beam)
+	{
+		this.source = source;
+		this.targets = targets;
+		this.beam = beam;
+	}
+
+//Public Methods
+
+	/**
+	 * Matches the source with the target ontologies
+	 * @param thresh: the threshold for the first target
+	 * @param thresh2: the threshold for the tuples (from the second target on)
+	 * @return the best tuples of each source class, up to the beam width
+	 */
+	public TupleAlignment match(double thresh, double thresh2)
+	{
+		RunMetrics metrics = AML.getInstance().getMetrics();
+		long time = metrics.start();
+		int k = targets.length;
+
+		//The first target is matched as in the first step of the compound matching
+		ResidualTable residuals = new ResidualTable();
+		new WordMatcher(source, targets[0]).match(thresh, null, null, residuals);
+		HashMap<Integer,PriorityQueue<Tuple>> best = new HashMap<Integer,PriorityQueue<Tuple>>();
+		for(int i = 0; i < residuals.size(); i++)
+		{
+			//The similarity of the first step is rounded, as in its Mappings
+			Tuple t = new Tuple(residuals.getSourceId(i), new int[]{residuals.getTargetId(i)},
+					Math.round(residuals.getSimilarity(i)*10000)/10000.0, residuals.getWeight(i),
+					residuals.getWords(i));
+			//The partial tuple is kept if it can still reach thresh2 with the other targets
+			//(and, as in the CompoundAlignment, a class can't be in a tuple twice)
+			if(t.source != t.targets[0] && bound(t.sim, 1, t.weight) >= thresh2)
+				offer(best, t);
+		}
+		List<Tuple> tuples = flatten(best);
+		metrics.count("tuple.step1" + RunMetrics.PASSED, tuples.size());
+
+		for(int step = 1; step < k && !tuples.isEmpty(); step++)
+		{
+			String name = "tuple.step" + (step+1);
+			WordMatcher wm = new WordMatcher(source, targets[step]);
+			Set<Integer> targetIds = targets[step].getClasses();
+			int[] ids = new int[targetIds.size()];
+			int n = 0;
+			for(Integer id : targetIds)
+				ids[n++] = id;
+			double[] sims = new double[ids.length];
+			long scored = 0;
+			best = new HashMap<Integer,PriorityQueue<Tuple>>();
+
+			//As in sequentialTargetMatch, the similarities of each list of words
+			//left to match are computed once for all the tuples that have it
+			HashMap<List<String>,List<Tuple>> bags = new HashMap<List<String>,List<Tuple>>();
+			for(Tuple t : tuples)
+			{
+				List<Tuple> l = bags.get(t.words);
+				if(l == null)
+				{
+					l = new ArrayList<Tuple>();
+					bags.put(t.words, l);
+				}
+				l.add(t);
+			}
+			for(List<String> words : bags.keySet())
+			{
+				double max = wm.sequentialSimilarities(ids, words, sims);
+				scored += ids.length;
+				//The words left after each target class are computed only for the
+				//classes that enter the beam, and only if there are more targets
+				HashMap<Integer,List<String>> left = new HashMap<Integer,List<String>>();
+				for(Tuple t : bags.get(words))
+				{
+					//No target class can extend the tuple if the most similar can't
+					if(bound(extend(t.sim, step, max * t.weight), step + 1, t.weight) < thresh2)
+						continue;
+					PriorityQueue<Tuple> q = queue(best, t.source);
+					for(int c = 0; c < ids.length; c++)
+					{
+						double sim = extend(t.sim, step, sims[c] * t.weight);
+						if(bound(sim, step + 1, t.weight) < thresh2 || (q.size() == beam && q.peek().sim >= sim) ||
+								t.contains(ids[c]))
+							continue;
+						List<String> w = words;
+						if(step + 1 < k)
+						{
+							w = left.get(c);
+							if(w == null)
+							{
+								w = wm.sequentialResidual(ids[c], words);
+								left.put(c, w);
+							}
+						}
+						int[] tIds = new int[step + 1];
+						System.arraycopy(t.targets, 0, tIds, 0, step);
+						tIds[step] = ids[c];
+						offer(best, new Tuple(t.source, tIds, sim, t.weight, w));
+					}
+				}
+			}
+			metrics.count(name + RunMetrics.CANDIDATES, (long)tuples.size() * ids.length);
+			metrics.count(name + RunMetrics.SCORED, scored);
+			tuples = flatten(best);
+			metrics.count(name + RunMetrics.PASSED, tuples.size());
+		}
+
+		TupleAlignment a = new TupleAlignment(k);
+		for(Tuple t : tuples)
+			if(t.targets.length == k)
+				a.add(t.source, t.targets, t.sim);
+		metrics.count("tuple" + RunMetrics.EMITTED, a.size());
+		metrics.stop("tuple", time);
+		return a;
+	}
+
+//Private Methods
+
+	//The highest similarity that a tuple with the given similarity and number
+	//of target classes could reach, if the remaining targets matched perfectly
+	private double bound(double sim, int matched, double weight)
+	{
+		return (sim * matched + (targets.length - matched) * weight) / targets.length;
+	}
+
+	//The similarity of a tuple with the given number of target classes,
+	//extended with a target class with the given (weighted) similarity
+	private static double extend(double sim, int matched, double stepSim)
+	{
+		return (sim * matched + stepSim) / (matched + 1);
+	}
+
+	//The partial tuples in the beams of all source classes,
+	//from the most similar to the least in each beam
+	private static List<Tuple> flatten(HashMap<Integer,PriorityQueue<Tuple>> best)
+	{
+		List<Tuple> tuples = new ArrayList<Tuple>();
+		for(PriorityQueue<Tuple> q : best.values())
+		{
+			List<Tuple> l = new ArrayList<Tuple>(q);
+			Collections.sort(l, Collections.reverseOrder());
+			tuples.addAll(l);
+		}
+		return tuples;
+	}
+
+	//Adds a partial tuple to the beam of its source class, if it is among the best
+	private void offer(HashMap<Integer,PriorityQueue<Tuple>> best, Tuple t)
+	{
+		PriorityQueue<Tuple> q = queue(best, t.source);
+		//The same tuple can be reached from different names of its classes, in
+		//which case only its highest similarity is kept (in a single beam slot)
+		for(Tuple u : q)
+		{
+			if(Arrays.equals(u.targets, t.targets))
+			{
+				if(u.sim < t.sim)
+				{
+					q.remove(u);
+					q.add(t);
+				}
+				return;
+			}
+		}
+		if(q.size() < beam)
+			q.add(t);
+		else if(q.peek().sim < t.sim)
+		{
+			q.poll();
+			q.add(t);
+		}
+	}
+
+	//The beam of a source class (with the least similar partial tuple at the head)
+	private static PriorityQueue<Tuple> queue(HashMap<Integer,PriorityQueue<Tuple>> best, int source)
+	{
+		PriorityQueue<Tuple> q = best.get(source);
+		if(q == null)
+		{
+			q = new PriorityQueue<Tuple>();
+			best.put(source, q);
+		}
+		return q;
+	}
+
+	//A partial tuple: the source class, the target classes matched so far,
+	//the similarity, the weight of the source name and the words left to match
+	private static class Tuple implements Comparable<Tuple>
+	{
+		private int source;
+		private int[] targets;
+		private double sim;
+		private double weight;
+		private List<String> words;
+
+		Tuple(int source, int[] targets, double sim, double weight, List<String> words)
+		{
+			this.source = source;
+			this.targets = targets;
+			this.sim = sim;
+			this.weight = weight;
+			this.words = words;
+		}
+
+		@Override
+		public int compareTo(Tuple o)
+		{
+			return Double.compare(sim, o.sim);
+		}
+
+		boolean contains(int id)
+		{
+			if(source == id)
+				return true;
+			for(int t : targets)
+				if(t == id)
+					return true;
+			return false;
+		}
+	}
+}
@@ -22,6 +22,10 @@
  ******************************************************************************/
 package aml.match;
 
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
@@ -31,15 +35,43 @@ import java.util.HashMap;
 import aml.AML;
 import aml.match.CompoundAlignment;
 import aml.ontology.Ontology;
-import aml.ontology.WordLexicon;
-import aml.util.Table2List;
+import aml.ontology.WordLexiconView;
+import aml.util.PipelineEvents;
+import aml.util.Progress;
+import aml.util.RunMetrics;
+import aml.util.SimilarityCache;
 import aml.util.Table2Map;
 
 public class WordMatcher
 {
 	//Attributes
-	private WordLexicon sourceLex;
-	private WordLexicon targetLex;
+	private WordLexiconView sourceLex;
+	private WordLexiconView targetLex;
+	//The number of each source word in the target WordLexicon (-1 if no
+	//target class has it), so that words are compared by number
+	private int[] toTarget;
+	//The target ontology, when given explicitly (otherwise the sequential
+	//match is done against the second target ontology in AML)
+	private Ontology target;
+	//The cache of name similarities (null for no cache) and the hashes of the
+	//measures of the two matching steps, which depend on the WordLexicons
+	private SimilarityCache cache;
+	private long nameMeasure;
+	private long combinedMeasure;
+	//The restriction of the second matching step to some subtrees
+	//of the target (null to match all target classes)
+	private SubtreeRestriction restriction;
+	//Whether to score the second matching step with a DenseScorer when it is
+	//cheaper, and the scorer (built for the target classes of the last match)
+	private boolean dense = true;
+	private DenseScorer scorer;
+	private int[] scorerIds;
+	//Whether to find the candidates of the first matching step approximately,
+	//with a MinHashLSH, and whether to verify them with the exact word similarity
+	private boolean approximate = false;
+	private boolean verify = true;
+	//Whether to join the blocks of the first matching step with a PrefixJoin
+	private boolean prefixJoin = true;
 	AML aml = AML.getInstance();
 
 	//Constructors
@@ -50,56 +82,131 @@ public class WordMatcher
 	public WordMatcher()
 	{
 		AML aml = AML.getInstance();
-		sourceLex = aml.getSource().getWordLexicon();
-		targetLex = aml.getTarget().getWordLexicon();
+		sourceLex = aml.getSource().getWordLexiconView();
+		targetLex = aml.getTarget().getWordLexiconView();
+		toTarget = translate(sourceLex, targetLex);
+		recordSizes();
+		openCache();
 	}
 
 	public WordMatcher(Ontology target)
 	{
 		AML aml = AML.getInstance();
-		sourceLex = aml.getSource().getWordLexicon();
-		targetLex = target.getWordLexicon();
+		sourceLex = aml.getSource().getWordLexiconView();
+		targetLex = target.getWordLexiconView();
+		toTarget = translate(sourceLex, targetLex);
+		recordSizes();
+		openCache();
+	}
+
+	/**
+	 * Constructs a new WordMatcher between the given ontologies, which
+	 * need not be the ones currently open in AML (e.g., in batch mode)
+	 * @param source: the source ontology
+	 * @param target: the target ontology (the second target ontology
+	 * in the case of sequentialTargetMatch)
+	 */
+	public WordMatcher(Ontology source, Ontology target)
+	{
+		sourceLex = source.getWordLexiconView();
+		targetLex = target.getWordLexiconView();
+		this.target = target;
+		toTarget = translate(sourceLex, targetLex);
+		recordSizes();
+		openCache();
 	}
 
 	//Public Methods
 
 	public Alignment match(double thresh)
 	{
+		return match(thresh, null);
+	}
+
+	/**
+	 * Matches only the given source classes with the target (e.g., the classes
+	 * affected by a new version of an ontology, when re-matching incrementally)
+	 * @param thresh: threshold
+	 * @param sources: the source classes to match, or null to match all classes
+	 */
+	public Alignment match(double thresh, Set<Integer> sources)
+	{
+		return match(thresh, sources, null);
+	}
+
+	/**
+	 * Matches the given source classes with the target as above, also recording
+	 * the word similarity of each pair of classes that passed the block filter
+	 * (half the threshold), before their names are compared (e.g., so that the
+	 * alignment at a higher threshold can be derived from this one)
+	 * @param thresh: threshold
+	 * @param sources: the source classes to match, or null to match all classes
+	 * @param pairSims: the table where to record the word similarities
+	 * (or null to not record them)
+	 */
+	public Alignment match(double thresh, Set<Integer> sources, Table2Map<Integer,Integer,Double> pairSims)
+	{
+		return match(thresh, sources, pairSims, null);
+	}
+
+	/**
+	 * Matches the given source classes with the target as above, also adding
+	 * the SubMappings of the alignment to the given residual table, with the
+	 * words left to match in the second step, as they are found
+	 * @param thresh: threshold
+	 * @param sources: the source classes to match, or null to match all classes
+	 * @param pairSims: the table where to record the word similarities
+	 * (or null to not record them)
+	 * @param residuals: the residual table to fill (or null to not fill it)
+	 */
+	public Alignment match(double thresh, Set<Integer> sources, Table2Map<Integer,Integer,Double> pairSims,
+			ResidualTable residuals)
+	{
+		RunMetrics metrics = aml.getMetrics();
+		long time = metrics.start();
+		//Each pair of blocks is a unit of work (approximate matching is a single one)
+		Progress progress = aml.getProgress();
+		progress.begin("word.match", approximate ? 1 : (long)sourceLex.blockCount() * targetLex.blockCount());
 		Alignment a = new Alignment();
 		//We need to compute a preliminary
 		//alignment and then apply the compound matching algorithms.
 		double t = thresh * 0.5;
 
+		//Approximate matching finds the candidates of all classes at once
+		if(approximate)
+		{
+			Vector<Mapping> temp = new MinHashLSH(sourceLex,targetLex,t,verify).match(sources,pairSims);
+			sortByClass(temp);
+			addMappings(temp, thresh, a, residuals);
+			progress.worked(1);
+		}
 		//Global matching is done by chunks so as not to overload the memory
 		//Match each chunk of both WordLexicons
-		for(int i = 0; i < sourceLex.blockCount(); i++)
+		PrefixJoin join = new PrefixJoin(sourceLex, targetLex);
+		for(int i = 0; i < sourceLex.blockCount() && !approximate; i++)
 		{
-			Table2List<String,Integer> sWLex = sourceLex.getWordTable(i);
 			for(int j = 0; j < targetLex.blockCount(); j++)
 			{
-				Table2List<String,Integer> tWLex = targetLex.getWordTable(j);
-				Vector<Mapping> temp = matchBlocks(sWLex,tWLex,t);
-				for(Mapping m : temp)
-				{
-					//First compute the name similarity
-					List<SubMapping> sMaps = targetNameSimilarity(m.getSourceId(),m.getTargetId());
-					double nameSim = 0.0;
-
-					for(SubMapping s : sMaps)
-					{
-						nameSim = s.getSimilarity();
-						if(nameSim >= thresh)
-							m.addSubMapping(s);
-					}
-
-					if(m.getSubMappings().size()>0)	{
-						for(SubMapping sm : m.getSubMappings()){	
-							a.add(sm.getSourceId(), sm.getTargetId(), sm.getSimilarity(), m.getSubMappings());
-						}
-					}
-				}
+				Object e = PipelineEvents.BLOCK_PAIR.begin();
+				int emitted = a.size();
+				int[][] shared = sharedWords(sourceLex, i, targetLex, j, toTarget);
+				Vector<Mapping> temp;
+				if(prefixJoin)
+					temp = join.match(shared,t,sources,pairSims);
+				else
+					temp = matchBlocks(shared,t,sources,pairSims);
+				sortByClass(temp);
+				addMappings(temp, thresh, a, residuals);
+				if(e != null)
+					PipelineEvents.BLOCK_PAIR.commit(e, i, j,
+							(long)(sourceLex.blockWordsEnd(i) - sourceLex.blockWordsStart(i)),
+							(long)(targetLex.blockWordsEnd(j) - targetLex.blockWordsStart(j)),
+							(long)temp.size(), (long)(a.size() - emitted));
+				progress.worked(1);
 			}
 		}		
+		metrics.count("word.match" + RunMetrics.EMITTED, a.size());
+		metrics.stop("word.match", time);
 		return a;
 	}
 
@@ -111,65 +218,324 @@ public class WordMatcher
 	 *  the words that didn't align in the first match
 	 */
 	public CompoundAlignment sequentialTargetMatch(double thresh, HashMap<Mapping,List<String>> map)
+	{
+		CompoundAlignment compAlign = new CompoundAlignment();
+		sequentialTargetMatch(thresh, map, compAlign);
+		aml.getMetrics().count("word.sequential" + RunMetrics.EMITTED, compAlign.size());
+		return compAlign;
+	}
+
+	/**
+	 * Matches the source with the second target as above, but streams each
+	 * compound mapping above the threshold into the given collector (e.g., a
+	 * CompoundStreamSelector) instead of building a CompoundAlignment.
+	 * @param thresh: threshold
+	 * @param map: HashMap with a Mapping as key and a List<String> which contains 
+	 *  the words that didn't align in the first match
+	 * @param collector: the collector that receives the compound mappings
+	 */
+	public void sequentialTargetMatch(double thresh, HashMap<Mapping,List<String>> map, CompoundCollector collector)
 	{
 		double nameSim = 0.0;
 		AML aml = AML.getInstance();
-		CompoundAlignment compAlign = new CompoundAlignment();
-		Set<Integer> target2ids = aml.getTarget2().getClasses();
+		RunMetrics metrics = aml.getMetrics();
+		long time = metrics.start();
+		Ontology target2 = target;
+		if(target2 == null)
+			target2 = aml.getTarget2();
+		Set<Integer> target2ids = target2.getClasses();
+		int[] ids = new int[target2ids.size()];
+		int k = 0;
+		for(Integer id : target2ids)
+			ids[k++] = id;
+		long passed = 0;
+		long scored = 0;
+		//The subtrees of the target classes and the classes that each group of
+		//words and each Mapping may match, if the search space is restricted
+		BitSet[] subtrees = null;
+		boolean[] wordMask = null;
+		boolean[] branchMask = null;
+		if(restriction != null)
+		{
+			subtrees = restriction.getSubtrees(ids);
+			wordMask = new boolean[ids.length];
+			branchMask = new boolean[ids.length];
+		}
+
+		//The similarities of the words of each group of Mappings to the target
+		//classes are computed once, then combined with those of each Mapping
+		HashMap<List<String>,List<Mapping>> bags = ResidualTable.bags(map);
+		//Each group of words is a unit of work
+		Progress progress = aml.getProgress();
+		progress.begin("word.sequential", bags.size());
+		double[] sims = new double[ids.length];
+		long denseBags = 0;
+		for(List<String> words : bags.keySet())
+		{
+			//Each group of words is an event (rather than each Mapping, as
+			//events are cheap when not recorded but not free)
+			Object e = PipelineEvents.SEQUENTIAL_BATCH.begin();
+			long batchPassed = passed;
+			//The hash of the words, from which the keys of their similarities are built
+			long wordsKey = 0;
+			if(cache != null)
+				wordsKey = SimilarityCache.hash(combinedMeasure, words);
+			int allowed = ids.length;
+			if(restriction != null)
+				allowed = SubtreeRestriction.mask(subtrees, restriction.getWordSubtrees(words), wordMask);
+			scored += allowed;
+			double max = 0.0;
+			if(dense && scorer(ids).isCheaper(words, allowed))
+			{
+				//All classes are scored at once, then those outside the restriction cleared
+				denseBags++;
+				max = scorer.score(words, sims);
+				if(wordMask != null)
+				{
+					max = 0.0;
+					for(k = 0; k < ids.length; k++)
+					{
+						if(!wordMask[k])
+							sims[k] = 0.0;
+						else if(sims[k] > max)
+							max = sims[k];
+					}
+				}
+			}
+			else
+			{
+				WordBag bag = bag(words);
+				for(k = 0; k < ids.length; k++)
+				{
+					sims[k] = 0.0;
+					if(wordMask != null && !wordMask[k])
+						continue;
+					//First compute the name similarity
+					sims[k] = sequentialSimilarity(ids[k],bag,wordsKey);
+					if(sims[k] > max)
+						max = sims[k];
+				}
+			}
+			for(Mapping m : bags.get(words))
+			{
+				boolean[] mask = wordMask;
+				if(restriction != null)
+				{
+					BitSet branch = restriction.getBranchSubtrees(m.getTargetId());
+					if(branch != null)
+					{
+						SubtreeRestriction.mask(subtrees, branch, branchMask);
+						for(k = 0; k < ids.length; k++)
+							branchMask[k] &= wordMask[k];
+						mask = branchMask;
+					}
+				}
+				//No target class passes if the most similar doesn't
+				if((max * m.getWeight() + m.getSimilarity())/2 >= thresh)
+				{
+					for(k = 0; k < ids.length; k++)
+					{
+						if(mask != null && !mask[k])
+							continue;
+						nameSim = sims[k];
+						nameSim *= m.getWeight();
+						double sim = nameSim;
+
+						//Computes the average of this similarity with the 
+						//similarity of the first matching step.
+						double finalSim = (sim +m.getSimilarity())/2;
+						if(finalSim >= thresh)
+						{
+							collector.add(m.getSourceId(),m.getTargetId(),ids[k],finalSim);
+							passed++;
+						}
+					}
+				}
+			}
+			if(e != null)
+				PipelineEvents.SEQUENTIAL_BATCH.commit(e, (long)words.size(), (long)bags.get(words).size(),
+						(long)bags.get(words).size() * ids.length, passed - batchPassed);
+			progress.worked(1);
+		}
+		metrics.count("word.sequential" + RunMetrics.CANDIDATES, (long)map.size() * ids.length);
+		metrics.count("word.sequential" + RunMetrics.SCORED, scored);
+		metrics.count("word.sequential.dense" + RunMetrics.SCORED, denseBags);
+		metrics.count("word.sequential" + RunMetrics.PASSED, passed);
+		metrics.stop("word.sequential", time);
+	}
 
-		for(Mapping m:map.keySet() )
+	/**
+	 * Computes the similarity of a list of words to each of the given target
+	 * classes, as in sequentialTargetMatch (e.g., for a stage of the TupleMatcher)
+	 * @param ids: the target classes
+	 * @param words: the words left to match
+	 * @param sims: the array where to put the similarity to each class
+	 * @return the highest similarity
+	 */
+	public double sequentialSimilarities(int[] ids, List<String> words, double[] sims)
+	{
+		if(dense && scorer(ids).isCheaper(words, ids.length))
+			return scorer.score(words, sims);
+		long wordsKey = 0;
+		if(cache != null)
+			wordsKey = SimilarityCache.hash(combinedMeasure, words);
+		WordBag bag = bag(words);
+		double max = 0.0;
+		for(int k = 0; k < ids.length; k++)
+		{
+			sims[k] = sequentialSimilarity(ids[k],bag,wordsKey);
+			if(sims[k] > max)
+				max = sims[k];
+		}
+		return max;
+	}
+
+	/**
+	 * @param targetId: a target class
+	 * @param words: the words left to match
+	 * @return the words that are still left to match after matching the
+	 * target class, i.e., those that aren't in its most similar name
+	 */
+	public List<String> sequentialResidual(int targetId, List<String> words)
+	{
+		long wordsKey = 0;
+		if(cache != null)
+			wordsKey = SimilarityCache.hash(combinedMeasure, words);
+		int pos = targetLex.classPosition(targetId);
+		if(pos < 0)
+			return words;
+		WordBag bag = bag(words);
+		double nameSim = 0;
+		int best = -1;
+		for(int q = targetLex.classNamesStart(pos); q < targetLex.classNamesEnd(pos); q++)
 		{
-			for(Integer id: target2ids)
+			double sim = targetLex.classNameWeight(q) * combinedSimilarity(bag,targetLex.className(q),wordsKey);
+			if(sim > nameSim)
 			{
-				List<String> words = map.get(m);
-				//First compute the name similarity
-				nameSim = sequentialSimilarity(id,words);
-				nameSim *= m.getWeight();
-				double sim = nameSim;
-
-				//Computes the average of this similarity with the 
-				//similarity of the first matching step.
-				double finalSim = (sim +m.getSimilarity())/2;
-				if(finalSim >= thresh)
-					compAlign.add(m.getSourceId(),m.getTargetId(),id,finalSim);
+				nameSim = sim;
+				best = targetLex.className(q);
 			}
 		}
-		return compAlign;
+		if(best < 0)
+			return words;
+		List<String> residual = new ArrayList<String>();
+		for(int k = 0; k < bag.words.length; k++)
+			if(bag.words[k] < 0 || !targetNameHas(best, bag.words[k]))
+				residual.add(words.get(k));
+		return residual;
+	}
+
+	/**
+	 * Sets whether to find the candidates of the first matching step (match)
+	 * approximately, with a MinHashLSH instead of joining all pairs of blocks,
+	 * which is faster for very large ontologies but can miss some mappings
+	 * @param approx: whether to find the candidates approximately
+	 * @param v: whether to verify the candidates with the exact word similarity
+	 * (otherwise the similarity estimated from their signatures is used)
+	 */
+	public void setApproximate(boolean approx, boolean v)
+	{
+		approximate = approx;
+		verify = v;
+	}
+
+	/**
+	 * Sets whether to join the blocks of the first matching step (match) with
+	 * a PrefixJoin, which finds the same mappings while scoring fewer pairs
+	 * of classes, or to score all the pairs that share any word
+	 * @param p: whether to use the PrefixJoin
+	 */
+	public void setPrefixJoin(boolean p)
+	{
+		prefixJoin = p;
+	}
+
+	/**
+	 * Sets whether to score the second matching step with a DenseScorer, which
+	 * gives the same similarities, when it is estimated to be cheaper than
+	 * comparing the words with the names of each target class (default true)
+	 * @param d: whether to use the DenseScorer
+	 */
+	public void setDense(boolean d)
+	{
+		dense = d;
+	}
+
+	/**
+	 * Restricts the second matching step to some subtrees of the target
+	 * @param r: the restriction (or null to match all target classes)
+	 */
+	public void setRestriction(SubtreeRestriction r)
+	{
+		restriction = r;
 	}
 
 	//Private
 
+	//Computes the name similarity of the pairs of classes found by their words,
+	//adding those above the threshold to the alignment (and residual table)
+	private void addMappings(Vector<Mapping> temp, double thresh, Alignment a, ResidualTable residuals)
+	{
+		RunMetrics metrics = aml.getMetrics();
+		for(Mapping m : temp)
+		{
+			//First compute the name similarity
+			List<SubMapping> sMaps = targetNameSimilarity(m.getSourceId(),m.getTargetId());
+			double nameSim = 0.0;
+
+			metrics.count("word.names" + RunMetrics.SCORED, sMaps.size());
+			for(SubMapping s : sMaps)
+			{
+				nameSim = s.getSimilarity();
+				if(nameSim >= thresh)
+					m.addSubMapping(s);
+			}
+			metrics.count("word.names" + RunMetrics.PASSED, m.getSubMappings().size());
+
+			if(m.getSubMappings().size()>0)	{
+				boolean isNew = !a.containsMapping(m.getSourceId(), m.getTargetId());
+				for(SubMapping sm : m.getSubMappings()){	
+					a.add(sm.getSourceId(), sm.getTargetId(), sm.getSimilarity(), m.getSubMappings());
+				}
+				//The alignment keeps the SubMappings of the first Mapping of each pair of classes
+				if(residuals != null && isNew && a.containsMapping(m.getSourceId(), m.getTargetId()))
+					for(SubMapping sm : m.getSubMappings())
+						residuals.add(sm);
+			}
+		}
+	}
+
 	/**
-	 * Matches two WordLexicon blocks by class.
+	 * Matches two WordLexicon blocks by class, going through the words they
+	 * share (in the order of their numbers, which is alphabetical in both
+	 * WordLexicons) and the postings of each word in both blocks.
 	 * Used by match() method either to compute the final BY_CLASS alignment
 	 * or to compute a preliminary alignment which is then refined according
 	 * to the WordMatchStrategy.
 	 */
-	private Vector<Mapping> matchBlocks(Table2List<String,Integer> sWLex,
-			Table2List<String,Integer> tWLex, double thresh)
+	private Vector<Mapping> matchBlocks(int[][] shared, double thresh, Set<Integer> sourceFilter,
+			Table2Map<Integer,Integer,Double> pairSims)
 			{
 		Table2Map<Integer,Integer,Double> maps = new Table2Map<Integer,Integer,Double>();
-		//To minimize iterations, we want to iterate through the smallest Lexicon
-		boolean sourceIsSmaller = (sWLex.keyCount() <= tWLex.keyCount());
-		Set<String> words;
-		if(sourceIsSmaller)
-			words = sWLex.keySet();
-		else
-			words = tWLex.keySet();
-
-		for(String s : words)
+		int[] sourceWords = shared[0];
+		int[] targetWords = shared[1];
+		for(int k = 0; k < sourceWords.length; k++)
 		{
-			List<Integer> sourceIndexes = sWLex.get(s);
-			List<Integer> targetIndexes = tWLex.get(s);
-			if(sourceIndexes == null || targetIndexes == null)
-				continue;
-			double ec = sourceLex.getWordEC(s) * targetLex.getWordEC(s);
-			for(Integer i : sourceIndexes)
+			int s = sourceWords[k];
+			int t = targetWords[k];
+			double ec = sourceLex.wordEC(sourceLex.blockWord(s)) * targetLex.wordEC(targetLex.blockWord(t));
+			for(int x = sourceLex.postingsStart(s); x < sourceLex.postingsEnd(s); x++)
 			{
-				double sim = ec * sourceLex.getWordWeight(s,i);
-				for(Integer j : targetIndexes)
+				int i = sourceLex.classId(sourceLex.posting(x));
+				if(i < 0 || (sourceFilter != null && !sourceFilter.contains(i)))
+					continue;
+				double sim = ec * sourceLex.postingWeight(x);
+				for(int y = targetLex.postingsStart(t); y < targetLex.postingsEnd(t); y++)
 				{
-					double finalSim = Math.sqrt(sim * targetLex.getWordWeight(s,j));
+					int j = targetLex.classId(targetLex.posting(y));
+					if(j < 0)
+						continue;
+					double finalSim = Math.sqrt(sim * targetLex.postingWeight(y));
 					Double previousSim = maps.get(i,j);
 					if(previousSim == null)
 						previousSim = 0.0;
@@ -181,6 +547,7 @@ public class WordMatcher
 		}
 		Set<Integer> sources = maps.keySet();
 		Vector<Mapping> a = new Vector<Mapping>();
+		long scored = 0;
 		for(Integer i : sources)
 		{
 			Set<Integer> targets = maps.keySet(i);
@@ -188,11 +555,21 @@ public class WordMatcher
 			{
 				double sim = maps.get(i,j);
 				sim /= sourceLex.getClassEC(i) + targetLex.getClassEC(j) - sim;
+				scored++;
 
 				if(sim >= thresh)
+				{
 					a.add(new Mapping(i, j, sim));
+					if(pairSims != null)
+						pairSims.add(i, j, sim);
+				}
 			}
 		}
+		//Candidate pairs are those sharing at least one word
+		RunMetrics metrics = aml.getMetrics();
+		metrics.count("word.blocks" + RunMetrics.CANDIDATES, maps.size());
+		metrics.count("word.blocks" + RunMetrics.SCORED, scored);
+		metrics.count("word.blocks" + RunMetrics.PASSED, a.size());
 		return a;
 	}
 
@@ -202,21 +579,30 @@ public class WordMatcher
 		double sim = 0;
 		double weight;
 
-		Set<String> sourceNames = sourceLex.getNames(sourceId);
-		Set<String> targetNames = targetLex.getNames(targetId);
 		List<SubMapping> subMappings = new ArrayList<SubMapping>();
+		int sourcePos = sourceLex.classPosition(sourceId);
+		int targetPos = targetLex.classPosition(targetId);
+		if(sourcePos < 0 || targetPos < 0)
+			return subMappings;
 
-		for(String s : sourceNames)
+		for(int p = sourceLex.classNamesStart(sourcePos); p < sourceLex.classNamesEnd(sourcePos); p++)
 		{
-			weight = sourceLex.getNameWeight(s,sourceId);
-			for(String t : targetNames)
+			int s = sourceLex.className(p);
+			weight = sourceLex.classNameWeight(p);
+			long sourceKey = 0;
+			if(cache != null)
+				sourceKey = sourceLex.hashName(nameMeasure, s);
+			for(int q = targetLex.classNamesStart(targetPos); q < targetLex.classNamesEnd(targetPos); q++)
 			{
-				sim = weight * targetLex.getNameWeight(t, targetId);
-				sim *= targetNameSimilarity(s,t);
+				int t = targetLex.className(q);
+				sim = weight * targetLex.classNameWeight(q);
+				sim *= targetNameSimilarity(s,t,sourceKey);
 				if(sim > nameSim)
 				{
-					nameSim = new Double(sim);
-					subMappings.add(new SubMapping(sourceId, targetId, s, t, nameSim,sourceLex.getNameWeight(s,sourceId)));
+					nameSim = sim;
+					//The names are only decoded for the SubMappings
+					subMappings.add(new SubMapping(sourceId, targetId, sourceLex.name(s), targetLex.name(t),
+							nameSim, weight));
 				}
 			}
 		}	
@@ -225,38 +611,47 @@ public class WordMatcher
 
 	/**
 	 * Computes the word-based (bag-of-words) similarity between two names
+	 * (given by number, with the hash of the source name for the cache key)
 	 */
-	private double targetNameSimilarity(String s, String t)
+	private double targetNameSimilarity(int s, int t, long sourceKey)
 	{
-		List<String> sourceWords = sourceLex.getWordsList(s);
-		List<String> targetWords = targetLex.getWordsList(t);
-		List<String> aligned = new ArrayList<String>();
-
+		long key = 0;
+		if(cache != null)
+		{
+			key = targetLex.hashName(sourceKey, t);
+			double sim = cache.get(key);
+			if(!Double.isNaN(sim))
+				return sim;
+		}
 		double intersection = 0.0;
-		double targetEC = targetLex.getNameEC(t);
+		double targetEC = targetLex.nameEC(t);
 		double union = targetEC;
 
-		for(String w : sourceWords)
+		//The words of a name are distinct, so each is aligned at most once
+		for(int p = sourceLex.nameWordsStart(s); p < sourceLex.nameWordsEnd(s); p++)
 		{
-			if(targetWords.contains(w) && !aligned.contains(w))
-			{
-				intersection += targetLex.getWordEC(w);
-				aligned.add(w);
-			}
+			int w = toTarget[sourceLex.nameWord(p)];
+			if(w > -1 && targetNameHas(t, w))
+				intersection += targetLex.wordEC(w);
 		}
-		return intersection/union;
+		double sim = intersection/union;
+		if(cache != null)
+			cache.put(key, sim);
+		return sim;
 	}
 
-	private double sequentialSimilarity(int targetId, List<String> sourceWords)
+	private double sequentialSimilarity(int targetId, WordBag sourceWords, long wordsKey)
 	{
 		double nameSim = 0;
 		double sim = 0;
 
-		Set<String> targetNames = targetLex.getNames(targetId);
-		for(String t:targetNames)
+		int pos = targetLex.classPosition(targetId);
+		if(pos < 0)
+			return nameSim;
+		for(int q = targetLex.classNamesStart(pos); q < targetLex.classNamesEnd(pos); q++)
 		{
-			sim = targetLex.getNameWeight(t, targetId);
-			sim *= combinedSimilarity(sourceWords,t);
+			sim = targetLex.classNameWeight(q);
+			sim *= combinedSimilarity(sourceWords,targetLex.className(q),wordsKey);
 			if (sim>nameSim){
 				nameSim=sim;
 			}
@@ -264,37 +659,127 @@ public class WordMatcher
 		return nameSim;
 	}
 
-	private double combinedSimilarity(List<String> sourceWords, String t)
+	private double combinedSimilarity(WordBag sourceWords, int t, long wordsKey)
 	{
-		Set<String> targetWords = targetLex.getWords(t);
+		long key = 0;
+		if(cache != null)
+		{
+			key = targetLex.hashName(wordsKey, t);
+			double sim = cache.get(key);
+			if(!Double.isNaN(sim))
+				return sim;
+		}
+		int start = targetLex.nameWordsStart(t);
+		int end = targetLex.nameWordsEnd(t);
 		double intersection = 0.0;
 		double result = 0.0;
 		double union = 0.0;
 
-		if(targetWords.size()>=sourceWords.size())
+		if(end - start >= sourceWords.words.length)
 		{
-			union = targetLex.getNameEC(t);
-			for(String w : targetWords) 
+			//Summed in the order of the set of words of the name
+			union = targetLex.nameEC(t);
+			for(int p = start; p < end; p++) 
 			{
+				int w = targetLex.nameSetWord(p);
 				if(sourceWords.contains(w))
-					intersection += targetLex.getWordEC(w);
+					intersection += targetLex.wordEC(w);
 			}
 			result = intersection/union;
 		}
 		else
 		{
-			for(String w : sourceWords) 
+			for(int k = 0; k < sourceWords.words.length; k++) 
 			{
-				union += sourceLex.getWordEC(w);
-				if(targetWords.contains(w))
-					intersection += sourceLex.getWordEC(w);
+				union += sourceWords.ecs[k];
+				if(sourceWords.words[k] > -1 && targetNameHas(t, sourceWords.words[k]))
+					intersection += sourceWords.ecs[k];
 			}
 			result = intersection/union;
 
 		}
+		if(cache != null)
+			cache.put(key, result);
 		return result;
 	}
 
+	//The words of a list, by number in the target WordLexicon
+	private WordBag bag(List<String> words)
+	{
+		WordBag bag = new WordBag();
+		bag.words = new int[words.size()];
+		bag.ecs = new double[words.size()];
+		for(int k = 0; k < bag.words.length; k++)
+		{
+			bag.words[k] = targetLex.getWordId(words.get(k));
+			bag.ecs[k] = sourceLex.getWordEC(words.get(k));
+		}
+		return bag;
+	}
+
+	//Sorts Mappings by source and target class (e.g., those found by the words
+	//of the classes, so that the alignment, and which of the compound mappings
+	//tied in similarity is selected, don't depend on how the blocks were joined)
+	static void sortByClass(List<Mapping> maps)
+	{
+		Collections.sort(maps, new Comparator<Mapping>()
+		{
+			@Override
+			public int compare(Mapping m1, Mapping m2)
+			{
+				if(m1.getSourceId() != m2.getSourceId())
+					return m1.getSourceId() < m2.getSourceId() ? -1 : 1;
+				if(m1.getTargetId() != m2.getTargetId())
+					return m1.getTargetId() < m2.getTargetId() ? -1 : 1;
+				return 0;
+			}
+		});
+	}
+
+	//Whether a name of the target has a word (both by number)
+	private boolean targetNameHas(int name, int word)
+	{
+		for(int p = targetLex.nameWordsStart(name); p < targetLex.nameWordsEnd(name); p++)
+			if(targetLex.nameWord(p) == word)
+				return true;
+		return false;
+	}
+
+	//The DenseScorer for the given target classes, building it if they changed
+	private DenseScorer scorer(int[] ids)
+	{
+		if(scorer == null || scorerIds != ids)
+		{
+			scorer = new DenseScorer(sourceLex, targetLex, ids);
+			scorerIds = ids;
+		}
+		return scorer;
+	}
+
+	//Gets the cache of name similarities of AML, if any, and the hashes of the
+	//measures, which include the fingerprints of the WordLexicons they use
+	private void openCache()
+	{
+		cache = aml.getSimilarityCache();
+		if(cache == null)
+			return;
+		//The name similarity depends on the ECs of the target,
+		//the combined similarity on those of both WordLexicons
+		long target = targetLex.fingerprint();
+		nameMeasure = SimilarityCache.measure("word.name:" + target);
+		combinedMeasure = SimilarityCache.measure("word.combined:" + sourceLex.fingerprint() + ":" + target);
+	}
+
+	//Records the size of the WordLexicons in the run metrics
+	private void recordSizes()
+	{
+		RunMetrics metrics = aml.getMetrics();
+		metrics.setGauge("wordlexicon.source.words", sourceLex.wordCount());
+		metrics.setGauge("wordlexicon.source.names", sourceLex.nameCount());
+		metrics.setGauge("wordlexicon.target.words", targetLex.wordCount());
+		metrics.setGauge("wordlexicon.target.names", targetLex.nameCount());
+	}
+
 	public static String printName(int id, String origin)
 	{
 		AML aml = AML.getInstance();
@@ -308,4 +793,59 @@ public class WordMatcher
 
 		return name;
 	}
+
+	//The words shared by two blocks, as the positions of each in the words of
+	//the source block and of the target block, in the order of their numbers
+	//(as both WordLexicons number their words in alphabetical order, the
+	//numbers of the source words in the target are in the same order)
+	static int[][] sharedWords(WordLexiconView sourceLex, int sourceBlock, WordLexiconView targetLex,
+			int targetBlock, int[] toTarget)
+	{
+		int sourceEnd = sourceLex.blockWordsEnd(sourceBlock);
+		int q = targetLex.blockWordsStart(targetBlock);
+		int targetEnd = targetLex.blockWordsEnd(targetBlock);
+		int[] sourcePos = new int[Math.min(sourceEnd - sourceLex.blockWordsStart(sourceBlock), targetEnd - q)];
+		int[] targetPos = new int[sourcePos.length];
+		int n = 0;
+		for(int p = sourceLex.blockWordsStart(sourceBlock); p < sourceEnd && q < targetEnd; p++)
+		{
+			int w = toTarget[sourceLex.blockWord(p)];
+			if(w < 0)
+				continue;
+			while(q < targetEnd && targetLex.blockWord(q) < w)
+				q++;
+			if(q < targetEnd && targetLex.blockWord(q) == w)
+			{
+				sourcePos[n] = p;
+				targetPos[n++] = q++;
+			}
+		}
+		return new int[][]{Arrays.copyOf(sourcePos, n), Arrays.copyOf(targetPos, n)};
+	}
+
+	//The number of each word of a WordLexicon in another (-1 if it isn't in it)
+	static int[] translate(WordLexiconView from, WordLexiconView to)
+	{
+		int[] words = new int[from.wordCount()];
+		for(int w = 0; w < words.length; w++)
+			words[w] = to.getWordId(from.word(w));
+		return words;
+	}
+
+	//A list of words left to match, by number in the target WordLexicon (-1
+	//for those that no target class has), with their ECs in the source
+	private static class WordBag
+	{
+		private int[] words;
+		private double[] ecs;
+
+		//Whether the list has a word of the target
+		boolean contains(int word)
+		{
+			for(int w : words)
+				if(w == word)
+					return true;
+			return false;
+		}
+	}
 }
\ No newline at end of file
@@ -1147,7 +1147,24 @@ public class Lexicon
 	 */
 	public int nameCount(int classId, LexicalType type)
 	{
-		return getNames(classId,type).size();
+		//Counted without building the set of names, since this is called
+		//for every weight of a name (e.g., when comparing names)
+		Set<String> hits = classes.keySet(classId);
+		int count = 0;
+		if(hits == null)
+			return count;
+		for(String n : hits)
+		{
+			for(Provenance p : classes.get(classId,n))
+			{
+				if(p.getType().equals(type))
+				{
+					count++;
+					break;
+				}
+			}
+		}
+		return count;
 	}
 
 	/**
@@ -0,0 +1,849 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Off-heap version of a WordLexicon, stored in a file that is memory-mapped   *
+* so that its tables live in the OS page cache instead of the Java heap. The  *
+* words, names and classes of the WordLexicon are numbered, and the file      *
+* holds, as flat arrays: the ECs of words, names and classes, hash indexes of *
+* the words and names, the (distinct) words of each name (as listed, and as   *
+* in the set of words of the name), the words of each class with their        *
+* weights, the names of each class with their weights, and the postings       *
+* (classes with each word) of each block. Classes are stored by URI and       *
+* resolved against the URIMap when the file is opened, so the file can be     *
+* reused across sessions while the ontology doesn't change. The WordMatcher   *
+* reads it as a WordLexiconView, by number, so only the words are decoded in  *
+* the heap (once, when the file is opened) and names only when they are       *
+* needed. Each table must be under 2 GB.                                      *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.ontology;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import aml.AML;
+import aml.util.SimilarityCache;
+
+public class MappedWordLexicon implements WordLexiconView
+{
+
+//Attributes
+
+	//The identifier and format version of the file
+	private static final int MAGIC = 0x414D4C57;
+	private static final int VERSION = 2;
+	//The sections of the file
+	private static final int WORD_EC = 0;
+	private static final int WORD_STR_OFF = 1;
+	private static final int WORD_STR = 2;
+	private static final int WORD_HASH = 3;
+	private static final int NAME_EC = 4;
+	private static final int NAME_STR_OFF = 5;
+	private static final int NAME_STR = 6;
+	private static final int NAME_HASH = 7;
+	private static final int NAME_WORD_OFF = 8;
+	private static final int NAME_WORDS = 9;
+	private static final int NAME_SET_WORDS = 10;
+	private static final int CLASS_URI_OFF = 11;
+	private static final int CLASS_URI = 12;
+	private static final int CLASS_EC = 13;
+	private static final int CLASS_WORD_OFF = 14;
+	private static final int CLASS_WORDS = 15;
+	private static final int CLASS_WORD_WEIGHTS = 16;
+	private static final int CLASS_NAME_OFF = 17;
+	private static final int CLASS_NAMES = 18;
+	private static final int CLASS_NAME_WEIGHTS = 19;
+	private static final int BLOCK_WORD_OFF = 20;
+	private static final int BLOCK_WORDS = 21;
+	private static final int POSTING_OFF = 22;
+	private static final int POSTINGS = 23;
+	private static final int POSTING_WEIGHTS = 24;
+	private static final int SIGNATURE = 25;
+	private static final int SECTIONS = 26;
+	//The size of the header: 8 ints and the offsets of the sections
+	private static final int HEADER = 32 + 8 * (SECTIONS + 1);
+
+	//The number of words, names, classes and blocks, and the size of the hash indexes
+	private int words;
+	private int names;
+	private int classes;
+	private int blocks;
+	private int wordSlots;
+	private int nameSlots;
+	//The mapped sections
+	private DoubleBuffer wordEC;
+	private IntBuffer wordStrOff;
+	private ByteBuffer wordStr;
+	private IntBuffer wordHash;
+	private DoubleBuffer nameEC;
+	private IntBuffer nameStrOff;
+	private ByteBuffer nameStr;
+	private IntBuffer nameHash;
+	private IntBuffer nameWordOff;
+	private IntBuffer nameWords;
+	private IntBuffer nameSetWords;
+	private DoubleBuffer classEC;
+	private IntBuffer classWordOff;
+	private IntBuffer classWords;
+	private DoubleBuffer classWordWeights;
+	private IntBuffer classNameOff;
+	private IntBuffer classNames;
+	private DoubleBuffer classNameWeights;
+	private IntBuffer blockWordOff;
+	private IntBuffer blockWords;
+	private IntBuffer postingOff;
+	private IntBuffer postings;
+	private DoubleBuffer postingWeights;
+	//The words, decoded once when the file is opened (so that reading
+	//them returns the same instance without a shared table)
+	private String[] wordStrings;
+	//The signature of the WordLexicon (e.g., of the ontology file it was built from)
+	private String signature;
+	//The index of each class in this session, by position, and vice-versa
+	private int[] classIds;
+	private int[] classPositions;
+
+//Constructors
+
+	/**
+	 * Opens a MappedWordLexicon file, resolving its classes against the URIMap
+	 * @param file: the path to the file
+	 */
+	public MappedWordLexicon(String file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			if(raf.readInt() != MAGIC || raf.readInt() != VERSION)
+				throw new IOException("Not a MappedWordLexicon file of version " + VERSION + ": " + file);
+			words = raf.readInt();
+			names = raf.readInt();
+			classes = raf.readInt();
+			blocks = raf.readInt();
+			wordSlots = raf.readInt();
+			nameSlots = raf.readInt();
+			long[] offsets = new long[SECTIONS+1];
+			for(int i = 0; i <= SECTIONS; i++)
+				offsets[i] = raf.readLong();
+			FileChannel channel = raf.getChannel();
+			ByteBuffer[] s = new ByteBuffer[SECTIONS];
+			for(int i = 0; i < SECTIONS; i++)
+				s[i] = channel.map(FileChannel.MapMode.READ_ONLY, offsets[i], offsets[i+1] - offsets[i]);
+			wordEC = s[WORD_EC].asDoubleBuffer();
+			wordStrOff = s[WORD_STR_OFF].asIntBuffer();
+			wordStr = s[WORD_STR];
+			wordHash = s[WORD_HASH].asIntBuffer();
+			nameEC = s[NAME_EC].asDoubleBuffer();
+			nameStrOff = s[NAME_STR_OFF].asIntBuffer();
+			nameStr = s[NAME_STR];
+			nameHash = s[NAME_HASH].asIntBuffer();
+			nameWordOff = s[NAME_WORD_OFF].asIntBuffer();
+			nameWords = s[NAME_WORDS].asIntBuffer();
+			nameSetWords = s[NAME_SET_WORDS].asIntBuffer();
+			classEC = s[CLASS_EC].asDoubleBuffer();
+			classWordOff = s[CLASS_WORD_OFF].asIntBuffer();
+			classWords = s[CLASS_WORDS].asIntBuffer();
+			classWordWeights = s[CLASS_WORD_WEIGHTS].asDoubleBuffer();
+			classNameOff = s[CLASS_NAME_OFF].asIntBuffer();
+			classNames = s[CLASS_NAMES].asIntBuffer();
+			classNameWeights = s[CLASS_NAME_WEIGHTS].asDoubleBuffer();
+			blockWordOff = s[BLOCK_WORD_OFF].asIntBuffer();
+			blockWords = s[BLOCK_WORDS].asIntBuffer();
+			postingOff = s[POSTING_OFF].asIntBuffer();
+			postings = s[POSTINGS].asIntBuffer();
+			postingWeights = s[POSTING_WEIGHTS].asDoubleBuffer();
+			signature = string(s[SIGNATURE], 0, s[SIGNATURE].limit());
+			wordStrings = new String[words];
+			for(int i = 0; i < words; i++)
+				wordStrings[i] = string(wordStr, wordStrOff.get(i), wordStrOff.get(i+1));
+
+			//Resolve the classes against the URIMap
+			URIMap uris = AML.getInstance().getURIMap();
+			IntBuffer uriOff = s[CLASS_URI_OFF].asIntBuffer();
+			ByteBuffer uriStr = s[CLASS_URI];
+			classIds = new int[classes];
+			classPositions = new int[uris.size()+1];
+			for(int i = 0; i < classPositions.length; i++)
+				classPositions[i] = -1;
+			for(int i = 0; i < classes; i++)
+			{
+				classIds[i] = uris.getIndex(string(uriStr, uriOff.get(i), uriOff.get(i+1)));
+				if(classIds[i] > -1 && classIds[i] < classPositions.length)
+					classPositions[classIds[i]] = i;
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+//Public Methods
+
+	@Override
+	public int blockCount()
+	{
+		return blocks;
+	}
+
+	@Override
+	public int blockWordsStart(int block)
+	{
+		return blockWordOff.get(block);
+	}
+
+	@Override
+	public int blockWordsEnd(int block)
+	{
+		return blockWordOff.get(block+1);
+	}
+
+	@Override
+	public int blockWord(int pos)
+	{
+		return blockWords.get(pos);
+	}
+
+	@Override
+	public int classCount()
+	{
+		return classes;
+	}
+
+	@Override
+	public double classEC(int pos)
+	{
+		return classEC.get(pos);
+	}
+
+	@Override
+	public int classId(int pos)
+	{
+		return classIds[pos];
+	}
+
+	@Override
+	public int className(int p)
+	{
+		return classNames.get(p);
+	}
+
+	@Override
+	public int classNamesStart(int pos)
+	{
+		return classNameOff.get(pos);
+	}
+
+	@Override
+	public int classNamesEnd(int pos)
+	{
+		return classNameOff.get(pos+1);
+	}
+
+	@Override
+	public double classNameWeight(int p)
+	{
+		return classNameWeights.get(p);
+	}
+
+	@Override
+	public int classPosition(int classId)
+	{
+		if(classId < 0 || classId >= classPositions.length)
+			return -1;
+		return classPositions[classId];
+	}
+
+	@Override
+	public long fingerprint()
+	{
+		//Computed as in the WordLexicon, so that both share the cached similarities
+		long f = words;
+		for(int i = 0; i < words; i++)
+			f += SimilarityCache.hash(Double.doubleToLongBits(wordEC(i)), word(i));
+		return f;
+	}
+
+	@Override
+	public int classWord(int p)
+	{
+		return classWords.get(p);
+	}
+
+	@Override
+	public int classWordsStart(int pos)
+	{
+		return classWordOff.get(pos);
+	}
+
+	@Override
+	public int classWordsEnd(int pos)
+	{
+		return classWordOff.get(pos+1);
+	}
+
+	@Override
+	public double classWordWeight(int p)
+	{
+		return classWordWeights.get(p);
+	}
+
+	@Override
+	public double getClassEC(int classId)
+	{
+		int pos = classPosition(classId);
+		if(pos < 0)
+			return -1.0;
+		return classEC(pos);
+	}
+
+	@Override
+	public Set<Integer> getClasses()
+	{
+		HashSet<Integer> ids = new HashSet<Integer>();
+		for(int i = 0; i < classes; i++)
+			if(classIds[i] > -1)
+				ids.add(classIds[i]);
+		return ids;
+	}
+
+	@Override
+	public double getNameEC(String n)
+	{
+		int name = getNameId(n);
+		if(name < 0)
+			return -1.0;
+		return nameEC(name);
+	}
+
+	@Override
+	public Set<String> getNames()
+	{
+		HashSet<String> n = new HashSet<String>();
+		for(int i = 0; i < names; i++)
+			n.add(name(i));
+		return n;
+	}
+
+	@Override
+	public Set<String> getNames(int classId)
+	{
+		HashSet<String> n = new HashSet<String>();
+		int pos = classPosition(classId);
+		if(pos < 0)
+			return n;
+		for(int p = classNamesStart(pos); p < classNamesEnd(pos); p++)
+			n.add(name(className(p)));
+		return n;
+	}
+
+	@Override
+	public double getNameWeight(String name, int classId)
+	{
+		int n = getNameId(name);
+		int pos = classPosition(classId);
+		if(n < 0 || pos < 0)
+			return 0.0;
+		for(int p = classNamesStart(pos); p < classNamesEnd(pos); p++)
+			if(className(p) == n)
+				return classNameWeight(p);
+		return 0.0;
+	}
+
+	/**
+	 * @return the signature with which the WordLexicon was saved
+	 */
+	public String getSignature()
+	{
+		return signature;
+	}
+
+	@Override
+	public double getWordEC(String w)
+	{
+		int word = getWordId(w);
+		if(word < 0)
+			return -1.0;
+		return wordEC(word);
+	}
+
+	@Override
+	public int getWordId(String word)
+	{
+		return find(word, wordHash, wordSlots, wordStr, wordStrOff);
+	}
+
+	@Override
+	public int getNameId(String name)
+	{
+		return find(name, nameHash, nameSlots, nameStr, nameStrOff);
+	}
+
+	@Override
+	public Set<String> getWords()
+	{
+		HashSet<String> w = new HashSet<String>();
+		for(int i = 0; i < words; i++)
+			w.add(word(i));
+		return w;
+	}
+
+	@Override
+	public Set<String> getWords(int classId)
+	{
+		HashSet<String> w = new HashSet<String>();
+		int pos = classPosition(classId);
+		if(pos < 0)
+			return w;
+		for(int p = classWordOff.get(pos); p < classWordOff.get(pos+1); p++)
+			w.add(word(classWords.get(p)));
+		return w;
+	}
+
+	@Override
+	public Set<String> getWords(String name)
+	{
+		return new HashSet<String>(getWordsList(name));
+	}
+
+	@Override
+	public List<String> getWordsList(String name)
+	{
+		List<String> w = new ArrayList<String>();
+		int n = getNameId(name);
+		if(n < 0)
+			return w;
+		for(int p = nameWordsStart(n); p < nameWordsEnd(n); p++)
+			w.add(word(nameWord(p)));
+		return w;
+	}
+
+	@Override
+	public double getWordWeight(String word, int classId)
+	{
+		int w = getWordId(word);
+		int pos = classPosition(classId);
+		if(w < 0 || pos < 0)
+			return -1.0;
+		return wordWeight(pos, w);
+	}
+
+	@Override
+	public long hashName(long h, int name)
+	{
+		int start = nameStrOff.get(name);
+		int end = nameStrOff.get(name+1);
+		//Names in ASCII are hashed from their bytes, others decoded
+		for(int i = start; i < end; i++)
+			if(nameStr.get(i) < 0)
+				return SimilarityCache.hash(h, name(name));
+		return SimilarityCache.hash(h, nameStr, start, end);
+	}
+
+	@Override
+	public String name(int name)
+	{
+		return string(nameStr, nameStrOff.get(name), nameStrOff.get(name+1));
+	}
+
+	@Override
+	public int nameCount()
+	{
+		return names;
+	}
+
+	@Override
+	public double nameEC(int name)
+	{
+		return nameEC.get(name);
+	}
+
+	@Override
+	public int nameSetWord(int p)
+	{
+		return nameSetWords.get(p);
+	}
+
+	@Override
+	public int nameWord(int p)
+	{
+		return nameWords.get(p);
+	}
+
+	@Override
+	public int nameWordsStart(int name)
+	{
+		return nameWordOff.get(name);
+	}
+
+	@Override
+	public int nameWordsEnd(int name)
+	{
+		return nameWordOff.get(name+1);
+	}
+
+	@Override
+	public int posting(int pos)
+	{
+		return postings.get(pos);
+	}
+
+	@Override
+	public double postingWeight(int pos)
+	{
+		return postingWeights.get(pos);
+	}
+
+	@Override
+	public int postingsStart(int blockWord)
+	{
+		return postingOff.get(blockWord);
+	}
+
+	@Override
+	public int postingsEnd(int blockWord)
+	{
+		return postingOff.get(blockWord+1);
+	}
+
+	@Override
+	public double wordWeight(int pos, int word)
+	{
+		int p = search(classWords, classWordOff.get(pos), classWordOff.get(pos+1), word);
+		if(p < 0)
+			return -1.0;
+		return classWordWeights.get(p);
+	}
+
+	@Override
+	public String word(int word)
+	{
+		return wordStrings[word];
+	}
+
+	@Override
+	public int wordCount()
+	{
+		return words;
+	}
+
+	@Override
+	public double wordEC(int word)
+	{
+		return wordEC.get(word);
+	}
+
+	/**
+	 * Saves a WordLexicon to a MappedWordLexicon file
+	 * @param w: the WordLexicon to save
+	 * @param file: the path to the file
+	 * @param sig: the signature of the WordLexicon, to check whether the file
+	 * is up to date when it is reused (e.g., of the ontology file it is built from)
+	 */
+	public static void save(WordLexicon w, String file, String sig) throws IOException
+	{
+		URIMap uris = AML.getInstance().getURIMap();
+		//The words, names and classes are numbered as in the WordLexicon
+		int wordCount = w.wordCount();
+		int nameCount = w.nameCount();
+		int classCount = w.classCount();
+		int blockCount = w.blockCount();
+		List<String> wordList = new ArrayList<String>(wordCount);
+		for(int i = 0; i < wordCount; i++)
+			wordList.add(w.word(i));
+		List<String> nameList = new ArrayList<String>(nameCount);
+		for(int i = 0; i < nameCount; i++)
+			nameList.add(w.name(i));
+		int wSlots = slots(wordCount);
+		int nSlots = slots(nameCount);
+
+		File f = new File(file);
+		if(f.getParentFile() != null)
+			f.getParentFile().mkdirs();
+		SectionWriter out = new SectionWriter(file + ".tmp");
+		out.skip(HEADER);
+
+		out.start(WORD_EC);
+		for(int i = 0; i < wordCount; i++)
+			out.writeDouble(w.wordEC(i));
+		writeStrings(out, WORD_STR_OFF, WORD_STR, wordList);
+		writeHash(out, WORD_HASH, wordList, wSlots);
+
+		out.start(NAME_EC);
+		for(int i = 0; i < nameCount; i++)
+			out.writeDouble(w.nameEC(i));
+		writeStrings(out, NAME_STR_OFF, NAME_STR, nameList);
+		writeHash(out, NAME_HASH, nameList, nSlots);
+		nameList = null;
+		out.start(NAME_WORD_OFF);
+		for(int i = 0; i < nameCount; i++)
+			out.writeInt(w.nameWordsStart(i));
+		out.writeInt(nameCount == 0 ? 0 : w.nameWordsEnd(nameCount-1));
+		out.start(NAME_WORDS);
+		for(int i = 0; i < nameCount; i++)
+			for(int p = w.nameWordsStart(i); p < w.nameWordsEnd(i); p++)
+				out.writeInt(w.nameWord(p));
+		out.start(NAME_SET_WORDS);
+		for(int i = 0; i < nameCount; i++)
+			for(int p = w.nameWordsStart(i); p < w.nameWordsEnd(i); p++)
+				out.writeInt(w.nameSetWord(p));
+
+		List<String> uriList = new ArrayList<String>(classCount);
+		for(int i = 0; i < classCount; i++)
+			uriList.add(uris.getURI(w.classId(i)));
+		writeStrings(out, CLASS_URI_OFF, CLASS_URI, uriList);
+		uriList = null;
+		out.start(CLASS_EC);
+		for(int i = 0; i < classCount; i++)
+			out.writeDouble(w.classEC(i));
+		out.start(CLASS_WORD_OFF);
+		for(int i = 0; i < classCount; i++)
+			out.writeInt(w.classWordsStart(i));
+		out.writeInt(classCount == 0 ? 0 : w.classWordsEnd(classCount-1));
+		out.start(CLASS_WORDS);
+		for(int i = 0; i < classCount; i++)
+			for(int p = w.classWordsStart(i); p < w.classWordsEnd(i); p++)
+				out.writeInt(w.classWord(p));
+		out.start(CLASS_WORD_WEIGHTS);
+		for(int i = 0; i < classCount; i++)
+			for(int p = w.classWordsStart(i); p < w.classWordsEnd(i); p++)
+				out.writeDouble(w.classWordWeight(p));
+		out.start(CLASS_NAME_OFF);
+		for(int i = 0; i < classCount; i++)
+			out.writeInt(w.classNamesStart(i));
+		out.writeInt(classCount == 0 ? 0 : w.classNamesEnd(classCount-1));
+		out.start(CLASS_NAMES);
+		for(int i = 0; i < classCount; i++)
+			for(int p = w.classNamesStart(i); p < w.classNamesEnd(i); p++)
+				out.writeInt(w.className(p));
+		out.start(CLASS_NAME_WEIGHTS);
+		for(int i = 0; i < classCount; i++)
+			for(int p = w.classNamesStart(i); p < w.classNamesEnd(i); p++)
+				out.writeDouble(w.classNameWeight(p));
+
+		out.start(BLOCK_WORD_OFF);
+		for(int b = 0; b < blockCount; b++)
+			out.writeInt(w.blockWordsStart(b));
+		int blockWordCount = blockCount == 0 ? 0 : w.blockWordsEnd(blockCount-1);
+		out.writeInt(blockWordCount);
+		out.start(BLOCK_WORDS);
+		for(int p = 0; p < blockWordCount; p++)
+			out.writeInt(w.blockWord(p));
+		out.start(POSTING_OFF);
+		for(int p = 0; p < blockWordCount; p++)
+			out.writeInt(w.postingsStart(p));
+		int postingCount = blockWordCount == 0 ? 0 : w.postingsEnd(blockWordCount-1);
+		out.writeInt(postingCount);
+		out.start(POSTINGS);
+		for(int x = 0; x < postingCount; x++)
+			out.writeInt(w.posting(x));
+		out.start(POSTING_WEIGHTS);
+		for(int x = 0; x < postingCount; x++)
+			out.writeDouble(w.postingWeight(x));
+		out.start(SIGNATURE);
+		out.writeBytes(sig.getBytes("UTF-8"));
+		out.start(SECTIONS);
+		out.close();
+
+		//Write the header
+		RandomAccessFile raf = new RandomAccessFile(file + ".tmp", "rw");
+		raf.writeInt(MAGIC);
+		raf.writeInt(VERSION);
+		raf.writeInt(wordCount);
+		raf.writeInt(nameCount);
+		raf.writeInt(classCount);
+		raf.writeInt(blockCount);
+		raf.writeInt(wSlots);
+		raf.writeInt(nSlots);
+		for(long o : out.offsets)
+			raf.writeLong(o);
+		raf.close();
+		f.delete();
+		if(!new File(file + ".tmp").renameTo(f))
+			throw new IOException("Could not save " + file);
+	}
+
+//Private Methods
+
+	//Finds a string in a hash index, returning its number or -1
+	private static int find(String s, IntBuffer hash, int slots, ByteBuffer str, IntBuffer off)
+	{
+		byte[] b;
+		try
+		{
+			b = s.getBytes("UTF-8");
+		}
+		catch(IOException e)
+		{
+			return -1;
+		}
+		int slot = (s.hashCode() & 0x7fffffff) & (slots-1);
+		while(true)
+		{
+			int id = hash.get(slot) - 1;
+			if(id < 0)
+				return -1;
+			int start = off.get(id);
+			if(off.get(id+1) - start == b.length)
+			{
+				boolean equal = true;
+				for(int i = 0; i < b.length && equal; i++)
+					equal = str.get(start+i) == b[i];
+				if(equal)
+					return id;
+			}
+			slot = (slot + 1) & (slots-1);
+		}
+	}
+
+	//Binary search of a value in a sorted range of an IntBuffer
+	private static int search(IntBuffer b, int start, int end, int value)
+	{
+		int low = start;
+		int high = end - 1;
+		while(low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			int v = b.get(mid);
+			if(v < value)
+				low = mid + 1;
+			else if(v > value)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	//The size of a hash index for the given number of strings (a power of two)
+	private static int slots(int size)
+	{
+		int s = 2;
+		while(s < size * 2)
+			s <<= 1;
+		return s;
+	}
+
+	private static String string(ByteBuffer b, int start, int end)
+	{
+		byte[] bytes = new byte[end - start];
+		for(int i = 0; i < bytes.length; i++)
+			bytes[i] = b.get(start + i);
+		try
+		{
+			return new String(bytes, "UTF-8");
+		}
+		catch(IOException e)
+		{
+			return "";
+		}
+	}
+
+	private static void writeHash(SectionWriter out, int section, List<String> list, int slots) throws IOException
+	{
+		int[] hash = new int[slots];
+		for(int i = 0; i < list.size(); i++)
+		{
+			int slot = (list.get(i).hashCode() & 0x7fffffff) & (slots-1);
+			while(hash[slot] != 0)
+				slot = (slot + 1) & (slots-1);
+			hash[slot] = i + 1;
+		}
+		out.start(section);
+		for(int h : hash)
+			out.writeInt(h);
+	}
+
+	private static void writeStrings(SectionWriter out, int offSection, int strSection, List<String> list) throws IOException
+	{
+		List<byte[]> bytes = new ArrayList<byte[]>(list.size());
+		for(String s : list)
+			bytes.add(s.getBytes("UTF-8"));
+		out.start(offSection);
+		int count = 0;
+		for(byte[] b : bytes)
+		{
+			out.writeInt(count);
+			count += b.length;
+		}
+		out.writeInt(count);
+		out.start(strSection);
+		for(byte[] b : bytes)
+			out.writeBytes(b);
+	}
+
+	//Writes the sections of the file, keeping track of their offsets
+	private static class SectionWriter
+	{
+		private DataOutputStream out;
+		private long position;
+		private long[] offsets;
+
+		private SectionWriter(String file) throws IOException
+		{
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			position = 0;
+			offsets = new long[SECTIONS+1];
+		}
+
+		private void close() throws IOException
+		{
+			out.close();
+		}
+
+		private void skip(int bytes) throws IOException
+		{
+			for(int i = 0; i < bytes; i++)
+				out.writeByte(0);
+			position += bytes;
+		}
+
+		private void start(int section)
+		{
+			offsets[section] = position;
+		}
+
+		private void writeBytes(byte[] b) throws IOException
+		{
+			out.write(b);
+			position += b.length;
+		}
+
+		private void writeDouble(double d) throws IOException
+		{
+			out.writeDouble(d);
+			position += 8;
+		}
+
+		private void writeInt(int i) throws IOException
+		{
+			out.writeInt(i);
+			position += 4;
+		}
+	}
+}
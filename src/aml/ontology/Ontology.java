@@ -22,6 +22,7 @@ package aml.ontology;
 
 import java.io.File;
 import java.net.URI;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
@@ -61,6 +62,8 @@ import uk.ac.manchester.cs.owl.owlapi.OWLObjectCardinalityRestrictionImpl;
 
 import aml.AML;
 import aml.settings.LexicalType;
+import aml.util.PipelineEvents;
+import aml.util.Progress;
 import aml.util.StringParser;
 import aml.util.Table2Map;
 
@@ -84,8 +87,10 @@ public class Ontology
 	protected HashMap<Integer,Property> properties;
 	//Its lexicon
 	protected Lexicon lex;
-	//Its word lexicon
-	protected WordLexicon wLex;
+	//Its word lexicons (one per language)
+	protected WordLexiconCache wLex;
+	//Its memory-mapped WordLexicon, if one was set
+	protected MappedWordLexicon mLex;
 	//Its map of cross-references
 	protected ReferenceMap refs;
 	//Its set of obsolete classes
@@ -117,7 +122,7 @@ public class Ontology
 		reciprocalIndex = new HashMap<Integer,String>();
 		properties = new HashMap<Integer,Property>();
 		lex = new Lexicon();
-		wLex = null;
+		wLex = new WordLexiconCache(lex);
 		refs = new ReferenceMap();
 		aml = AML.getInstance();
 		useReasoner = aml.useReasoner();
@@ -236,6 +241,7 @@ public class Ontology
 		nameIndex = null;
 		properties = null;
 		lex = null;
+		wLex = null;
 		refs = null;
 	}
 
@@ -333,26 +339,79 @@ public class Ontology
 	 */
 	public WordLexicon getWordLexicon()
 	{
-		if(wLex == null || !wLex.getLanguage().equals(""))
-			wLex = new WordLexicon(lex);
-		return wLex;
+		return wLex.get("");
 	}
 
 	/**
 	 * Gets the WordLexicon of this Ontology for the
 	 * specified language.
-	 * Builds the WordLexicon if not previously built, or
-	 * built for a different or unspecified language.
+	 * Builds the WordLexicon if it is not in the cache
+	 * of WordLexicons of this Ontology.
 	 * @param lang: the language of the WordLexicon
 	 * @return the WordLexicon of this Ontology
 	 */
 	public WordLexicon getWordLexicon(String lang)
 	{
-		if(wLex == null || !wLex.getLanguage().equals(lang))
-			wLex = new WordLexicon(lex,lang);
+		return wLex.get(lang);
+	}
+
+	/**
+	 * @return the words of this Ontology to match with: its memory-mapped
+	 * WordLexicon if one was set, or otherwise its WordLexicon
+	 */
+	public WordLexiconView getWordLexiconView()
+	{
+		if(mLex != null)
+			return mLex;
+		return getWordLexicon();
+	}
+
+	/**
+	 * @return the memory-mapped WordLexicon of this Ontology,
+	 * or null if none was set
+	 */
+	public MappedWordLexicon getMappedWordLexicon()
+	{
+		return mLex;
+	}
+
+	/**
+	 * @return the cache of WordLexicons of this Ontology
+	 */
+	public WordLexiconCache getWordLexiconCache()
+	{
 		return wLex;
 	}
 
+	/**
+	 * Builds the WordLexicons of this Ontology for the given
+	 * languages in parallel, using all available threads
+	 * @param langs: the languages of the WordLexicons ("" for all languages)
+	 */
+	public void buildWordLexicons(Collection<String> langs)
+	{
+		wLex.buildAll(langs, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Sets the memory-mapped WordLexicon of this Ontology
+	 * @param m: the MappedWordLexicon (null to go back to the WordLexicon)
+	 */
+	public void setMappedWordLexicon(MappedWordLexicon m)
+	{
+		mLex = m;
+	}
+
+	/**
+	 * Replaces the cache of WordLexicons of this Ontology
+	 * @param max: the maximum number of languages to keep (0 for no limit)
+	 * @param soft: whether the WordLexicons can be reclaimed under memory pressure
+	 */
+	public void setWordLexiconCache(int max, boolean soft)
+	{
+		wLex = new WordLexiconCache(lex, max, soft);
+	}
+
 	/**
 	 * @param index: the index of the URI in the ontology
 	 * @return whether the index corresponds to a class
@@ -397,19 +456,42 @@ public class Ontology
 		System.out.print(o.getOntologyID().getOntologyIRI());
 		if(o.getOntologyID().getOntologyIRI() != null)
 			uri = o.getOntologyID().getOntologyIRI().toString();
+		//The loading is reported in its three phases (classes, properties and relationships)
+		Progress progress = aml.getProgress();
+		progress.begin("load " + uri, 3);
 		//Get the classes and their names and synonyms
+		Object e = PipelineEvents.ONTOLOGY_LOAD.begin();
 		getClasses(o);
+		loadEvent(e, "getClasses");
 		System.out.print(".");
+		progress.worked(1);
 		//Get the properties
+		e = PipelineEvents.ONTOLOGY_LOAD.begin();
 		getProperties(o,isInput);
+		loadEvent(e, "getProperties");
 		System.out.print(".");
+		progress.worked(1);
 		//Extend the Lexicon
+		e = PipelineEvents.ONTOLOGY_LOAD.begin();
 		lex.generateStopWordSynonyms();
 		lex.generateParenthesisSynonyms();
+		loadEvent(e, "synonyms");
 		//Build the relationship map
 		if(isInput)
+		{
+			e = PipelineEvents.ONTOLOGY_LOAD.begin();
 			getRelationships(o);
+			loadEvent(e, "getRelationships");
+		}
 		System.out.print(".");
+		progress.worked(1);
+	}
+
+	//Commits an ontology loading event for the given phase
+	private void loadEvent(Object e, String phase)
+	{
+		if(e != null)
+			PipelineEvents.ONTOLOGY_LOAD.commit(e, uri, phase, (long)classCount(), (long)lex.size());
 	}
 
 	//Processes the classes, their lexical information and cross-references
@@ -423,9 +505,11 @@ public class Ontology
 		OWLAnnotationProperty label = factory.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_LABEL.getIRI());
 		//Get an iterator over the ontology classes
 		Set<OWLClass> classes = o.getClassesInSignature(true);
+		Progress progress = aml.getProgress();
 		//Then get the URI for each class
 		for(OWLClass c : classes)
 		{
+			progress.check();
 			String classUri = c.getIRI().toString();
 
 			if(classUri == null || classUri.endsWith("owl#Thing") || classUri.endsWith("owl:Thing") || classUri.contains("#"))
@@ -718,9 +802,11 @@ public class Ontology
 
 		//Get an iterator over the ontology classes
 		Set<OWLClass> classes = o.getClassesInSignature(true);
+		Progress progress = aml.getProgress();
 		//For each term index (from 'termURIs' list)
 		for(OWLClass c : classes)
 		{
+			progress.check();
 			//Get the identifier of the child
 			int child = uris.getIndex(c.getIRI().toString());
 			int parent;
@@ -0,0 +1,156 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Keeps loaded ontologies resident so that they can be shared by several      *
+* matching jobs. Each ontology is loaded once per file and stemming option,   *
+* and is closed when the last job that retained it releases it. All loaded   *
+* ontologies share the URIMap and RelationshipMap of AML, so their class     *
+* indexes are unique. Since these are not thread-safe, ontologies are loaded *
+* one at a time.                                                              *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.ontology;
+
+import java.io.File;
+import java.util.HashMap;
+
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+import aml.AML;
+import aml.util.RunMetrics;
+
+public class OntologyCache
+{
+
+//Attributes
+
+	//The loaded ontologies, by file and stemming option
+	private HashMap<String,Ontology> ontologies;
+	//The number of jobs that retained each ontology
+	private HashMap<String,Integer> users;
+
+//Constructors
+
+	/**
+	 * Constructs a new empty OntologyCache
+	 */
+	public OntologyCache()
+	{
+		ontologies = new HashMap<String,Ontology>();
+		users = new HashMap<String,Integer>();
+	}
+
+//Public Methods
+
+	/**
+	 * Closes and removes all ontologies from the cache
+	 */
+	public synchronized void clear()
+	{
+		for(Ontology o : ontologies.values())
+			o.close();
+		ontologies.clear();
+		users.clear();
+	}
+
+	/**
+	 * @param path: the path to the ontology file
+	 * @param stemmer: whether the Lexicon of the ontology is stemmed
+	 * @return whether the ontology is loaded
+	 */
+	public synchronized boolean contains(String path, boolean stemmer)
+	{
+		return ontologies.containsKey(key(path,stemmer));
+	}
+
+	/**
+	 * Gets an ontology from the cache, loading it if necessary
+	 * @param path: the path to the ontology file
+	 * @param stemmer: whether to stem the Lexicon of the ontology
+	 * @return the loaded ontology
+	 */
+	public synchronized Ontology get(String path, boolean stemmer) throws OWLOntologyCreationException
+	{
+		String key = key(path,stemmer);
+		Ontology o = ontologies.get(key);
+		if(o == null)
+		{
+			RunMetrics metrics = AML.getInstance().getMetrics();
+			long time = metrics.start();
+			System.out.println("Loading ontology " + path);
+			o = new Ontology(path,true,stemmer);
+			time = metrics.stop("load.cache", time);
+			System.out.println(o.getURI() + " loaded in " + RunMetrics.toSeconds(time) + " seconds");
+			ontologies.put(key, o);
+			metrics.setGauge("cache.ontologies", ontologies.size());
+		}
+		return o;
+	}
+
+	/**
+	 * Releases an ontology retained by a job, closing it
+	 * if it is no longer retained by any job
+	 * @param path: the path to the ontology file
+	 * @param stemmer: whether the Lexicon of the ontology is stemmed
+	 */
+	public synchronized void release(String path, boolean stemmer)
+	{
+		String key = key(path,stemmer);
+		Integer count = users.get(key);
+		if(count == null)
+			return;
+		if(count > 1)
+			users.put(key, count-1);
+		else
+		{
+			users.remove(key);
+			Ontology o = ontologies.remove(key);
+			if(o != null)
+				o.close();
+			AML.getInstance().getMetrics().setGauge("cache.ontologies", ontologies.size());
+		}
+	}
+
+	/**
+	 * Declares that a job will use an ontology, so that it is kept
+	 * in the cache until the job releases it
+	 * @param path: the path to the ontology file
+	 * @param stemmer: whether the Lexicon of the ontology is stemmed
+	 */
+	public synchronized void retain(String path, boolean stemmer)
+	{
+		String key = key(path,stemmer);
+		Integer count = users.get(key);
+		if(count == null)
+			count = 0;
+		users.put(key, count+1);
+	}
+
+	/**
+	 * @return the number of ontologies in the cache
+	 */
+	public synchronized int size()
+	{
+		return ontologies.size();
+	}
+
+//Private Methods
+
+	private String key(String path, boolean stemmer)
+	{
+		return new File(path).getAbsolutePath() + "|" + stemmer;
+	}
+}
@@ -0,0 +1,174 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* The differences between two versions of an ontology, as computed from their *
+* OntologySnapshots: the classes added, removed or with changed names, and    *
+* the words whose evidence content changed (or that were added or removed).   *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.ontology;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import aml.AML;
+
+public class OntologyDiff
+{
+
+//Attributes
+
+	//The URIs of the classes added, changed and removed
+	private Set<String> added;
+	private Set<String> changed;
+	private Set<String> removed;
+	//The words of the previous names of the changed and removed classes
+	private Set<String> oldWords;
+	//The words whose evidence content changed
+	private Set<String> words;
+
+//Constructors
+
+	/**
+	 * Constructs a new empty OntologyDiff
+	 */
+	public OntologyDiff()
+	{
+		added = new HashSet<String>();
+		changed = new HashSet<String>();
+		removed = new HashSet<String>();
+		oldWords = new HashSet<String>();
+		words = new HashSet<String>();
+	}
+
+//Public Methods
+
+	/**
+	 * @param o: the newer version of the ontology
+	 * @return the indexes of the classes of the ontology that must be re-matched:
+	 * those that were added or changed, and those that have a changed word
+	 */
+	public Set<Integer> getAffectedClasses(Ontology o)
+	{
+		URIMap uris = AML.getInstance().getURIMap();
+		HashSet<Integer> affected = new HashSet<Integer>();
+		for(String c : added)
+			affected.add(uris.getIndex(c));
+		for(String c : changed)
+			affected.add(uris.getIndex(c));
+		WordLexicon wLex = o.getWordLexicon();
+		for(String w : words)
+			affected.addAll(wLex.getClasses(w));
+		affected.retainAll(o.getClasses());
+		return affected;
+	}
+
+	/**
+	 * @return the URIs of the changed classes
+	 */
+	public Set<String> getChanged()
+	{
+		return changed;
+	}
+
+	/**
+	 * @return the words whose evidence content changed
+	 */
+	public Set<String> getChangedWords()
+	{
+		return words;
+	}
+
+	/**
+	 * @return the words of the previous names of the changed and removed classes
+	 */
+	public Set<String> getOldWords()
+	{
+		return oldWords;
+	}
+
+	/**
+	 * @return the URIs of the removed classes
+	 */
+	public Set<String> getRemoved()
+	{
+		return removed;
+	}
+
+	/**
+	 * Gets the indexes of the removed classes, adding their URIs to the URIMap
+	 * if needed, so that mappings to them can be read from a previous alignment
+	 * (this updates the URIMap, so it must not be done while matching)
+	 * @return the indexes of the removed classes
+	 */
+	public Set<Integer> getRemovedClasses()
+	{
+		URIMap uris = AML.getInstance().getURIMap();
+		HashSet<Integer> ids = new HashSet<Integer>();
+		for(String c : removed)
+			ids.add(uris.addURI(c));
+		return ids;
+	}
+
+	/**
+	 * @return whether the two versions have the same classes, names and word ECs
+	 */
+	public boolean isEmpty()
+	{
+		return added.isEmpty() && changed.isEmpty() && removed.isEmpty() && words.isEmpty();
+	}
+
+	@Override
+	public String toString()
+	{
+		return added.size() + " added, " + changed.size() + " changed, " + removed.size() +
+				" removed classes; " + words.size() + " changed words";
+	}
+
+//Protected Methods (used by OntologySnapshot)
+
+	protected void addAdded(String uri)
+	{
+		added.add(uri);
+	}
+
+	protected void addChanged(String uri, Collection<String> names)
+	{
+		changed.add(uri);
+		addOldWords(names);
+	}
+
+	protected void addRemoved(String uri, Collection<String> names)
+	{
+		removed.add(uri);
+		addOldWords(names);
+	}
+
+	protected void addWord(String w)
+	{
+		words.add(w);
+	}
+
+//Private Methods
+
+	private void addOldWords(Collection<String> names)
+	{
+		for(String n : names)
+			for(String w : n.split(" "))
+				oldWords.add(w.replaceAll("[()]", ""));
+	}
+}
@@ -0,0 +1,183 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* The matching-relevant content of an ontology version, identified by URI so  *
+* that it is independent of the class indexes of a given session: the names   *
+* of each class with their corrected weights, and the evidence content of     *
+* each word of the WordLexicon. Snapshots of two versions of an ontology can  *
+* be compared to find the classes that need to be re-matched.                 *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.ontology;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import aml.AML;
+
+public class OntologySnapshot
+{
+
+//Attributes
+
+	//The URI of the ontology
+	private String uri;
+	//The names of each class (by URI) with their corrected weights
+	private TreeMap<String,TreeMap<String,Double>> classNames;
+	//The evidence content of each word in the WordLexicon
+	private HashMap<String,Double> wordECs;
+
+//Constructors
+
+	/**
+	 * Constructs a new OntologySnapshot of the given ontology
+	 * (building its WordLexicon if it isn't built yet)
+	 * @param o: the ontology to snapshot
+	 */
+	public OntologySnapshot(Ontology o)
+	{
+		URIMap uris = AML.getInstance().getURIMap();
+		Lexicon lex = o.getLexicon();
+		uri = o.getURI();
+		classNames = new TreeMap<String,TreeMap<String,Double>>();
+		for(Integer i : o.getClasses())
+		{
+			TreeMap<String,Double> names = new TreeMap<String,Double>();
+			Set<String> n = lex.getNames(i);
+			if(n != null)
+				for(String name : n)
+					names.put(name, lex.getCorrectedWeight(name, i));
+			classNames.put(uris.getURI(i), names);
+		}
+		wordECs = new HashMap<String,Double>();
+		WordLexicon wLex = o.getWordLexicon();
+		for(String w : wLex.getWords())
+			wordECs.put(w, wLex.getWordEC(w));
+	}
+
+	/**
+	 * Reads an OntologySnapshot from a file saved with save()
+	 * @param file: the path to the snapshot file
+	 */
+	public OntologySnapshot(String file) throws Exception
+	{
+		classNames = new TreeMap<String,TreeMap<String,Double>>();
+		wordECs = new HashMap<String,Double>();
+		BufferedReader inStream = new BufferedReader(new FileReader(file));
+		//First line is the header, second line is the ontology URI
+		inStream.readLine();
+		uri = inStream.readLine().substring(1);
+		String line;
+		while((line = inStream.readLine()) != null)
+		{
+			String[] col = line.split("\t");
+			if(col[0].equals("C"))
+			{
+				TreeMap<String,Double> names = classNames.get(col[1]);
+				if(names == null)
+				{
+					names = new TreeMap<String,Double>();
+					classNames.put(col[1], names);
+				}
+				if(col.length > 3)
+					names.put(col[2], Double.parseDouble(col[3]));
+			}
+			else if(col[0].equals("W"))
+				wordECs.put(col[1], Double.parseDouble(col[2]));
+		}
+		inStream.close();
+	}
+
+//Public Methods
+
+	/**
+	 * Compares this snapshot with a snapshot of a newer version of the ontology
+	 * @param newer: the snapshot of the newer version
+	 * @param tolerance: the maximum change in the evidence content of a word
+	 * for it not to be considered changed
+	 * @return the differences between the two versions
+	 */
+	public OntologyDiff diff(OntologySnapshot newer, double tolerance)
+	{
+		OntologyDiff d = new OntologyDiff();
+		for(String c : newer.classNames.keySet())
+		{
+			TreeMap<String,Double> old = classNames.get(c);
+			if(old == null)
+				d.addAdded(c);
+			else if(!old.equals(newer.classNames.get(c)))
+				d.addChanged(c, old.keySet());
+		}
+		for(String c : classNames.keySet())
+			if(!newer.classNames.containsKey(c))
+				d.addRemoved(c, classNames.get(c).keySet());
+		Set<String> words = new HashSet<String>(wordECs.keySet());
+		words.addAll(newer.wordECs.keySet());
+		for(String w : words)
+		{
+			Double oldEC = wordECs.get(w);
+			Double newEC = newer.wordECs.get(w);
+			if(oldEC == null || newEC == null || Math.abs(oldEC - newEC) > tolerance)
+				d.addWord(w);
+		}
+		return d;
+	}
+
+	/**
+	 * @return the number of classes in the snapshot
+	 */
+	public int classCount()
+	{
+		return classNames.size();
+	}
+
+	/**
+	 * @return the URI of the ontology
+	 */
+	public String getURI()
+	{
+		return uri;
+	}
+
+	/**
+	 * Saves this snapshot to a tab-separated file
+	 * @param file: the path to the file where to save the snapshot
+	 */
+	public void save(String file) throws Exception
+	{
+		PrintWriter outStream = new PrintWriter(new FileOutputStream(file));
+		outStream.println("#AgreementMakerLight Ontology Snapshot");
+		outStream.println("#" + uri);
+		for(String c : classNames.keySet())
+		{
+			TreeMap<String,Double> names = classNames.get(c);
+			if(names.isEmpty())
+				outStream.println("C\t" + c);
+			for(Map.Entry<String,Double> e : names.entrySet())
+				outStream.println("C\t" + c + "\t" + e.getKey() + "\t" + e.getValue());
+		}
+		for(Map.Entry<String,Double> e : wordECs.entrySet())
+			outStream.println("W\t" + e.getKey() + "\t" + e.getValue());
+		outStream.close();
+	}
+}
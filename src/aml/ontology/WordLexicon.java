@@ -22,11 +22,14 @@
 package aml.ontology;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import aml.util.SimilarityCache;
 import aml.util.StopList;
 import aml.util.StringParser;
 import aml.util.Table2List;
@@ -35,7 +38,7 @@ import aml.util.Table2Map;
 import aml.util.Table3List;
 import aml.util.Table3Set;
 
-public class WordLexicon
+public class WordLexicon implements WordLexiconView
 {
 
 //Attributes
@@ -63,6 +66,8 @@ public class WordLexicon
 	private HashMap<String,Double> nameECs;
 	//Auxiliary count of words entered into the WordLexicon
 	private int total;
+	//The words, names and classes, numbered as read through the WordLexiconView
+	private Index index;
 	
 //Constructors
 
@@ -98,6 +103,111 @@ public class WordLexicon
 	{
 		return wordClasses.keyCount();
 	}
+
+	@Override
+	public int blockWord(int pos)
+	{
+		return index.blockWords[pos];
+	}
+
+	@Override
+	public int blockWordsStart(int block)
+	{
+		return index.blockWordOff[block];
+	}
+
+	@Override
+	public int blockWordsEnd(int block)
+	{
+		return index.blockWordOff[block+1];
+	}
+
+	@Override
+	public int classCount()
+	{
+		return index.classIds.length;
+	}
+
+	@Override
+	public double classEC(int pos)
+	{
+		return index.classEC[pos];
+	}
+
+	@Override
+	public int classId(int pos)
+	{
+		return index.classIds[pos];
+	}
+
+	@Override
+	public int className(int p)
+	{
+		return index.classNames[p];
+	}
+
+	@Override
+	public int classNamesStart(int pos)
+	{
+		return index.classNameOff[pos];
+	}
+
+	@Override
+	public int classNamesEnd(int pos)
+	{
+		return index.classNameOff[pos+1];
+	}
+
+	@Override
+	public double classNameWeight(int p)
+	{
+		return index.classNameWeights[p];
+	}
+
+	@Override
+	public int classPosition(int classId)
+	{
+		if(classId < 0 || classId >= index.classPositions.length)
+			return -1;
+		return index.classPositions[classId];
+	}
+
+	@Override
+	public int classWord(int p)
+	{
+		return index.classWords[p];
+	}
+
+	@Override
+	public int classWordsStart(int pos)
+	{
+		return index.classWordOff[pos];
+	}
+
+	@Override
+	public int classWordsEnd(int pos)
+	{
+		return index.classWordOff[pos+1];
+	}
+
+	@Override
+	public double classWordWeight(int p)
+	{
+		return index.classWordWeights[p];
+	}
+	
+	/**
+	 * @return a fingerprint of the words of the WordLexicon and their EC, which
+	 * changes when the similarities computed with it may change (independent
+	 * of the order of the words, so it is the same in every run)
+	 */
+	public long fingerprint()
+	{
+		long f = wordECs.size();
+		for(String w : wordECs.keySet())
+			f += SimilarityCache.hash(Double.doubleToLongBits(wordECs.get(w)), w);
+		return f;
+	}
 	
 	/**
 	 * @param classId: the class to search in the WordLexicon
@@ -118,6 +228,22 @@ public class WordLexicon
 		return classWords.keySet();
 	}
 	
+	/**
+	 * @param word: the word to search in the WordLexicon
+	 * @return the set of classes that have the given word, in all blocks
+	 */
+	public Set<Integer> getClasses(String word)
+	{
+		HashSet<Integer> wordClassSet = new HashSet<Integer>();
+		for(Integer block : wordClasses.keySet())
+		{
+			List<Integer> l = wordClasses.get(block,word);
+			if(l != null)
+				wordClassSet.addAll(l);
+		}
+		return wordClassSet;
+	}
+	
 	/**
 	 * @return the language used to build this WordLexicon
 	 */
@@ -136,6 +262,15 @@ public class WordLexicon
 			return nameECs.get(n);
 		return -1.0;
 	}
+
+	@Override
+	public int getNameId(String name)
+	{
+		Integer n = index.nameIds.get(name);
+		if(n == null)
+			return -1;
+		return n;
+	}
 	
 	/**
 	 * @return the set of names in the WordLexicon
@@ -178,6 +313,23 @@ public class WordLexicon
 		return -1.0;
 	}
 
+	@Override
+	public int getWordId(String word)
+	{
+		Integer w = index.wordIds.get(word);
+		if(w == null)
+			return -1;
+		return w;
+	}
+
+	/**
+	 * @return the set of words in the WordLexicon
+	 */
+	public Set<String> getWords()
+	{
+		return wordECs.keySet();
+	}
+
 	/**
 	 * @return the set of words for the given classId
 	 */
@@ -228,6 +380,109 @@ public class WordLexicon
 		return classWords.get(classId, word);
 	}
 	
+	@Override
+	public long hashName(long h, int name)
+	{
+		return SimilarityCache.hash(h, index.names[name]);
+	}
+
+	@Override
+	public String name(int name)
+	{
+		return index.names[name];
+	}
+
+	/**
+	 * @return the number of names in the WordLexicon
+	 */
+	public int nameCount()
+	{
+		return nameWords.keyCount();
+	}
+
+	@Override
+	public double nameEC(int name)
+	{
+		return index.nameEC[name];
+	}
+
+	@Override
+	public int nameSetWord(int p)
+	{
+		return index.nameSetWords[p];
+	}
+
+	@Override
+	public int nameWord(int p)
+	{
+		return index.nameWords[p];
+	}
+
+	@Override
+	public int nameWordsStart(int name)
+	{
+		return index.nameWordOff[name];
+	}
+
+	@Override
+	public int nameWordsEnd(int name)
+	{
+		return index.nameWordOff[name+1];
+	}
+
+	@Override
+	public int posting(int pos)
+	{
+		return index.postings[pos];
+	}
+
+	@Override
+	public int postingsStart(int blockWord)
+	{
+		return index.postingOff[blockWord];
+	}
+
+	@Override
+	public int postingsEnd(int blockWord)
+	{
+		return index.postingOff[blockWord+1];
+	}
+
+	@Override
+	public double postingWeight(int pos)
+	{
+		return index.postingWeights[pos];
+	}
+
+	@Override
+	public String word(int word)
+	{
+		return index.words[word];
+	}
+	
+	/**
+	 * @return the number of distinct words in the WordLexicon
+	 */
+	public int wordCount()
+	{
+		return wordECs.size();
+	}
+
+	@Override
+	public double wordEC(int word)
+	{
+		return index.wordEC[word];
+	}
+
+	@Override
+	public double wordWeight(int pos, int word)
+	{
+		int p = Arrays.binarySearch(index.classWords, index.classWordOff[pos], index.classWordOff[pos+1], word);
+		if(p < 0)
+			return -1.0;
+		return index.classWordWeights[p];
+	}
+	
 //Private methods
 	
 	//Builds the WordLexicon from the original Lexicon
@@ -288,6 +543,128 @@ public class WordLexicon
 				ec += wordECs.get(w);
 			nameECs.put(n, ec);
 		}
+		buildIndex();
+	}
+
+	//Numbers the words and names (in alphabetical order) and the classes (by
+	//index), and lays out the tables in flat arrays, by number, in the same
+	//order as a MappedWordLexicon file
+	private void buildIndex()
+	{
+		index = new Index();
+		List<String> wordList = new ArrayList<String>(wordECs.keySet());
+		Collections.sort(wordList);
+		index.words = wordList.toArray(new String[wordList.size()]);
+		index.wordIds = new HashMap<String,Integer>();
+		index.wordEC = new double[index.words.length];
+		for(int i = 0; i < index.words.length; i++)
+		{
+			index.wordIds.put(index.words[i], i);
+			index.wordEC[i] = wordECs.get(index.words[i]);
+		}
+		List<String> nameList = new ArrayList<String>(nameWords.keySet());
+		Collections.sort(nameList);
+		index.names = nameList.toArray(new String[nameList.size()]);
+		index.nameIds = new HashMap<String,Integer>();
+		index.nameEC = new double[index.names.length];
+		index.nameWordOff = new int[index.names.length+1];
+		for(int i = 0; i < index.names.length; i++)
+		{
+			index.nameIds.put(index.names[i], i);
+			index.nameEC[i] = nameECs.get(index.names[i]);
+			index.nameWordOff[i+1] = index.nameWordOff[i] + nameWords.get(index.names[i]).size();
+		}
+		//The words of each name as listed, and as in the set of its words
+		index.nameWords = new int[index.nameWordOff[index.names.length]];
+		index.nameSetWords = new int[index.nameWords.length];
+		for(int i = 0; i < index.names.length; i++)
+		{
+			int p = index.nameWordOff[i];
+			int q = p;
+			for(String w : nameWords.get(index.names[i]))
+				index.nameWords[p++] = index.wordIds.get(w);
+			for(String w : getWords(index.names[i]))
+				index.nameSetWords[q++] = index.wordIds.get(w);
+		}
+
+		List<Integer> classList = new ArrayList<Integer>(classWords.keySet());
+		Collections.sort(classList);
+		int classes = classList.size();
+		index.classIds = new int[classes];
+		index.classPositions = new int[classes == 0 ? 0 : classList.get(classes-1) + 1];
+		Arrays.fill(index.classPositions, -1);
+		index.classEC = new double[classes];
+		index.classWordOff = new int[classes+1];
+		index.classNameOff = new int[classes+1];
+		List<Set<String>> classNameSets = new ArrayList<Set<String>>(classes);
+		for(int i = 0; i < classes; i++)
+		{
+			int c = classList.get(i);
+			index.classIds[i] = c;
+			index.classPositions[c] = i;
+			index.classEC[i] = classECs.get(c);
+			index.classWordOff[i+1] = index.classWordOff[i] + classWords.keySet(c).size();
+			classNameSets.add(getNames(c));
+			index.classNameOff[i+1] = index.classNameOff[i] + classNameSets.get(i).size();
+		}
+		//The words of each class, sorted by number for binary search
+		index.classWords = new int[index.classWordOff[classes]];
+		index.classWordWeights = new double[index.classWords.length];
+		for(int i = 0; i < classes; i++)
+		{
+			int p = index.classWordOff[i];
+			for(String w : classWords.keySet(index.classIds[i]))
+				index.classWords[p++] = index.wordIds.get(w);
+			Arrays.sort(index.classWords, index.classWordOff[i], p);
+			for(p = index.classWordOff[i]; p < index.classWordOff[i+1]; p++)
+				index.classWordWeights[p] = classWords.get(index.classIds[i], index.words[index.classWords[p]]);
+		}
+		//The names of each class, in the order in which getNames lists them
+		index.classNames = new int[index.classNameOff[classes]];
+		index.classNameWeights = new double[index.classNames.length];
+		for(int i = 0; i < classes; i++)
+		{
+			int p = index.classNameOff[i];
+			for(String n : classNameSets.get(i))
+			{
+				index.classNames[p] = index.nameIds.get(n);
+				index.classNameWeights[p++] = getNameWeight(n, index.classIds[i]);
+			}
+		}
+
+		//The postings of each block, with the words of the block sorted by number
+		int blocks = blockCount();
+		index.blockWordOff = new int[blocks+1];
+		for(int b = 0; b < blocks; b++)
+			index.blockWordOff[b+1] = index.blockWordOff[b] + wordClasses.get(b).keyCount();
+		index.blockWords = new int[index.blockWordOff[blocks]];
+		index.postingOff = new int[index.blockWords.length+1];
+		for(int b = 0; b < blocks; b++)
+		{
+			Table2List<String,Integer> table = wordClasses.get(b);
+			int p = index.blockWordOff[b];
+			for(String w : table.keySet())
+				index.blockWords[p++] = index.wordIds.get(w);
+			Arrays.sort(index.blockWords, index.blockWordOff[b], p);
+			for(p = index.blockWordOff[b]; p < index.blockWordOff[b+1]; p++)
+				index.postingOff[p+1] = index.postingOff[p] + table.get(index.words[index.blockWords[p]]).size();
+		}
+		index.postings = new int[index.postingOff[index.blockWords.length]];
+		index.postingWeights = new double[index.postings.length];
+		for(int b = 0; b < blocks; b++)
+		{
+			Table2List<String,Integer> table = wordClasses.get(b);
+			for(int p = index.blockWordOff[b]; p < index.blockWordOff[b+1]; p++)
+			{
+				String w = index.words[index.blockWords[p]];
+				int x = index.postingOff[p];
+				for(Integer c : table.get(w))
+				{
+					index.postings[x] = index.classPositions[c];
+					index.postingWeights[x++] = getWordWeight(w, c);
+				}
+			}
+		}
 	}
 			
 	//Adds all words for a given name and classId
@@ -335,4 +712,32 @@ public class WordLexicon
 			total++;
 		}
 	}
+
+	//The flat arrays of the numbered words, names and classes
+	private static class Index
+	{
+		private String[] words;
+		private HashMap<String,Integer> wordIds;
+		private double[] wordEC;
+		private String[] names;
+		private HashMap<String,Integer> nameIds;
+		private double[] nameEC;
+		private int[] nameWordOff;
+		private int[] nameWords;
+		private int[] nameSetWords;
+		private int[] classIds;
+		private int[] classPositions;
+		private double[] classEC;
+		private int[] classWordOff;
+		private int[] classWords;
+		private double[] classWordWeights;
+		private int[] classNameOff;
+		private int[] classNames;
+		private double[] classNameWeights;
+		private int[] blockWordOff;
+		private int[] blockWords;
+		private int[] postingOff;
+		private int[] postings;
+		private double[] postingWeights;
+	}
 }
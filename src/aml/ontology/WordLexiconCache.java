@@ -0,0 +1,258 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Cache of the WordLexicons of an Ontology, one per language ("" for all      *
+* languages). The cache can be bounded to the most recently used languages,  *
+* and can hold its WordLexicons through soft references so that they can be  *
+* reclaimed under memory pressure (and rebuilt when next requested).         *
+* Different languages can be built in parallel, while concurrent requests    *
+* for the same language wait for a single build.                             *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.ontology;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+public class WordLexiconCache
+{
+
+//Attributes
+
+	//The Lexicon from which the WordLexicons are built
+	private Lexicon lex;
+	//The maximum number of WordLexicons to keep (0 for no limit)
+	private int maxSize;
+	//Whether the WordLexicons are held through soft references
+	private boolean soft;
+	//The cached WordLexicons (or their soft references) in access order
+	private LinkedHashMap<String,Object> cache;
+	//The WordLexicons being built
+	private HashMap<String,FutureTask<WordLexicon>> building;
+	//The number of times the cache was cleared, so that WordLexicons whose
+	//building started before it was are not cached
+	private int generation;
+
+//Constructors
+
+	/**
+	 * Constructs a new unbounded WordLexiconCache for the given Lexicon
+	 * @param l: the Lexicon from which the WordLexicons are built
+	 */
+	public WordLexiconCache(Lexicon l)
+	{
+		this(l,0,false);
+	}
+
+	/**
+	 * Constructs a new WordLexiconCache for the given Lexicon
+	 * @param l: the Lexicon from which the WordLexicons are built
+	 * @param max: the maximum number of languages to keep, evicting the
+	 * least recently used ones (0 for no limit)
+	 * @param softRefs: whether to hold the WordLexicons through soft references
+	 */
+	public WordLexiconCache(Lexicon l, int max, boolean softRefs)
+	{
+		lex = l;
+		maxSize = max;
+		soft = softRefs;
+		cache = new LinkedHashMap<String,Object>(16,0.75f,true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,Object> eldest)
+			{
+				return maxSize > 0 && size() > maxSize;
+			}
+		};
+		building = new HashMap<String,FutureTask<WordLexicon>>();
+		generation = 0;
+	}
+
+//Public Methods
+
+	/**
+	 * Builds the WordLexicons for the given languages in parallel
+	 * (languages already in the cache are not rebuilt)
+	 * @param languages: the languages to build ("" for all languages)
+	 * @param threads: the number of threads to use
+	 */
+	public void buildAll(Collection<String> languages, int threads)
+	{
+		ArrayList<Callable<WordLexicon>> tasks = new ArrayList<Callable<WordLexicon>>();
+		for(final String l : languages)
+		{
+			tasks.add(new Callable<WordLexicon>()
+			{
+				@Override
+				public WordLexicon call()
+				{
+					return get(l);
+				}
+			});
+		}
+		ExecutorService exec = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+		try
+		{
+			List<Future<WordLexicon>> results = exec.invokeAll(tasks);
+			for(Future<WordLexicon> f : results)
+				f.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch(ExecutionException e)
+		{
+			e.printStackTrace();
+		}
+		exec.shutdown();
+	}
+
+	/**
+	 * Removes all WordLexicons from the cache (e.g., after
+	 * the Lexicon has been extended with new names), including
+	 * those being built, which are then not cached when done
+	 */
+	public synchronized void clear()
+	{
+		cache.clear();
+		building.clear();
+		generation++;
+	}
+
+	/**
+	 * @param lang: the language of the WordLexicon ("" for all languages)
+	 * @return whether the WordLexicon for the language is in the cache
+	 */
+	public synchronized boolean contains(String lang)
+	{
+		return lookup(lang) != null;
+	}
+
+	/**
+	 * Gets the WordLexicon for the given language, building it
+	 * if it is not in the cache
+	 * @param lang: the language of the WordLexicon ("" for all languages)
+	 * @return the WordLexicon for the language
+	 */
+	public WordLexicon get(String lang)
+	{
+		FutureTask<WordLexicon> task;
+		boolean owner = false;
+		int gen;
+		synchronized(this)
+		{
+			gen = generation;
+			WordLexicon w = lookup(lang);
+			if(w != null)
+				return w;
+			task = building.get(lang);
+			if(task == null)
+			{
+				final String l = lang;
+				task = new FutureTask<WordLexicon>(new Callable<WordLexicon>()
+				{
+					@Override
+					public WordLexicon call()
+					{
+						if(l.equals(""))
+							return new WordLexicon(lex);
+						return new WordLexicon(lex,l);
+					}
+				});
+				building.put(lang, task);
+				owner = true;
+			}
+		}
+		//The WordLexicon is built outside the lock, so that
+		//other languages can be built at the same time
+		if(owner)
+			task.run();
+		try
+		{
+			WordLexicon w = task.get();
+			if(owner)
+			{
+				synchronized(this)
+				{
+					//If the cache was cleared meanwhile, the WordLexicon may be
+					//outdated, so it is returned but not cached
+					if(gen == generation)
+					{
+						building.remove(lang);
+						if(soft)
+							cache.put(lang, new SoftReference<WordLexicon>(w));
+						else
+							cache.put(lang, w);
+					}
+				}
+			}
+			return w;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch(ExecutionException e)
+		{
+			synchronized(this)
+			{
+				if(building.get(lang) == task)
+					building.remove(lang);
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return the number of WordLexicons in the cache
+	 */
+	public synchronized int size()
+	{
+		return cache.size();
+	}
+
+//Private Methods
+
+	//Gets a WordLexicon from the cache, removing cleared soft references
+	@SuppressWarnings("unchecked")
+	private WordLexicon lookup(String lang)
+	{
+		Object o = cache.get(lang);
+		if(o == null)
+			return null;
+		if(o instanceof WordLexicon)
+			return (WordLexicon)o;
+		WordLexicon w = ((SoftReference<WordLexicon>)o).get();
+		if(w == null)
+			cache.remove(lang);
+		return w;
+	}
+}
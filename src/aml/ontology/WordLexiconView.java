@@ -0,0 +1,317 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* The words of an Ontology as the WordMatcher reads them, either from its     *
+* WordLexicon or from a memory-mapped WordLexicon file. Words and names are   *
+* numbered (in alphabetical order) and classes have a position, so that the   *
+* WordMatcher can compare them by number, reading the words of each name, the *
+* names and words of each class and the postings (classes with each word) of  *
+* each block as ranges of positions, and decode the names only when it needs  *
+* them (e.g., for a SubMapping).                                              *
+*                                                                             *
+* @date 19-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.ontology;
+
+import java.util.List;
+import java.util.Set;
+
+public interface WordLexiconView
+{
+	/**
+	 * @return the number of blocks of classes
+	 */
+	public int blockCount();
+
+	/**
+	 * @param pos: a position in the words of a block
+	 * @return the number of the word at the position
+	 */
+	public int blockWord(int pos);
+
+	/**
+	 * @param block: the block of classes
+	 * @return the position of the first word of the block (the words of
+	 * a block are sorted by number)
+	 */
+	public int blockWordsStart(int block);
+
+	/**
+	 * @param block: the block of classes
+	 * @return the position after the last word of the block
+	 */
+	public int blockWordsEnd(int block);
+
+	/**
+	 * @return the number of classes with words
+	 */
+	public int classCount();
+
+	/**
+	 * @param pos: the position of a class
+	 * @return the EC of the class
+	 */
+	public double classEC(int pos);
+
+	/**
+	 * @param pos: the position of a class
+	 * @return the index of the class in the URIMap (-1 if the class isn't loaded)
+	 */
+	public int classId(int pos);
+
+	/**
+	 * @param p: a position in the names of a class
+	 * @return the number of the name at the position
+	 */
+	public int className(int p);
+
+	/**
+	 * @param pos: the position of a class
+	 * @return the position of the first name of the class (the names are in
+	 * the order in which getNames(classId) lists them)
+	 */
+	public int classNamesStart(int pos);
+
+	/**
+	 * @param pos: the position of a class
+	 * @return the position after the last name of the class
+	 */
+	public int classNamesEnd(int pos);
+
+	/**
+	 * @param p: a position in the names of a class
+	 * @return the weight of the name at the position for the class
+	 */
+	public double classNameWeight(int p);
+
+	/**
+	 * @param classId: the index of the class in the URIMap
+	 * @return the position of the class, or -1 if it has no words
+	 */
+	public int classPosition(int classId);
+
+	/**
+	 * @param p: a position in the words of a class
+	 * @return the number of the word at the position
+	 */
+	public int classWord(int p);
+
+	/**
+	 * @param pos: the position of a class
+	 * @return the position of the first word of the class (the words
+	 * of a class are sorted by number)
+	 */
+	public int classWordsStart(int pos);
+
+	/**
+	 * @param pos: the position of a class
+	 * @return the position after the last word of the class
+	 */
+	public int classWordsEnd(int pos);
+
+	/**
+	 * @param p: a position in the words of a class
+	 * @return the weight of the word at the position for the class
+	 */
+	public double classWordWeight(int p);
+
+	/**
+	 * @return a fingerprint of the words and their EC, which changes when
+	 * the similarities computed with them may change
+	 */
+	public long fingerprint();
+
+	/**
+	 * @param classId: the class to search
+	 * @return the EC of the given class (or -1 if it has no words)
+	 */
+	public double getClassEC(int classId);
+
+	/**
+	 * @return the set of classes with words
+	 */
+	public Set<Integer> getClasses();
+
+	/**
+	 * @param n: the name to search
+	 * @return the EC of the given name (or -1 if it has no words)
+	 */
+	public double getNameEC(String n);
+
+	/**
+	 * @param name: the name to search
+	 * @return the number of the name, or -1 if it has no words
+	 */
+	public int getNameId(String name);
+
+	/**
+	 * @return the set of names with words
+	 */
+	public Set<String> getNames();
+
+	/**
+	 * @param classId: the class to search
+	 * @return the set of names of the class with words
+	 */
+	public Set<String> getNames(int classId);
+
+	/**
+	 * @param name: the name to search
+	 * @param classId: the class to search
+	 * @return the weight of the name for the class
+	 */
+	public double getNameWeight(String name, int classId);
+
+	/**
+	 * @param w: the word to search
+	 * @return the EC of the given word (or -1 if no class has it)
+	 */
+	public double getWordEC(String w);
+
+	/**
+	 * @param word: the word to search
+	 * @return the number of the word, or -1 if no class has it
+	 */
+	public int getWordId(String word);
+
+	/**
+	 * @return the set of words
+	 */
+	public Set<String> getWords();
+
+	/**
+	 * @param classId: the class to search
+	 * @return the set of words of the class
+	 */
+	public Set<String> getWords(int classId);
+
+	/**
+	 * @param name: the name to search
+	 * @return the set of words of the name
+	 */
+	public Set<String> getWords(String name);
+
+	/**
+	 * @param name: the name to search
+	 * @return the list of words of the name (with repetitions)
+	 */
+	public List<String> getWordsList(String name);
+
+	/**
+	 * @param word: the word to search
+	 * @param classId: the class to search
+	 * @return the weight of the word for the class (or -1 if the class doesn't have it)
+	 */
+	public double getWordWeight(String word, int classId);
+
+	/**
+	 * @param h: the hash to continue
+	 * @param name: the number of a name
+	 * @return the hash continued with the name, as SimilarityCache.hash(h, name)
+	 * (so the name needn't be decoded to build the key of its similarity)
+	 */
+	public long hashName(long h, int name);
+
+	/**
+	 * @param name: the number of a name
+	 * @return the name
+	 */
+	public String name(int name);
+
+	/**
+	 * @return the number of names with words
+	 */
+	public int nameCount();
+
+	/**
+	 * @param name: the number of a name
+	 * @return the EC of the name
+	 */
+	public double nameEC(int name);
+
+	/**
+	 * @param p: a position in the words of a name
+	 * @return the number of the word at the position, in the order in which
+	 * the name lists them
+	 */
+	public int nameWord(int p);
+
+	/**
+	 * @param p: a position in the words of a name
+	 * @return the number of the word at the position, in the order in which
+	 * the set of words of the name (getWords(name)) lists them
+	 */
+	public int nameSetWord(int p);
+
+	/**
+	 * @param name: the number of a name
+	 * @return the position of the first (distinct) word of the name
+	 */
+	public int nameWordsStart(int name);
+
+	/**
+	 * @param name: the number of a name
+	 * @return the position after the last word of the name
+	 */
+	public int nameWordsEnd(int name);
+
+	/**
+	 * @param pos: a position in the postings of a block
+	 * @return the position of the class of the posting
+	 */
+	public int posting(int pos);
+
+	/**
+	 * @param blockWord: the position of a word in a block
+	 * @return the position of the first class with the word in the block
+	 */
+	public int postingsStart(int blockWord);
+
+	/**
+	 * @param blockWord: the position of a word in a block
+	 * @return the position after the last class with the word in the block
+	 */
+	public int postingsEnd(int blockWord);
+
+	/**
+	 * @param pos: a position in the postings of a block
+	 * @return the weight of the word for the class of the posting
+	 */
+	public double postingWeight(int pos);
+
+	/**
+	 * @param word: the number of a word
+	 * @return the word
+	 */
+	public String word(int word);
+
+	/**
+	 * @return the number of distinct words
+	 */
+	public int wordCount();
+
+	/**
+	 * @param word: the number of a word
+	 * @return the EC of the word
+	 */
+	public double wordEC(int word);
+
+	/**
+	 * @param pos: the position of a class
+	 * @param word: the number of a word
+	 * @return the weight of the word for the class, or -1 if the class doesn't have it
+	 */
+	public double wordWeight(int pos, int word);
+}
@@ -0,0 +1,47 @@
+/******************************************************************************
+ * Copyright 2013-2014 LASIGE                                                  *
+ *                                                                             *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+ * not use this file except in compliance with the License. You may obtain a   *
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+ *                                                                             *
+ * Unless required by applicable law or agreed to in writing, software         *
+ * distributed under the License is distributed on an "AS IS" BASIS,           *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+ * See the License for the specific language governing permissions and         *
+ * limitations under the License.                                              *
+ *                                                                             *
+ *******************************************************************************
+ * Lists the stages of the compound matching pipeline that can be checkpointed.*
+ *                                                                             *
+ * @date 18-10-2026                                                            *
+ * @version 1.1                                                                *
+ ******************************************************************************/
+package aml.settings;
+
+public enum CompoundStage
+{
+	FIRST ("first"),
+	RESIDUAL ("residual"),
+	COMPOUND ("compound");
+
+	final String value;
+
+	CompoundStage(String s)
+	{
+		value = s;
+	}
+
+	public static CompoundStage parseStage(String stage)
+	{
+		for(CompoundStage s : CompoundStage.values())
+			if(stage.equalsIgnoreCase(s.toString()))
+				return s;
+		return null;
+	}
+
+	public String toString()
+	{
+		return value;
+	}
+}
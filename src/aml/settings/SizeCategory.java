@@ -40,6 +40,17 @@ public enum SizeCategory
 	{
 		Ontology source = AML.getInstance().getSource();
 		Ontology target = AML.getInstance().getTarget();
+		return getSizeCategory(source, target);
+	}
+
+	/**
+	 * Computes the size category of the matching problem
+	 * between the given ontologies
+	 * @param source: the source ontology
+	 * @param target: the target ontology
+	 */
+	public static SizeCategory getSizeCategory(Ontology source, Ontology target)
+	{
 		int sSize = source.classCount();
 		int tSize = target.classCount();
 		int max = Math.max(sSize, tSize);
@@ -14,6 +14,9 @@
 *******************************************************************************
 * Uses a stored dictionary or the Microsoft Translator to translate a name    *
 * from one given language to another.                                         *
+* The names missing from the dictionary are sent to the translator backend    *
+* in batches, several at a time, and their translations are saved to an       *
+* indexed DictionaryStore (which imports the old text dictionary, if any).    *
 *                                                                             *
 * @author Daniel Faria, Joana Pinto, Pedro do Vale                            *
 * @date 13-08-2014                                                            *
@@ -22,19 +25,21 @@
 package aml.translate;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-
-
-
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import aml.AML;
 import aml.ontology.Lexicon;
@@ -47,9 +52,9 @@ public class Dictionary
 {
 
 //Attributes
-	
+
 	//The dictionary itself
-	private HashMap<String, String> dictionary;
+	private DictionaryStore dictionary;
 	//The path to the root directory with dictionary files
 	private final String ROOT = "store/dictionary/";
 	//The dictionary file
@@ -58,7 +63,11 @@ public class Dictionary
 	private String sourceLang;
 	private String targetLang;
 	//The translator
-	private Translator translator;
+	private TranslatorBackend translator;
+	//The number of names sent to the translator at once, and
+	//the number of batches sent at the same time
+	private final int BATCH_SIZE = 50;
+	private final int THREADS = 8;
 	//The attributes for Lexicon extension
 	private final LexicalType TYPE = LexicalType.EXTERNAL_MATCH;
 	private final String SOURCE = "ms-translator";
@@ -67,18 +76,30 @@ public class Dictionary
 	private boolean haveDictionary;
 
 //Constructors
-	
+
 	/**
 	 * Constructs a new Dictionary for the given pair of languages
 	 * @param sourceLang: the language from which to translate
 	 * @param targetLang: the language to which to translate
 	 */
 	public Dictionary(String sourceLang, String targetLang)
+	{
+		this(sourceLang, targetLang, new Translator());
+	}
+
+	/**
+	 * Constructs a new Dictionary for the given pair of languages
+	 * @param sourceLang: the language from which to translate
+	 * @param targetLang: the language to which to translate
+	 * @param translator: the translator backend for the names not in the dictionary
+	 */
+	public Dictionary(String sourceLang, String targetLang, TranslatorBackend translator)
 	{
 		System.out.println("Opening " + sourceLang + "-" +
 				targetLang + " dictionary");
 		this.sourceLang = sourceLang;
 		this.targetLang = targetLang;
+		this.translator = translator;
 		init();
 		if(haveDictionary && useTranslator)
 			System.out.println("Using stored dictionary and complement with MS Translator.");
@@ -92,176 +113,184 @@ public class Dictionary
 	}
 
 //Public Methods
-	
+
 	/**
 	 * Translates a given Lexicon
 	 * @param l: the Lexicon to translate
 	 */
 	public void translateLexicon(Lexicon l)
 	{
-		//Initialize the file writer
-		BufferedWriter outStream = null;
-		//If we can use the Translator, we'll want to save
-		//the new translations to the dictionary file
-		if(useTranslator)
-		{
-			try
-			{
-				outStream = new BufferedWriter(new OutputStreamWriter(
-				        new FileOutputStream(file,true), "UTF8"));
-			}
-			catch(IOException e)
-			{
-				System.out.println("Unable to save translations to file: " +
-						e.getMessage());
-			}
-		}
-		//Get the Lexicon's names
-		HashSet<String> names = new HashSet<String>(l.getNames());
+		//Get the Lexicon's names in the source language
+		HashSet<String> names = new HashSet<String>();
+		for(String n : l.getNames())
+			if(l.getLanguages(n).contains(sourceLang) && !n.equals("null") && !StringParser.isFormula(n))
+				names.add(n);
+		//Translate those that are not in the dictionary
+		translate(names);
 		for(String n : names)
 		{
-			//Check if they are in the source language
-			if(!l.getLanguages(n).contains(sourceLang) || n.equals("null") || StringParser.isFormula(n))
-				continue;
-			String trans = "";
-			//If the dictionary contains the name, get the translation
-			if(dictionary.containsKey(n))
-			{
-				trans = dictionary.get(n);
-			}
-			//Otherwise use the translator to make the translation
-			else if(useTranslator)
-			{
-				System.out.println("Not found: " + n);
-				trans = translator.translate(n, sourceLang, targetLang);
-				if(trans.startsWith("ArgumentException"))
-					continue;
-				//Update the dictionary
-				dictionary.put(n, trans);
-				//Update the dictionary file
-				try { outStream.write(n + "\t" + trans + "\n");	}
-				catch(IOException e) {/*Do nothing*/}
-			}
+			String trans = dictionary.get(n);
 			//If we have a translation, extend the Lexicon with it
-			if(!trans.equals(""))
+			if(trans != null && !trans.equals(""))
 				for(Integer i : l.getClassesWithLanguage(n,sourceLang))
 					l.add(i, trans, targetLang, TYPE, SOURCE, l.getWeight(n, i));
 		}
-		if(outStream != null)
-		{
-			try	{ outStream.close(); }
-			catch(IOException e) {/*Do nothing*/}
-		}
 		AML.getInstance().setLanguageSetting();
 	}
-	
+
 	/**
 	 * Translates the properties of a given Ontology
 	 * @param o: the Ontology with the properties to translate
 	 */
 	public void translateProperties(Ontology o)
 	{
-		//Initialize the file writer
-		BufferedWriter outStream = null;
-		//If we can use the Translator, we'll want to save
-		//the new translations to the dictionary file
-		if(useTranslator)
-		{
-			try
-			{
-				outStream = new BufferedWriter(new OutputStreamWriter(
-				        new FileOutputStream(file,true), "UTF8"));
-			}
-			catch(IOException e)
-			{
-				System.out.println("Unable to save translations to file: " +
-						e.getMessage());
-			}
-		}
 		//Get the Ontology's properties
 		HashMap<Integer,Property> props = o.getPropertyMap();
+		HashSet<String> names = new HashSet<String>();
+		for(Integer i : props.keySet())
+			if(!props.get(i).getType().equals("annotation"))
+				names.add(props.get(i).getName());
+		//Translate those that are not in the dictionary
+		translate(names);
 		for(Integer i : props.keySet())
 		{
 			Property p = props.get(i);
 			if(p.getType().equals("annotation"))
 				continue;
-			String n = p.getName();
-			String trans = "";
-			//If the dictionary contains the name, get the translation
-			if(dictionary.containsKey(n))
-			{
-				trans = dictionary.get(n);
-			}
-			//Otherwise use the translator to make the translation
-			else if(useTranslator)
-			{
-				System.out.println("Not found: " + n);
-				trans = translator.translate(n, sourceLang, targetLang);
-				if(trans.startsWith("ArgumentException"))
-					continue;
-				//Update the dictionary
-				dictionary.put(n, trans);
-				//Update the dictionary file
-				try { outStream.write(n + "\t" + trans + "\n");	}
-				catch(IOException e) {/*Do nothing*/}
-			}
+			String trans = dictionary.get(p.getName());
 			//If we have a translation, extend the Property with it
-			if(!trans.equals(""))
+			if(trans != null && !trans.equals(""))
 				p.setTranslation(trans);
 		}
-		if(outStream != null)
-		{
-			try	{ outStream.close(); }
-			catch(IOException e) {/*Do nothing*/}
-		}
 	}
-	
+
 //Private methods
-	
+
 	private void init()
 	{
-		//Initialize the data structure and set the languages
-		dictionary = new HashMap<String, String>();
-		//Compose the file name
-		file = ROOT + sourceLang + "-" + targetLang + ".txt";
-		//Open the Translator and check if we can use it
-		translator = new Translator();
+		//Compose the file name and open the dictionary
+		file = ROOT + sourceLang + "-" + targetLang + ".dict";
+		dictionary = new DictionaryStore(file);
+		//Check if we can use the Translator
 		useTranslator = translator.isAuthenticated();
-		//Read the dictionary file (if exists)
+		//Import the text dictionary file (if it exists) the first time
+		if(!dictionary.exists())
+			importText(ROOT + sourceLang + "-" + targetLang + ".txt");
+		haveDictionary = dictionary.size() > 0;
+	}
+
+	//Reads the names and translations of a text dictionary file into the store
+	private void importText(String text)
+	{
 		try
 		{
 			BufferedReader inStream = new BufferedReader(new InputStreamReader(
-					new FileInputStream(file),"UTF8"));
+					new FileInputStream(text),"UTF8"));
 			String line;
 			while((line = inStream.readLine()) != null)
 			{
-				if(!line.contains("\t"))
-					continue;
 				String[] words = line.split("\t");
+				if(words.length < 2)
+					continue;
 				dictionary.put(words[0], words[1]);
 			}
-			haveDictionary = true;
 			inStream.close();
+			save();
 		}
 		//This will happen if the dictionary file was not created yet,
 		//in which case we'll be in translator mode only
 		catch(FileNotFoundException e)
 		{
-			System.out.println("Dictionary file not found: " + file);
-			haveDictionary = false;
+			System.out.println("Dictionary file not found: " + text);
 		}
 		//An encoding problem should not happen unless external files are used
 		catch(UnsupportedEncodingException e)
 		{
 			e.printStackTrace();
-			haveDictionary = false;
 		}
 		//A reading error also shouldn't happen unless external files are used
 		catch (IOException e)
 		{
 			System.out.println("Error reading dictionary file: " + e.getMessage());
-			//Check if we've read anything before the error
-			haveDictionary = dictionary.size() > 0;
+		}
+	}
+
+	private void save()
+	{
+		try
+		{
+			dictionary.save();
+		}
+		catch(IOException e)
+		{
+			System.out.println("Unable to save translations to file: " +
+					e.getMessage());
+		}
+	}
+
+	//Translates the names that are not in the dictionary, sending them to the
+	//translator in batches (several at a time) and saving the translations
+	private void translate(Collection<String> names)
+	{
+		if(!useTranslator)
+			return;
+		List<String> missing = new ArrayList<String>();
+		for(String n : names)
+			if(!dictionary.contains(n))
+				missing.add(n);
+		if(missing.isEmpty())
+			return;
+		System.out.println("Translating " + missing.size() + " names not found in the dictionary");
+		ArrayList<TranslationTask> tasks = new ArrayList<TranslationTask>();
+		for(int i = 0; i < missing.size(); i += BATCH_SIZE)
+			tasks.add(new TranslationTask(missing.subList(i, Math.min(i + BATCH_SIZE, missing.size()))));
+		List<Future<String[]>> results;
+		ExecutorService exec = Executors.newFixedThreadPool(Math.min(THREADS, tasks.size()));
+		try
+		{
+			results = exec.invokeAll(tasks);
+		}
+		catch(InterruptedException e)
+		{
+			e.printStackTrace();
+			results = new ArrayList<Future<String[]>>();
+		}
+		exec.shutdown();
+		for(int i = 0; i < results.size(); i++)
+		{
+			String[] batch = tasks.get(i).names;
+			try
+			{
+				String[] trans = results.get(i).get();
+				//Names that could not be translated are left out,
+				//so that they are tried again the next time
+				for(int j = 0; j < batch.length; j++)
+					if(trans[j] != null && !trans[j].equals(""))
+						dictionary.put(batch[j], trans[j]);
+			}
+			catch(Exception e)
+			{
+				System.out.println("Error: could not translate " + Arrays.toString(batch) +
+						" - " + e.getMessage());
+			}
+		}
+		save();
+	}
+
+	//Translates a batch of names
+	private class TranslationTask implements Callable<String[]>
+	{
+		private String[] names;
+
+		TranslationTask(List<String> n)
+		{
+			names = n.toArray(new String[n.size()]);
+		}
+
+		@Override
+		public String[] call()
+		{
+			return translator.translate(names, sourceLang, targetLang);
 		}
 	}
 }
@@ -0,0 +1,380 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* The persistent store of the translations of a Dictionary, in a file that is *
+* memory-mapped when opened, like the MappedWordLexicon, so it doesn't need   *
+* to be parsed: the file holds a hash index of the names, the offsets of the  *
+* names and translations and their UTF-8 bytes, and translations are looked   *
+* up in it directly. New translations are kept in memory until the store is   *
+* saved, which writes both to a new version of the file (file.1, file.2, ...) *
+* and switches to it, since a file that is still mapped can't be deleted or   *
+* replaced on some platforms (e.g., Windows). Older versions are deleted once *
+* they can be.                                                                *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.translate;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+public class DictionaryStore
+{
+
+//Attributes
+
+	//The identifier and format version of the file
+	private static final int MAGIC = 0x414D4C44;
+	private static final int VERSION = 1;
+	//The size of the header (magic, version, entries and slots)
+	private static final int HEADER = 16;
+	//The path to the file, and the version of it that is open (file.N, or
+	//the file itself for version 0), or -1 if there is none
+	private String file;
+	private int version;
+	//The number of translations in the file and the size of its hash index
+	private int entries;
+	private int slots;
+	//The hash index (number of the name + 1 in each slot, 0 if empty)
+	private IntBuffer hash;
+	//The offsets of the names and translations in their byte sections
+	private IntBuffer nameOff;
+	private IntBuffer transOff;
+	private ByteBuffer names;
+	private ByteBuffer translations;
+	//The translations added since the file was opened
+	private HashMap<String,String> added;
+
+//Constructors
+
+	/**
+	 * Opens the DictionaryStore in the given file (which is
+	 * empty if the file doesn't exist or isn't valid)
+	 * @param file: the path to the file
+	 */
+	public DictionaryStore(String file)
+	{
+		this.file = file;
+		added = new HashMap<String,String>();
+		entries = 0;
+		version = latest();
+		if(version > -1)
+		{
+			try
+			{
+				open();
+				deleteOlder();
+			}
+			catch(IOException e)
+			{
+				System.out.println("WARNING: Ignoring invalid dictionary " + path(version) + ": " + e.getMessage());
+				entries = 0;
+			}
+		}
+	}
+
+//Public Methods
+
+	/**
+	 * @param name: the name to search in the store
+	 * @return whether the store has a translation of the name
+	 */
+	public boolean contains(String name)
+	{
+		return get(name) != null;
+	}
+
+	/**
+	 * @return whether the store exists in its file
+	 */
+	public boolean exists()
+	{
+		return version > -1 && new File(path(version)).exists();
+	}
+
+	/**
+	 * @param name: the name to search in the store
+	 * @return the translation of the name, or null if it isn't in the store
+	 */
+	public synchronized String get(String name)
+	{
+		String trans = added.get(name);
+		if(trans != null)
+			return trans;
+		int id = find(name);
+		if(id < 0)
+			return null;
+		return string(translations, transOff.get(id), transOff.get(id+1));
+	}
+
+	/**
+	 * Adds a translation to the store (replacing the previous one, if any)
+	 * @param name: the name
+	 * @param trans: its translation
+	 */
+	public synchronized void put(String name, String trans)
+	{
+		added.put(name, trans);
+	}
+
+	/**
+	 * Saves the store to a new version of its file, with the translations added
+	 * since it was opened, switching to it only once it is complete (the previous
+	 * version is deleted if it can be, or else when the store is next opened)
+	 */
+	public synchronized void save() throws IOException
+	{
+		if(added.isEmpty() && exists())
+			return;
+		List<byte[]> nameBytes = new ArrayList<byte[]>(entries + added.size());
+		List<byte[]> transBytes = new ArrayList<byte[]>(entries + added.size());
+		List<Integer> hashes = new ArrayList<Integer>(entries + added.size());
+		for(int i = 0; i < entries; i++)
+		{
+			String n = string(names, nameOff.get(i), nameOff.get(i+1));
+			if(added.containsKey(n))
+				continue;
+			nameBytes.add(bytes(names, nameOff.get(i), nameOff.get(i+1)));
+			transBytes.add(bytes(translations, transOff.get(i), transOff.get(i+1)));
+			hashes.add(n.hashCode());
+		}
+		for(String n : added.keySet())
+		{
+			nameBytes.add(n.getBytes("UTF-8"));
+			transBytes.add(added.get(n).getBytes("UTF-8"));
+			hashes.add(n.hashCode());
+		}
+		int count = nameBytes.size();
+		int s = slots(count);
+		int[] index = new int[s];
+		for(int i = 0; i < count; i++)
+		{
+			int slot = (hashes.get(i) & 0x7fffffff) & (s-1);
+			while(index[slot] != 0)
+				slot = (slot + 1) & (s-1);
+			index[slot] = i + 1;
+		}
+
+		int next = Math.max(version, latest()) + 1;
+		File f = new File(path(next));
+		if(f.getParentFile() != null)
+			f.getParentFile().mkdirs();
+		File tmp = new File(path(next) + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(count);
+		out.writeInt(s);
+		for(int h : index)
+			out.writeInt(h);
+		writeOffsets(out, nameBytes);
+		writeOffsets(out, transBytes);
+		for(byte[] b : nameBytes)
+			out.write(b);
+		for(byte[] b : transBytes)
+			out.write(b);
+		out.close();
+		if(!tmp.renameTo(f))
+			throw new IOException("Could not save dictionary " + f);
+		version = next;
+		added.clear();
+		open();
+		deleteOlder();
+	}
+
+	/**
+	 * @return the number of translations in the store
+	 */
+	public synchronized int size()
+	{
+		int size = entries;
+		for(String n : added.keySet())
+			if(find(n) < 0)
+				size++;
+		return size;
+	}
+
+//Private Methods
+
+	private static byte[] bytes(ByteBuffer b, int start, int end)
+	{
+		byte[] bytes = new byte[end - start];
+		for(int i = 0; i < bytes.length; i++)
+			bytes[i] = b.get(start + i);
+		return bytes;
+	}
+
+	//Deletes the versions of the file older than the open one (those still
+	//mapped, e.g., on Windows, are left to be deleted when it is next opened)
+	private void deleteOlder()
+	{
+		for(int v = 0; v < version; v++)
+		{
+			new File(path(v)).delete();
+			new File(path(v) + ".tmp").delete();
+		}
+	}
+
+	//Finds a name in the hash index, returning its number or -1
+	private int find(String s)
+	{
+		if(entries == 0)
+			return -1;
+		byte[] b;
+		try
+		{
+			b = s.getBytes("UTF-8");
+		}
+		catch(IOException e)
+		{
+			return -1;
+		}
+		int slot = (s.hashCode() & 0x7fffffff) & (slots-1);
+		while(true)
+		{
+			int id = hash.get(slot) - 1;
+			if(id < 0)
+				return -1;
+			int start = nameOff.get(id);
+			if(nameOff.get(id+1) - start == b.length)
+			{
+				boolean equal = true;
+				for(int i = 0; i < b.length && equal; i++)
+					equal = names.get(start+i) == b[i];
+				if(equal)
+					return id;
+			}
+			slot = (slot + 1) & (slots-1);
+		}
+	}
+
+	//The latest complete version of the file, or -1 if there is none
+	private int latest()
+	{
+		File f = new File(file);
+		File dir = f.getAbsoluteFile().getParentFile();
+		String prefix = f.getName() + ".";
+		int latest = f.exists() ? 0 : -1;
+		String[] list = dir == null ? null : dir.list();
+		if(list == null)
+			return latest;
+		for(String s : list)
+		{
+			if(!s.startsWith(prefix) || !s.substring(prefix.length()).matches("[0-9]+"))
+				continue;
+			try
+			{
+				latest = Math.max(latest, Integer.parseInt(s.substring(prefix.length())));
+			}
+			catch(NumberFormatException e)
+			{
+				//Not a version of the file
+			}
+		}
+		return latest;
+	}
+
+	//Maps the open version of the file and the sections in it
+	private void open() throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(path(version), "r");
+		try
+		{
+			if(raf.readInt() != MAGIC || raf.readInt() != VERSION)
+				throw new IOException("not a dictionary file");
+			int count = raf.readInt();
+			slots = raf.readInt();
+			FileChannel channel = raf.getChannel();
+			ByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			long pos = HEADER;
+			hash = section(b, pos, slots * 4L).asIntBuffer();
+			pos += slots * 4L;
+			nameOff = section(b, pos, (count + 1) * 4L).asIntBuffer();
+			pos += (count + 1) * 4L;
+			transOff = section(b, pos, (count + 1) * 4L).asIntBuffer();
+			pos += (count + 1) * 4L;
+			names = section(b, pos, nameOff.get(count));
+			pos += nameOff.get(count);
+			translations = section(b, pos, transOff.get(count));
+			entries = count;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	//The path to a version of the file
+	private String path(int v)
+	{
+		if(v == 0)
+			return file;
+		return file + "." + v;
+	}
+
+	//A section of the mapped file
+	private static ByteBuffer section(ByteBuffer b, long pos, long length) throws IOException
+	{
+		if(pos + length > b.capacity())
+			throw new IOException("truncated file");
+		ByteBuffer s = b.duplicate();
+		s.position((int)pos);
+		s.limit((int)(pos + length));
+		return s.slice();
+	}
+
+	//The size of a hash index for the given number of strings (a power of two)
+	private static int slots(int size)
+	{
+		int s = 2;
+		while(s < size * 2)
+			s <<= 1;
+		return s;
+	}
+
+	private static String string(ByteBuffer b, int start, int end)
+	{
+		try
+		{
+			return new String(bytes(b, start, end), "UTF-8");
+		}
+		catch(IOException e)
+		{
+			return "";
+		}
+	}
+
+	private static void writeOffsets(DataOutputStream out, List<byte[]> bytes) throws IOException
+	{
+		int count = 0;
+		for(byte[] b : bytes)
+		{
+			out.writeInt(count);
+			count += b.length;
+		}
+		out.writeInt(count);
+	}
+}
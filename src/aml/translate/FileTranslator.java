@@ -0,0 +1,89 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* A local stand-in for the Microsoft Translator, which translates names using *
+* a tab-separated file of names and their translations (one per line), for    *
+* testing the translation of ontologies without a translation service.        *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.translate;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+
+public class FileTranslator implements TranslatorBackend
+{
+
+//Attributes
+
+	//The translations read from the file
+	private HashMap<String,String> translations;
+	private boolean authenticated;
+
+//Constructors
+
+	/**
+	 * Constructs a new FileTranslator
+	 * @param file: the path to the tab-separated file of names and translations
+	 */
+	public FileTranslator(String file)
+	{
+		translations = new HashMap<String,String>();
+		try
+		{
+			BufferedReader inStream = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file),"UTF8"));
+			String line;
+			while((line = inStream.readLine()) != null)
+			{
+				String[] words = line.split("\t");
+				if(words.length == 2)
+					translations.put(words[0], words[1]);
+			}
+			inStream.close();
+			authenticated = true;
+		}
+		catch(IOException e)
+		{
+			System.out.println("Error: could not read translations file - " + e.getMessage());
+			authenticated = false;
+		}
+	}
+
+//Public Methods
+
+	@Override
+	public boolean isAuthenticated()
+	{
+		return authenticated;
+	}
+
+	@Override
+	public String[] translate(String[] names, String sourceLang, String targetLang)
+	{
+		String[] trans = new String[names.length];
+		for(int i = 0; i < names.length; i++)
+		{
+			trans[i] = translations.get(names[i]);
+			if(trans[i] == null)
+				trans[i] = "";
+		}
+		return trans;
+	}
+}
@@ -33,7 +33,7 @@ import java.util.HashMap;
 import com.memetix.mst.language.Language;
 import com.memetix.mst.translate.Translate;
 
-public class Translator
+public class Translator implements TranslatorBackend
 {
 	
 //Attributes
@@ -88,9 +88,7 @@ public class Translator
 
 //Public Methods
 	
-	/**
-	 * @return Whether this translator is authenticated
-	 */
+	@Override
 	public boolean isAuthenticated()
 	{
 		return authenticated;
@@ -118,4 +116,39 @@ public class Translator
 		}
 		return translation;
 	}
+	
+	@Override
+	public String[] translate(String[] names, String sourceLang, String targetLang)
+	{
+		String[] translations = new String[names.length];
+		if(!authenticated)
+		{
+			for(int i = 0; i < names.length; i++)
+				translations[i] = "";
+			return translations;
+		}
+		try
+		{
+			String[] t = Translate.execute(names, lang.get(sourceLang), lang.get(targetLang));
+			for(int i = 0; i < names.length; i++)
+			{
+				if(t == null || i >= t.length || t[i] == null || t[i].startsWith("ArgumentException"))
+					translations[i] = "";
+				else
+					translations[i] = t[i];
+			}
+		}
+		//If the batch fails, translate the names one at a time,
+		//so that one bad name doesn't lose the whole batch
+		catch(Exception e)
+		{
+			for(int i = 0; i < names.length; i++)
+			{
+				translations[i] = translate(names[i], sourceLang, targetLang);
+				if(translations[i].startsWith("ArgumentException"))
+					translations[i] = "";
+			}
+		}
+		return translations;
+	}
 }
@@ -0,0 +1,40 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* A service that translates batches of names from one language to another,    *
+* used by the Dictionary for the names that aren't in its store. Batches are  *
+* sent concurrently, so implementations must be thread-safe.                  *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.translate;
+
+public interface TranslatorBackend
+{
+	/**
+	 * @return whether the backend can be used to translate
+	 */
+	public boolean isAuthenticated();
+
+	/**
+	 * Translates a batch of names/words
+	 * @param names: the names to translate
+	 * @param sourceLang: the language of the names
+	 * @param targetLang: the language to which to translate the names
+	 * @return the translations of the names, in the same order, with an
+	 * empty String for each name that could not be translated
+	 */
+	public String[] translate(String[] names, String sourceLang, String targetLang);
+}
@@ -27,6 +27,7 @@ import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 import aml.AML;
 import aml.match.Alignment;
@@ -152,7 +153,7 @@ public class AMLMenuBar extends JMenuBar implements ActionListener, Runnable
 		else if(o == matchAuto)
 		{
 			c = new Console();
-			new Thread(c).start();
+			SwingUtilities.invokeLater(c);
 			match = true;
 			new Thread(this).start();
 		}
@@ -269,6 +270,7 @@ public class AMLMenuBar extends JMenuBar implements ActionListener, Runnable
 	@Override
 	public void run()
 	{
+		aml.getProgress().reset();
 		if(match)
 		{
 			try
@@ -12,7 +12,8 @@
 * limitations under the License.                                              *
 *                                                                             *
 *******************************************************************************
-* Java console for the GUI.                                                   *
+* Java console for the GUI, which shows the progress of the current run and  *
+* allows it to be cancelled.                                                  *
 *                                                                             *
 * @author Daniel Faria                                                        *
 * @date 29-09-2014                                                            *
@@ -20,19 +21,35 @@
 ******************************************************************************/
 package aml.ui;
 
+import java.awt.BorderLayout;
 import java.awt.Cursor;
 import java.awt.Dialog;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.PrintStream;
 
+import javax.swing.JButton;
 import javax.swing.JDialog;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
+import aml.AML;
+import aml.util.Progress;
 
-public class Console extends JDialog implements Runnable
+
+public class Console extends JDialog implements ActionListener, Runnable
 {
 	private static final long serialVersionUID = 8550240765482376323L;
 	private JTextArea console;
+	private JProgressBar bar;
+	private JButton cancel;
+	//Polls the Progress of the run (from the event dispatch thread)
+	private Timer timer;
+	private Progress progress;
 	
 	public Console()
 	{
@@ -47,15 +64,57 @@ public class Console extends JDialog implements Runnable
         JScrollPane scroll = new JScrollPane(console,
         		JScrollPane.VERTICAL_SCROLLBAR_ALWAYS, 
                 JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-        add(scroll);
+        add(scroll, BorderLayout.CENTER);
+        progress = AML.getInstance().getProgress();
+        bar = new JProgressBar(0, 1000);
+        bar.setStringPainted(true);
+        bar.setString("");
+        cancel = new JButton("Cancel");
+        cancel.addActionListener(this);
+        JPanel status = new JPanel(new BorderLayout());
+        status.add(bar, BorderLayout.CENTER);
+        status.add(cancel, BorderLayout.EAST);
+        add(status, BorderLayout.SOUTH);
+        timer = new Timer(250, this);
+        timer.start();
         setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
         this.pack();
     }
 	
+	@Override
+	public void actionPerformed(ActionEvent e)
+	{
+		if(e.getSource() == cancel)
+		{
+			//The run stops at the next point where it checks for cancellation
+			progress.cancel();
+			cancel.setEnabled(false);
+			cancel.setText("Cancelling");
+		}
+		else
+		{
+			//Tasks with unknown units of work only show their name
+			bar.setIndeterminate(progress.getTotal() <= 0 && !progress.getTask().equals(""));
+			bar.setValue((int)(progress.getFraction() * 1000));
+			bar.setString(progress.toString());
+		}
+	}
+	
+	/**
+	 * Closes the Console (from any thread) when the run is finished
+	 */
 	public void finish()
 	{
-		this.setVisible(false);
-		this.dispose();
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				timer.stop();
+				setVisible(false);
+				dispose();
+			}
+		});
 	}
 
 	@Override
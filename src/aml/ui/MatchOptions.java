@@ -40,6 +40,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.ListSelectionModel;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
@@ -168,9 +169,9 @@ public class MatchOptions extends JDialog implements ActionListener, ItemListene
 			for(String s : matchList.getSelectedValuesList())
 				selection.add(MatchStep.parseStep(s));
 			aml.setSelectedSteps(selection);
-			//Then match the ontologies
+			//Then match the ontologies (off the event dispatch thread, which shows the Console)
 			c = new Console();
-			new Thread(c).start();
+			SwingUtilities.invokeLater(c);
 			new Thread(this).start();
 		}
 		else if(o == detail)
@@ -197,6 +198,7 @@ public class MatchOptions extends JDialog implements ActionListener, ItemListene
 	@Override
 	public void run()
 	{
+		aml.getProgress().reset();
 		try
 		{
 			Thread.sleep(1000);
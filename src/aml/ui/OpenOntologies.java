@@ -25,6 +25,7 @@ import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.util.concurrent.CancellationException;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
@@ -32,6 +33,7 @@ import javax.swing.JFileChooser;
 import javax.swing.JDialog;
 import javax.swing.JPanel;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 
@@ -133,8 +135,9 @@ public class OpenOntologies extends JDialog implements ActionListener, Runnable
 		}
 		else if(o == open)
 		{
+			//The ontologies are loaded off the event dispatch thread, which shows the Console
 			c = new Console();
-			new Thread(c).start();
+			SwingUtilities.invokeLater(c);
 			new Thread(this).start();
 		}
 		//Update the status of the open button
@@ -144,6 +147,7 @@ public class OpenOntologies extends JDialog implements ActionListener, Runnable
 	@Override
 	public void run()
 	{
+		aml.getProgress().reset();
 		try
 		{
 			aml.openOntologies(source.toString(), target.toString());
@@ -153,6 +157,11 @@ public class OpenOntologies extends JDialog implements ActionListener, Runnable
 			System.out.println("ERROR: Could not open ontologies!");
 			e.printStackTrace();
 		}
+		catch (CancellationException e)
+		{
+			System.out.println("Cancelled");
+			aml.closeOntologies();
+		}
 		try
 		{
 			Thread.sleep(2000);
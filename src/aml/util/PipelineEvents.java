@@ -0,0 +1,244 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Java Flight Recorder event types emitted by the matching pipeline. Since    *
+* AML is compiled for Java 7, the event types are defined at runtime through  *
+* jdk.jfr.EventFactory (Java 11+). Whether each event type is enabled is kept *
+* in a field, refreshed by a FlightRecorderListener whenever a recording      *
+* starts or stops, so when it is not (or when JFR is not available, or the    *
+* events were turned off with -Daml.jfr=false) begin() only reads that field  *
+* and returns null, and the instrumented code skips the event altogether.     *
+*                                                                             *
+* Usage:                                                                      *
+*   Object e = PipelineEvents.SELECTION.begin();                              *
+*   ...                                                                       *
+*   if(e != null)                                                             *
+*       PipelineEvents.SELECTION.commit(e, "STRICT", candidates, selected);   *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PipelineEvents
+{
+
+//Attributes
+
+	//Whether JFR is available and the events are turned on
+	public static final boolean AVAILABLE;
+	//The reflective handles to the JFR API
+	private static Method create;
+	private static Method newEvent;
+	private static Method getEventType;
+	private static Method isEnabled;
+	private static Method begin;
+	private static Method end;
+	private static Method set;
+	private static Method shouldCommit;
+	private static Method commit;
+	private static Constructor<?> annotation;
+	private static Constructor<?> value;
+	private static Class<?> nameClass;
+	private static Class<?> labelClass;
+	private static Class<?> categoryClass;
+
+	static
+	{
+		boolean available = false;
+		if(!"false".equals(System.getProperty("aml.jfr")))
+		{
+			try
+			{
+				Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+				Class<?> eventClass = Class.forName("jdk.jfr.Event");
+				Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+				Class<?> annotationClass = Class.forName("jdk.jfr.AnnotationElement");
+				Class<?> valueClass = Class.forName("jdk.jfr.ValueDescriptor");
+				nameClass = Class.forName("jdk.jfr.Name");
+				labelClass = Class.forName("jdk.jfr.Label");
+				categoryClass = Class.forName("jdk.jfr.Category");
+				create = factoryClass.getMethod("create", List.class, List.class);
+				newEvent = factoryClass.getMethod("newEvent");
+				getEventType = factoryClass.getMethod("getEventType");
+				isEnabled = eventTypeClass.getMethod("isEnabled");
+				begin = eventClass.getMethod("begin");
+				end = eventClass.getMethod("end");
+				set = eventClass.getMethod("set", int.class, Object.class);
+				shouldCommit = eventClass.getMethod("shouldCommit");
+				commit = eventClass.getMethod("commit");
+				annotation = annotationClass.getConstructor(Class.class, Object.class);
+				value = valueClass.getConstructor(Class.class, String.class, List.class);
+				available = true;
+			}
+			catch(Exception e)
+			{
+				available = false;
+			}
+		}
+		AVAILABLE = available;
+	}
+
+	//The event types of the pipeline
+	public static final PipelineEvents ONTOLOGY_LOAD = new PipelineEvents("aml.OntologyLoad", "Ontology Load",
+			new String[]{"ontology","phase","classes","names"},
+			new Class<?>[]{String.class,String.class,long.class,long.class});
+	public static final PipelineEvents BLOCK_PAIR = new PipelineEvents("aml.WordMatcherBlockPair", "WordMatcher Block Pair",
+			new String[]{"sourceBlock","targetBlock","sourceWords","targetWords","candidates","mappings"},
+			new Class<?>[]{int.class,int.class,long.class,long.class,long.class,long.class});
+	public static final PipelineEvents SEQUENTIAL_BATCH = new PipelineEvents("aml.SequentialMatchBatch", "Sequential Match Batch",
+			new String[]{"residualWords","firstStepMappings","candidates","mappings"},
+			new Class<?>[]{long.class,long.class,long.class,long.class});
+	public static final PipelineEvents SELECTION = new PipelineEvents("aml.CompoundSelection", "Compound Selection",
+			new String[]{"selectionType","candidates","selected"},
+			new Class<?>[]{String.class,long.class,long.class});
+	private static final PipelineEvents[] ALL = {ONTOLOGY_LOAD, BLOCK_PAIR, SEQUENTIAL_BATCH, SELECTION};
+
+	static
+	{
+		//The recordings (and so the event types they enable) only change when
+		//a recording changes state, so that is when the enabled states are read
+		if(AVAILABLE)
+		{
+			try
+			{
+				Class<?> recorderClass = Class.forName("jdk.jfr.FlightRecorder");
+				Class<?> listenerClass = Class.forName("jdk.jfr.FlightRecorderListener");
+				Object listener = Proxy.newProxyInstance(listenerClass.getClassLoader(),
+						new Class<?>[]{listenerClass}, new InvocationHandler()
+				{
+					@Override
+					public Object invoke(Object proxy, Method m, Object[] args)
+					{
+						if(m.getName().equals("equals"))
+							return proxy == args[0];
+						if(m.getName().equals("hashCode"))
+							return System.identityHashCode(proxy);
+						if(m.getName().equals("toString"))
+							return "PipelineEvents listener";
+						refresh();
+						return null;
+					}
+				});
+				recorderClass.getMethod("addListener", listenerClass).invoke(null, listener);
+			}
+			catch(Exception e)
+			{
+				System.out.println("WARNING: Could not listen to JFR recordings: " + e.getMessage());
+			}
+			refresh();
+		}
+	}
+
+	//The EventFactory and EventType of this event type, and whether it is enabled
+	private Object factory;
+	private Object type;
+	private volatile boolean enabled;
+
+//Constructors
+
+	private PipelineEvents(String name, String label, String[] fields, Class<?>[] types)
+	{
+		if(!AVAILABLE)
+			return;
+		try
+		{
+			List<Object> annotations = new ArrayList<Object>();
+			annotations.add(annotation.newInstance(nameClass, name));
+			annotations.add(annotation.newInstance(labelClass, label));
+			annotations.add(annotation.newInstance(categoryClass, new String[]{"AML","Pipeline"}));
+			List<Object> values = new ArrayList<Object>();
+			for(int i = 0; i < fields.length; i++)
+				values.add(value.newInstance(types[i], fields[i], new ArrayList<Object>()));
+			factory = create.invoke(null, annotations, values);
+			type = getEventType.invoke(factory);
+		}
+		catch(Exception e)
+		{
+			System.out.println("WARNING: Could not create JFR event " + name + ": " + e.getMessage());
+			factory = null;
+		}
+	}
+
+//Public Methods
+
+	/**
+	 * Starts timing a new event of this type
+	 * @return the event, or null if it is not being recorded
+	 */
+	public Object begin()
+	{
+		if(!enabled)
+			return null;
+		try
+		{
+			Object e = newEvent.invoke(factory);
+			begin.invoke(e);
+			return e;
+		}
+		catch(Exception x)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Ends the given event, sets its fields and commits it
+	 * @param event: the event returned by begin() (ignored if null)
+	 * @param values: the values of the fields of the event, in order
+	 */
+	public void commit(Object event, Object... values)
+	{
+		if(event == null)
+			return;
+		try
+		{
+			end.invoke(event);
+			if(!(Boolean)shouldCommit.invoke(event))
+				return;
+			for(int i = 0; i < values.length; i++)
+				set.invoke(event, i, values[i]);
+			commit.invoke(event);
+		}
+		catch(Exception x)
+		{
+			//Events are diagnostic only, so failures are ignored
+		}
+	}
+
+//Private Methods
+
+	//Reads whether each event type is enabled by the current recordings
+	private static void refresh()
+	{
+		for(PipelineEvents p : ALL)
+		{
+			try
+			{
+				p.enabled = p.factory != null && (Boolean)isEnabled.invoke(p.type);
+			}
+			catch(Exception x)
+			{
+				p.enabled = false;
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Progress and cancellation of a long run. Each step (e.g., loading an        *
+* ontology, or a matcher) starts a task with the units of work it will do     *
+* (e.g., blocks or source classes) and reports them as they are done, from    *
+* which the time left is estimated. The run can be cancelled at any time (by  *
+* the GUI, or through JMX), and the steps check for cancellation between      *
+* units of work, stopping with a CancellationException, so that a long run    *
+* can be aborted without killing the JVM. Callers that start a new run must   *
+* reset the Progress, which clears the cancellation. Jobs run concurrently    *
+* (e.g., by the CompoundServer) can each have a Progress of their own (see    *
+* AML.setThreadProgress), so that they are followed and cancelled apart.      *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class Progress implements ProgressMXBean
+{
+
+//Attributes
+
+	//The name under which the progress is registered in the MBeanServer
+	public static final String OBJECT_NAME = "aml:type=Progress";
+	//The current task, its total and done units of work and when it started
+	//(concurrent jobs without a Progress of their own share it, so the last task
+	//started is shown)
+	private volatile String task;
+	private volatile long total;
+	private AtomicLong done;
+	private volatile long start;
+	//Whether the run was cancelled
+	private volatile boolean cancelled;
+	//The Progress of the run that the job of this Progress is part of,
+	//whose cancellation also cancels the job (or null)
+	private Progress parent;
+
+//Constructors
+
+	/**
+	 * Constructs a new Progress with no task
+	 */
+	public Progress()
+	{
+		task = "";
+		total = 0;
+		done = new AtomicLong();
+		start = System.nanoTime();
+		cancelled = false;
+		parent = null;
+	}
+
+	/**
+	 * Constructs a new Progress with no task, for a job of a run
+	 * @param run: the Progress of the run, whose cancellation also cancels the job
+	 */
+	public Progress(Progress run)
+	{
+		this();
+		parent = run;
+	}
+
+//Public Methods
+
+	/**
+	 * Starts a new task, checking first whether the run was cancelled
+	 * @param name: the name of the task
+	 * @param units: the units of work of the task
+	 */
+	public void begin(String name, long units)
+	{
+		check();
+		task = name;
+		total = units;
+		done.set(0);
+		start = System.nanoTime();
+	}
+
+	@Override
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	/**
+	 * Stops the current step if the run was cancelled
+	 * @throws CancellationException if the run was cancelled
+	 */
+	public void check()
+	{
+		if(isCancelled())
+			throw new CancellationException("The run was cancelled");
+	}
+
+	@Override
+	public long getDone()
+	{
+		return done.get();
+	}
+
+	/**
+	 * @return the fraction of the current task done so far (from 0 to 1)
+	 */
+	public double getFraction()
+	{
+		if(total <= 0)
+			return 0.0;
+		return Math.min(1.0, (double)done.get() / total);
+	}
+
+	@Override
+	public String getTask()
+	{
+		return task;
+	}
+
+	@Override
+	public long getTimeLeft()
+	{
+		long d = done.get();
+		if(d <= 0 || total <= 0)
+			return -1;
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		return Math.max(0, elapsed * (total - d) / d);
+	}
+
+	@Override
+	public long getTotal()
+	{
+		return total;
+	}
+
+	@Override
+	public boolean isCancelled()
+	{
+		return cancelled || (parent != null && parent.isCancelled());
+	}
+
+	/**
+	 * Registers the Progress in the platform MBeanServer (replacing any
+	 * previously registered Progress), so that the run can be followed
+	 * and cancelled through JMX
+	 */
+	public void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if(server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(this, name);
+		}
+		catch(Exception e)
+		{
+			System.out.println("WARNING: Could not register progress: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Clears the current task and the cancellation, before a new run
+	 */
+	public void reset()
+	{
+		cancelled = false;
+		task = "";
+		total = 0;
+		done.set(0);
+		start = System.nanoTime();
+	}
+
+	@Override
+	public String toString()
+	{
+		if(task.equals(""))
+			return "";
+		String s = task + ": " + done.get() + " of " + total;
+		long left = getTimeLeft();
+		if(left >= 0)
+			s += " (" + formatTime(left) + " left)";
+		return s;
+	}
+
+	/**
+	 * Reports units of work done in the current task, and then
+	 * stops the current step if the run was cancelled
+	 * @param units: the units of work done
+	 * @throws CancellationException if the run was cancelled
+	 */
+	public void worked(long units)
+	{
+		done.addAndGet(units);
+		check();
+	}
+
+//Private Methods
+
+	//Formats a time in milliseconds as h:mm:ss
+	private static String formatTime(long millis)
+	{
+		long s = millis / 1000;
+		return String.format("%d:%02d:%02d", s / 3600, (s / 60) % 60, s % 60);
+	}
+}
@@ -0,0 +1,57 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Management interface of the Progress, exposing the progress of the current  *
+* task through JMX and allowing the run to be cancelled (e.g., from JConsole) *
+* without killing the JVM.                                                    *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.util;
+
+public interface ProgressMXBean
+{
+	/**
+	 * @return the name of the current task ("" if none was started)
+	 */
+	public String getTask();
+
+	/**
+	 * @return the units of work of the current task done so far
+	 */
+	public long getDone();
+
+	/**
+	 * @return the total units of work of the current task
+	 */
+	public long getTotal();
+
+	/**
+	 * @return the estimated time left for the current task, in milliseconds
+	 * (or -1 if it can't be estimated yet)
+	 */
+	public long getTimeLeft();
+
+	/**
+	 * @return whether the run was cancelled
+	 */
+	public boolean isCancelled();
+
+	/**
+	 * Cancels the run: the matchers and the ontology loading stop at the
+	 * next point where they check for cancellation
+	 */
+	public void cancel();
+}
@@ -0,0 +1,258 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Instrumentation of a matching run: nanosecond stage timers, counters of the *
+* pairs generated, scored, accepted and emitted by each stage, and gauges of  *
+* the Lexicon and WordLexicon sizes. The metrics are exposed as an MXBean and *
+* can be written to a tab-separated run summary.                              *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.util;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class RunMetrics implements RunMetricsMXBean
+{
+
+//Attributes
+
+	//The name under which the metrics are registered in the MBeanServer
+	public static final String OBJECT_NAME = "aml:type=RunMetrics";
+	//The suffixes of the counters kept for each stage
+	public static final String CANDIDATES = ".candidates";
+	public static final String SCORED = ".scored";
+	public static final String PASSED = ".passed";
+	public static final String EMITTED = ".emitted";
+	//The stage timers, run counts, counters and gauges
+	private ConcurrentHashMap<String,AtomicLong> stageTimes;
+	private ConcurrentHashMap<String,AtomicLong> stageRuns;
+	private ConcurrentHashMap<String,AtomicLong> counters;
+	private ConcurrentHashMap<String,AtomicLong> gauges;
+	//The time at which the metrics were last reset
+	private volatile long start;
+
+//Constructors
+
+	/**
+	 * Constructs a new empty RunMetrics
+	 */
+	public RunMetrics()
+	{
+		stageTimes = new ConcurrentHashMap<String,AtomicLong>();
+		stageRuns = new ConcurrentHashMap<String,AtomicLong>();
+		counters = new ConcurrentHashMap<String,AtomicLong>();
+		gauges = new ConcurrentHashMap<String,AtomicLong>();
+		start = System.nanoTime();
+	}
+
+//Public Methods
+
+	/**
+	 * Adds the given value to a counter
+	 * @param counter: the name of the counter
+	 * @param delta: the value to add
+	 */
+	public void count(String counter, long delta)
+	{
+		get(counters,counter).addAndGet(delta);
+	}
+
+	/**
+	 * @param counter: the name of the counter
+	 * @return the value of the counter
+	 */
+	public long getCounter(String counter)
+	{
+		AtomicLong l = counters.get(counter);
+		if(l == null)
+			return 0;
+		return l.get();
+	}
+
+	@Override
+	public Map<String,Long> getCounters()
+	{
+		return snapshot(counters);
+	}
+
+	@Override
+	public long getElapsedTime()
+	{
+		return System.nanoTime() - start;
+	}
+
+	@Override
+	public Map<String,Long> getGauges()
+	{
+		return snapshot(gauges);
+	}
+
+	/**
+	 * @param stage: the name of the stage
+	 * @return the accumulated time of the stage, in nanoseconds
+	 */
+	public long getStageTime(String stage)
+	{
+		AtomicLong l = stageTimes.get(stage);
+		if(l == null)
+			return 0;
+		return l.get();
+	}
+
+	@Override
+	public Map<String,Long> getStageRuns()
+	{
+		return snapshot(stageRuns);
+	}
+
+	@Override
+	public Map<String,Long> getStageTimes()
+	{
+		return snapshot(stageTimes);
+	}
+
+	/**
+	 * Registers these metrics in the platform MBeanServer, replacing
+	 * any metrics previously registered under the same name
+	 */
+	public void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if(server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(this, name);
+		}
+		catch(Exception e)
+		{
+			System.out.println("WARNING: Could not register run metrics: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public void reset()
+	{
+		stageTimes.clear();
+		stageRuns.clear();
+		counters.clear();
+		gauges.clear();
+		start = System.nanoTime();
+	}
+
+	/**
+	 * Saves the run summary to a tab-separated file, with one line per
+	 * stage timer (in nanoseconds and number of runs), counter and gauge
+	 * @param file: the path to the file where to save the summary
+	 */
+	public void saveSummary(String file) throws Exception
+	{
+		PrintWriter outStream = new PrintWriter(file);
+		writeSummary(outStream);
+		outStream.close();
+	}
+
+	/**
+	 * Writes the run summary to the given stream (which is flushed but not closed)
+	 * @param outStream: the output stream
+	 */
+	public void writeSummary(PrintWriter outStream)
+	{
+		outStream.println("#Type\tName\tValue\tRuns");
+		outStream.println("run\telapsed\t" + getElapsedTime() + "\t1");
+		Map<String,Long> runs = getStageRuns();
+		for(Map.Entry<String,Long> e : getStageTimes().entrySet())
+			outStream.println("stage\t" + e.getKey() + "\t" + e.getValue() + "\t" + runs.get(e.getKey()));
+		for(Map.Entry<String,Long> e : getCounters().entrySet())
+			outStream.println("counter\t" + e.getKey() + "\t" + e.getValue());
+		for(Map.Entry<String,Long> e : getGauges().entrySet())
+			outStream.println("gauge\t" + e.getKey() + "\t" + e.getValue());
+		outStream.flush();
+	}
+
+	/**
+	 * Sets the value of a gauge
+	 * @param gauge: the name of the gauge
+	 * @param value: the current value
+	 */
+	public void setGauge(String gauge, long value)
+	{
+		get(gauges,gauge).set(value);
+	}
+
+	/**
+	 * @return the current time, to be passed to stop() at the end of a stage
+	 */
+	public long start()
+	{
+		return System.nanoTime();
+	}
+
+	/**
+	 * Adds the time elapsed since the given start to the timer of a stage
+	 * @param stage: the name of the stage
+	 * @param startTime: the time returned by start()
+	 * @return the time elapsed, in nanoseconds
+	 */
+	public long stop(String stage, long startTime)
+	{
+		long elapsed = System.nanoTime() - startTime;
+		get(stageTimes,stage).addAndGet(elapsed);
+		get(stageRuns,stage).incrementAndGet();
+		return elapsed;
+	}
+
+	/**
+	 * @param nanos: a time in nanoseconds
+	 * @return the time in seconds, with millisecond resolution
+	 */
+	public static String toSeconds(long nanos)
+	{
+		return String.format("%.3f", nanos / 1.0e9);
+	}
+
+//Private Methods
+
+	private AtomicLong get(ConcurrentHashMap<String,AtomicLong> map, String key)
+	{
+		AtomicLong l = map.get(key);
+		if(l == null)
+		{
+			AtomicLong newL = new AtomicLong();
+			l = map.putIfAbsent(key, newL);
+			if(l == null)
+				l = newL;
+		}
+		return l;
+	}
+
+	private Map<String,Long> snapshot(ConcurrentHashMap<String,AtomicLong> map)
+	{
+		TreeMap<String,Long> s = new TreeMap<String,Long>();
+		for(Map.Entry<String,AtomicLong> e : map.entrySet())
+			s.put(e.getKey(), e.getValue().get());
+		return s;
+	}
+}
@@ -0,0 +1,56 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* Management interface of the RunMetrics, exposing the stage timers, counters *
+* and gauges of a matching run through JMX (e.g., to JConsole or VisualVM).   *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.util;
+
+import java.util.Map;
+
+public interface RunMetricsMXBean
+{
+	/**
+	 * @return the accumulated time of each stage, in nanoseconds
+	 */
+	public Map<String,Long> getStageTimes();
+
+	/**
+	 * @return the number of times each stage was run
+	 */
+	public Map<String,Long> getStageRuns();
+
+	/**
+	 * @return the value of each counter
+	 */
+	public Map<String,Long> getCounters();
+
+	/**
+	 * @return the last value of each gauge
+	 */
+	public Map<String,Long> getGauges();
+
+	/**
+	 * @return the time elapsed since the metrics were last reset, in nanoseconds
+	 */
+	public long getElapsedTime();
+
+	/**
+	 * Clears all stage timers, counters and gauges
+	 */
+	public void reset();
+}
@@ -0,0 +1,485 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* A persistent cache of the similarities between pairs of names, shared by    *
+* the matchers across ontologies and runs. Each similarity is keyed by a      *
+* 64-bit hash of the normalized source name, the normalized target name and   *
+* the measure (which includes a fingerprint of whatever else the similarity   *
+* depends on, e.g., the evidence content of the words of a WordLexicon). The  *
+* cache keeps up to a given number of similarities, evicting the least        *
+* recently used ones. It is split by hash into segments with a lock of their  *
+* own, so that the threads of a parallel matcher can use it at the same time, *
+* and each segment evicts its own least recently used similarities. They are  *
+* kept in primitive arrays (an open addressing hash table of the entries,     *
+* which are linked from the least to the most recently used) and saved to a   *
+* file as a list of key-similarity pairs, in the same order.                  *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+public class SimilarityCache
+{
+
+//Attributes
+
+	//The identifier and format version of similarity cache files
+	private static final int MAGIC = 0x414D4C48;
+	private static final int VERSION = 1;
+	//The FNV-1a hash parameters
+	private static final long OFFSET = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+	//The marker of an empty slot of the hash table or of the end of the list
+	private static final int NONE = -1;
+	//The maximum number of segments (i.e., of threads that can use the cache
+	//at the same time, as each segment has a lock of its own)
+	private static final int SEGMENTS = 16;
+	//The file of the cache and its maximum number of similarities
+	private String file;
+	private int capacity;
+	//The segments, each with the similarities of a range of hashes of the keys
+	private Segment[] segments;
+	private int segmentMask;
+
+//Constructors
+
+	/**
+	 * Constructs a new SimilarityCache, reading the similarities
+	 * saved in the given file, if it exists
+	 * @param file: the path to the cache file
+	 * @param capacity: the maximum number of similarities to keep
+	 */
+	public SimilarityCache(String file, int capacity)
+	{
+		this.file = file;
+		this.capacity = Math.max(capacity, 1);
+		//Each segment holds its share of the similarities, rounded up
+		int count = Math.min(SEGMENTS, Integer.highestOneBit(this.capacity));
+		segments = new Segment[count];
+		segmentMask = count - 1;
+		for(int i = 0; i < count; i++)
+			segments[i] = new Segment((this.capacity + count - 1) / count);
+		if(new File(file).exists())
+			load();
+	}
+
+//Public Methods
+
+	/**
+	 * Gets a similarity from the cache
+	 * @param key: the key of the pair of names and measure
+	 * @return the similarity, or NaN if it isn't in the cache
+	 */
+	public double get(long key)
+	{
+		Segment s = segment(key);
+		synchronized(s)
+		{
+			return s.get(key);
+		}
+	}
+
+	/**
+	 * @return the maximum number of similarities in the cache
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * @param h: the hash so far (e.g., of a measure)
+	 * @param s: the string to add to the hash
+	 * @return the hash of the string following what was hashed before
+	 */
+	public static long hash(long h, String s)
+	{
+		for(int i = 0; i < s.length(); i++)
+		{
+			h ^= s.charAt(i);
+			h *= PRIME;
+		}
+		//Separates consecutive strings
+		h ^= 0xffff;
+		h *= PRIME;
+		return h;
+	}
+
+	/**
+	 * @param h: the hash so far (e.g., of a measure)
+	 * @param b: the buffer with the string to add to the hash, in ASCII
+	 * @param start: the position of the first byte of the string
+	 * @param end: the position after the last byte of the string
+	 * @return the hash of the string following what was hashed before, as
+	 * hash(h, s) (as each ASCII byte is the char of the string)
+	 */
+	public static long hash(long h, ByteBuffer b, int start, int end)
+	{
+		for(int i = start; i < end; i++)
+		{
+			h ^= b.get(i);
+			h *= PRIME;
+		}
+		h ^= 0xffff;
+		h *= PRIME;
+		return h;
+	}
+
+	/**
+	 * @param h: the hash so far (e.g., of a measure)
+	 * @param words: the list of words to add to the hash (e.g., the words of a name)
+	 * @return the hash of the words following what was hashed before
+	 */
+	public static long hash(long h, List<String> words)
+	{
+		for(String w : words)
+			h = hash(h, w);
+		return hash(h, "");
+	}
+
+	/**
+	 * @return the fraction of lookups that found the similarity in the cache
+	 */
+	public double hitRate()
+	{
+		long lookups = 0;
+		long hits = 0;
+		for(Segment s : segments)
+		{
+			synchronized(s)
+			{
+				lookups += s.lookups;
+				hits += s.hits;
+			}
+		}
+		if(lookups == 0)
+			return 0.0;
+		return hits * 1.0 / lookups;
+	}
+
+	/**
+	 * @param measure: the hash of the measure
+	 * @param s: the source name
+	 * @param t: the target name
+	 * @return the key of the pair of names and measure
+	 */
+	public static long key(long measure, String s, String t)
+	{
+		return hash(hash(measure, s), t);
+	}
+
+	/**
+	 * @param measure: the name of a similarity measure, with a fingerprint
+	 * of anything else the similarity depends on
+	 * @return the hash of the measure, from which the keys are built
+	 */
+	public static long measure(String measure)
+	{
+		return hash(OFFSET, measure);
+	}
+
+	/**
+	 * Adds a similarity to the cache, evicting the least recently
+	 * used one (of those in the same segment) if the segment is full
+	 * @param key: the key of the pair of names and measure
+	 * @param sim: the similarity
+	 */
+	public void put(long key, double sim)
+	{
+		Segment s = segment(key);
+		synchronized(s)
+		{
+			s.put(key, sim);
+		}
+	}
+
+	/**
+	 * Saves the cache to its file, replacing the previous
+	 * file only once the new one is complete
+	 */
+	public synchronized void save() throws IOException
+	{
+		File f = new File(file);
+		if(f.getParentFile() != null)
+			f.getParentFile().mkdirs();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file + ".tmp"), 1 << 16));
+		//Each segment is copied while locked (so the others can still be used)
+		//from the least to the most recently used entry, so that reading the
+		//file puts them back in the same order
+		long[][] keys = new long[segments.length][];
+		double[][] sims = new double[segments.length][];
+		int size = 0;
+		for(int i = 0; i < segments.length; i++)
+		{
+			Segment s = segments[i];
+			synchronized(s)
+			{
+				keys[i] = new long[s.size];
+				sims[i] = new double[s.size];
+				int j = 0;
+				for(int e = s.first; e != NONE; e = s.next[e])
+				{
+					keys[i][j] = s.keys[e];
+					sims[i][j++] = s.sims[e];
+				}
+			}
+			size += keys[i].length;
+		}
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(size);
+		for(int i = 0; i < segments.length; i++)
+		{
+			for(int j = 0; j < keys[i].length; j++)
+			{
+				out.writeLong(keys[i][j]);
+				out.writeDouble(sims[i][j]);
+			}
+		}
+		out.close();
+		f.delete();
+		if(!new File(file + ".tmp").renameTo(f))
+			throw new IOException("Could not save similarity cache " + f);
+		System.out.println("Saved similarity cache " + f + " with " + size +
+				" similarities (hit rate: " + Math.round(hitRate()*1000)/10.0 + "%)");
+	}
+
+	/**
+	 * @return the number of similarities in the cache
+	 */
+	public int size()
+	{
+		int size = 0;
+		for(Segment s : segments)
+		{
+			synchronized(s)
+			{
+				size += s.size;
+			}
+		}
+		return size;
+	}
+
+//Private Methods
+
+	//Empties all the segments
+	private void clear()
+	{
+		for(Segment s : segments)
+		{
+			synchronized(s)
+			{
+				s.clear();
+			}
+		}
+	}
+
+	//Reads the similarities from the file (an invalid file is ignored)
+	private void load()
+	{
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("not a similarity cache");
+			int count = in.readInt();
+			for(int i = 0; i < count; i++)
+				put(in.readLong(), in.readDouble());
+			in.close();
+		}
+		catch(IOException e)
+		{
+			System.out.println("WARNING: Ignoring invalid similarity cache " + file + ": " + e.getMessage());
+			clear();
+			try
+			{
+				if(in != null)
+					in.close();
+			}
+			catch(IOException f)
+			{
+				//Do nothing
+			}
+		}
+	}
+
+	//The segment of a key (chosen by other bits than its slot in the segment)
+	private Segment segment(long key)
+	{
+		return segments[(int)((key * 0x9E3779B97F4A7C15L) >>> 40) & segmentMask];
+	}
+
+	//A segment of the cache, with its own hash table and list from the least
+	//to the most recently used entries (used while synchronized on it)
+	private static class Segment
+	{
+		//The hash table, with the entry in each slot (at most half full)
+		private int[] table;
+		private int mask;
+		//The maximum number of entries, their keys and similarities, and the previous
+		//and next entries in the list from the least to the most recently used
+		private int capacity;
+		private long[] keys;
+		private double[] sims;
+		private int[] previous;
+		private int[] next;
+		private int first;
+		private int last;
+		private int size;
+		//The number of lookups and of those that found the similarity
+		private long lookups;
+		private long hits;
+
+		private Segment(int capacity)
+		{
+			this.capacity = capacity;
+			int slots = Integer.highestOneBit(capacity) * 4;
+			table = new int[slots];
+			mask = slots - 1;
+			keys = new long[capacity];
+			sims = new double[capacity];
+			previous = new int[capacity];
+			next = new int[capacity];
+			clear();
+		}
+
+		private double get(long key)
+		{
+			lookups++;
+			int e = table[find(key)];
+			if(e == NONE)
+				return Double.NaN;
+			hits++;
+			touch(e);
+			return sims[e];
+		}
+
+		private void put(long key, double sim)
+		{
+			int slot = find(key);
+			int e = table[slot];
+			if(e == NONE)
+			{
+				if(size < capacity)
+					e = size++;
+				else
+				{
+					//Reuse the least recently used entry
+					e = first;
+					unlink(e);
+					remove(find(keys[e]));
+					slot = find(key);
+				}
+				keys[e] = key;
+				table[slot] = e;
+				append(e);
+			}
+			else
+				touch(e);
+			sims[e] = sim;
+		}
+
+		//Adds an entry to the end of the list (as the most recently used)
+		private void append(int e)
+		{
+			previous[e] = last;
+			next[e] = NONE;
+			if(last == NONE)
+				first = e;
+			else
+				next[last] = e;
+			last = e;
+		}
+
+		private void clear()
+		{
+			Arrays.fill(table, NONE);
+			first = NONE;
+			last = NONE;
+			size = 0;
+		}
+
+		//Finds the slot of a key in the hash table, or the empty slot where it would go
+		private int find(long key)
+		{
+			int i = slot(key);
+			while(table[i] != NONE && keys[table[i]] != key)
+				i = (i + 1) & mask;
+			return i;
+		}
+
+		//Empties a slot of the hash table, moving back the entries after it
+		//that would no longer be found (so the table needs no deletion markers)
+		private void remove(int i)
+		{
+			int j = i;
+			while(true)
+			{
+				j = (j + 1) & mask;
+				if(table[j] == NONE)
+					break;
+				int k = slot(keys[table[j]]);
+				//The entry stays if its home slot is cyclically in (i, j]
+				if(i <= j ? (i < k && k <= j) : (i < k || k <= j))
+					continue;
+				table[i] = table[j];
+				i = j;
+			}
+			table[i] = NONE;
+		}
+
+		//The home slot of a key in the hash table
+		private int slot(long key)
+		{
+			return (int)(key ^ (key >>> 32)) * 0x9E3779B9 & mask;
+		}
+
+		//Moves an entry to the end of the list (as the most recently used)
+		private void touch(int e)
+		{
+			if(e == last)
+				return;
+			unlink(e);
+			append(e);
+		}
+
+		//Removes an entry from the list
+		private void unlink(int e)
+		{
+			if(previous[e] == NONE)
+				first = next[e];
+			else
+				next[previous[e]] = next[e];
+			if(next[e] == NONE)
+				last = previous[e];
+			else
+				previous[next[e]] = previous[e];
+		}
+	}
+}
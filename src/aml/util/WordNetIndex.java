@@ -0,0 +1,307 @@
+/******************************************************************************
+* Copyright 2013-2014 LASIGE                                                  *
+*                                                                             *
+* Licensed under the Apache License, Version 2.0 (the "License"); you may     *
+* not use this file except in compliance with the License. You may obtain a   *
+* copy of the License at http://www.apache.org/licenses/LICENSE-2.0           *
+*                                                                             *
+* Unless required by applicable law or agreed to in writing, software         *
+* distributed under the License is distributed on an "AS IS" BASIS,           *
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.    *
+* See the License for the specific language governing permissions and         *
+* limitations under the License.                                              *
+*                                                                             *
+*******************************************************************************
+* A shared, memoised index of the WordNet database, so that the matchers that *
+* use WordNet query the database once per word. The word forms and hypernyms  *
+* of each word are kept once looked up, and the noun synsets are given int    *
+* ids as they are found, with their depth (the minimum number of synsets on a *
+* path to a root, counting both) and their ancestors (including themselves)   *
+* as a sorted array of ids, so the Wu-Palmer similarity of two words is the   *
+* intersection of their ancestors, without walking the hypernym chains again. *
+* The database is only read on demand, but the words of a lexicon can be      *
+* preloaded in a single pass.                                                 *
+*                                                                             *
+* @date 18-10-2026                                                            *
+* @version 1.1                                                                *
+******************************************************************************/
+package aml.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.smu.tspell.wordnet.NounSynset;
+import edu.smu.tspell.wordnet.Synset;
+import edu.smu.tspell.wordnet.SynsetType;
+import edu.smu.tspell.wordnet.WordNetDatabase;
+
+public class WordNetIndex
+{
+
+//Attributes
+
+	//The path to the WordNet database
+	private static final String PATH = "store/knowledge/wordnet/";
+	//The marker of a synset whose ancestors are being computed
+	private static final int[] VISITING = new int[0];
+	//The shared instance
+	private static WordNetIndex index;
+	//The WordNet Interface
+	private WordNetDatabase wordNet;
+	//The ids of the noun synsets indexed so far, and the synsets by id
+	private HashMap<NounSynset,Integer> ids;
+	private ArrayList<NounSynset> synsets;
+	//The depth and the sorted ancestors of each noun synset, by id
+	private int[] depths;
+	private ArrayList<int[]> ancestors;
+	//The noun synsets, word forms and hypernym word forms of each word
+	private HashMap<String,int[]> nouns;
+	private HashMap<String,Set<String>> wordForms;
+	private HashMap<String,Set<String>> hypernyms;
+
+//Constructors
+
+	private WordNetIndex()
+	{
+		//Setup the wordnet database directory
+		String path = new File(PATH).getAbsolutePath();
+		System.setProperty("wordnet.database.dir", path);
+		//Instantiate WordNet
+		wordNet = WordNetDatabase.getFileInstance();
+		ids = new HashMap<NounSynset,Integer>();
+		synsets = new ArrayList<NounSynset>();
+		depths = new int[1024];
+		ancestors = new ArrayList<int[]>();
+		nouns = new HashMap<String,int[]>();
+		wordForms = new HashMap<String,Set<String>>();
+		hypernyms = new HashMap<String,Set<String>>();
+	}
+
+//Public Methods
+
+	/**
+	 * @param s: the String to search in WordNet
+	 * @return the depth of the given String, i.e., the minimum depth of its
+	 * noun synsets (1 for a root), or 0 if it has none
+	 */
+	public synchronized int getDepth(String s)
+	{
+		return minDepth(getNouns(s));
+	}
+
+	/**
+	 * @param s: the String to search in WordNet
+	 * @return the (unmodifiable) set of hypernyms for the given String
+	 */
+	public synchronized Set<String> getHypernyms(String s)
+	{
+		Set<String> forms = hypernyms.get(s);
+		if(forms != null)
+			return forms;
+		HashSet<String> set = new HashSet<String>();
+		for(int n : getNouns(s))
+			for(NounSynset hs : synsets.get(n).getHypernyms())
+				addWordForms(hs, set);
+		forms = Collections.unmodifiableSet(set);
+		hypernyms.put(s, forms);
+		return forms;
+	}
+
+	/**
+	 * @return the shared WordNetIndex, which is created (and the
+	 * WordNet database opened) on the first call
+	 */
+	public static synchronized WordNetIndex getInstance()
+	{
+		if(index == null)
+			index = new WordNetIndex();
+		return index;
+	}
+
+	/**
+	 * @param s: the String to search in WordNet
+	 * @return the (unmodifiable) set of word forms for the given String
+	 */
+	public synchronized Set<String> getWordForms(String s)
+	{
+		Set<String> forms = wordForms.get(s);
+		if(forms != null)
+			return forms;
+		HashSet<String> set = new HashSet<String>();
+		for(Synset ss : wordNet.getSynsets(s))
+			addWordForms(ss, set);
+		forms = Collections.unmodifiableSet(set);
+		wordForms.put(s, forms);
+		return forms;
+	}
+
+	/**
+	 * Looks up the word forms, hypernyms and noun synsets (with their
+	 * depths and ancestors) of the given words, so that later lookups
+	 * don't need the WordNet database
+	 * @param words: the words to preload (e.g., the words of a WordLexicon)
+	 */
+	public synchronized void preload(Collection<String> words)
+	{
+		for(String w : words)
+		{
+			getWordForms(w);
+			getHypernyms(w);
+		}
+	}
+
+	/**
+	 * @return the number of noun synsets indexed so far
+	 */
+	public synchronized int synsetCount()
+	{
+		return synsets.size();
+	}
+
+	/**
+	 * @param s: the first String to search in WordNet
+	 * @param t: the second String to search in WordNet
+	 * @return the Wu-Palmer similarity between the two Strings: twice the depth
+	 * of their deepest common ancestor over the sum of their depths (1 if they
+	 * share a synset and 0 if either has no noun synsets)
+	 */
+	public synchronized double wuPalmerScore(String s, String t)
+	{
+		if(s.equals(t))
+			return 1.0;
+		int[] sNouns = getNouns(s);
+		int[] tNouns = getNouns(t);
+		if(sNouns.length == 0 || tNouns.length == 0)
+			return 0.0;
+		int lowest = 0;
+		for(int i : sNouns)
+		{
+			for(int j : tNouns)
+			{
+				if(i == j)
+					return 1.0;
+				lowest = Math.max(lowest, deepestCommon(ancestors.get(i), ancestors.get(j)));
+			}
+		}
+		return Math.min(1.0, lowest*2.0/(minDepth(sNouns)+minDepth(tNouns)));
+	}
+
+//Private Methods
+
+	private void addWordForms(Synset ss, Set<String> set)
+	{
+		for(String w : ss.getWordForms())
+			if(!w.trim().equals(""))
+				set.add(w);
+	}
+
+	//The depth of the deepest id in both sorted arrays of ancestors
+	private int deepestCommon(int[] a, int[] b)
+	{
+		int deepest = 0;
+		int i = 0;
+		int j = 0;
+		while(i < a.length && j < b.length)
+		{
+			if(a[i] < b[j])
+				i++;
+			else if(a[i] > b[j])
+				j++;
+			else
+			{
+				deepest = Math.max(deepest, depths[a[i]]);
+				i++;
+				j++;
+			}
+		}
+		return deepest;
+	}
+
+	//The ids of the noun synsets of a word, indexing them if needed
+	private int[] getNouns(String s)
+	{
+		int[] n = nouns.get(s);
+		if(n != null)
+			return n;
+		Synset[] ss = wordNet.getSynsets(s, SynsetType.NOUN);
+		n = new int[ss.length];
+		for(int i = 0; i < ss.length; i++)
+			n[i] = index((NounSynset)ss[i]);
+		nouns.put(s, n);
+		return n;
+	}
+
+	//Gets the id of a noun synset, computing its depth and ancestors
+	//(and those of its hypernyms) the first time it is found
+	private int index(NounSynset ns)
+	{
+		Integer id = ids.get(ns);
+		if(id != null)
+			return id;
+		id = synsets.size();
+		ids.put(ns, id);
+		synsets.add(ns);
+		ancestors.add(VISITING);
+		int depth = 0;
+		int[] anc = new int[]{id};
+		for(NounSynset hs : ns.getHypernyms())
+		{
+			int h = index(hs);
+			//A cycle in the hypernyms, which WordNet shouldn't have
+			if(ancestors.get(h) == VISITING)
+				continue;
+			if(depth == 0 || depths[h] < depth)
+				depth = depths[h];
+			anc = union(anc, ancestors.get(h));
+		}
+		if(id >= depths.length)
+		{
+			int[] d = new int[Math.max(depths.length * 2, id + 1)];
+			System.arraycopy(depths, 0, d, 0, depths.length);
+			depths = d;
+		}
+		depths[id] = depth + 1;
+		ancestors.set(id, anc);
+		return id;
+	}
+
+	private int minDepth(int[] n)
+	{
+		int min = 0;
+		for(int i : n)
+			if(min == 0 || depths[i] < min)
+				min = depths[i];
+		return min;
+	}
+
+	//The union of two sorted arrays of ids
+	private int[] union(int[] a, int[] b)
+	{
+		int[] u = new int[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while(i < a.length || j < b.length)
+		{
+			if(j == b.length || (i < a.length && a[i] < b[j]))
+				u[k++] = a[i++];
+			else if(i == a.length || b[j] < a[i])
+				u[k++] = b[j++];
+			else
+			{
+				u[k++] = a[i++];
+				j++;
+			}
+		}
+		if(k == u.length)
+			return u;
+		int[] v = new int[k];
+		System.arraycopy(u, 0, v, 0, k);
+		return v;
+	}
+}